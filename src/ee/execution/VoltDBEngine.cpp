@@ -620,6 +620,35 @@ int VoltDBEngine::executePlanFragments(int32_t numFragments,
     return failures;
 }
 
+int VoltDBEngine::executePlanFragmentGroup(int32_t numTxns,
+                                           int32_t fragmentCounts[],
+                                           int64_t planfragmentIds[],
+                                           ReferenceSerializeInputBE &serialize_in,
+                                           int64_t txnIds[],
+                                           int64_t spHandles[],
+                                           int64_t lastCommittedSpHandle,
+                                           int64_t uniqueIds[],
+                                           int64_t undoTokens[])
+{
+    int64_t *fragmentIds = planfragmentIds;
+    for (int32_t txn = 0; txn < numTxns; ++txn) {
+        // the parameters of all the transactions are in serialize_in, one after the other
+        if (executePlanFragments(fragmentCounts[txn],
+                                 fragmentIds,
+                                 NULL,
+                                 serialize_in,
+                                 txnIds[txn],
+                                 spHandles[txn],
+                                 lastCommittedSpHandle,
+                                 uniqueIds[txn],
+                                 undoTokens[txn]) > 0) {
+            return 1;
+        }
+        fragmentIds += fragmentCounts[txn];
+    }
+    return 0;
+}
+
 int VoltDBEngine::executePlanFragment(int64_t planfragmentId,
                                       int64_t inputDependencyId,
                                       int64_t txnId,
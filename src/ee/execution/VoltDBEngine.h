@@ -150,6 +150,21 @@ class __attribute__((visibility("default"))) VoltDBEngine {
                                  int64_t uniqueId,
                                  int64_t undoToken);
 
+        /**
+         * Execute the fragments of several single partition transactions back to back.
+         * Each transaction runs in its own undo quantum and appends its own result block.
+         * Stops at the first transaction that fails.
+         */
+        int executePlanFragmentGroup(int32_t numTxns,
+                                     int32_t fragmentCounts[],
+                                     int64_t planfragmentIds[],
+                                     ReferenceSerializeInputBE &serialize_in,
+                                     int64_t txnIds[],
+                                     int64_t spHandles[],
+                                     int64_t lastCommittedSpHandle,
+                                     int64_t uniqueIds[],
+                                     int64_t undoTokens[]);
+
         int getUsedParamcnt() const { return m_usedParamcnt; }
 
         // Created to transition existing unit tests to context abstraction.
@@ -603,6 +603,82 @@ SHAREDLIB_JNIEXPORT jint JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeExecu
     return org_voltdb_jni_ExecutionEngine_ERRORCODE_ERROR;
 }
 
+/**
+ * Executes the plan fragments of several single partition transactions in one call.
+ * The parameter sets of all the fragments are in the parameter buffer in order and
+ * each transaction appends its own result block to the result buffer.
+ * @param fragment_counts number of fragments of each transaction
+ * @param undo_tokens undo token of each transaction, INT64_MAX for read only ones
+ * @return error code
+ */
+SHAREDLIB_JNIEXPORT jint JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeExecutePlanFragmentGroup
+(JNIEnv *env,
+        jobject obj,
+        jlong engine_ptr,
+        jint num_txns,
+        jintArray fragment_counts,
+        jlongArray plan_fragment_ids,
+        jlongArray txn_ids,
+        jlongArray sp_handles,
+        jlong lastCommittedSpHandle,
+        jlongArray unique_ids,
+        jlongArray undo_tokens)
+{
+    // setup
+    VoltDBEngine *engine = castToEngine(engine_ptr);
+    assert(engine);
+    Topend *topend = static_cast<JNITopend*>(engine->getTopend())->updateJNIEnv(env);
+    try {
+        updateJNILogProxy(engine); //JNIEnv pointer can change between calls, must be updated
+        engine->resetReusedResultOutputBuffer();
+        static_cast<JNITopend*>(engine->getTopend())->updateJNIEnv(env);
+
+        std::vector<jint> fragmentCounts(num_txns);
+        std::vector<jlong> txnIds(num_txns);
+        std::vector<jlong> spHandles(num_txns);
+        std::vector<jlong> uniqueIds(num_txns);
+        std::vector<jlong> undoTokens(num_txns);
+        env->GetIntArrayRegion(fragment_counts, 0, num_txns, &fragmentCounts[0]);
+        env->GetLongArrayRegion(txn_ids, 0, num_txns, &txnIds[0]);
+        env->GetLongArrayRegion(sp_handles, 0, num_txns, &spHandles[0]);
+        env->GetLongArrayRegion(unique_ids, 0, num_txns, &uniqueIds[0]);
+        env->GetLongArrayRegion(undo_tokens, 0, num_txns, &undoTokens[0]);
+
+        // fragment info, the whole group has to fit in a single batch
+        jint numFragments = 0;
+        for (jint i = 0; i < num_txns; ++i) {
+            numFragments += fragmentCounts[i];
+        }
+        assert (numFragments <= MAX_BATCH_COUNT);
+        jlong* fragmentIdsBuffer = engine->getBatchFragmentIdsContainer();
+        env->GetLongArrayRegion(plan_fragment_ids, 0, numFragments, fragmentIdsBuffer);
+
+        // all fragments' parameters are in this buffer
+        ReferenceSerializeInputBE serialize_in(engine->getParameterBuffer(), engine->getParameterBufferCapacity());
+
+        int failures = engine->executePlanFragmentGroup(num_txns,
+                                                        &fragmentCounts[0],
+                                                        fragmentIdsBuffer,
+                                                        serialize_in,
+                                                        &txnIds[0],
+                                                        &spHandles[0],
+                                                        lastCommittedSpHandle,
+                                                        &uniqueIds[0],
+                                                        &undoTokens[0]);
+
+        if (failures > 0) {
+            return org_voltdb_jni_ExecutionEngine_ERRORCODE_ERROR;
+        }
+        else {
+            return org_voltdb_jni_ExecutionEngine_ERRORCODE_SUCCESS;
+        }
+    }
+    catch (const FatalException &e) {
+        topend->crashVoltDB(e);
+    }
+    return org_voltdb_jni_ExecutionEngine_ERRORCODE_ERROR;
+}
+
 /**
  * Serialize the result temporary table.
  * @param engine_ptr the VoltDBEngine pointer
@@ -1134,4 +1134,9 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         return m_network.getIOStats(interval, picoNetworks);
     }
 
+    public Map<Long, Pair<String, long[]>>
+        getNetworkBufferStats(final boolean interval) throws InterruptedException, ExecutionException {
+        return m_network.getBufferStats(interval);
+    }
+
 }
@@ -86,6 +86,17 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
             Runnable onBackPressureCallback,
             QueueMonitor monitor)
     {
+        this(port, offBackPressureCallback, onBackPressureCallback, monitor, GATHERING_WRITES);
+    }
+
+    NIOWriteStream (
+            VoltPort port,
+            Runnable offBackPressureCallback,
+            Runnable onBackPressureCallback,
+            QueueMonitor monitor,
+            boolean gatheringWrites)
+    {
+        super(gatheringWrites);
         m_port = port;
         m_offBackPressureCallback = offBackPressureCallback;
         m_onBackPressureCallback = onBackPressureCallback;
@@ -325,6 +336,20 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
         int bytesWritten = 0;
         try {
             long rc = 0;
+            if (m_gatheringWrites) {
+                do {
+                    rc = gatheringWrite(channel);
+                    bytesWritten += rc;
+                    //Anything left over means the socket buffer is full, another write would be wasted
+                    if (!m_gatheredBuffers.isEmpty()) {
+                        if (!m_hadBackPressure) {
+                            backpressureStarted();
+                        }
+                        break;
+                    }
+                } while (rc > 0);
+                return bytesWritten;
+            }
             do {
                 /*
                  * Nothing to write
@@ -343,6 +368,7 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
                 }
 
                 rc = channel.write(buffer);
+                m_writeSyscalls++;
 
                 //Discard the buffer back to a pool if no data remains
                 if (buffer.hasRemaining()) {
@@ -360,7 +386,8 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
         } finally {
             //We might fail after writing few bytes. make sure the ones that are written accounted for.
             //Not sure if we need to do any backpressure magic as client is dead and so no backpressure on this may be needed.
-            if (m_queuedBuffers.isEmpty() && m_hadBackPressure && m_queuedWrites.size() <= m_maxQueuedWritesBeforeBackpressure) {
+            if (m_queuedBuffers.isEmpty() && m_gatheredBuffers.isEmpty() &&
+                    m_hadBackPressure && m_queuedWrites.size() <= m_maxQueuedWritesBeforeBackpressure) {
                 backpressureEnded();
             }
             //Same here I dont know if we do need to do this housekeeping??
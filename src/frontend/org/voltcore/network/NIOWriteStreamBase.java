@@ -21,10 +21,12 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.GatheringByteChannel;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.RateLimitedLogger;
@@ -38,6 +40,25 @@ import org.voltcore.utils.RateLimitedLogger;
 public abstract class NIOWriteStreamBase {
     private static final VoltLogger networkLog = new VoltLogger("NETWORK");
 
+    /*
+     * When set, messages too large for a network pool buffer are serialized straight into a pooled
+     * direct buffer instead of going through the heap, and queued buffers are drained with a single
+     * gathering write per selection instead of one write per buffer
+     */
+    static final boolean GATHERING_WRITES = Boolean.getBoolean("NETWORK_GATHERING_WRITES");
+
+    /*
+     * Largest message that gets its own pooled direct buffer. The global pool keeps buffers of every
+     * size it has handed out so bigger messages still go through the heap.
+     */
+    static final int MAX_DIRECT_SERIALIZATION_SIZE =
+            Integer.getInteger("NETWORK_MAX_DIRECT_SERIALIZATION_SIZE", 1024 * 1024 * 2);
+
+    /*
+     * Maximum number of buffers handed to one gathering write, well under IOV_MAX
+     */
+    static final int MAX_GATHERED_BUFFERS = 64;
+
     protected boolean m_isShutdown = false;
 
     protected BBContainer m_currentWriteBuffer = null;
@@ -47,8 +68,17 @@ public abstract class NIOWriteStreamBase {
      */
     protected final ArrayDeque<BBContainer> m_queuedBuffers = new ArrayDeque<BBContainer>();
 
+    protected final boolean m_gatheringWrites;
+
+    /**
+     * Flipped buffers handed to the last gathering write that weren't completely written
+     */
+    protected final ArrayDeque<BBContainer> m_gatheredBuffers = new ArrayDeque<BBContainer>();
+    private final ByteBuffer m_gatherArray[];
+
     protected long m_bytesWritten = 0;
     protected long m_messagesWritten = 0;
+    protected long m_writeSyscalls = 0;
 
     /*
      * Used to provide incremental reads of the amount of
@@ -58,7 +88,20 @@ public abstract class NIOWriteStreamBase {
      */
     private long m_lastBytesWritten = 0;
     private long m_lastMessagesWritten = 0;
+    private long m_lastWriteSyscalls = 0;
+
+    protected NIOWriteStreamBase() {
+        this(GATHERING_WRITES);
+    }
 
+    protected NIOWriteStreamBase(boolean gatheringWrites) {
+        m_gatheringWrites = gatheringWrites;
+        m_gatherArray = gatheringWrites ? new ByteBuffer[MAX_GATHERED_BUFFERS] : null;
+    }
+
+    /**
+     * @return bytes written, messages written and the number of write calls made to the channel
+     */
     long[] getBytesAndMessagesWritten(boolean interval) {
         if (interval) {
             final long bytesWrittenThisTime = m_bytesWritten - m_lastBytesWritten;
@@ -66,9 +109,12 @@ public abstract class NIOWriteStreamBase {
 
             final long messagesWrittenThisTime = m_messagesWritten - m_lastMessagesWritten;
             m_lastMessagesWritten = m_messagesWritten;
-            return new long[] { bytesWrittenThisTime, messagesWrittenThisTime };
+
+            final long writeSyscallsThisTime = m_writeSyscalls - m_lastWriteSyscalls;
+            m_lastWriteSyscalls = m_writeSyscalls;
+            return new long[] { bytesWrittenThisTime, messagesWrittenThisTime, writeSyscallsThisTime };
         } else {
-            return new long[] {m_bytesWritten, m_messagesWritten};
+            return new long[] {m_bytesWritten, m_messagesWritten, m_writeSyscalls};
         }
     }
 
@@ -77,12 +123,54 @@ public abstract class NIOWriteStreamBase {
      */
     public int getOutstandingMessageCount()
     {
-        return m_queuedBuffers.size();
+        return m_queuedBuffers.size() + m_gatheredBuffers.size();
     }
 
     public boolean isEmpty()
     {
-        return m_queuedBuffers.isEmpty() && m_currentWriteBuffer == null;
+        return m_queuedBuffers.isEmpty() && m_currentWriteBuffer == null && m_gatheredBuffers.isEmpty();
+    }
+
+    /**
+     * Hand as many pending buffers as possible to the channel in one gathering write and
+     * release the ones that were completely written.
+     * @return bytes written by the channel
+     */
+    protected final long gatheringWrite(final GatheringByteChannel channel) throws IOException {
+        while (m_gatheredBuffers.size() < MAX_GATHERED_BUFFERS && !m_queuedBuffers.isEmpty()) {
+            final BBContainer c = m_queuedBuffers.poll();
+            //Buffer is not flipped after being written to in swap and serialize
+            c.b().flip();
+            m_gatheredBuffers.offer(c);
+        }
+        if (m_gatheredBuffers.isEmpty()) {
+            return 0;
+        }
+
+        int count = 0;
+        for (BBContainer c : m_gatheredBuffers) {
+            m_gatherArray[count++] = c.b();
+        }
+        final long rc;
+        try {
+            rc = channel.write(m_gatherArray, 0, count);
+            m_writeSyscalls++;
+        } finally {
+            Arrays.fill(m_gatherArray, 0, count, null);
+        }
+
+        BBContainer c = null;
+        while ((c = m_gatheredBuffers.peek()) != null && !c.b().hasRemaining()) {
+            m_gatheredBuffers.poll();
+            c.discard();
+            m_messagesWritten++;
+        }
+        return rc;
+    }
+
+    private static int directSerializationCapacity(int serializedSize) {
+        //Round up to a power of two so the global pool sees a small number of sizes
+        return Integer.highestOneBit(serializedSize - 1) << 1;
     }
 
     abstract int drainTo (final GatheringByteChannel channel) throws IOException;
@@ -108,8 +196,17 @@ public abstract class NIOWriteStreamBase {
             if (serializedSize == DeferredSerialization.EMPTY_MESSAGE_LENGTH) continue;
             BBContainer outCont = m_queuedBuffers.peekLast();
             ByteBuffer outbuf = null;
-            if (outCont == null || !outCont.b().hasRemaining()) {
-                outCont = pool.acquire();
+            if (m_gatheringWrites &&
+                    serializedSize > pool.allocationSize() &&
+                    serializedSize <= MAX_DIRECT_SERIALIZATION_SIZE &&
+                    (outCont == null || outCont.b().remaining() < serializedSize)) {
+                //Give the message its own direct buffer so it is serialized once with no heap copy
+                outCont = DBBPool.allocateDirectAndPool(directSerializationCapacity(serializedSize));
+                m_queuedBuffers.offer(outCont);
+            } else if (outCont == null || !outCont.b().hasRemaining()) {
+                //A lone message only needs a buffer that fits it, otherwise leave room to batch
+                outCont = pool.acquire(oldlist.isEmpty() ?
+                        serializedSize : Math.max(serializedSize, pool.allocationSize()));
                 outCont.b().clear();
                 m_queuedBuffers.offer(outCont);
             }
@@ -136,7 +233,7 @@ public abstract class NIOWriteStreamBase {
                 bytesQueued += buf.remaining();
                 while (buf.hasRemaining()) {
                     if (!outbuf.hasRemaining()) {
-                        outCont = pool.acquire();
+                        outCont = pool.acquire(buf.remaining());
                         outbuf = outCont.b();
                         outbuf.clear();
                         m_queuedBuffers.offer(outCont);
@@ -193,6 +290,10 @@ public abstract class NIOWriteStreamBase {
             bytesReleased += m_currentWriteBuffer.b().remaining();
             m_currentWriteBuffer.discard();
         }
+        while ((c = m_gatheredBuffers.poll()) != null) {
+            bytesReleased += c.b().remaining();
+            c.discard();
+        }
         while ((c = m_queuedBuffers.poll()) != null) {
             //Buffer is not flipped after being written to in swap and serialize, need to do it here
             c.b().flip();
@@ -17,64 +17,313 @@
 
 package org.voltcore.network;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.TreeSet;
 
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.EstTime;
 
+/**
+ * Pool of direct buffers used by a single network thread for reads and writes.
+ *
+ * Buffers come in a few size classes and are carved out of larger off-heap slabs so
+ * that bursts don't turn into one direct allocation per buffer. Slabs are added on demand
+ * up to a byte budget and slabs that stayed idle through a trim interval are released
+ * again. Past the budget buffers are allocated individually and freed on discard.
+ *
+ * Not thread safe, buffers must be acquired and discarded on the thread that owns the pool.
+ */
 public class NetworkDBBPool {
 
-    private final ArrayDeque<BBContainer> m_buffers = new ArrayDeque<BBContainer>();
     private static final int LIMIT = Integer.getInteger("NETWORK_DBB_LIMIT", 512);
     private static final int SIZE = Integer.getInteger("NETWORK_DBB_SIZE", (1024 * 32));
+    private static final int SMALL_SIZE = Integer.getInteger("NETWORK_DBB_SMALL_SIZE", (1024 * 4));
+    private static final int LARGE_SIZE = Integer.getInteger("NETWORK_DBB_LARGE_SIZE", (1024 * 256));
+
+    /*
+     * Target size of a slab. A slab always holds at least one buffer and at most
+     * MAX_BUFFERS_PER_SLAB so a tiny size class doesn't allocate a huge slab
+     */
+    private static final int SLAB_SIZE = Integer.getInteger("NETWORK_DBB_SLAB_SIZE", (1024 * 1024));
+    private static final int MAX_BUFFERS_PER_SLAB = 64;
+
+    /*
+     * How often in milliseconds the pool compares the peak number of buffers in use
+     * against the slabs it holds and releases slabs that weren't needed
+     */
+    private static final int TRIM_INTERVAL = Integer.getInteger("NETWORK_DBB_TRIM_INTERVAL", 10000);
+
+    /*
+     * Layout of the per size class counters returned by getStats
+     */
+    public static final int STAT_BUFFER_SIZE = 0;
+    public static final int STAT_SLABS = 1;
+    public static final int STAT_BUFFERS = 2;
+    public static final int STAT_BUFFERS_IN_USE = 3;
+    public static final int STAT_HITS = 4;
+    public static final int STAT_MISSES = 5;
+    public static final int STAT_FALLBACKS = 6;
+    public static final int STAT_COUNT = 7;
+
+    private final class Slab {
+        private final SizeClass m_class;
+        private final BBContainer m_origin;
+        private final ArrayDeque<ByteBuffer> m_free;
+        private int m_outstanding = 0;
+
+        private Slab(SizeClass sizeClass) {
+            m_class = sizeClass;
+            m_origin = DBBPool.allocateDirect(sizeClass.m_slabSize);
+            m_free = new ArrayDeque<ByteBuffer>(sizeClass.m_buffersPerSlab);
+            final ByteBuffer slab = m_origin.b();
+            for (int ii = 0; ii < sizeClass.m_buffersPerSlab; ii++) {
+                slab.limit((ii + 1) * sizeClass.m_size);
+                slab.position(ii * sizeClass.m_size);
+                m_free.offer(slab.slice());
+            }
+        }
+
+        private BBContainer take() {
+            m_outstanding++;
+            return new BBContainer(m_free.poll()) {
+                @Override
+                public void discard() {
+                    m_free.push(checkDoubleFree());
+                    m_outstanding--;
+                    if (m_outstanding == 0 && m_closed) {
+                        m_class.freeSlab(Slab.this);
+                    }
+                    m_class.release();
+                }
+            };
+        }
+    }
+
+    private final class SizeClass {
+        private final int m_size;
+        private final int m_buffersPerSlab;
+        private final int m_slabSize;
+        /*
+         * Buffers are always taken from the first slab with a free buffer so that
+         * the slabs at the end drain and can be released when demand drops
+         */
+        private final ArrayList<Slab> m_slabs = new ArrayList<Slab>();
+
+        private int m_inUse = 0;
+        private int m_peakInUse = 0;
+
+        private long m_hits = 0;
+        private long m_misses = 0;
+        private long m_fallbacks = 0;
+        private long m_lastHits = 0;
+        private long m_lastMisses = 0;
+        private long m_lastFallbacks = 0;
+
+        private SizeClass(int size) {
+            m_size = size;
+            m_buffersPerSlab = Math.max(1, Math.min(MAX_BUFFERS_PER_SLAB, SLAB_SIZE / size));
+            m_slabSize = m_buffersPerSlab * size;
+        }
+
+        private BBContainer acquire() {
+            m_inUse++;
+            m_peakInUse = Math.max(m_peakInUse, m_inUse);
+            for (int ii = 0; ii < m_slabs.size(); ii++) {
+                final Slab slab = m_slabs.get(ii);
+                if (!slab.m_free.isEmpty()) {
+                    m_hits++;
+                    return slab.take();
+                }
+            }
+
+            if (!m_closed && m_slabBytes + m_slabSize <= m_limitBytes) {
+                m_misses++;
+                final Slab slab = new Slab(this);
+                m_slabs.add(slab);
+                m_slabBytes += m_slabSize;
+                return slab.take();
+            }
+
+            //Over budget, allocate just this buffer and free it as soon as it is returned
+            m_fallbacks++;
+            final BBContainer originContainer = DBBPool.allocateDirect(m_size);
+            return new BBContainer(originContainer.b()) {
+                @Override
+                public void discard() {
+                    checkDoubleFree();
+                    originContainer.discard();
+                    release();
+                }
+            };
+        }
+
+        private void release() {
+            m_inUse--;
+            maybeTrim();
+        }
+
+        private void freeSlab(Slab slab) {
+            m_slabs.remove(slab);
+            m_slabBytes -= m_slabSize;
+            slab.m_origin.discard();
+        }
 
-    private final int m_numBuffers;
+        /*
+         * Keep enough slabs to cover the peak demand seen since the last trim
+         * and release idle slabs beyond that
+         */
+        private void trim() {
+            final int neededSlabs = (m_peakInUse + m_buffersPerSlab - 1) / m_buffersPerSlab;
+            for (int ii = m_slabs.size() - 1; ii >= 0 && m_slabs.size() > neededSlabs; ii--) {
+                final Slab slab = m_slabs.get(ii);
+                if (slab.m_outstanding == 0) {
+                    freeSlab(slab);
+                }
+            }
+            m_peakInUse = m_inUse;
+        }
+
+        private long[] getStats(boolean interval) {
+            final long stats[] = new long[STAT_COUNT];
+            stats[STAT_BUFFER_SIZE] = m_size;
+            stats[STAT_SLABS] = m_slabs.size();
+            stats[STAT_BUFFERS] = m_slabs.size() * m_buffersPerSlab;
+            stats[STAT_BUFFERS_IN_USE] = m_inUse;
+            if (interval) {
+                stats[STAT_HITS] = m_hits - m_lastHits;
+                stats[STAT_MISSES] = m_misses - m_lastMisses;
+                stats[STAT_FALLBACKS] = m_fallbacks - m_lastFallbacks;
+                m_lastHits = m_hits;
+                m_lastMisses = m_misses;
+                m_lastFallbacks = m_fallbacks;
+            } else {
+                stats[STAT_HITS] = m_hits;
+                stats[STAT_MISSES] = m_misses;
+                stats[STAT_FALLBACKS] = m_fallbacks;
+            }
+            return stats;
+        }
+    }
+
+    /*
+     * Size classes in ascending order of buffer size
+     */
+    private final SizeClass m_classes[];
+    private final SizeClass m_defaultClass;
     private final int m_allocationSize;
+    private final long m_limitBytes;
+    private long m_slabBytes = 0;
+    private long m_lastTrim = EstTime.currentTimeMillis();
+    private boolean m_closed = false;
+
     public NetworkDBBPool(int numBuffers) {
-        m_numBuffers = numBuffers;
-        m_allocationSize = SIZE;
+        this(numBuffers, SIZE, new int[] { SMALL_SIZE, SIZE, LARGE_SIZE });
     }
 
     NetworkDBBPool(int numBuffers, int allocSize) {
-        m_numBuffers = numBuffers;
-        m_allocationSize = allocSize;
+        this(numBuffers, allocSize, new int[] { allocSize });
     }
 
     public NetworkDBBPool() {
-        m_numBuffers = LIMIT;
-        m_allocationSize = SIZE;
+        this(LIMIT);
     }
 
+    /**
+     * @param numBuffers Number of default sized buffers the slabs may add up to
+     * @param allocSize Size of the buffers handed out by {@link #acquire()}
+     * @param sizes All the buffer sizes handed out by this pool
+     */
+    private NetworkDBBPool(int numBuffers, int allocSize, int sizes[]) {
+        m_allocationSize = allocSize;
+        m_limitBytes = (long)numBuffers * allocSize;
+        final TreeSet<Integer> sortedSizes = new TreeSet<Integer>();
+        for (int size : sizes) {
+            sortedSizes.add(size);
+        }
+        sortedSizes.add(allocSize);
+
+        m_classes = new SizeClass[sortedSizes.size()];
+        SizeClass defaultClass = null;
+        int ii = 0;
+        for (int size : sortedSizes) {
+            m_classes[ii] = new SizeClass(size);
+            if (size == allocSize) {
+                defaultClass = m_classes[ii];
+            }
+            ii++;
+        }
+        m_defaultClass = defaultClass;
+    }
+
+    /**
+     * Acquire a buffer of the default allocation size
+     */
     BBContainer acquire() {
-       final BBContainer cont = m_buffers.poll();
-       if (cont == null) {
-           final BBContainer originContainer = DBBPool.allocateDirect(m_allocationSize);
-           return new BBContainer(originContainer.b()) {
-                @Override
-                public void discard() {
-                    checkDoubleFree();
-                    //If we had to allocate over the desired limit, start discarding
-                    if (m_buffers.size() > m_numBuffers) {
-                        originContainer.discard();
-                        return;
-                    }
-                    m_buffers.push(originContainer);
-                }
-           };
-       }
-       return new BBContainer(cont.b()) {
-           @Override
-           public void discard() {
-               checkDoubleFree();
-               m_buffers.push(cont);
-           }
-       };
+        return m_defaultClass.acquire();
+    }
+
+    /**
+     * Acquire a buffer from the smallest size class that can hold sizeHint bytes,
+     * or from the largest size class if none can
+     */
+    BBContainer acquire(int sizeHint) {
+        for (SizeClass sizeClass : m_classes) {
+            if (sizeClass.m_size >= sizeHint) {
+                return sizeClass.acquire();
+            }
+        }
+        return m_classes[m_classes.length - 1].acquire();
+    }
+
+    int allocationSize() {
+        return m_allocationSize;
+    }
+
+    private void maybeTrim() {
+        final long now = EstTime.currentTimeMillis();
+        if (now - m_lastTrim < TRIM_INTERVAL) return;
+        m_lastTrim = now;
+        trim();
+    }
+
+    /**
+     * Release the slabs that weren't needed to cover the demand seen since the last trim
+     */
+    void trim() {
+        for (SizeClass sizeClass : m_classes) {
+            sizeClass.trim();
+        }
     }
 
+    /**
+     * @return Counters for every size class in ascending order of buffer size,
+     * indexed by the STAT_ constants. With interval set the hit, miss and fallback counts
+     * only cover the period since the previous interval request.
+     */
+    long[][] getStats(boolean interval) {
+        final long stats[][] = new long[m_classes.length][];
+        for (int ii = 0; ii < m_classes.length; ii++) {
+            stats[ii] = m_classes[ii].getStats(interval);
+        }
+        return stats;
+    }
+
+    /**
+     * Release all the slabs. Slabs with buffers still in use are released when
+     * the last of those buffers is discarded.
+     */
     void clear() {
-        BBContainer cont = null;
-        while ((cont = m_buffers.poll()) != null) {
-            cont.discard();
+        m_closed = true;
+        for (SizeClass sizeClass : m_classes) {
+            for (int ii = sizeClass.m_slabs.size() - 1; ii >= 0; ii--) {
+                final Slab slab = sizeClass.m_slabs.get(ii);
+                if (slab.m_outstanding == 0) {
+                    sizeClass.freeSlab(slab);
+                }
+            }
         }
     }
 
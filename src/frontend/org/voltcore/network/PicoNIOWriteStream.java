@@ -76,7 +76,7 @@ public class PicoNIOWriteStream extends NIOWriteStreamBase {
     protected void updateQueued(int queued, boolean noBackpressureSignal) {}
 
     /**
-     * Drain pending buffers one at a time into the socket
+     * Drain pending buffers into the socket, one at a time or in a single gathering write
      * @param channel
      * @return
      * @throws IOException
@@ -85,6 +85,14 @@ public class PicoNIOWriteStream extends NIOWriteStreamBase {
     int drainTo (final GatheringByteChannel channel) throws IOException {
         int bytesWritten = 0;
         long rc = 0;
+        if (m_gatheringWrites) {
+            do {
+                rc = gatheringWrite(channel);
+                bytesWritten += rc;
+            } while (rc > 0 && m_gatheredBuffers.isEmpty());
+            m_bytesWritten += bytesWritten;
+            return bytesWritten;
+        }
         do {
             /*
              * Nothing to write
@@ -103,6 +111,7 @@ public class PicoNIOWriteStream extends NIOWriteStreamBase {
             }
 
             rc = channel.write(buffer);
+            m_writeSyscalls++;
 
             //Discard the buffer back to a pool if no data remains
             if (!buffer.hasRemaining()) {
@@ -72,6 +72,9 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -87,6 +90,7 @@ import jsr166y.ThreadLocalRandom;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.VoltNetworkPool.IOStatsIntf;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.LatencyWatchdog;
 import org.voltcore.utils.Pair;
 
@@ -109,6 +113,12 @@ class VoltNetwork implements Runnable, IOStatsIntf
 
     private final NinjaKeySet m_ninjaSelectedKeys;
 
+    /*
+     * Load of this network between the two most recent load samples, read by
+     * the pool when placing new channels
+     */
+    private volatile long m_recentLoad = 0;
+
     /**
      * Start this VoltNetwork's thread;
      */
@@ -227,6 +237,11 @@ class VoltNetwork implements Runnable, IOStatsIntf
             public void run() {
                 VoltPort port = (VoltPort)c;
                 assert(c != null);
+                if (!m_ports.contains(port) && port.network() != VoltNetwork.this) {
+                    // The port was migrated to another network, it is responsible now
+                    port.network().unregisterChannel(port);
+                    return;
+                }
                 SelectionKey selectionKey = port.getKey();
 
                 try {
@@ -290,9 +305,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
     public void run() {
         final ThreadLocalRandom r = ThreadLocalRandom.current();
         if (m_coreBindId != null) {
-            // Remove Affinity for now to make this dependency dissapear from the client.
-            // Goal is to remove client dependency on this class in the medium term.
-            //PosixJNAAffinity.INSTANCE.setAffinity(m_coreBindId);
+            CoreUtils.m_coreBinder.bindCurrentThread(m_coreBindId);
         }
         try {
             while (m_shouldStop == false) {
@@ -369,6 +382,10 @@ class VoltNetwork implements Runnable, IOStatsIntf
     }
 
     void installInterests(VoltPort port) {
+        if (port.network() != this) {
+            // Stale change for a port that migrated away, the new network installs interests
+            return;
+        }
         try {
             if (port.isRunning()) {
                 assert(false); //Shouldn't be running since it is all single threaded now?
@@ -402,6 +419,9 @@ class VoltNetwork implements Runnable, IOStatsIntf
     }
 
     private void callPort(final VoltPort port) {
+        if (port.network() != this) {
+            return;
+        }
         try {
             port.lockForHandlingWork();
             port.getKey().interestOps(0);
@@ -492,6 +512,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
         long totalMessagesRead = 0;
         long totalWritten = 0;
         long totalMessagesWritten = 0;
+        long totalWriteSyscalls = 0;
         for (VoltPort p : m_ports) {
             final long read = p.readStream().getBytesRead(interval);
             final long writeInfo[] = p.writeStream().getBytesAndMessagesWritten(interval);
@@ -500,6 +521,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
             totalMessagesRead += messagesRead;
             totalWritten += writeInfo[0];
             totalMessagesWritten += writeInfo[1];
+            totalWriteSyscalls += writeInfo[2];
             retval.put(
                     p.connectionId(),
                     Pair.of(
@@ -508,7 +530,8 @@ class VoltNetwork implements Runnable, IOStatsIntf
                                     read,
                                     messagesRead,
                                     writeInfo[0],
-                                    writeInfo[1] }));
+                                    writeInfo[1],
+                                    writeInfo[2] }));
         }
         retval.put(
                 -1L,
@@ -518,7 +541,8 @@ class VoltNetwork implements Runnable, IOStatsIntf
                                 totalRead,
                                 totalMessagesRead,
                                 totalWritten,
-                                totalMessagesWritten }));
+                                totalMessagesWritten,
+                                totalWriteSyscalls }));
         return retval;
     }
 
@@ -539,6 +563,129 @@ class VoltNetwork implements Runnable, IOStatsIntf
         return ft;
     }
 
+    /**
+     * @return Future for the counters of each size class in this network's buffer pool
+     */
+    Future<long[][]> getBufferStats(final boolean interval) {
+        FutureTask<long[][]> ft = new FutureTask<long[][]>(new Callable<long[][]>() {
+            @Override
+            public long[][] call() throws Exception {
+                return m_pool.getStats(interval);
+            }
+        });
+
+        m_tasks.offer(ft);
+        m_selector.wakeup();
+
+        return ft;
+    }
+
+    /**
+     * Sample the load of every port since the previous sample.
+     * @return Future for the total load of this network since the previous sample
+     */
+    Future<Long> sampleLoad() {
+        FutureTask<Long> ft = new FutureTask<Long>(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                long load = 0;
+                for (VoltPort p : m_ports) {
+                    load += p.sampleLoad();
+                }
+                m_recentLoad = load;
+                return load;
+            }
+        });
+        m_tasks.offer(ft);
+        m_selector.wakeup();
+        return ft;
+    }
+
+    long recentLoad() {
+        return m_recentLoad;
+    }
+
+    /**
+     * Move ports that carried load in the last sample to the target network, picking the
+     * busiest ports that fit in the load budget first. Ports that are busy or have data
+     * buffered are skipped and will be considered again on the next rebalance.
+     * @return Future for the number of ports that were handed to the target
+     */
+    Future<Integer> migratePorts(final VoltNetwork target, final long loadBudget, final int maxPorts) {
+        FutureTask<Integer> ft = new FutureTask<Integer>(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                ArrayList<VoltPort> candidates = new ArrayList<VoltPort>();
+                for (VoltPort p : m_ports) {
+                    if (p.lastSampledLoad() > 0 && p.lastSampledLoad() <= loadBudget) {
+                        candidates.add(p);
+                    }
+                }
+                Collections.sort(candidates, new Comparator<VoltPort>() {
+                    @Override
+                    public int compare(VoltPort o1, VoltPort o2) {
+                        return Long.compare(o2.lastSampledLoad(), o1.lastSampledLoad());
+                    }
+                });
+
+                long remaining = loadBudget;
+                int migrated = 0;
+                for (VoltPort p : candidates) {
+                    if (migrated >= maxPorts || remaining <= 0) {
+                        break;
+                    }
+                    final long load = p.lastSampledLoad();
+                    if (load > remaining || !p.beginMigration(target)) {
+                        continue;
+                    }
+                    final SelectionKey key = p.getKey();
+                    final SocketChannel channel = (SocketChannel)key.channel();
+                    key.attach(null);
+                    key.cancel();
+                    m_ports.remove(p);
+                    m_numPorts.decrementAndGet();
+                    target.adoptPort(p, channel);
+                    remaining -= load;
+                    migrated++;
+                }
+                if (migrated > 0 && networkLog.isDebugEnabled()) {
+                    networkLog.debug("Migrated " + migrated + " ports from " + networkThreadName +
+                            " to " + target.networkThreadName);
+                }
+                return migrated;
+            }
+        });
+        m_tasks.offer(ft);
+        m_selector.wakeup();
+        return ft;
+    }
+
+    /**
+     * Register a port that was migrated from another network with this network's selector
+     */
+    private void adoptPort(final VoltPort port, final SocketChannel channel) {
+        queueTask(new Runnable() {
+            @Override
+            public void run() {
+                final SelectionKey key;
+                try {
+                    key = channel.register(m_selector, port.interestOps(), port);
+                } catch (IOException e) {
+                    networkLog.warn("Failed to register migrated port " + port, e);
+                    port.completeMigration(null);
+                    port.die();
+                    port.unregistered();
+                    return;
+                }
+                port.completeMigration(key);
+                m_ports.add(port);
+                m_numPorts.incrementAndGet();
+                // Pick up any interest changes made while the port was in flight
+                installInterests(port);
+            }
+        });
+    }
+
     Long getThreadId() {
         return m_thread.getId();
     }
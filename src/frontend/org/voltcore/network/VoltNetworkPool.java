@@ -28,11 +28,13 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.Pair;
 
 public class VoltNetworkPool {
@@ -44,9 +46,32 @@ public class VoltNetworkPool {
     private static final VoltLogger m_logger = new VoltLogger(VoltNetworkPool.class.getName());
     private static final VoltLogger networkLog = new VoltLogger("NETWORK");
 
+    /*
+     * How often in milliseconds to sample per port load and move ports from the busiest network
+     * to the least busy one. 0 disables rebalancing and ports stay where they were registered.
+     */
+    private static final int REBALANCE_INTERVAL = Integer.getInteger("NETWORK_REBALANCE_INTERVAL", 0);
+
+    /*
+     * Rebalance when the busiest network is carrying more than this many percent of the average load
+     */
+    private static final int REBALANCE_THRESHOLD_PERCENT = Integer.getInteger("NETWORK_REBALANCE_THRESHOLD", 125);
+
+    /*
+     * Upper bound on the number of ports moved by a single rebalance
+     */
+    private static final int REBALANCE_MAX_PORTS = Integer.getInteger("NETWORK_REBALANCE_MAX_PORTS", 8);
+
+    /*
+     * Per network stats rows are keyed starting here and counting down
+     * so they can't collide with the -1 GLOBAL row or connection ids
+     */
+    public static final long NETWORK_STATS_ID_BASE = -2L;
+
     private final VoltNetwork m_networks[];
     private final AtomicLong m_nextNetwork = new AtomicLong();
     public final String m_poolName;
+    private ScheduledThreadPoolExecutor m_rebalancer = null;
 
     public VoltNetworkPool() {
         this(1, 1, null, "");
@@ -77,9 +102,27 @@ public class VoltNetworkPool {
         for (VoltNetwork vn : m_networks) {
             vn.start();
         }
+        if (REBALANCE_INTERVAL > 0 && m_networks.length > 1) {
+            m_rebalancer = CoreUtils.getScheduledThreadPoolExecutor(
+                    "Volt " + m_poolName + " Network Rebalancer", 1, CoreUtils.SMALL_STACK_SIZE);
+            m_rebalancer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        rebalance();
+                    } catch (Throwable t) {
+                        m_logger.warn("Error rebalancing network " + m_poolName, t);
+                    }
+                }
+            }, REBALANCE_INTERVAL, REBALANCE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void shutdown() throws InterruptedException {
+        if (m_rebalancer != null) {
+            m_rebalancer.shutdown();
+            m_rebalancer.awaitTermination(1, TimeUnit.MINUTES);
+        }
         for (VoltNetwork vn : m_networks) {
             vn.shutdown();
         }
@@ -98,16 +141,57 @@ public class VoltNetworkPool {
             final ReverseDNSPolicy dns) throws IOException {
         //Start with a round robin base policy
         VoltNetwork vn = m_networks[(int)(m_nextNetwork.getAndIncrement() % m_networks.length)];
-        //Then do a load based policy which is a little racy
+        //Then do a load based policy which is a little racy. Measured load is only
+        //available when rebalancing is on, otherwise it is zero and port count decides
         for (int ii = 0; ii < m_networks.length; ii++) {
             if (m_networks[ii] == vn) continue;
-            if (vn.numPorts() > m_networks[ii].numPorts()) {
+            final long load = vn.recentLoad();
+            final long otherLoad = m_networks[ii].recentLoad();
+            if (load > otherLoad || (load == otherLoad && vn.numPorts() > m_networks[ii].numPorts())) {
                 vn = m_networks[ii];
             }
         }
         return vn.registerChannel(channel, handler, interestOps, dns);
     }
 
+    /**
+     * Sample the load on each network and if the busiest network is carrying sufficiently
+     * more than the average move some of its ports to the least busy network.
+     * Ports are moved between selections so no reads or writes are lost.
+     * @return The number of ports that were moved
+     */
+    int rebalance() throws InterruptedException, ExecutionException {
+        final ArrayList<Future<Long>> samples = new ArrayList<Future<Long>>(m_networks.length);
+        for (VoltNetwork vn : m_networks) {
+            samples.add(vn.sampleLoad());
+        }
+
+        long total = 0;
+        int busiest = -1;
+        int idlest = -1;
+        long loads[] = new long[m_networks.length];
+        for (int ii = 0; ii < m_networks.length; ii++) {
+            try {
+                loads[ii] = samples.get(ii).get(500, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                networkLog.debug("Timed out sampling load of network thread, skipping rebalance");
+                return 0;
+            }
+            total += loads[ii];
+            if (busiest == -1 || loads[ii] > loads[busiest]) busiest = ii;
+            if (idlest == -1 || loads[ii] < loads[idlest]) idlest = ii;
+        }
+
+        final long average = total / m_networks.length;
+        if (total == 0 || busiest == idlest || loads[busiest] * 100 <= average * REBALANCE_THRESHOLD_PERCENT) {
+            return 0;
+        }
+
+        //Move enough load to bring the two networks roughly level
+        final long budget = (loads[busiest] - loads[idlest]) / 2;
+        return m_networks[busiest].migratePorts(m_networks[idlest], budget, REBALANCE_MAX_PORTS).get();
+    }
+
     public List<Long> getThreadIds() {
         ArrayList<Long> ids = new ArrayList<Long>();
         for (VoltNetwork vn : m_networks) {
@@ -131,9 +215,17 @@ public class VoltNetworkPool {
         }
 
         long globalStats[] = null;
+        int statsIndex = 0;
         for (Future<Map<Long, Pair<String, long[]>>> statsFuture : statTasks) {
+            final int networkIndex = statsIndex++;
             try {
                 Map<Long, Pair<String, long[]>> stats = statsFuture.get(500, TimeUnit.MILLISECONDS);
+                if (networkIndex < m_networks.length) {
+                    //Report each selector thread's totals so load imbalance is visible
+                    retval.put(
+                            NETWORK_STATS_ID_BASE - networkIndex,
+                            Pair.of(m_networks[networkIndex].networkThreadName, stats.get(-1L).getSecond().clone()));
+                }
                 if (globalStats == null) {
                     globalStats = stats.get(-1L).getSecond();
                 } else {
@@ -151,4 +243,31 @@ public class VoltNetworkPool {
 
         return retval;
     }
+
+    /**
+     * Collect the buffer pool counters of every network thread, one row per thread and
+     * buffer size class. The counters are laid out as described in {@link NetworkDBBPool#getStats(boolean)}.
+     */
+    public Map<Long, Pair<String, long[]>> getBufferStats(final boolean interval)
+            throws ExecutionException, InterruptedException {
+        HashMap<Long, Pair<String, long[]>> retval = new HashMap<Long, Pair<String, long[]>>();
+
+        ArrayList<Future<long[][]>> statTasks = new ArrayList<Future<long[][]>>(m_networks.length);
+        for (VoltNetwork vn : m_networks) {
+            statTasks.add(vn.getBufferStats(interval));
+        }
+
+        long rowId = 0;
+        for (int ii = 0; ii < m_networks.length; ii++) {
+            try {
+                for (long sizeClassStats[] : statTasks.get(ii).get(500, TimeUnit.MILLISECONDS)) {
+                    retval.put(rowId++, Pair.of(m_networks[ii].networkThreadName, sizeClassStats));
+                }
+            } catch (TimeoutException e) {
+                m_logger.warn("Timed out retrieving buffer stats from network thread, probably harmless", e);
+            }
+        }
+
+        return retval;
+    }
 }
@@ -31,12 +31,19 @@ import org.voltcore.logging.VoltLogger;
 /** Encapsulates a socket registration for a VoltNetwork */
 public class VoltPort implements Connection
 {
-    /** The network this port participates in */
-    private final VoltNetwork m_network;
+    /** The network this port participates in, changes if the port is migrated */
+    private volatile VoltNetwork m_network;
 
     private static final VoltLogger networkLog = new VoltLogger("NETWORK");
 
-    private final NetworkDBBPool m_pool;
+    /*
+     * Each message is counted as this many bytes when measuring load
+     * to account for the fixed cost of handling a message
+     */
+    static final int MESSAGE_LOAD_WEIGHT = Integer.getInteger("NETWORK_MESSAGE_LOAD_WEIGHT", 256);
+
+    /** Pool of the network this port participates in, only touched from that network's thread */
+    private NetworkDBBPool m_pool;
 
     /** The currently selected operations on this port. */
     private int m_readyOps = 0;
@@ -74,6 +81,13 @@ public class VoltPort implements Connection
     private long m_messagesRead = 0;
     private long m_lastMessagesRead = 0;
 
+    /*
+     * Cumulative load seen at the last load sample and the load between the last two
+     * samples. Only accessed from the network thread.
+     */
+    private long m_loadAtLastSample = 0;
+    private long m_lastSampledLoad = 0;
+
     /*
      * This variable will be changed to the actual hostname some time later. It
      * is not guaranteed on how long it will take to do the reverse DNS lookup.
@@ -395,6 +409,72 @@ public class VoltPort implements Connection
         }
     }
 
+    /**
+     * Detach the port from its current network so it can be registered with the target network.
+     * Only possible when the port is idle and holds no buffers from its current network's pool.
+     * While the migration is in flight the port is marked as running so interest changes are
+     * recorded but not forwarded to either network. Must be invoked from the current network's thread.
+     * @return true if the port is now migrating to the target
+     */
+    boolean beginMigration(VoltNetwork target) {
+        if (m_writeStream == null || m_readStream == null) {
+            return false;
+        }
+        // Lock order is write stream then port lock, same as enqueue
+        synchronized (m_writeStream) {
+            synchronized (m_lock) {
+                if (m_running || m_isDead || m_isShuttingDown ||
+                        m_readStream.dataAvailable() != 0 || !m_writeStream.isEmpty()) {
+                    return false;
+                }
+                m_running = true;
+                // No data is available so this only releases empty buffers back to the current pool
+                m_readStream.shutdown();
+                m_network = target;
+                m_pool = target.m_pool;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Finish a migration started with beginMigration. Invoked from the new network's thread
+     * once the channel is registered with its selector.
+     */
+    void completeMigration(SelectionKey key) {
+        synchronized (m_lock) {
+            assert(m_running == true);
+            m_selectionKey = key;
+            m_running = false;
+        }
+    }
+
+    VoltNetwork network() {
+        return m_network;
+    }
+
+    /**
+     * Compute the load of the port since the last sample as bytes read and written
+     * plus a fixed weight for each message read and written
+     */
+    long sampleLoad() {
+        if (m_writeStream == null || m_readStream == null) {
+            return 0;
+        }
+        final long writeInfo[] = m_writeStream.getBytesAndMessagesWritten(false);
+        final long load =
+                m_readStream.getBytesRead(false) + writeInfo[0] +
+                (m_messagesRead + writeInfo[1]) * MESSAGE_LOAD_WEIGHT;
+        m_lastSampledLoad = load - m_loadAtLastSample;
+        m_loadAtLastSample = load;
+        return m_lastSampledLoad;
+    }
+
+    /** Load of the port between the two most recent samples */
+    long lastSampledLoad() {
+        return m_lastSampledLoad;
+    }
+
     @Override
     public String toString() {
         if (m_toString == null) {
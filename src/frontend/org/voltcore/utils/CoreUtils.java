@@ -85,6 +85,22 @@ public class CoreUtils {
         }
     };
 
+    /**
+     * Pins the calling thread to a core named in a core binding list. Setting affinity requires
+     * JNA which the client doesn't carry, so the default does nothing and the server installs
+     * a real implementation at startup.
+     */
+    public interface CoreBinder {
+        public void bindCurrentThread(String coreId);
+    }
+
+    public static volatile CoreBinder m_coreBinder = new CoreBinder() {
+        @Override
+        public void bindCurrentThread(String coreId) {
+
+        }
+    };
+
     public static final ExecutorService SAMETHREADEXECUTOR = new ExecutorService() {
 
         @Override
@@ -727,9 +743,7 @@ public class CoreUtils {
                     @Override
                     public void run() {
                         if (core != null) {
-                            // Remove Affinity for now to make this dependency dissapear from the client.
-                            // Goal is to remove client dependency on this class in the medium term.
-                            //PosixJNAAffinity.INSTANCE.setAffinity(core);
+                            m_coreBinder.bindCurrentThread(core);
                         }
                         try {
                             r.run();
@@ -183,6 +183,7 @@ public class CatalogContext {
                     bytes,
                     depbytes,
                     catalogVersion + incValue);
+        retval.m_ptool.retainPlansFrom(m_ptool, diffCommands);
         return retval;
     }
 
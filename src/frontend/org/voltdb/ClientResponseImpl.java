@@ -43,6 +43,10 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     private String appStatusString = null;
     private byte encodedAppStatusString[];
     private VoltTable[] results = new VoltTable[0];
+    // Column-major form of the results, sent instead of results when m_columnar is set.
+    // When received the row-major results are only built if asked for.
+    private ColumnarVoltTable[] m_columnarResults = null;
+    private boolean m_columnar = false;
     private Integer m_hash = null;
 
     private int clusterRoundTripTime = 0;
@@ -105,6 +109,7 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
 
         this.status = status;
         this.results = results;
+        this.m_columnarResults = null;
         this.statusString = statusString;
         this.setProperly = true;
     }
@@ -120,9 +125,43 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
 
     @Override
     public VoltTable[] getResults() {
+        if (results == null) {
+            final VoltTable[] converted = new VoltTable[m_columnarResults.length];
+            for (int i = 0; i < converted.length; i++) {
+                converted[i] = m_columnarResults[i].toVoltTable();
+            }
+            results = converted;
+        }
         return results;
     }
 
+    /**
+     * Get the results in column-major form, see {@link ColumnarVoltTable}.
+     * The results are sent this way when the client is configured with
+     * {@link org.voltdb.client.ClientConfig#setColumnarResults(boolean)}, otherwise
+     * they are converted on the first call. Not part of the {@link ClientResponse}
+     * interface so existing implementations of it keep compiling, cast the response
+     * to read them.
+     * @return An array of results. Will never be <code>null</code>, but may be length 0.
+     */
+    public ColumnarVoltTable[] getColumnarResults() {
+        if (m_columnarResults == null) {
+            final ColumnarVoltTable[] converted = new ColumnarVoltTable[results.length];
+            for (int i = 0; i < converted.length; i++) {
+                converted[i] = ColumnarVoltTable.fromVoltTable(results[i]);
+            }
+            m_columnarResults = converted;
+        }
+        return m_columnarResults;
+    }
+
+    /**
+     * Serialize the results column-major, for clients that asked for columnar results
+     */
+    public void setColumnarResults(boolean columnar) {
+        m_columnar = columnar;
+    }
+
     @Override
     public String getStatusString() {
         return statusString;
@@ -165,8 +204,15 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         } else {
             m_hash = null;
         }
+        m_columnar = (presentFields & (1 << 3)) != 0;
         int tableCount = buf.getShort();
-        results = new VoltTable[tableCount];
+        if (m_columnar) {
+            results = null;
+            m_columnarResults = new ColumnarVoltTable[tableCount];
+        } else {
+            results = new VoltTable[tableCount];
+            m_columnarResults = null;
+        }
         for (int i = 0; i < tableCount; i++) {
             int tableSize = buf.getInt();
             final int originalLimit = buf.limit();
@@ -174,7 +220,11 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
             final ByteBuffer slice = buf.slice();
             buf.position(buf.position() + tableSize);
             buf.limit(originalLimit);
-            results[i] = new VoltTable(slice, false);
+            if (m_columnar) {
+                m_columnarResults[i] = new ColumnarVoltTable(slice);
+            } else {
+                results[i] = new VoltTable(slice, false);
+            }
         }
         setProperly = true;
     }
@@ -199,8 +249,14 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             msgsize += 4;
         }
-        for (VoltTable vt : results) {
-            msgsize += vt.getSerializedSize();
+        if (m_columnar) {
+            for (ColumnarVoltTable ct : getColumnarResults()) {
+                msgsize += ct.getSerializedSize();
+            }
+        } else {
+            for (VoltTable vt : getResults()) {
+                msgsize += vt.getSerializedSize();
+            }
         }
 
         return msgsize;
@@ -223,6 +279,9 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             presentFields |= 1 << 4;
         }
+        if (m_columnar) {
+            presentFields |= 1 << 3;
+        }
         buf.put(presentFields);
         buf.put(status);
         if (statusString != null) {
@@ -238,10 +297,20 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             buf.putInt(m_hash.intValue());
         }
-        buf.putShort((short)results.length);
-        for (VoltTable vt : results)
-        {
-            vt.flattenToBuffer(buf);
+        if (m_columnar) {
+            final ColumnarVoltTable[] columnarResults = getColumnarResults();
+            buf.putShort((short)columnarResults.length);
+            for (ColumnarVoltTable ct : columnarResults)
+            {
+                ct.flattenToBuffer(buf);
+            }
+        } else {
+            final VoltTable[] results = getResults();
+            buf.putShort((short)results.length);
+            for (VoltTable vt : results)
+            {
+                vt.flattenToBuffer(buf);
+            }
         }
         return buf;
     }
@@ -304,7 +373,7 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
             js.value(appStatusString);
             js.key(JSON_RESULTS_KEY);
             js.array();
-            for (VoltTable o : results) {
+            for (VoltTable o : getResults()) {
                 js.value(o);
             }
             js.endArray();
@@ -324,6 +393,7 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     public int getHashOfTableResults() {
         try {
             long cheesyChecksum = 0;
+            final VoltTable[] results = getResults();
             for (int i = 0; i < results.length; ++i) {
                 cheesyChecksum += ClientUtils.cheesyBufferCheckSum(results[i].m_buffer);
             }
@@ -349,9 +419,11 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         VoltTable t = new VoltTable(new VoltTable.ColumnInfo("", VoltType.INTEGER));
         t.addRow(hash);
         results = new VoltTable[] { t };
+        m_columnarResults = null;
     }
 
     public void dropResultTable() {
         results = new VoltTable[] {};
+        m_columnarResults = null;
     }
 }
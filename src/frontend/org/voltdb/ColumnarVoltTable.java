@@ -0,0 +1,695 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltdb.types.TimestampType;
+import org.voltdb.types.VoltDecimalHelper;
+
+/**
+ * <p>Column-major encoding of a {@link VoltTable}, used for procedure results when
+ * a client asks for columnar results. Every column is stored as one contiguous block,
+ * so any value can be read with {@link #getLong(int, int)} style accessors in constant
+ * time without walking the rows before it and without boxing.</p>
+ *
+ * <p>Fixed width columns are packed arrays of values. STRING and VARBINARY columns carry
+ * an offset index into their data, or when few distinct values repeat across many rows,
+ * a dictionary of the distinct values and a code per row.</p>
+ *
+ * <p>Decoding is lazy: wrapping a buffer only locates the column blocks, values are
+ * decoded as they are read. {@link #toVoltTable()} converts back to a row-major
+ * table for code that uses the row API.</p>
+ *
+ * <p>Layout, after the same header a VoltTable starts with:</p>
+ * <pre>
+ * int rowCount
+ * per column: byte encoding, int blockLength, block
+ *   FIXED:      rowCount values of the column's fixed width
+ *   VARLEN:     null bitmap, int offsets[rowCount + 1], value bytes
+ *   DICTIONARY: int dictionarySize, int offsets[dictionarySize + 1], value bytes, int codes[rowCount]
+ * </pre>
+ */
+public class ColumnarVoltTable {
+
+    static final byte ENCODING_FIXED = 0;
+    static final byte ENCODING_VARLEN = 1;
+    static final byte ENCODING_DICTIONARY = 2;
+
+    // dictionary code of a null value
+    static final int NULL_CODE = -1;
+
+    /*
+     * Dictionary encode STRING and VARBINARY columns with at least this many rows
+     * and at most one distinct value for every DICTIONARY_RATIO rows
+     */
+    private static final int DICTIONARY_MIN_ROWS = 16;
+    private static final int DICTIONARY_RATIO = 4;
+
+    // Table bytes without the length prefix, all positions are absolute
+    private final ByteBuffer m_buffer;
+    private final int m_headerLength;
+    private final int m_colCount;
+    private final int m_rowCount;
+
+    private final VoltType m_types[];
+    private final byte m_encodings[];
+    // FIXED: start of the values. VARLEN: start of the null bitmap. DICTIONARY: start of the offsets.
+    private final int m_blockStarts[];
+    // VARLEN and DICTIONARY: start of the offsets and of the value bytes
+    private final int m_offsetStarts[];
+    private final int m_dataStarts[];
+    // DICTIONARY only
+    private final int m_dictionarySizes[];
+    private final int m_codeStarts[];
+
+    // decoded on first use
+    private String m_columnNames[];
+    private final String m_dictionaryStrings[][];
+
+    /**
+     * Wrap a columnar table, not including the length prefix written by
+     * {@link #flattenToBuffer(ByteBuffer)}. Only the column blocks are located here.
+     */
+    public ColumnarVoltTable(ByteBuffer buffer) {
+        m_buffer = buffer;
+        m_headerLength = m_buffer.getInt(0) + 4;
+        m_colCount = m_buffer.getShort(5);
+        m_rowCount = m_buffer.getInt(m_headerLength);
+
+        m_types = new VoltType[m_colCount];
+        m_encodings = new byte[m_colCount];
+        m_blockStarts = new int[m_colCount];
+        m_offsetStarts = new int[m_colCount];
+        m_dataStarts = new int[m_colCount];
+        m_dictionarySizes = new int[m_colCount];
+        m_codeStarts = new int[m_colCount];
+        m_dictionaryStrings = new String[m_colCount][];
+
+        int pos = m_headerLength + 4;
+        for (int col = 0; col < m_colCount; col++) {
+            m_types[col] = VoltType.get(m_buffer.get(7 + col));
+            final byte encoding = m_buffer.get(pos);
+            final int blockLength = m_buffer.getInt(pos + 1);
+            final int start = pos + 5;
+            m_encodings[col] = encoding;
+            m_blockStarts[col] = start;
+            switch (encoding) {
+            case ENCODING_FIXED:
+                break;
+            case ENCODING_VARLEN:
+                m_offsetStarts[col] = start + bitmapLength(m_rowCount);
+                m_dataStarts[col] = m_offsetStarts[col] + 4 * (m_rowCount + 1);
+                break;
+            case ENCODING_DICTIONARY:
+                m_dictionarySizes[col] = m_buffer.getInt(start);
+                m_offsetStarts[col] = start + 4;
+                m_dataStarts[col] = m_offsetStarts[col] + 4 * (m_dictionarySizes[col] + 1);
+                m_codeStarts[col] = m_dataStarts[col] + m_buffer.getInt(m_offsetStarts[col] + 4 * m_dictionarySizes[col]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown column encoding " + encoding + " for column " + col);
+            }
+            pos = start + blockLength;
+        }
+        if (pos != m_buffer.limit()) {
+            throw new IllegalArgumentException("Columnar table is " + m_buffer.limit() +
+                    " bytes but its columns end at " + pos);
+        }
+    }
+
+    /**
+     * Encode a row-major table. The table's row position is not changed.
+     */
+    public static ColumnarVoltTable fromVoltTable(VoltTable table) {
+        final ByteBuffer src = table.m_buffer.duplicate();
+        final int headerLength = table.m_rowStart;
+        final int colCount = table.getColumnCount();
+        final int rowCount = table.getRowCount();
+        final VoltType types[] = new VoltType[colCount];
+        for (int col = 0; col < colCount; col++) {
+            types[col] = table.getColumnType(col);
+        }
+
+        // Find every value once, row by row
+        final int positions[][] = new int[colCount][rowCount];
+        int rowPos = headerLength + 4;
+        for (int row = 0; row < rowCount; row++) {
+            int pos = rowPos + 4;
+            for (int col = 0; col < colCount; col++) {
+                positions[col][row] = pos;
+                if (isVariableLength(types[col])) {
+                    pos += 4 + Math.max(0, src.getInt(pos));
+                } else {
+                    pos += types[col].getLengthInBytesForFixedTypes();
+                }
+            }
+            rowPos += 4 + src.getInt(rowPos);
+        }
+
+        final ColumnEncoder encoders[] = new ColumnEncoder[colCount];
+        int size = headerLength + 4;
+        for (int col = 0; col < colCount; col++) {
+            encoders[col] = new ColumnEncoder(src, types[col], positions[col]);
+            size += 5 + encoders[col].m_blockLength;
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate(size);
+        final ByteBuffer header = src.duplicate();
+        header.limit(headerLength).position(0);
+        buf.put(header);
+        buf.putInt(rowCount);
+        for (ColumnEncoder encoder : encoders) {
+            encoder.write(buf);
+        }
+        assert(!buf.hasRemaining());
+        buf.flip();
+        return new ColumnarVoltTable(buf);
+    }
+
+    /*
+     * Chooses the encoding of a single column and writes its block
+     */
+    private static final class ColumnEncoder {
+        private final ByteBuffer m_src;
+        private final VoltType m_type;
+        private final int m_positions[];
+        private final byte m_encoding;
+        private final int m_blockLength;
+
+        // DICTIONARY
+        private ByteBuffer m_dictionary[];
+        private int m_codes[];
+
+        private ColumnEncoder(ByteBuffer src, VoltType type, int positions[]) {
+            m_src = src;
+            m_type = type;
+            m_positions = positions;
+            final int rowCount = positions.length;
+            if (!isVariableLength(type)) {
+                m_encoding = ENCODING_FIXED;
+                m_blockLength = rowCount * type.getLengthInBytesForFixedTypes();
+            } else if (buildDictionary()) {
+                m_encoding = ENCODING_DICTIONARY;
+                int dataLength = 0;
+                for (ByteBuffer value : m_dictionary) {
+                    dataLength += value.remaining();
+                }
+                m_blockLength = 4 + 4 * (m_dictionary.length + 1) + dataLength + 4 * rowCount;
+            } else {
+                m_encoding = ENCODING_VARLEN;
+                int dataLength = 0;
+                for (int pos : positions) {
+                    dataLength += Math.max(0, src.getInt(pos));
+                }
+                m_blockLength = bitmapLength(rowCount) + 4 * (rowCount + 1) + dataLength;
+            }
+        }
+
+        private ByteBuffer value(int row) {
+            final int pos = m_positions[row];
+            final int length = m_src.getInt(pos);
+            if (length == VoltTable.NULL_STRING_INDICATOR) {
+                return null;
+            }
+            final ByteBuffer value = m_src.duplicate();
+            value.limit(pos + 4 + length).position(pos + 4);
+            return value;
+        }
+
+        private boolean buildDictionary() {
+            final int rowCount = m_positions.length;
+            if (rowCount < DICTIONARY_MIN_ROWS) {
+                return false;
+            }
+            final int maxSize = rowCount / DICTIONARY_RATIO;
+            final HashMap<ByteBuffer, Integer> codes = new HashMap<ByteBuffer, Integer>();
+            m_codes = new int[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                final ByteBuffer value = value(row);
+                if (value == null) {
+                    m_codes[row] = NULL_CODE;
+                    continue;
+                }
+                Integer code = codes.get(value);
+                if (code == null) {
+                    if (codes.size() == maxSize) {
+                        m_codes = null;
+                        return false;
+                    }
+                    code = codes.size();
+                    codes.put(value, code);
+                }
+                m_codes[row] = code;
+            }
+            m_dictionary = new ByteBuffer[codes.size()];
+            for (Map.Entry<ByteBuffer, Integer> e : codes.entrySet()) {
+                m_dictionary[e.getValue()] = e.getKey();
+            }
+            return true;
+        }
+
+        private void write(ByteBuffer buf) {
+            buf.put(m_encoding);
+            buf.putInt(m_blockLength);
+            final int rowCount = m_positions.length;
+            switch (m_encoding) {
+            case ENCODING_FIXED: {
+                final int width = m_type.getLengthInBytesForFixedTypes();
+                final ByteBuffer value = m_src.duplicate();
+                for (int row = 0; row < rowCount; row++) {
+                    value.limit(m_positions[row] + width).position(m_positions[row]);
+                    buf.put(value);
+                }
+                break;
+            }
+            case ENCODING_VARLEN: {
+                final byte bitmap[] = new byte[bitmapLength(rowCount)];
+                for (int row = 0; row < rowCount; row++) {
+                    if (m_src.getInt(m_positions[row]) == VoltTable.NULL_STRING_INDICATOR) {
+                        bitmap[row >>> 3] |= 1 << (row & 7);
+                    }
+                }
+                buf.put(bitmap);
+                int offset = 0;
+                for (int row = 0; row < rowCount; row++) {
+                    buf.putInt(offset);
+                    offset += Math.max(0, m_src.getInt(m_positions[row]));
+                }
+                buf.putInt(offset);
+                for (int row = 0; row < rowCount; row++) {
+                    final ByteBuffer value = value(row);
+                    if (value != null) {
+                        buf.put(value);
+                    }
+                }
+                break;
+            }
+            case ENCODING_DICTIONARY: {
+                buf.putInt(m_dictionary.length);
+                int offset = 0;
+                for (ByteBuffer value : m_dictionary) {
+                    buf.putInt(offset);
+                    offset += value.remaining();
+                }
+                buf.putInt(offset);
+                for (ByteBuffer value : m_dictionary) {
+                    buf.put(value.duplicate());
+                }
+                for (int code : m_codes) {
+                    buf.putInt(code);
+                }
+                break;
+            }
+            }
+        }
+    }
+
+    private static boolean isVariableLength(VoltType type) {
+        return type == VoltType.STRING || type == VoltType.VARBINARY;
+    }
+
+    private static int bitmapLength(int rowCount) {
+        return (rowCount + 7) >>> 3;
+    }
+
+    public int getRowCount() {
+        return m_rowCount;
+    }
+
+    public int getColumnCount() {
+        return m_colCount;
+    }
+
+    public VoltType getColumnType(int col) {
+        return m_types[col];
+    }
+
+    public byte getStatusCode() {
+        return m_buffer.get(4);
+    }
+
+    public String getColumnName(int col) {
+        if (m_columnNames == null) {
+            final String names[] = new String[m_colCount];
+            int pos = 4 + 1 + 2 + m_colCount;
+            for (int ii = 0; ii < m_colCount; ii++) {
+                final int length = m_buffer.getInt(pos);
+                names[ii] = decode(pos + 4, length, VoltTable.METADATA_ENCODING);
+                pos += 4 + length;
+            }
+            m_columnNames = names;
+        }
+        return m_columnNames[col];
+    }
+
+    /**
+     * @return index of the column with the given name, case insensitive
+     * @throws IllegalArgumentException if there is no such column
+     */
+    public int getColumnIndex(String name) {
+        for (int col = 0; col < m_colCount; col++) {
+            if (getColumnName(col).equalsIgnoreCase(name)) {
+                return col;
+            }
+        }
+        throw new IllegalArgumentException("No Column named " + name);
+    }
+
+    private String decode(int pos, int length, Charset charset) {
+        final byte bytes[] = new byte[length];
+        final ByteBuffer dup = m_buffer.duplicate();
+        dup.position(pos);
+        dup.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    private int fixedPosition(int col, int row) {
+        checkRow(row);
+        return m_blockStarts[col] + row * m_types[col].getLengthInBytesForFixedTypes();
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= m_rowCount) {
+            throw new IndexOutOfBoundsException("Row index " + row + " is not between 0 and " + m_rowCount);
+        }
+    }
+
+    private void validateColumnType(int col, VoltType type) {
+        if (m_types[col] != type) {
+            throw new IllegalArgumentException("Column " + col + " is of type " + m_types[col] +
+                    " and not " + type);
+        }
+    }
+
+    /**
+     * @return whether the value is SQL null
+     */
+    public boolean isNull(int col, int row) {
+        switch (m_encodings[col]) {
+        case ENCODING_VARLEN:
+            checkRow(row);
+            return (m_buffer.get(m_blockStarts[col] + (row >>> 3)) & (1 << (row & 7))) != 0;
+        case ENCODING_DICTIONARY:
+            return getDictionaryCode(col, row) == NULL_CODE;
+        default:
+            final int pos = fixedPosition(col, row);
+            switch (m_types[col]) {
+            case TINYINT:
+                return m_buffer.get(pos) == VoltType.NULL_TINYINT;
+            case SMALLINT:
+                return m_buffer.getShort(pos) == VoltType.NULL_SMALLINT;
+            case INTEGER:
+                return m_buffer.getInt(pos) == VoltType.NULL_INTEGER;
+            case BIGINT:
+                return m_buffer.getLong(pos) == VoltType.NULL_BIGINT;
+            case FLOAT:
+                return m_buffer.getDouble(pos) <= VoltType.NULL_FLOAT;
+            case TIMESTAMP:
+                return m_buffer.getLong(pos) == Long.MIN_VALUE;
+            case DECIMAL:
+                return m_buffer.getLong(pos) == Long.MIN_VALUE && m_buffer.getLong(pos + 8) == 0;
+            default:
+                throw new IllegalArgumentException("Unsupported column type " + m_types[col]);
+            }
+        }
+    }
+
+    /**
+     * Value of a TINYINT, SMALLINT, INTEGER or BIGINT column. Nulls come back as the
+     * null value of the column's type, use {@link #isNull(int, int)} to tell them apart.
+     */
+    public long getLong(int col, int row) {
+        final int pos = fixedPosition(col, row);
+        switch (m_types[col]) {
+        case TINYINT:
+            return m_buffer.get(pos);
+        case SMALLINT:
+            return m_buffer.getShort(pos);
+        case INTEGER:
+            return m_buffer.getInt(pos);
+        case BIGINT:
+            return m_buffer.getLong(pos);
+        default:
+            throw new IllegalArgumentException("getLong() called on non-integral column.");
+        }
+    }
+
+    public double getDouble(int col, int row) {
+        validateColumnType(col, VoltType.FLOAT);
+        return m_buffer.getDouble(fixedPosition(col, row));
+    }
+
+    public long getTimestampAsLong(int col, int row) {
+        validateColumnType(col, VoltType.TIMESTAMP);
+        return m_buffer.getLong(fixedPosition(col, row));
+    }
+
+    /**
+     * @return the timestamp or null if the value is null
+     */
+    public TimestampType getTimestampAsTimestamp(int col, int row) {
+        final long value = getTimestampAsLong(col, row);
+        return value == Long.MIN_VALUE ? null : new TimestampType(value);
+    }
+
+    /**
+     * @return the decimal or null if the value is null
+     */
+    public BigDecimal getDecimalAsBigDecimal(int col, int row) {
+        validateColumnType(col, VoltType.DECIMAL);
+        final ByteBuffer dup = m_buffer.duplicate();
+        dup.position(fixedPosition(col, row));
+        return VoltDecimalHelper.deserializeBigDecimal(dup);
+    }
+
+    /**
+     * @return the string or null if the value is null. Values of a dictionary encoded
+     * column are decoded once and shared between the rows holding them.
+     */
+    public String getString(int col, int row) {
+        validateColumnType(col, VoltType.STRING);
+        if (m_encodings[col] == ENCODING_DICTIONARY) {
+            final int code = getDictionaryCode(col, row);
+            if (code == NULL_CODE) {
+                return null;
+            }
+            String dictionary[] = m_dictionaryStrings[col];
+            if (dictionary == null) {
+                dictionary = m_dictionaryStrings[col] = new String[m_dictionarySizes[col]];
+            }
+            String value = dictionary[code];
+            if (value == null) {
+                value = dictionary[code] = decode(valueStart(col, code), valueLength(col, code), VoltTable.ROWDATA_ENCODING);
+            }
+            return value;
+        }
+        if (isNull(col, row)) {
+            return null;
+        }
+        return decode(valueStart(col, row), valueLength(col, row), VoltTable.ROWDATA_ENCODING);
+    }
+
+    /**
+     * @return the UTF-8 bytes of the string or null if the value is null
+     */
+    public byte[] getStringAsBytes(int col, int row) {
+        validateColumnType(col, VoltType.STRING);
+        return getBytes(col, row);
+    }
+
+    /**
+     * @return a copy of the value or null if the value is null
+     */
+    public byte[] getVarbinary(int col, int row) {
+        validateColumnType(col, VoltType.VARBINARY);
+        return getBytes(col, row);
+    }
+
+    private byte[] getBytes(int col, int row) {
+        int index = row;
+        if (m_encodings[col] == ENCODING_DICTIONARY) {
+            index = getDictionaryCode(col, row);
+            if (index == NULL_CODE) {
+                return null;
+            }
+        } else if (isNull(col, row)) {
+            return null;
+        }
+        final byte bytes[] = new byte[valueLength(col, index)];
+        final ByteBuffer dup = m_buffer.duplicate();
+        dup.position(valueStart(col, index));
+        dup.get(bytes);
+        return bytes;
+    }
+
+    // index is the row for VARLEN and the dictionary code for DICTIONARY
+    private int valueStart(int col, int index) {
+        return m_dataStarts[col] + m_buffer.getInt(m_offsetStarts[col] + 4 * index);
+    }
+
+    private int valueLength(int col, int index) {
+        final int offsetPos = m_offsetStarts[col] + 4 * index;
+        return m_buffer.getInt(offsetPos + 4) - m_buffer.getInt(offsetPos);
+    }
+
+    /**
+     * @return the value boxed as the row API's {@link VoltTableRow#get(int, VoltType)} would,
+     * or null if the value is null
+     */
+    public Object get(int col, int row) {
+        if (isNull(col, row)) {
+            return null;
+        }
+        switch (m_types[col]) {
+        case TINYINT:
+            return (byte)getLong(col, row);
+        case SMALLINT:
+            return (short)getLong(col, row);
+        case INTEGER:
+            return (int)getLong(col, row);
+        case BIGINT:
+            return getLong(col, row);
+        case FLOAT:
+            return getDouble(col, row);
+        case STRING:
+            return getString(col, row);
+        case VARBINARY:
+            return getVarbinary(col, row);
+        case TIMESTAMP:
+            return getTimestampAsTimestamp(col, row);
+        case DECIMAL:
+            return getDecimalAsBigDecimal(col, row);
+        default:
+            throw new IllegalArgumentException("Unsupported column type " + m_types[col]);
+        }
+    }
+
+    public boolean isDictionaryEncoded(int col) {
+        return m_encodings[col] == ENCODING_DICTIONARY;
+    }
+
+    /**
+     * @return number of distinct non-null values of a dictionary encoded column
+     */
+    public int getDictionarySize(int col) {
+        if (m_encodings[col] != ENCODING_DICTIONARY) {
+            throw new IllegalArgumentException("Column " + col + " is not dictionary encoded");
+        }
+        return m_dictionarySizes[col];
+    }
+
+    /**
+     * @return dictionary code of the value in a dictionary encoded column, {@link #NULL_CODE}
+     * for null. Rows with equal values have equal codes.
+     */
+    public int getDictionaryCode(int col, int row) {
+        if (m_encodings[col] != ENCODING_DICTIONARY) {
+            throw new IllegalArgumentException("Column " + col + " is not dictionary encoded");
+        }
+        checkRow(row);
+        return m_buffer.getInt(m_codeStarts[col] + 4 * row);
+    }
+
+    /**
+     * Convert back to a row-major table with the same schema, status code and rows
+     */
+    public VoltTable toVoltTable() {
+        int size = m_headerLength + 4;
+        int fixedRowLength = 0;
+        for (int col = 0; col < m_colCount; col++) {
+            if (isVariableLength(m_types[col])) {
+                fixedRowLength += 4;
+                if (m_encodings[col] == ENCODING_VARLEN) {
+                    size += m_buffer.getInt(m_offsetStarts[col] + 4 * m_rowCount);
+                } else {
+                    for (int row = 0; row < m_rowCount; row++) {
+                        final int code = getDictionaryCode(col, row);
+                        if (code != NULL_CODE) {
+                            size += valueLength(col, code);
+                        }
+                    }
+                }
+            } else {
+                fixedRowLength += m_types[col].getLengthInBytesForFixedTypes();
+            }
+        }
+        size += m_rowCount * (4 + fixedRowLength);
+
+        final ByteBuffer buf = ByteBuffer.allocate(size);
+        final ByteBuffer src = m_buffer.duplicate();
+        src.limit(m_headerLength).position(0);
+        buf.put(src);
+        buf.putInt(m_rowCount);
+        src.limit(src.capacity());
+        for (int row = 0; row < m_rowCount; row++) {
+            final int rowLengthPos = buf.position();
+            buf.putInt(0);
+            for (int col = 0; col < m_colCount; col++) {
+                final VoltType type = m_types[col];
+                if (!isVariableLength(type)) {
+                    final int pos = fixedPosition(col, row);
+                    src.limit(pos + type.getLengthInBytesForFixedTypes()).position(pos);
+                    buf.put(src);
+                    continue;
+                }
+                int index = row;
+                if (m_encodings[col] == ENCODING_DICTIONARY) {
+                    index = getDictionaryCode(col, row);
+                    if (index == NULL_CODE) {
+                        buf.putInt(VoltTable.NULL_STRING_INDICATOR);
+                        continue;
+                    }
+                } else if (isNull(col, row)) {
+                    buf.putInt(VoltTable.NULL_STRING_INDICATOR);
+                    continue;
+                }
+                final int start = valueStart(col, index);
+                final int length = valueLength(col, index);
+                buf.putInt(length);
+                src.limit(start + length).position(start);
+                buf.put(src);
+            }
+            buf.putInt(rowLengthPos, buf.position() - rowLengthPos - 4);
+        }
+        assert(!buf.hasRemaining());
+        buf.flip();
+        return PrivateVoltTableFactory.createVoltTableFromBuffer(buf, false);
+    }
+
+    /**
+     * @return size of the serialized table including its length prefix
+     */
+    public int getSerializedSize() {
+        return m_buffer.limit() + 4;
+    }
+
+    /**
+     * Write the length prefixed table to buf
+     */
+    public void flattenToBuffer(ByteBuffer buf) {
+        final ByteBuffer dup = m_buffer.duplicate();
+        dup.position(0);
+        buf.putInt(dup.limit());
+        buf.put(dup);
+    }
+}
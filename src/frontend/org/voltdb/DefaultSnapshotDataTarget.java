@@ -20,9 +20,12 @@ package org.voltdb;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -32,6 +35,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -45,10 +49,13 @@ import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.sysprocs.saverestore.SnapshotChunkIndex;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.DirectIOFile;
 import org.voltdb.utils.PosixAdvise;
 
+import com.google_voltpatches.common.util.concurrent.AsyncFunction;
 import com.google_voltpatches.common.util.concurrent.Callables;
 import com.google_voltpatches.common.util.concurrent.Futures;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
@@ -67,8 +74,13 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     public static volatile boolean m_simulateFullDiskWritingChunk = false;
 
     private final File m_file;
+    /*
+     * The file is either written through the page cache with the channel, which is synced
+     * and fadvised in the background, or with direct IO that bypasses the page cache
+     */
     private final FileChannel m_channel;
     private final FileOutputStream m_fos;
+    private final DirectIOFile m_directFile;
     private static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
     private Runnable m_onCloseHandler = null;
 
@@ -96,9 +108,27 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     private boolean m_needsFinalClose = true;
 
-    @SuppressWarnings("unused")
     private final String m_tableName;
 
+    /*
+     * Index of the chunks written to this file, null if no index is kept. If there is a base
+     * index chunks that didn't change since the base snapshot are written as references
+     * to the copy the base already has.
+     */
+    private final SnapshotChunkIndex m_chunkIndex;
+    private final SnapshotChunkIndex m_baseChunkIndex;
+    private final Map<Integer, Integer> m_chunkSequences = new HashMap<Integer, Integer>();
+    private final AtomicLong m_chunksWritten = new AtomicLong();
+    private final AtomicLong m_chunksReferenced = new AtomicLong();
+
+    /**
+     * Chunk length value that marks a reference to a chunk stored in another file.
+     * A reference has the usual partition id and header CRC, then the CRC of the
+     * source index and offset that follow it
+     */
+    public static final int REFERENCE_CHUNK_LENGTH = -1;
+    public static final int REFERENCE_CHUNK_SIZE = 28;
+
     private final AtomicInteger m_outstandingWriteTasks = new AtomicInteger(0);
     private final ReentrantLock m_outstandingWriteTasksLock = new ReentrantLock();
     private final Condition m_noMoreOutstandingWriteTasksCondition =
@@ -110,6 +140,8 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     public static final int SNAPSHOT_SYNC_FREQUENCY = Integer.getInteger("SNAPSHOT_SYNC_FREQUENCY", 500);
     public static final int SNAPSHOT_FADVISE_BYTES = Integer.getInteger("SNAPSHOT_FADVISE_BYTES", 1024 * 1024 * 2);
+    public static final boolean SNAPSHOT_DIRECT_IO = Boolean.valueOf(System.getProperty("SNAPSHOT_DIRECT_IO", "false"));
+    private static volatile boolean m_loggedDirectIOFallback = false;
     public static final int SNAPSHOT_RATELIMIT_MEGABYTES;
     public static final boolean USE_SNAPSHOT_RATELIMIT;
 
@@ -162,7 +194,45 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 schemaTable,
                 txnId,
                 timestamp,
-                new int[] { 0, 0, 0, 2 });
+                new int[] { 0, 0, 0, 2 },
+                false,
+                null);
+    }
+
+    /**
+     * @param keepChunkIndex Write a chunk index next to the file so the next snapshot can be incremental to this one
+     * @param baseChunkIndex Index of the previous snapshot of the table, chunks that didn't change are written
+     * as references to it. Null for a full snapshot.
+     */
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final boolean isReplicated,
+            final List<Integer> partitionIds,
+            final VoltTable schemaTable,
+            final long txnId,
+            final long timestamp,
+            final boolean keepChunkIndex,
+            final SnapshotChunkIndex baseChunkIndex) throws IOException {
+        this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                isReplicated,
+                partitionIds,
+                schemaTable,
+                txnId,
+                timestamp,
+                new int[] { 0, 0, 0, 2 },
+                keepChunkIndex,
+                baseChunkIndex);
     }
 
     public DefaultSnapshotDataTarget(
@@ -177,13 +247,24 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             final VoltTable schemaTable,
             final long txnId,
             final long timestamp,
-            int version[]
+            int version[],
+            final boolean keepChunkIndex,
+            final SnapshotChunkIndex baseChunkIndex
             ) throws IOException {
         String hostname = CoreUtils.getHostnameOrAddress();
         m_file = file;
         m_tableName = tableName;
-        m_fos = new FileOutputStream(file);
-        m_channel = m_fos.getChannel();
+        m_baseChunkIndex = baseChunkIndex;
+        m_chunkIndex = (keepChunkIndex || baseChunkIndex != null) ?
+                SnapshotChunkIndex.create(file, baseChunkIndex) : null;
+        m_directFile = openDirectFile(file);
+        if (m_directFile == null) {
+            m_fos = new FileOutputStream(file);
+            m_channel = m_fos.getChannel();
+        } else {
+            m_fos = null;
+            m_channel = null;
+        }
         m_needsFinalClose = !isReplicated;
         final FastSerializer fs = new FastSerializer();
         fs.writeInt(0);//CRC
@@ -220,6 +301,16 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
                 stringer.key("numPartitions").value(numPartitions);
             }
+            if (m_baseChunkIndex != null) {
+                /*
+                 * Files holding the chunks this file references, the first one is this file
+                 */
+                stringer.key("chunkSources").array();
+                for (String source : m_chunkIndex.getSources()) {
+                    stringer.value(source);
+                }
+                stringer.endArray();
+            }
             stringer.endObject();
             String jsonString = stringer.toString();
             JSONObject jsonObj = new JSONObject(jsonString);
@@ -253,7 +344,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         if (m_simulateFullDiskWritingHeader) {
             m_writeException = new IOException("Disk full");
             m_writeFailed = true;
-            m_fos.close();
+            closeOutput();
             throw m_writeException;
         }
 
@@ -267,17 +358,23 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         try {
             writeFuture.get();
         } catch (InterruptedException e) {
-            m_fos.close();
+            closeOutput();
             throw new java.io.InterruptedIOException();
         } catch (ExecutionException e) {
-            m_fos.close();
+            closeOutput();
             throw m_writeException;
         }
         if (m_writeFailed) {
-            m_fos.close();
+            closeOutput();
             throw m_writeException;
         }
 
+        if (m_directFile != null) {
+            //Nothing in the page cache to sync or drop
+            m_syncTask = null;
+            return;
+        }
+
         ScheduledFuture<?> syncTask = null;
         syncTask = m_syncService.scheduleAtFixedRate(new Runnable() {
             private long fadvisedBytes = 0;
@@ -334,6 +431,65 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         m_syncTask = syncTask;
     }
 
+    /*
+     * Open the file for direct IO if it is enabled, null to write through the page cache
+     */
+    private static DirectIOFile openDirectFile(File file) {
+        if (!SNAPSHOT_DIRECT_IO) {
+            return null;
+        }
+        if (!DirectIOFile.isSupported()) {
+            if (!m_loggedDirectIOFallback) {
+                m_loggedDirectIOFallback = true;
+                SNAP_LOG.warn("Direct IO for snapshots is not supported on this platform, using buffered IO");
+            }
+            return null;
+        }
+        try {
+            return new DirectIOFile(file);
+        } catch (IOException e) {
+            //Some file systems such as tmpfs don't support O_DIRECT
+            if (!m_loggedDirectIOFallback) {
+                m_loggedDirectIOFallback = true;
+                SNAP_LOG.warn("Unable to use direct IO for snapshot file " + file + ", using buffered IO", e);
+            }
+            return null;
+        }
+    }
+
+    private void closeOutput() throws IOException {
+        if (m_directFile != null) {
+            m_directFile.close();
+        } else {
+            m_fos.close();
+        }
+    }
+
+    private long filePosition() throws IOException {
+        return m_directFile != null ? m_directFile.position() : m_channel.position();
+    }
+
+    private int writeToFile(ByteBuffer buf) throws IOException {
+        if (m_directFile != null) {
+            return m_directFile.write(buf);
+        }
+        int written = 0;
+        while (buf.hasRemaining()) {
+            written += m_channel.write(buf);
+        }
+        return written;
+    }
+
+    /*
+     * Writes through the page cache are bounded by how much data isn't synced yet,
+     * direct IO bounds its own memory
+     */
+    private void acquireBytesBeforeSync(int bytes) throws InterruptedException {
+        if (m_directFile == null) {
+            m_bytesAllowedBeforeSync.acquire(bytes);
+        }
+    }
+
     @Override
     public boolean needsFinalClose()
     {
@@ -351,33 +507,68 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             } finally {
                 m_outstandingWriteTasksLock.unlock();
             }
-            m_syncTask.cancel(false);
-            ListenableFuture<?> task = m_syncService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    // Empty task to wait on 'cancel' above, since m_syncTask.get()
-                    // will immediately throw a CancellationException
+            if (m_syncTask != null) {
+                m_syncTask.cancel(false);
+                ListenableFuture<?> task = m_syncService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Empty task to wait on 'cancel' above, since m_syncTask.get()
+                        // will immediately throw a CancellationException
+                    }
+                });
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    SNAP_LOG.error("Error waiting on snapshot sync task cancellation", e);
                 }
-            });
-            try {
-                task.get();
-            } catch (ExecutionException e) {
-                SNAP_LOG.error("Error waiting on snapshot sync task cancellation", e);
             }
-            m_channel.force(false);
+            if (m_directFile != null) {
+                try {
+                    m_directFile.close();
+                } catch (IOException e) {
+                    SNAP_LOG.error("Error while attempting to write snapshot data to file " + m_file, e);
+                    m_writeException = e;
+                    m_writeFailed = true;
+                }
+            } else {
+                m_channel.force(false);
+            }
         } finally {
             m_bytesAllowedBeforeSync.release(m_bytesWrittenSinceLastSync.getAndSet(0));
         }
-        m_channel.position(8);
         ByteBuffer completed = ByteBuffer.allocate(1);
         if (m_writeFailed) {
             completed.put((byte)0).flip();
         } else {
             completed.put((byte)1).flip();
         }
-        m_channel.write(completed);
-        m_channel.force(false);
-        m_channel.close();
+        if (m_directFile != null) {
+            //The completed flag is a single byte, direct IO can only write whole blocks
+            final RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+            try {
+                raf.getChannel().write(completed, 8);
+                raf.getChannel().force(false);
+            } finally {
+                raf.close();
+            }
+        } else {
+            m_channel.position(8);
+            m_channel.write(completed);
+            m_channel.force(false);
+            m_channel.close();
+        }
+        if (m_chunkIndex != null && !m_writeFailed) {
+            try {
+                m_chunkIndex.write(SnapshotChunkIndex.indexFileFor(m_file));
+            } catch (IOException e) {
+                //The snapshot is fine, the next one just can't be incremental to it
+                SNAP_LOG.warn("Unable to write the chunk index for " + m_file, e);
+            }
+            if (m_baseChunkIndex != null) {
+                SNAP_LOG.info("Incremental snapshot of table " + m_tableName + " wrote " + m_chunksWritten.get() +
+                        " chunks and referenced " + m_chunksReferenced.get() + " unchanged chunks");
+            }
+        }
         if (m_onCloseHandler != null) {
             m_onCloseHandler.run();
         }
@@ -422,8 +613,10 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         m_outstandingWriteTasks.incrementAndGet();
 
         Future<BBContainer> compressionTask = null;
+        Future<byte[]> digestTask = null;
+        int chunkSequence = 0;
         if (prependLength) {
-            BBContainer cont =
+            final BBContainer cont =
                     DBBPool.allocateDirectAndPool(SnapshotSiteProcessor.m_snapshotBufferCompressedLen);
             //Skip 4-bytes so the partition ID is not compressed
             //That way if we detect a corruption we know what partition is bad
@@ -434,9 +627,40 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
              * that is 16 bytes, but 4 of those are done by CompressionService
              */
             cont.b().position(12);
-            compressionTask = CompressionService.compressAndCRC32cBufferAsync(tupleData, cont);
+            if (m_chunkIndex == null) {
+                compressionTask = CompressionService.compressAndCRC32cBufferAsync(tupleData, cont);
+            } else {
+                /*
+                 * Digest the chunk first and only compress it if it changed since the base snapshot
+                 */
+                final int partitionId = tupleData.getInt(0);
+                chunkSequence = nextChunkSequence(partitionId);
+                final int sequence = chunkSequence;
+                final ByteBuffer uncompressed = tupleData;
+                final ListenableFuture<byte[]> digest =
+                        CompressionService.submitCompressionTask(new Callable<byte[]>() {
+                            @Override
+                            public byte[] call() throws Exception {
+                                return SnapshotChunkIndex.digest(uncompressed);
+                            }
+                        });
+                digestTask = digest;
+                compressionTask = Futures.transform(digest, new AsyncFunction<byte[], BBContainer>() {
+                    @Override
+                    public ListenableFuture<BBContainer> apply(byte[] digestBytes) {
+                        if (m_baseChunkIndex != null &&
+                                m_baseChunkIndex.getUnchanged(partitionId, sequence, digestBytes) != null) {
+                            cont.discard();
+                            return Futures.immediateFuture(null);
+                        }
+                        return CompressionService.compressAndCRC32cBufferAsync(uncompressed, cont);
+                    }
+                });
+            }
         }
         final Future<BBContainer> compressionTaskFinal = compressionTask;
+        final Future<byte[]> digestTaskFinal = digestTask;
+        final int chunkSequenceFinal = chunkSequence;
 
         ListenableFuture<?> writeTask = m_es.submit(new Callable<Object>() {
             @Override
@@ -450,21 +674,26 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                         }
                         if (m_simulateFullDiskWritingChunk) {
                             //Make sure to consume the result of the compression
-                            compressionTaskFinal.get().discard();
+                            final BBContainer payload = compressionTaskFinal.get();
+                            if (payload != null) payload.discard();
                             throw new IOException("Disk full");
                         }
                     }
 
                     final ByteBuffer tupleData = tupleDataCont.b();
                     int totalWritten = 0;
-                    if (prependLength) {
+                    if (prependLength && compressionTaskFinal.get() == null) {
+                        totalWritten += writeChunkReference(tupleData.getInt(0), chunkSequenceFinal,
+                                digestTaskFinal.get());
+                    } else if (prependLength) {
                         BBContainer payloadContainer = compressionTaskFinal.get();
+                        final long chunkOffset = filePosition();
                         try {
                             final ByteBuffer payloadBuffer = payloadContainer.b();
                             payloadBuffer.position(0);
 
                             ByteBuffer lengthPrefix = ByteBuffer.allocate(12);
-                            m_bytesAllowedBeforeSync.acquire(payloadBuffer.remaining());
+                            acquireBytesBeforeSync(payloadBuffer.remaining());
                             //Length prefix does not include 4 header items, just compressd payload
                             //that follows
                             lengthPrefix.putInt(payloadBuffer.remaining() - 16);//length prefix
@@ -485,19 +714,22 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                             /*
                              * Write payload to file
                              */
-                            while (payloadBuffer.hasRemaining()) {
-                                totalWritten += m_channel.write(payloadBuffer);
+                            totalWritten += writeToFile(payloadBuffer);
+                            if (m_chunkIndex != null) {
+                                m_chunkIndex.putStored(tupleData.getInt(0), chunkSequenceFinal,
+                                        digestTaskFinal.get(), chunkOffset);
                             }
+                            m_chunksWritten.incrementAndGet();
                         } finally {
                             payloadContainer.discard();
                         }
                     } else {
-                        while (tupleData.hasRemaining()) {
-                            totalWritten += m_channel.write(tupleData);
-                        }
+                        totalWritten += writeToFile(tupleData);
                     }
                     m_bytesWritten += totalWritten;
-                    m_bytesWrittenSinceLastSync.addAndGet(totalWritten);
+                    if (m_directFile == null) {
+                        m_bytesWrittenSinceLastSync.addAndGet(totalWritten);
+                    }
                 } catch (IOException e) {
                     m_writeException = e;
                     SNAP_LOG.error("Error while attempting to write snapshot data to file " + m_file, e);
@@ -523,6 +755,48 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         return writeTask;
     }
 
+    /*
+     * Chunks of a partition are numbered in the order they are handed to the target,
+     * which is the order they are written in
+     */
+    private synchronized int nextChunkSequence(int partitionId) {
+        Integer sequence = m_chunkSequences.get(partitionId);
+        sequence = sequence == null ? 0 : sequence + 1;
+        m_chunkSequences.put(partitionId, sequence);
+        return sequence;
+    }
+
+    /*
+     * Write a reference to the copy of an unchanged chunk in the base snapshot.
+     * Only called from the write service thread.
+     */
+    private int writeChunkReference(int partitionId, int sequence, byte digest[]) throws Exception {
+        final SnapshotChunkIndex.Entry baseEntry =
+                m_baseChunkIndex.getUnchanged(partitionId, sequence, digest);
+        m_chunkIndex.putReference(partitionId, sequence, baseEntry);
+
+        final ByteBuffer reference = ByteBuffer.allocate(REFERENCE_CHUNK_SIZE);
+        reference.putInt(REFERENCE_CHUNK_LENGTH);
+        reference.putInt(partitionId);
+        PureJavaCrc32C crc = new PureJavaCrc32C();
+        crc.update(reference.array(), 0, 8);
+        reference.putInt((int)crc.getValue());
+        //Source index in the chunkSources of the header, and offset of the chunk in the source
+        reference.position(16);
+        reference.putInt(baseEntry.m_source + 1);
+        reference.putLong(baseEntry.m_offset);
+        crc = new PureJavaCrc32C();
+        crc.update(reference.array(), 16, 12);
+        reference.putInt(12, (int)crc.getValue());
+        reference.flip();
+
+        acquireBytesBeforeSync(reference.remaining());
+        enforceSnapshotRateLimit(reference.remaining());
+        final int written = writeToFile(reference);
+        m_chunksReferenced.incrementAndGet();
+        return written;
+    }
+
     @Override
     public ListenableFuture<?> write(final Callable<BBContainer> tupleData, int tableId) {
         return write(tupleData, true);
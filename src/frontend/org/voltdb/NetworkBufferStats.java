@@ -0,0 +1,95 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.voltcore.network.NetworkDBBPool;
+import org.voltcore.utils.Pair;
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Usage of the direct buffer pools of the network threads, one row per
+ * network thread and buffer size class
+ */
+public class NetworkBufferStats extends StatsSource {
+    private Map<Long, Pair<String, long[]>> m_bufferStats =
+        new HashMap<Long, Pair<String, long[]>>();
+
+    public NetworkBufferStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("NETWORK_THREAD", VoltType.STRING));
+        columns.add(new ColumnInfo("BUFFER_SIZE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("SLABS", VoltType.INTEGER));
+        columns.add(new ColumnInfo("BUFFERS", VoltType.INTEGER));
+        columns.add(new ColumnInfo("BUFFERS_IN_USE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("HITS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MISSES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("FALLBACKS", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Pair<String, long[]> info = m_bufferStats.get(rowKey);
+        final long[] counters = info.getSecond();
+
+        rowValues[columnNameToIndex.get("NETWORK_THREAD")] = info.getFirst();
+        rowValues[columnNameToIndex.get("BUFFER_SIZE")] = (int)counters[NetworkDBBPool.STAT_BUFFER_SIZE];
+        rowValues[columnNameToIndex.get("SLABS")] = (int)counters[NetworkDBBPool.STAT_SLABS];
+        rowValues[columnNameToIndex.get("BUFFERS")] = (int)counters[NetworkDBBPool.STAT_BUFFERS];
+        rowValues[columnNameToIndex.get("BUFFERS_IN_USE")] = (int)counters[NetworkDBBPool.STAT_BUFFERS_IN_USE];
+        rowValues[columnNameToIndex.get("HITS")] = counters[NetworkDBBPool.STAT_HITS];
+        rowValues[columnNameToIndex.get("MISSES")] = counters[NetworkDBBPool.STAT_MISSES];
+        rowValues[columnNameToIndex.get("FALLBACKS")] = counters[NetworkDBBPool.STAT_FALLBACKS];
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        try {
+            m_bufferStats = VoltDB.instance().getHostMessenger().getNetworkBufferStats(interval);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        final Iterator<Long> keys = m_bufferStats.keySet().iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return keys.next();
+            }
+
+            @Override
+            public void remove() {
+                keys.remove();
+            }
+        };
+    }
+}
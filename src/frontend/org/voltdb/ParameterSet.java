@@ -72,8 +72,9 @@ public class ParameterSet implements JSONString {
     }
 
     public static ParameterSet fromArrayNoCopy(Object... params) {
-        byte[][][] encodedStringArrays = new byte[params.length][][];
-        byte[][] encodedStrings = new byte[params.length][];
+        // only allocated if there are strings to encode
+        byte[][][] encodedStringArrays = null;
+        byte[][] encodedStrings = null;
 
         int size = 2;
 
@@ -124,10 +125,13 @@ public class ParameterSet implements JSONString {
                             if (strings[zz] == null) {
                                 size += 4;
                             } else {
-                                arrayEncodedStrings[zz] = strings[zz].getBytes(Constants.UTF8ENCODING);
+                                arrayEncodedStrings[zz] = encodeString(strings[zz]);
                                 size += 4 + arrayEncodedStrings[zz].length;
                             }
                         }
+                        if (encodedStringArrays == null) {
+                            encodedStringArrays = new byte[params.length][][];
+                        }
                         encodedStringArrays[ii] = arrayEncodedStrings;
                         break;
                     case TIMESTAMP:
@@ -190,8 +194,11 @@ public class ParameterSet implements JSONString {
                     size += 8;
                     break;
                 case STRING:
-                    byte encodedString[] = ((String)obj).getBytes(Constants.UTF8ENCODING);
+                    byte encodedString[] = encodeString((String)obj);
                     size += 4 + encodedString.length;
+                    if (encodedStrings == null) {
+                        encodedStrings = new byte[params.length][];
+                    }
                     encodedStrings[ii] = encodedString;
                     break;
                 case TIMESTAMP:
@@ -211,6 +218,24 @@ public class ParameterSet implements JSONString {
         return new ParameterSet(params, size, encodedStrings, encodedStringArrays);
     }
 
+    /**
+     * UTF-8 encode a string. Most strings are ASCII, they are copied into an array of
+     * the exact size instead of going through the charset encoder, which allocates for
+     * the worst case of three bytes per char and then copies the result.
+     */
+    static byte[] encodeString(String str) {
+        final int len = str.length();
+        final byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) {
+            final char c = str.charAt(i);
+            if (c >= 0x80) {
+                return str.getBytes(Constants.UTF8ENCODING);
+            }
+            bytes[i] = (byte) c;
+        }
+        return bytes;
+    }
+
     public static ParameterSet fromJSONString(String json) throws JSONException, IOException {
         JSONArray jArray = new JSONArray(json);
         return fromJSONArray(jArray);
@@ -231,9 +256,11 @@ public class ParameterSet implements JSONString {
         Object[] params = new Object[count];
         byte[][] encodedStrings = null;
         byte[][][] encodedStringArrays = null;
+        // reused for every parameter
+        OneParamInfo opi = new OneParamInfo();
 
         for (int i = 0; i < count; ++i) {
-            OneParamInfo opi = readOneParameter(buffer);
+            readOneParameter(buffer, opi);
             params[i] = opi.value;
             if (opi.encodedString != null) {
                 if (encodedStrings == null) {
@@ -305,10 +332,11 @@ public class ParameterSet implements JSONString {
             // error if caller desires out of bounds parameter
             throw new RuntimeException("Invalid partition parameter requested.");
         }
+        OneParamInfo opi = new OneParamInfo();
         for (int i = 0; i < partitionIndex; ++i) {
-            readOneParameter(unserializedParams);
+            readOneParameter(unserializedParams, opi);
         }
-        OneParamInfo opi = readOneParameter(unserializedParams);
+        readOneParameter(unserializedParams, opi);
         unserializedParams.rewind();
         return opi.value;
     }
@@ -460,7 +488,10 @@ public class ParameterSet implements JSONString {
         return value;
     }
 
-    static private OneParamInfo readOneParameter(ByteBuffer in)
+    /**
+     * Read the next parameter into retval, overwriting what it held
+     */
+    static private void readOneParameter(ByteBuffer in, OneParamInfo retval)
             throws IOException {
         Object value;
         int len;
@@ -569,11 +600,9 @@ public class ParameterSet implements JSONString {
             }
         }
 
-        OneParamInfo retval = new OneParamInfo();
         retval.value = value;
         retval.encodedString = encodedString;
         retval.encodedStringArray = encodedStringArray;
-        return retval;
     }
 
     public void flattenToBuffer(ByteBuffer buf) throws IOException {
@@ -125,6 +125,16 @@ public class PlannerStatsCollector extends StatsSource {
     long m_lastFailures = 0;
 
 
+    /**
+     * Ad hoc plan cache totals. These are kept by the cache of the current catalog
+     * and start over when a catalog update replaces the cache.
+     */
+    long m_cacheEvictions = 0;
+    long m_lastCacheEvictions = 0;
+    long m_planTimeSaved = 0;
+    long m_lastPlanTimeSaved = 0;
+    long m_cacheRetained = 0;
+
     /**
      * Count of the number of invocations = m_cache1Hits + m_cache2Hits + m_cacheMisses + m_failures;
      */
@@ -235,6 +245,42 @@ public class PlannerStatsCollector extends StatsSource {
         m_partitionId = partitionId;
     }
 
+    /**
+     * Variant of start/endStatsCollection for planners that run concurrently
+     * and share this collector. The caller times the planning itself.
+     *
+     * @param cache1Size   number of entries in level 1 cache
+     * @param cache2Size   number of entries in level 2 cache
+     * @param cacheUse     where the planned statement came from
+     * @param partitionId  partition id
+     * @param startTime    System.nanoTime() when planning started
+     */
+    public synchronized void recordPlanning(long cache1Size, long cache2Size, CacheUse cacheUse,
+                                            long partitionId, long startTime) {
+        if (getInvocations() % m_collectionFrequency == 0) {
+            m_currentStartTime = startTime;
+        }
+        endStatsCollection(cache1Size, cache2Size, cacheUse, partitionId);
+    }
+
+    /**
+     * Record the totals of the ad hoc plan cache.
+     *
+     * @param evictions      entries evicted to make room for others
+     * @param planTimeSaved  nanoseconds of planning avoided by cache hits
+     * @param retained       entries carried over from the previous catalog's cache
+     */
+    public synchronized void updateCacheTotals(long evictions, long planTimeSaved, long retained) {
+        if (evictions < m_cacheEvictions || planTimeSaved < m_planTimeSaved) {
+            // a new cache replaced the previous one
+            m_lastCacheEvictions = 0;
+            m_lastPlanTimeSaved = 0;
+        }
+        m_cacheEvictions = evictions;
+        m_planTimeSaved = planTimeSaved;
+        m_cacheRetained = retained;
+    }
+
     /**
      * Update the rowValues array with the latest statistical information.
      * This method is overrides the super class version
@@ -255,6 +301,8 @@ public class PlannerStatsCollector extends StatsSource {
         long cache2Hits  = m_cache2Hits;
         long cacheMisses = m_cacheMisses;
         long failureCount = m_failures;
+        long cacheEvictions = m_cacheEvictions;
+        long planTimeSaved = m_planTimeSaved;
 
         if (m_interval) {
             totalTimedExecutionTime = m_totalPlanningTime - m_lastTimedPlanningTime;
@@ -283,6 +331,12 @@ public class PlannerStatsCollector extends StatsSource {
             failureCount = m_failures - m_lastFailures;
             m_lastFailures = m_failures;
 
+            cacheEvictions = m_cacheEvictions - m_lastCacheEvictions;
+            m_lastCacheEvictions = m_cacheEvictions;
+
+            planTimeSaved = m_planTimeSaved - m_lastPlanTimeSaved;
+            m_lastPlanTimeSaved = m_planTimeSaved;
+
             m_lastInvocations = m_invocations;
         }
 
@@ -302,6 +356,9 @@ public class PlannerStatsCollector extends StatsSource {
             rowValues[columnNameToIndex.get("PLAN_TIME_AVG")] = 0L;
         }
         rowValues[columnNameToIndex.get("FAILURES")] = failureCount;
+        rowValues[columnNameToIndex.get("CACHE_EVICTIONS")] = cacheEvictions;
+        rowValues[columnNameToIndex.get("PLAN_TIME_SAVED")] = planTimeSaved;
+        rowValues[columnNameToIndex.get("CACHE_RETAINED")] = m_cacheRetained;
     }
 
     /**
@@ -322,6 +379,9 @@ public class PlannerStatsCollector extends StatsSource {
         columns.add(new ColumnInfo("PLAN_TIME_MAX", VoltType.BIGINT));
         columns.add(new ColumnInfo("PLAN_TIME_AVG", VoltType.BIGINT));
         columns.add(new ColumnInfo("FAILURES",      VoltType.BIGINT));
+        columns.add(new ColumnInfo("CACHE_EVICTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PLAN_TIME_SAVED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("CACHE_RETAINED",  VoltType.BIGINT));
     }
 
     @Override
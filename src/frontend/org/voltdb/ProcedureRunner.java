@@ -76,7 +76,7 @@ public class ProcedureRunner {
     // SQL statement queue info
     //
     // This must be less than or equal to MAX_BATCH_COUNT in src/ee/execution/VoltDBEngine.h
-    final static int MAX_BATCH_SIZE = 200;
+    public final static int MAX_BATCH_SIZE = 200;
     static class QueuedSQL {
         SQLStmt stmt;
         ParameterSet params;
@@ -88,6 +88,14 @@ public class ProcedureRunner {
     QueuedSQL m_cachedSingleStmt = new QueuedSQL(); // never null
     boolean m_seenFinalBatch = false;
 
+    // Scratch arguments for single statement single partition batches, reused
+    // across calls to save the three argument arrays fastPath would allocate.
+    // The rest of the call (parameter serialization, result tables) allocates
+    // as before. Only touched on the site thread.
+    private final long[] m_singleFragmentId = new long[1];
+    private final Object[] m_singleParams = new Object[1];
+    private final String[] m_singleSqlText = new String[1];
+
     // The name of a procedure to load at places about to run FragmentTasks
     // generated by this procedure in an MP txn. Currently used for
     // default procs that are auto-generated and whose plans might not be
@@ -373,7 +381,9 @@ public class ProcedureRunner {
             else {
                 assert(m_catProc.getStatements().size() == 1);
                 try {
-                    m_cachedSingleStmt.params = getCleanParams(m_cachedSingleStmt.stmt, paramList);
+                    // paramList belongs to this invocation and was already converted in place,
+                    // so the statement can use it directly unless it holds nulls
+                    m_cachedSingleStmt.params = getCleanParams(m_cachedSingleStmt.stmt, true, paramList);
                     if (getHsqlBackendIfExists() != null) {
                         // HSQL handling
                         VoltTable table =
@@ -412,6 +422,10 @@ public class ProcedureRunner {
                         m_statusString);
             }
 
+            if (invoc != null && invoc.wantsColumnarResults()) {
+                retval.setColumnarResults(true);
+            }
+
             int hash = (int) m_inputCRC.getValue();
             if (ClientResponseImpl.isTransactionallySuccessful(retval.getStatus()) && (hash != 0)) {
                 retval.setHash(hash);
@@ -507,6 +521,47 @@ public class ProcedureRunner {
         }
     }
 
+    public boolean isReadOnly() {
+        return m_isReadOnly;
+    }
+
+    /**
+     * Work out the parameters of the statement of a single statement, single partition
+     * procedure the same way call() does, so the site can execute the statement ahead
+     * of the call together with the statements of other transactions.
+     *
+     * @return The statement's parameters, or null if the procedure can't be executed
+     * ahead of time. Parameter errors are left for call() to report.
+     */
+    public ParameterSet prepareSingleStatement(Object[] paramList) {
+        if (m_hasJava || m_isSysProc || !m_isSinglePartition || getHsqlBackendIfExists() != null) {
+            return null;
+        }
+        final SQLStmt stmt = m_cachedSingleStmt.stmt;
+        if (stmt == null || stmt.collector != null || paramList.length != m_paramTypes.length) {
+            return null;
+        }
+        // call() converts the caller's array in place, work on a copy
+        final Object[] params = paramList.clone();
+        try {
+            for (int i = 0; i < m_paramTypes.length; i++) {
+                params[i] = ParameterConverter.tryToMakeCompatible(m_paramTypes[i], params[i]);
+            }
+            return getCleanParams(stmt, true, params);
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    public long getSingleStatementFragmentId() {
+        return m_cachedSingleStmt.stmt.aggregator.id;
+    }
+
+    public String getSingleStatementText() {
+        return m_cachedSingleStmt.stmt.getText();
+    }
+
     public void setupTransaction(TransactionState txnState) {
         m_txnState = txnState;
     }
@@ -594,7 +649,7 @@ public class ProcedureRunner {
         }
         QueuedSQL queuedSQL = new QueuedSQL();
         queuedSQL.expectation = expectation;
-        queuedSQL.params = getCleanParams(stmt, args);
+        queuedSQL.params = getCleanParams(stmt, false, args);
         queuedSQL.stmt = stmt;
 
         updateCRC(queuedSQL);
@@ -674,7 +729,7 @@ public class ProcedureRunner {
                     throw new VoltAbortException(msg);
                 }
             }
-            queuedSQL.params = getCleanParams(queuedSQL.stmt, argumentParams);
+            queuedSQL.params = getCleanParams(queuedSQL.stmt, false, argumentParams);
 
             updateCRC(queuedSQL);
             m_batch.add(queuedSQL);
@@ -773,10 +828,10 @@ public class ProcedureRunner {
         }
 
         // check expectations
-        int i = 0; for (QueuedSQL qs : batch) {
+        for (int i = 0; i < batchSize; i++) {
+            final QueuedSQL qs = batch.get(i);
             Expectation.check(m_procedureName, qs.stmt,
                     i, qs.expectation, results[i]);
-            i++;
         }
 
         // clear the queued sql list for the next call
@@ -812,15 +867,22 @@ public class ProcedureRunner {
         return sysproc.executePlanFragment(dependencies, fragmentId, params, m_systemProcedureContext);
     }
 
-    private final ParameterSet getCleanParams(SQLStmt stmt, Object... inArgs) {
+    /**
+     * @param argsOwned True if inArgs can't be changed by the caller after this returns,
+     * in which case it is wrapped without a copy when there are no nulls to replace
+     */
+    private final ParameterSet getCleanParams(SQLStmt stmt, boolean argsOwned, Object... inArgs) {
         final int numParamTypes = stmt.statementParamJavaTypes.length;
         final byte stmtParamTypes[] = stmt.statementParamJavaTypes;
-        final Object[] args = new Object[numParamTypes];
         if (inArgs.length != numParamTypes) {
             throw new VoltAbortException(
                     "Number of arguments provided was " + inArgs.length  +
                     " where " + numParamTypes + " was expected for statement " + stmt.getText());
         }
+        if (argsOwned && !containsNull(inArgs)) {
+            return ParameterSet.fromArrayNoCopy(inArgs);
+        }
+        final Object[] args = new Object[numParamTypes];
         for (int ii = 0; ii < numParamTypes; ii++) {
             // this handles non-null values
             if (inArgs[ii] != null) {
@@ -857,6 +919,15 @@ public class ProcedureRunner {
         return ParameterSet.fromArrayNoCopy(args);
     }
 
+    private static boolean containsNull(Object[] args) {
+        for (int ii = 0; ii < args.length; ii++) {
+            if (args[ii] == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void initSQLStmt(SQLStmt stmt, Statement catStmt) {
 
         int fragCount = catStmt.getFragments().size();
@@ -1443,6 +1514,9 @@ public class ProcedureRunner {
    // Batch up pre-planned fragments, but handle ad hoc independently.
    private VoltTable[] fastPath(List<QueuedSQL> batch) {
        final int batchSize = batch.size();
+       if (batchSize == 1) {
+           return singleStatementFastPath(batch.get(0));
+       }
        Object[] params = new Object[batchSize];
        long[] fragmentIds = new long[batchSize];
        String[] sqlTexts = new String[batchSize];
@@ -1472,4 +1546,30 @@ public class ProcedureRunner {
            m_txnState.uniqueId,
            m_isReadOnly);
     }
+
+   // Same as fastPath for a batch of one, using the scratch arrays instead of allocating new ones
+   private VoltTable[] singleStatementFastPath(QueuedSQL qs) {
+       assert(qs.stmt.collector == null);
+       m_singleFragmentId[0] = qs.stmt.aggregator.id;
+       // use the pre-serialized params if it exists
+       m_singleParams[0] = qs.serialization != null ? qs.serialization : qs.params;
+       m_singleSqlText[0] = qs.stmt.getText();
+       try {
+           return m_site.executePlanFragments(
+               1,
+               m_singleFragmentId,
+               null,
+               m_singleParams,
+               m_singleSqlText,
+               m_txnState.txnId,
+               m_txnState.m_spHandle,
+               m_txnState.uniqueId,
+               m_isReadOnly);
+       }
+       finally {
+           // don't hold on to the parameters past the call
+           m_singleParams[0] = null;
+           m_singleSqlText[0] = null;
+       }
+    }
 }
@@ -115,6 +115,7 @@ import org.voltdb.messaging.VoltDbMessageFactory;
 import org.voltdb.planner.ActivePlanRepository;
 import org.voltdb.rejoin.Iv2RejoinCoordinator;
 import org.voltdb.rejoin.JoinCoordinator;
+import org.voltdb.rejoin.RejoinStats;
 import org.voltdb.utils.CLibrary;
 import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.CatalogUtil.CatalogAndIds;
@@ -122,6 +123,7 @@ import org.voltdb.utils.Encoder;
 import org.voltdb.utils.HTTPAdminListener;
 import org.voltdb.utils.LogKeys;
 import org.voltdb.utils.MiscUtils;
+import org.voltdb.utils.PBDStats;
 import org.voltdb.utils.PlatformProperties;
 import org.voltdb.utils.SystemStatsCollector;
 import org.voltdb.utils.VoltSampler;
@@ -658,6 +660,15 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback {
             m_ioStats = new IOStats();
             getStatsAgent().registerStatsSource(StatsSelector.IOSTATS,
                     0, m_ioStats);
+            getStatsAgent().registerStatsSource(StatsSelector.NETWORKBUFFERS,
+                    0, new NetworkBufferStats());
+            getStatsAgent().registerStatsSource(StatsSelector.PBD,
+                    0, new PBDStats());
+            getStatsAgent().registerStatsSource(StatsSelector.REJOIN,
+                    0, new RejoinStats());
+            getStatsAgent().registerStatsSource(StatsSelector.ADHOCPLANNER,
+                    0, m_asyncCompilerAgent.getPlannerStats());
+            m_asyncCompilerAgent.startCachePrewarming(m_messenger.getZK(), m_messenger.getHostId());
             m_memoryStats = new MemoryStats();
             getStatsAgent().registerStatsSource(StatsSelector.MEMORY,
                     0, m_memoryStats);
@@ -1625,6 +1636,18 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback {
         hmconfig.deadHostTimeout = m_config.m_deadHostTimeoutMS;
         hmconfig.factory = new VoltDbMessageFactory();
         hmconfig.coreBindIds = m_config.m_networkCoreBindings;
+        CoreUtils.m_coreBinder = new CoreUtils.CoreBinder() {
+            @Override
+            public void bindCurrentThread(String coreId) {
+                try {
+                    if (!CLibrary.setThreadAffinity(Integer.parseInt(coreId.trim()))) {
+                        hostLog.warn("Unable to bind thread " + Thread.currentThread().getName() + " to core " + coreId);
+                    }
+                } catch (NumberFormatException e) {
+                    hostLog.warn("Invalid core binding " + coreId + " for thread " + Thread.currentThread().getName());
+                }
+            }
+        };
 
         m_messenger = new org.voltcore.messaging.HostMessenger(hmconfig);
 
@@ -161,6 +161,19 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
      */
     final LinkedList<Snapshot> m_snapshots = new LinkedList<Snapshot>();
 
+    /*
+     * Number of incremental auto snapshots taken between full ones. An incremental snapshot
+     * only writes the chunks that changed since the previous snapshot and refers to the previous
+     * snapshot for the rest, so every snapshot back to the last full one must be retained.
+     * Chunks are matched by position, so only tables that are mostly appended to save much,
+     * see SnapshotChunkIndex.
+     * Zero makes every auto snapshot a full one.
+     */
+    static int m_incrementalsBetweenFull = Integer.getInteger("AUTO_SNAPSHOT_INCREMENTALS", 0);
+    static final String INCREMENTAL_SUFFIX = "_INCR";
+    //Start with a full snapshot, the chain on disk may have been broken while the daemon wasn't running
+    private int m_incrementalsSinceFull = Integer.MAX_VALUE;
+
     /**
      * States the daemon can be in
      *
@@ -1254,11 +1267,13 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
         private final String path;
         private final String nonce;
         private final Long txnId;
+        private final boolean incremental;
 
         private Snapshot (String path, String nonce, Long txnId) {
             this.path = path;
             this.nonce = nonce;
             this.txnId = txnId;
+            this.incremental = nonce.endsWith(INCREMENTAL_SUFFIX);
         }
 
         @Override
@@ -1319,7 +1334,7 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
             return;
         }
 
-        if (m_snapshots.size() > m_retain) {
+        if (numberOfSnapshotsToDelete() > 0) {
             //Quick hack to make sure we don't delete while the snapshot is running.
             //Deletes work really badly during a snapshot because the FS is occupied
             if (!SnapshotSiteProcessor.ExecutionSitesCurrentlySnapshotting.isEmpty()) {
@@ -1341,12 +1356,30 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
         m_lastSysprocInvocation = now;
         final Date nowDate = new Date(now);
         final String dateString = m_dateFormat.format(nowDate);
-        final String nonce = m_prefix + dateString;
+        final boolean incremental = m_incrementalsBetweenFull > 0 &&
+                m_incrementalsSinceFull < m_incrementalsBetweenFull &&
+                !m_snapshots.isEmpty() &&
+                m_snapshots.getLast().path.equals(m_path);
+        final String nonce = m_prefix + dateString + (incremental ? INCREMENTAL_SUFFIX : "");
         JSONObject jsObj = new JSONObject();
         try {
             jsObj.put("path", m_path);
             jsObj.put("nonce", nonce);
             jsObj.put("perPartitionTxnIds", retrievePerPartitionTransactionIds());
+            if (m_incrementalsBetweenFull > 0) {
+                //Every snapshot in the chain keeps an index of its chunks for the next one
+                JSONObject jsData = new JSONObject();
+                jsData.put("keepChunkIndex", true);
+                if (incremental) {
+                    final Snapshot base = m_snapshots.getLast();
+                    JSONObject jsBase = new JSONObject();
+                    jsBase.put("path", base.path);
+                    jsBase.put("nonce", base.nonce);
+                    jsData.put("incrementalBase", jsBase);
+                }
+                jsObj.put("data", jsData.toString());
+            }
+            m_incrementalsSinceFull = incremental ? m_incrementalsSinceFull + 1 : 0;
             m_snapshots.offer(new Snapshot(m_path, nonce, now));
             long handle = m_nextCallbackHandle++;
             m_procedureCallbacks.put(handle, new ProcedureCallback() {
@@ -1452,6 +1485,7 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
 
         if (response.getStatus() != ClientResponse.SUCCESS){
             logFailureResponse("Snapshot failed", response);
+            m_incrementalsSinceFull = Integer.MAX_VALUE;
             return;
         }
 
@@ -1462,6 +1496,7 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
         if (err != null) {
             SNAP_LOG.warn("Snapshot failed with failure response: " +  err);
             m_snapshots.removeLast();
+            m_incrementalsSinceFull = Integer.MAX_VALUE;
             return;
         }
 
@@ -1477,6 +1512,7 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
         }
         if (!success) {
             m_snapshots.removeLast();
+            m_incrementalsSinceFull = Integer.MAX_VALUE;
         }
     }
 
@@ -1557,12 +1593,12 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
      * @return
      */
     private void deleteExtraSnapshots() {
-        if (m_snapshots.size() <= m_retain) {
+        final int numberToDelete = numberOfSnapshotsToDelete();
+        if (numberToDelete == 0) {
             setState(State.WAITING);
         } else {
             m_lastSysprocInvocation = System.currentTimeMillis();
             setState(State.DELETING);
-            final int numberToDelete = m_snapshots.size() - m_retain;
             String pathsToDelete[] = new String[numberToDelete];
             String noncesToDelete[] = new String[numberToDelete];
             for (int ii = 0; ii < numberToDelete; ii++) {
@@ -1590,6 +1626,19 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
         }
     }
 
+    /**
+     * Number of the oldest snapshots that are not retained. A snapshot that a retained
+     * incremental snapshot builds on is kept even if that means retaining more snapshots.
+     */
+    int numberOfSnapshotsToDelete() {
+        int numberToDelete = Math.max(0, m_snapshots.size() - m_retain);
+        while (numberToDelete > 0 && numberToDelete < m_snapshots.size() &&
+                m_snapshots.get(numberToDelete).incremental) {
+            numberToDelete--;
+        }
+        return numberToDelete;
+    }
+
     private void logFailureResponse(String message, ClientResponse response) {
         SNAP_LOG.warn(message + "\n" + response.getStatusString());
         if (response.getStatusString() != null) {
@@ -27,6 +27,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.Connection;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.sysprocs.saverestore.SnapshotChunkIndex;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import org.voltdb.utils.VoltFile;
 
@@ -242,7 +243,8 @@ public class SnapshotDeleteAgent extends OpsAgent
                     !pathname.getName().endsWith(".digest") &&
                     !pathname.getName().endsWith(".jar") &&
                     !pathname.getName().endsWith(SnapshotUtil.HASH_EXTENSION) &&
-                    !pathname.getName().endsWith(SnapshotUtil.COMPLETION_EXTENSION)) {
+                    !pathname.getName().endsWith(SnapshotUtil.COMPLETION_EXTENSION) &&
+                    !pathname.getName().endsWith(SnapshotChunkIndex.FILE_SUFFIX)) {
                     return false;
                 }
 
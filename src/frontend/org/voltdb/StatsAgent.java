@@ -372,6 +372,18 @@ public class StatsAgent extends OpsAgent
         case IOSTATS:
             stats = collectIOStats(interval);
             break;
+        case NETWORKBUFFERS:
+            stats = collectNetworkBufferStats(interval);
+            break;
+        case ADHOCPLANNER:
+            stats = collectAdHocPlannerStats(interval);
+            break;
+        case PBD:
+            stats = collectPBDStats(interval);
+            break;
+        case REJOIN:
+            stats = collectRejoinStats(interval);
+            break;
         case INITIATOR:
             stats = collectInitiatorStats(interval);
             break;
@@ -549,6 +561,58 @@ public class StatsAgent extends OpsAgent
         return stats;
     }
 
+    private VoltTable[] collectNetworkBufferStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable nStats = getStatsAggregate(StatsSelector.NETWORKBUFFERS, interval, now);
+        if (nStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = nStats;
+        }
+        return stats;
+    }
+
+    private VoltTable[] collectPBDStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable pStats = getStatsAggregate(StatsSelector.PBD, interval, now);
+        if (pStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = pStats;
+        }
+        return stats;
+    }
+
+    private VoltTable[] collectRejoinStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable rStats = getStatsAggregate(StatsSelector.REJOIN, interval, now);
+        if (rStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = rStats;
+        }
+        return stats;
+    }
+
+    private VoltTable[] collectAdHocPlannerStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable pStats = getStatsAggregate(StatsSelector.ADHOCPLANNER, interval, now);
+        if (pStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = pStats;
+        }
+        return stats;
+    }
+
     private VoltTable[] collectIOStats(boolean interval)
     {
         Long now = System.currentTimeMillis();
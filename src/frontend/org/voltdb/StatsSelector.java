@@ -50,5 +50,9 @@ public enum StatsSelector {
     TOPO,           // return leader and site info for iv2
     REBALANCE,      // return elastic rebalance progress
     KSAFETY,         // return ksafety coverage information
-    CPU // Return CPU Stats
+    CPU, // Return CPU Stats
+    NETWORKBUFFERS, // usage of the network threads' direct buffer pools
+    ADHOCPLANNER,   // load and latency of the ad hoc planner pool
+    PBD,            // disk activity of the persistent binary deques
+    REJOIN          // progress of the rejoin snapshot streams
 }
@@ -41,6 +41,8 @@ public class StoredProcedureInvocation implements JSONString {
 
     ProcedureInvocationType type = ProcedureInvocationType.ORIGINAL;
     String procName = null;
+    // The client wants the results column-major
+    boolean columnarResults = false;
 
     public static final long UNITIALIZED_ID = -1L;
     /*
@@ -67,6 +69,7 @@ public class StoredProcedureInvocation implements JSONString {
     {
         StoredProcedureInvocation copy = new StoredProcedureInvocation();
         copy.type = type;
+        copy.columnarResults = columnarResults;
         copy.clientHandle = clientHandle;
         copy.params = params;
         copy.procName = procName;
@@ -122,6 +125,14 @@ public class StoredProcedureInvocation implements JSONString {
         return type;
     }
 
+    public boolean wantsColumnarResults() {
+        return columnarResults;
+    }
+
+    public void setColumnarResults(boolean columnar) {
+        columnarResults = columnar;
+    }
+
     public String getProcName() {
         return procName;
     }
@@ -210,7 +221,11 @@ public class StoredProcedureInvocation implements JSONString {
     {
         assert(!((params == null) && (serializedParams == null)));
         assert((params != null) || (serializedParams != null));
-        buf.put(type.getValue()); //version and type, version is currently 0
+        byte version = type.getValue(); //version and type, version is currently 0
+        if (columnarResults) {
+            version |= ProcedureInvocationType.COLUMNAR_RESULTS_FLAG;
+        }
+        buf.put(version);
         if (type == ProcedureInvocationType.REPLICATED) {
             buf.putLong(originalTxnId);
             buf.putLong(originalUniqueId);
@@ -255,6 +270,7 @@ public class StoredProcedureInvocation implements JSONString {
         FastDeserializer in = new FastDeserializer(buf);
         byte version = in.readByte();// version number also embeds the type
         type = ProcedureInvocationType.typeFromByte(version);
+        columnarResults = (version & ProcedureInvocationType.COLUMNAR_RESULTS_FLAG) != 0;
 
         /*
          * If it's a replicated invocation, there should be two txn IDs
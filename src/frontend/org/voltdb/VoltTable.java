@@ -135,6 +135,27 @@ public final class VoltTable extends VoltTableRow implements JSONString {
     int m_rowCount = -1;
     int m_colCount = -1;
 
+    /*
+     * Positions of the data of the first indexedRows rows. Built on the first random
+     * access so fetchRow and advanceToRow don't walk the length prefix of every preceding
+     * row, and extended on demand as rows are added. Costs 4 bytes per indexed row and is
+     * never serialized, see getRowIndexSize()
+     *
+     * Threads reading a table that is no longer modified may fetch rows concurrently. An index
+     * is only published through the volatile field once every position it covers is written,
+     * threads that find no index each build a complete one and the last one published wins.
+     */
+    private static final class RowIndex {
+        private final int[] rowPositions;
+        private final int indexedRows;
+
+        private RowIndex(int[] rowPositions, int indexedRows) {
+            this.rowPositions = rowPositions;
+            this.indexedRows = indexedRows;
+        }
+    }
+    private volatile RowIndex m_rowIndex = null;
+
     // JSON KEYS FOR SERIALIZATION
     static final String JSON_NAME_KEY = "name";
     static final String JSON_TYPE_KEY = "type";
@@ -492,6 +513,11 @@ public final class VoltTable extends VoltTableRow implements JSONString {
         m_buffer.position(m_rowStart);
         m_buffer.putInt(0);
         m_rowCount = 0;
+        // keep the positions array for the next rows
+        final RowIndex rowIndex = m_rowIndex;
+        if (rowIndex != null) {
+            m_rowIndex = new RowIndex(rowIndex.rowPositions, 0);
+        }
         assert(verifyTableInvariants());
     }
 
@@ -563,6 +589,11 @@ public final class VoltTable extends VoltTableRow implements JSONString {
             return VoltTable.this.getRowStart();
         }
 
+        @Override
+        int getRowPosition(int rowIndex) {
+            return VoltTable.this.getRowPosition(rowIndex);
+        }
+
         @Override
         public VoltTableRow cloneRow() {
             Row retval = new Row(m_position);
@@ -678,10 +709,9 @@ public final class VoltTable extends VoltTableRow implements JSONString {
     }
 
     /**
-     * Return a {@link VoltTableRow} instance with the specified index. This method
-     * is not performant because it has to scan the length prefix of every row preceding
-     * the requested row in order to find the position of the requested row. Use advanceRow
-     * or advanceToRow instead.
+     * Return a {@link VoltTableRow} instance with the specified index. The first call
+     * builds an index of row positions (4 bytes per row) with a single scan of the table,
+     * after which fetching any row is constant time. Prefer advanceRow for sequential scans.
      * @param index Index of the row
      * @return The requested {@link VoltTableRow Row}.
      * @throws IndexOutOfBoundsException if no row exists at the given index.
@@ -692,16 +722,65 @@ public final class VoltTable extends VoltTableRow implements JSONString {
             throw new IndexOutOfBoundsException("index = " + index + "; rows = " + m_rowCount);
         }
 
-        int pos = m_rowStart + 4;
-        for (int i = 0; i < index; i++) {
-            // add 4 bytes as the row size is non-inclusive
-            pos += m_buffer.getInt(pos) + 4;
-        }
-        Row retval = new Row(pos + 4);
+        Row retval = new Row(getRowPosition(index));
         retval.m_activeRowIndex = index;
         return retval;
     }
 
+    @Override
+    final int getRowPosition(int rowIndex) {
+        assert(rowIndex >= 0 && rowIndex < m_rowCount);
+        RowIndex index = m_rowIndex;
+        if (index == null || rowIndex >= index.indexedRows) {
+            index = indexRows(index);
+        }
+        return index.rowPositions[rowIndex];
+    }
+
+    /*
+     * Extend the row index to cover every row in the table, starting
+     * from the last indexed row, and publish it
+     */
+    private RowIndex indexRows(RowIndex index) {
+        int[] rowPositions;
+        int indexedRows;
+        if (index == null) {
+            rowPositions = new int[m_rowCount];
+            indexedRows = 0;
+        } else {
+            // rows were added, which only the thread modifying the table can see
+            rowPositions = index.rowPositions;
+            indexedRows = index.indexedRows;
+            if (rowPositions.length < m_rowCount) {
+                // the table is still growing, leave room for more rows
+                rowPositions = Arrays.copyOf(rowPositions,
+                        Math.max(m_rowCount, rowPositions.length + (rowPositions.length >> 1)));
+            }
+        }
+
+        if (indexedRows == 0) {
+            rowPositions[0] = m_rowStart + ROW_COUNT_SIZE + ROW_HEADER_SIZE;
+            indexedRows = 1;
+        }
+        for (int i = indexedRows; i < m_rowCount; i++) {
+            final int prev = rowPositions[i - 1];
+            // add the header size as the row size is non-inclusive
+            rowPositions[i] = prev + m_buffer.getInt(prev - ROW_HEADER_SIZE) + ROW_HEADER_SIZE;
+        }
+        index = new RowIndex(rowPositions, m_rowCount);
+        m_rowIndex = index;
+        return index;
+    }
+
+    /**
+     * @return Bytes of heap held by the row index built by random row access,
+     * 0 if the rows were only ever scanned sequentially
+     */
+    final int getRowIndexSize() {
+        final RowIndex index = m_rowIndex;
+        return index == null ? 0 : index.rowPositions.length * 4;
+    }
+
     /**
      * Append a {@link VoltTableRow row} from another <tt>VoltTable</tt>
      * to this VoltTable instance. Technically, it could be from the same
@@ -1618,6 +1697,7 @@ public final class VoltTable extends VoltTableRow implements JSONString {
         buf.position(buf.position() + len);
 
         m_buffer.position(m_buffer.limit());
+        m_rowIndex = null;
 
         // rowstart represents and offset to the start of row data,
         //  but the serialization is the non-inclusive length of the header,
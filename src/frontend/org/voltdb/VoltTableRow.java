@@ -121,6 +121,14 @@ public abstract class VoltTableRow {
 
     abstract int getRowStart();
 
+    /**
+     * Returns the position of the data of the row with the given index
+     * from the table's row index, indexing any rows not yet covered.
+     * @param rowIndex Index of the row, must be less than the row count
+     * @return Offset into the buffer of the start of the row's data
+     */
+    abstract int getRowPosition(int rowIndex);
+
     /**
      * Clone a row. The new instance returned will have an independent
      * position from the original instance.
@@ -216,6 +224,9 @@ public abstract class VoltTableRow {
 
         if (m_activeRowIndex == 0)
             m_position = getRowStart() + ROW_COUNT_SIZE + ROW_HEADER_SIZE;
+        else if (rows_to_move > 1)
+            // Jumps past the next row look the row up in the table's row index
+            m_position = getRowPosition(m_activeRowIndex);
         else {
             // Move n rows - this code assumes rows can be variable size, so we
             // have to fetch the size of each row in order to advance to the
@@ -65,6 +65,9 @@ public class VoltZK {
     // configuration (ports, interfaces, ...)
     public static final String cluster_metadata = "/db/cluster_metadata";
 
+    // SQL text of the ad hoc statements each host uses most (ephemeral per host)
+    public static final String adhocHotStatements = "/db/adhoc_hot_statements";
+
     /*
      * mailboxes
      *
@@ -123,6 +126,7 @@ public class VoltZK {
             root,
             mailboxes,
             cluster_metadata,
+            adhocHotStatements,
             operationMode,
             iv2masters,
             iv2appointees,
@@ -0,0 +1,109 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.voltdb.client.Distributer.CallbackBookeeping;
+
+/**
+ * Table of outstanding invocations on a connection keyed by client handle.
+ *
+ * Handles are handed out sequentially so the outstanding handles of a connection
+ * fall in a narrow window. Each handle maps to its own slot in a fixed array and
+ * is added and removed with a single compare and swap, no locks and no boxing.
+ * Consecutive handles are spread across slots so threads completing neighbouring
+ * calls don't contend on the same cache line.
+ *
+ * A handle whose slot is still held by an older call, e.g. a long running system
+ * procedure, goes to an overflow map instead.
+ */
+class CallbackTable {
+
+    /*
+     * Odd so the mapping from handle to slot is a bijection over the table,
+     * and larger than the number of references per cache line
+     */
+    private static final int SLOT_SPREAD = 17;
+
+    private final AtomicReferenceArray<CallbackBookeeping> m_slots;
+    private final int m_mask;
+    private final ConcurrentHashMap<Long, CallbackBookeeping> m_overflow =
+            new ConcurrentHashMap<Long, CallbackBookeeping>();
+
+    /**
+     * @param capacity Minimum number of slots, rounded up to a power of two
+     */
+    CallbackTable(int capacity) {
+        final int slots = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        m_slots = new AtomicReferenceArray<CallbackBookeeping>(slots);
+        m_mask = slots - 1;
+    }
+
+    private int slotFor(long handle) {
+        return (int)(handle * SLOT_SPREAD) & m_mask;
+    }
+
+    void put(CallbackBookeeping cb) {
+        if (!m_slots.compareAndSet(slotFor(cb.handle), null, cb)) {
+            m_overflow.put(cb.handle, cb);
+        }
+    }
+
+    /**
+     * Remove the bookkeeping for a handle. Only one of several threads racing
+     * to remove the same handle gets a non-null result.
+     */
+    CallbackBookeeping remove(long handle) {
+        final int slot = slotFor(handle);
+        final CallbackBookeeping cb = m_slots.get(slot);
+        if (cb != null && cb.handle == handle) {
+            return m_slots.compareAndSet(slot, cb, null) ? cb : null;
+        }
+        if (m_overflow.isEmpty()) {
+            return null;
+        }
+        return m_overflow.remove(handle);
+    }
+
+    boolean containsKey(long handle) {
+        final CallbackBookeeping cb = m_slots.get(slotFor(handle));
+        return (cb != null && cb.handle == handle) || m_overflow.containsKey(handle);
+    }
+
+    /**
+     * Number of slots, for walking the table with {@link #slot(int)}
+     */
+    int capacity() {
+        return m_slots.length();
+    }
+
+    /**
+     * @return The bookkeeping held in a slot or null. Combined with {@link #overflow()}
+     * this lets expiration and connection loss walk the table one entry at a time
+     * while calls are added and removed concurrently.
+     */
+    CallbackBookeeping slot(int index) {
+        return m_slots.get(index);
+    }
+
+    Iterable<CallbackBookeeping> overflow() {
+        return m_overflow.values();
+    }
+}
@@ -50,6 +50,9 @@ public class ClientConfig {
     boolean m_reconnectOnConnectionLoss;
     long m_initialConnectionRetryIntervalMS = DEFAULT_INITIAL_CONNECTION_RETRY_INTERVAL_MS;
     long m_maxConnectionRetryIntervalMS = DEFAULT_MAX_CONNECTION_RETRY_INTERVAL_MS;
+    int m_batchMaxBytes = 0;
+    long m_batchMaxDelayMicros = 0;
+    boolean m_columnarResults = false;
 
     /**
      * <p>Configuration for a client with no authentication credentials that will
@@ -313,6 +316,47 @@ public class ClientConfig {
         this.m_maxConnectionRetryIntervalMS = ms;
     }
 
+    /**
+     * <p>Coalesce invocations queued to the same connection into a single network write.
+     * A batch is written as soon as it holds maxBatchBytes of serialized invocations, and an
+     * invocation waits at most maxDelayMicros for other invocations to join its batch.
+     * This trades a few microseconds of latency for higher throughput when many small
+     * invocations are queued asynchronously. Default is off.</p>
+     *
+     * <p>Batch sizes and the latency added by batching are reported per connection by
+     * {@link ClientStats#getAverageBatchSize()} and related methods.</p>
+     *
+     * @param maxBatchBytes Bytes of invocations that cause a batch to be written immediately,
+     * 0 disables batching.
+     * @param maxDelayMicros Maximum time in microseconds an invocation waits to be batched.
+     */
+    public void setInvocationBatching(int maxBatchBytes, long maxDelayMicros) {
+        if (maxBatchBytes < 0) {
+            throw new IllegalArgumentException(
+                    "Max batch bytes must not be negative, " + maxBatchBytes + " was specified");
+        }
+        if (maxBatchBytes > 0 && maxDelayMicros < 1) {
+            throw new IllegalArgumentException(
+                    "Max batching delay must be greater than 0, " + maxDelayMicros + " was specified");
+        }
+        m_batchMaxBytes = maxBatchBytes;
+        m_batchMaxDelayMicros = maxDelayMicros;
+    }
+
+    /**
+     * <p>Ask the server to send procedure results column-major. Large and wide results
+     * are then read through {@link org.voltdb.ClientResponseImpl#getColumnarResults()} without
+     * per row offset computations, and repeated strings are sent once per column.
+     * {@link ClientResponse#getResults()} keeps working and converts the results to
+     * row-major tables on first use. Servers that don't support columnar results
+     * ignore this. Default is off.</p>
+     *
+     * @param columnar Whether results should be sent column-major.
+     */
+    public void setColumnarResults(boolean columnar) {
+        m_columnarResults = columnar;
+    }
+
     /**
      * <p>Set the target latency for the Auto Tune feature. Note this represents internal
      * latency as reported by the server(s), not round-trip latency measured by the
@@ -17,11 +17,16 @@
 
 package org.voltdb.client;
 
+import org.HdrHistogram_voltpatches.Histogram;
+
 class ClientIOStats {
 
     long m_connectionId;
     long m_bytesSent;
     long m_bytesReceived;
+    // only set when invocation batching is enabled
+    Histogram m_batchSizes;
+    Histogram m_batchDelays;
 
     ClientIOStats(long connectionId, long bytesSent, long bytesReceived) {
         m_connectionId = connectionId;
@@ -37,6 +42,8 @@ class ClientIOStats {
         ClientIOStats retval = new ClientIOStats(older.m_connectionId,
                                                  newer.m_bytesSent - older.m_bytesSent,
                                                  newer.m_bytesReceived - older.m_bytesReceived);
+        retval.m_batchSizes = ClientStats.diffHistograms(newer.m_batchSizes, older.m_batchSizes);
+        retval.m_batchDelays = ClientStats.diffHistograms(newer.m_batchDelays, older.m_batchDelays);
         return retval;
     }
 
@@ -45,6 +52,9 @@ class ClientIOStats {
      */
     @Override
     protected Object clone() {
-        return new ClientIOStats(m_connectionId, m_bytesSent, m_bytesReceived);
+        ClientIOStats retval = new ClientIOStats(m_connectionId, m_bytesSent, m_bytesReceived);
+        retval.m_batchSizes = ClientStats.copyHistogram(m_batchSizes);
+        retval.m_batchDelays = ClientStats.copyHistogram(m_batchDelays);
+        return retval;
     }
 }
@@ -102,8 +102,11 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
                 config.m_procedureCallTimeoutNanos,
                 config.m_connectionResponseTimeoutMS,
                 config.m_useClientAffinity,
-                config.m_subject);
+                config.m_subject,
+                config.m_batchMaxBytes,
+                config.m_batchMaxDelayMicros);
         m_distributer.addClientStatusListener(m_listener);
+        m_columnarResults = config.m_columnarResults;
         String username = config.m_username;
         if (config.m_subject != null) {
             username = config.m_subject.getPrincipals().iterator().next().getName();
@@ -258,6 +261,7 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
                     " without deadlocking the client library");
         }
 
+        invocation.setColumnarResults(m_columnarResults);
         m_distributer.queue(
                 invocation,
                 cb,
@@ -381,6 +385,7 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
         }
 
         final long nowNanos = System.nanoTime();
+        invocation.setColumnarResults(m_columnarResults);
 
         //Blessed threads (the ones that invoke callbacks) are not subject to backpressure
         boolean isBlessed = m_blessedThreadIds.contains(Thread.currentThread().getId());
@@ -615,6 +620,9 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
 
     private boolean m_blockingQueue = true;
 
+    // Ask for column-major procedure results
+    private final boolean m_columnarResults;
+
     private final ReconnectStatusListener m_reconnectStatusListener;
 
     @Override
@@ -739,6 +747,11 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
 
     }
 
+    //Hidden method to find the partition an invocation is routed to, -1 if it isn't routed by partition
+    public long getRoutedPartition(String procName, Object... parameters) {
+        return m_distributer.getRoutedPartition(procName, parameters);
+    }
+
     public HashinatorLiteType getHashinatorType() {
         return m_distributer.getHashinatorType();
     }
@@ -75,6 +75,11 @@ public class ClientStats {
     long m_bytesSent;
     long m_bytesReceived;
 
+    // invocations per batch and microseconds added by batching, only recorded
+    // per connection when invocation batching is enabled, null otherwise
+    Histogram m_batchSizeHistogram;
+    Histogram m_batchDelayHistogram;
+
     private static final long LOWEST_TRACKABLE = 50;
     private static final long HIGHEST_TRACKABLE = 10L * (1000L * 1000L);
     private static final int SIGNIFICANT_VALUE_DIGITS = 2;
@@ -117,6 +122,29 @@ public class ClientStats {
         m_latencyHistogram.reestablishTotalCount();
         m_bytesSent = other.m_bytesSent;
         m_bytesReceived = other.m_bytesReceived;
+        m_batchSizeHistogram = copyHistogram(other.m_batchSizeHistogram);
+        m_batchDelayHistogram = copyHistogram(other.m_batchDelayHistogram);
+    }
+
+    static Histogram copyHistogram(Histogram histogram) {
+        if (histogram == null) return null;
+        final Histogram copy = histogram.copy();
+        copy.reestablishTotalCount();
+        return copy;
+    }
+
+    static Histogram diffHistograms(Histogram newer, Histogram older) {
+        if (newer == null) return null;
+        if (older == null) return copyHistogram(newer);
+        return Histogram.diff(newer, older);
+    }
+
+    private static Histogram addHistograms(Histogram histogram, Histogram other) {
+        if (other == null) return histogram;
+        if (histogram == null) return copyHistogram(other);
+        histogram.add(other);
+        histogram.reestablishTotalCount();
+        return histogram;
     }
 
     static ClientStats diff(ClientStats newer, ClientStats older) {
@@ -148,6 +176,9 @@ public class ClientStats {
         retval.m_bytesSent = newer.m_bytesSent - older.m_bytesSent;
         retval.m_bytesReceived = newer.m_bytesReceived - older.m_bytesReceived;
 
+        retval.m_batchSizeHistogram = diffHistograms(newer.m_batchSizeHistogram, older.m_batchSizeHistogram);
+        retval.m_batchDelayHistogram = diffHistograms(newer.m_batchDelayHistogram, older.m_batchDelayHistogram);
+
         return retval;
     }
 
@@ -196,6 +227,9 @@ public class ClientStats {
 
         m_bytesSent += other.m_bytesSent;
         m_bytesReceived += other.m_bytesReceived;
+
+        m_batchSizeHistogram = addHistograms(m_batchSizeHistogram, other.m_batchSizeHistogram);
+        m_batchDelayHistogram = addHistograms(m_batchDelayHistogram, other.m_batchDelayHistogram);
     }
 
     void update(long roundTripTimeNanos, int clusterRoundTripTime, boolean abort, boolean error, boolean timeout) {
@@ -452,6 +486,62 @@ public class ClientStats {
         return m_bytesReceived;
     }
 
+    /**
+     * Return the number of batched network writes made for the time period covered
+     * by this stats instance. Only recorded for connection or global statistics
+     * when invocation batching is enabled with
+     * {@link ClientConfig#setInvocationBatching(int, long)}.
+     *
+     * @return The number of batches written or 0 if batching is not enabled.
+     */
+    public long getBatchesWritten() {
+        if (m_batchSizeHistogram == null) return 0;
+        return m_batchSizeHistogram.getHistogramData().getTotalCount();
+    }
+
+    /**
+     * Get the average number of invocations written per batch for the time
+     * period covered by this stats instance.
+     *
+     * @return Average invocations per batch or 0 if batching is not enabled.
+     */
+    public double getAverageBatchSize() {
+        if (m_batchSizeHistogram == null) return 0;
+        final HistogramData data = m_batchSizeHistogram.getHistogramData();
+        if (data.getTotalCount() == 0) return 0;
+        return data.getMean();
+    }
+
+    /**
+     * <p>Estimate the k-percentile of the number of invocations written per batch
+     * for the time period covered by this stats instance.</p>
+     *
+     * @param percentile A floating point number between 0.0 and 1.0.
+     * @return An estimate of the k-percentile batch size or 0 if batching is not enabled.
+     */
+    public long kPercentileBatchSize(double percentile) {
+        if (m_batchSizeHistogram == null) return 0;
+        final HistogramData data = m_batchSizeHistogram.getHistogramData();
+        if (data.getTotalCount() == 0) return 0;
+        return data.getValueAtPercentile(Math.max(0.0, percentile) * 100.0);
+    }
+
+    /**
+     * <p>Estimate the k-percentile of the latency added by batching for the time period
+     * covered by this stats instance. This is how long the oldest invocation in a batch
+     * waited for the batch to be written.</p>
+     *
+     * @param percentile A floating point number between 0.0 and 1.0.
+     * @return An estimate of the k-percentile added latency in microseconds or 0 if
+     * batching is not enabled.
+     */
+    public long kPercentileBatchingDelayMicros(double percentile) {
+        if (m_batchDelayHistogram == null) return 0;
+        final HistogramData data = m_batchDelayHistogram.getHistogramData();
+        if (data.getTotalCount() == 0) return 0;
+        return data.getValueAtPercentile(Math.max(0.0, percentile) * 100.0);
+    }
+
     /**
      * <p>Using the latency bucketing statistics gathered by the client, estimate
      * the k-percentile latency value for the time period covered by this stats
@@ -160,6 +160,8 @@ public class ClientStatsContext {
             if (cios != null) {
                 cs.m_bytesReceived = cios.m_bytesReceived;
                 cs.m_bytesSent = cios.m_bytesSent;
+                cs.m_batchSizeHistogram = cios.m_batchSizes;
+                cs.m_batchDelayHistogram = cios.m_batchDelays;
             }
             retval.put(e.getKey(), cs);
         }
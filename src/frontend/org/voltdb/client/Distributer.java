@@ -31,10 +31,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -48,6 +47,7 @@ import com.google_voltpatches.common.collect.ImmutableList;
 
 import jsr166y.ThreadLocalRandom;
 
+import org.HdrHistogram_voltpatches.Histogram;
 import org.cliffc_voltpatches.high_scale_lib.NonBlockingHashMap;
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
@@ -60,6 +60,7 @@ import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.Pair;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltTypeException;
 import org.voltdb.client.ClientStatusListenerExt.DisconnectCause;
 import org.voltdb.client.HashinatorLite.HashinatorLiteType;
 import org.voltdb.common.Constants;
@@ -76,6 +77,11 @@ import com.google_voltpatches.common.collect.ImmutableList;
 class Distributer {
 
     static int RESUBSCRIPTION_DELAY_MS = Integer.getInteger("RESUBSCRIPTION_DELAY_MS", 10000);
+    // slots in the per connection table of outstanding calls, calls beyond it still work but cost more
+    static final int CALLBACK_TABLE_SIZE = Integer.getInteger("CLIENT_CALLBACK_TABLE_SIZE", 8192);
+    // range of the batching histograms, larger values are recorded as the maximum
+    static final int MAX_TRACKED_BATCH_SIZE = 100000;
+    static final long MAX_TRACKED_BATCH_DELAY_MICROS = TimeUnit.SECONDS.toMicros(10);
     static final long PING_HANDLE = Long.MAX_VALUE;
     public static final Long ASYNC_TOPO_HANDLE = PING_HANDLE - 1;
     static final long USE_DEFAULT_TIMEOUT = 0;
@@ -125,6 +131,13 @@ class Distributer {
     private final long m_procedureCallTimeoutNanos;
     private static final long MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS = 30 * 60 * 1000; // 30 minutes
     private final long m_connectionResponseTimeoutNanos;
+
+    /*
+     * When maxBatchBytes is > 0 invocations to the same connection are coalesced into a single
+     * write of up to that many bytes, an invocation waits at most m_batchMaxDelayNanos for company
+     */
+    private final int m_batchMaxBytes;
+    private final long m_batchMaxDelayNanos;
     private final Map<Integer, ClientAffinityStats> m_clientAffinityStats =
         new HashMap<Integer, ClientAffinityStats>();
 
@@ -261,16 +274,10 @@ class Distributer {
         @Override
         public void run() {
             try {
-                // make a threadsafe copy of all connections
-                ArrayList<NodeConnection> connections = new ArrayList<NodeConnection>();
-                synchronized (Distributer.this) {
-                    connections.addAll(m_connections);
-                }
-
                 final long nowNanos = System.nanoTime();
 
-                // for each connection
-                for (final NodeConnection c : connections) {
+                // for each connection, m_connections is copy on write so this needs no lock
+                for (final NodeConnection c : m_connections) {
                     // check for connection age
                     final long sinceLastResponse = Math.max(1, nowNanos - c.m_lastResponseTimeNanos);
 
@@ -287,31 +294,40 @@ class Distributer {
                         c.sendPing();
                     }
 
-                    // for each outstanding procedure
-                    for (final Map.Entry<Long, CallbackBookeeping> e : c.m_callbacks.entrySet()) {
-                        final long handle = e.getKey();
-                        final CallbackBookeeping cb = e.getValue();
-
-                        // if the timeout is expired, call the callback and remove the
-                        // bookeeping data
-                        final long deltaNanos = Math.max(1, nowNanos - cb.timestampNanos);
-                        if (deltaNanos > cb.procedureTimeoutNanos) {
-
-                            //For expected long operations don't use the default timeout
-                            //unless it is > MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS
-                            final boolean isLongOp = isLongOp(cb.name);
-                            if (isLongOp && (deltaNanos < TimeUnit.MILLISECONDS.toNanos(MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS))) {
-                                continue;
-                            }
-
-                            c.handleTimedoutCallback(handle, nowNanos);
+                    // for each outstanding procedure, one slot at a time while
+                    // other threads keep adding and completing calls
+                    final CallbackTable callbacks = c.m_callbacks;
+                    for (int ii = 0; ii < callbacks.capacity(); ii++) {
+                        final CallbackBookeeping cb = callbacks.slot(ii);
+                        if (cb != null) {
+                            expireIfTimedOut(c, cb, nowNanos);
                         }
                     }
+                    for (final CallbackBookeeping cb : callbacks.overflow()) {
+                        expireIfTimedOut(c, cb, nowNanos);
+                    }
                 }
             } catch (Throwable t) {
                 t.printStackTrace();
             }
         }
+
+        private void expireIfTimedOut(NodeConnection c, CallbackBookeeping cb, long nowNanos) {
+            // if the timeout is expired, call the callback and remove the
+            // bookeeping data
+            final long deltaNanos = Math.max(1, nowNanos - cb.timestampNanos);
+            if (deltaNanos > cb.procedureTimeoutNanos) {
+
+                //For expected long operations don't use the default timeout
+                //unless it is > MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS
+                final boolean isLongOp = isLongOp(cb.name);
+                if (isLongOp && (deltaNanos < TimeUnit.MILLISECONDS.toNanos(MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS))) {
+                    return;
+                }
+
+                c.handleTimedoutCallback(cb.handle, nowNanos);
+            }
+        }
     }
 
     /*
@@ -330,15 +346,17 @@ class Distributer {
         return false;
     }
 
-    class CallbackBookeeping {
-        public CallbackBookeeping(long timestampNanos, ProcedureCallback callback, String name, long timeoutNanos, boolean ignoreBackpressure) {
+    static class CallbackBookeeping {
+        public CallbackBookeeping(long handle, long timestampNanos, ProcedureCallback callback, String name, long timeoutNanos, boolean ignoreBackpressure) {
             assert(callback != null);
+            this.handle = handle;
             this.timestampNanos = timestampNanos;
             this.callback = callback;
             this.name = name;
             this.procedureTimeoutNanos = timeoutNanos;
             this.ignoreBackpressure = ignoreBackpressure;
         }
+        final long handle;
         long timestampNanos;
         //Timeout in ms 0 means use conenction specified procedure timeoutMS.
         final long procedureTimeoutNanos;
@@ -349,7 +367,16 @@ class Distributer {
 
     class NodeConnection extends VoltProtocolHandler implements org.voltcore.network.QueueMonitor {
         private final AtomicInteger m_callbacksToInvoke = new AtomicInteger(0);
-        private final ConcurrentMap<Long, CallbackBookeeping> m_callbacks = new ConcurrentHashMap<Long, CallbackBookeeping>();
+        private final CallbackTable m_callbacks = new CallbackTable(CALLBACK_TABLE_SIZE);
+
+        // invocations waiting to be written together when batching, guarded by m_batch
+        private final ArrayList<ByteBuffer> m_batch = new ArrayList<ByteBuffer>();
+        private int m_batchBytes = 0;
+        private long m_batchStartNanos = 0;
+        private boolean m_batchFlushScheduled = false;
+        // invocations per batch and microseconds the oldest invocation in a batch waited
+        private final Histogram m_batchSizes = new Histogram(MAX_TRACKED_BATCH_SIZE, 2);
+        private final Histogram m_batchDelays = new Histogram(MAX_TRACKED_BATCH_DELAY_MICROS, 2);
         private final NonBlockingHashMap<String, ClientStats> m_stats = new NonBlockingHashMap<String, ClientStats>();
         private Connection m_connection;
         private volatile boolean m_isConnected = true;
@@ -405,7 +432,7 @@ class Distributer {
             assert(callbacksToInvoke >= 0);
 
             //Optimistically submit the task
-            m_callbacks.put(handle, new CallbackBookeeping(nowNanos, callback, name, timeoutNanos, ignoreBackpressure));
+            m_callbacks.put(new CallbackBookeeping(handle, nowNanos, callback, name, timeoutNanos, ignoreBackpressure));
 
             //Schedule the timeout to fire relative to the amount of time
             //spent getting to this point. Might fire immediately
@@ -439,11 +466,81 @@ class Distributer {
                 //for bookkeeping, but it feels dishonest to call this here
                 m_rateLimiter.transactionResponseReceived(nowNanos, -1, ignoreBackpressure);
                 return;
+            } else if (m_batchMaxBytes > 0) {
+                batchInvocation(c);
             } else {
                 m_connection.writeStream().enqueue(c);
             }
         }
 
+        /*
+         * Add an invocation to the current batch. The batch is written by the caller
+         * that fills it or by a task scheduled when the batch is started, whichever is first.
+         * The write happens under the batch lock so invocations from one thread stay in order.
+         */
+        private void batchInvocation(ByteBuffer c) {
+            boolean scheduleFlush = false;
+            synchronized (m_batch) {
+                if (m_batch.isEmpty()) {
+                    m_batchStartNanos = System.nanoTime();
+                    scheduleFlush = !m_batchFlushScheduled;
+                    m_batchFlushScheduled = true;
+                }
+                m_batch.add(c);
+                m_batchBytes += c.remaining();
+                if (m_batchBytes >= m_batchMaxBytes) {
+                    flushBatch();
+                }
+            }
+
+            if (scheduleFlush) {
+                try {
+                    m_ex.schedule(m_batchFlushTask, m_batchMaxDelayNanos, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    //Shutting down, nothing will come along to write the batch
+                    m_batchFlushTask.run();
+                }
+            }
+        }
+
+        /*
+         * Writes whatever batch is pending when it fires. That may be a younger batch than the
+         * one that scheduled it if that batch filled up first, which only cuts the delay short.
+         */
+        private final Runnable m_batchFlushTask = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (m_batch) {
+                    m_batchFlushScheduled = false;
+                    flushBatch();
+                }
+            }
+        };
+
+        private void flushBatch() {
+            assert(Thread.holdsLock(m_batch));
+            if (m_batch.isEmpty()) return;
+
+            final int invocations = m_batch.size();
+            m_connection.writeStream().enqueue(m_batch.toArray(new ByteBuffer[invocations]));
+            m_batchSizes.recordValue(Math.min(invocations, MAX_TRACKED_BATCH_SIZE));
+            m_batchDelays.recordValue(Math.min(
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - m_batchStartNanos),
+                    MAX_TRACKED_BATCH_DELAY_MICROS));
+            m_batch.clear();
+            m_batchBytes = 0;
+        }
+
+        /*
+         * Copies of the batching histograms, null when batching is disabled
+         */
+        Histogram[] getBatchingStats() {
+            if (m_batchMaxBytes <= 0) return null;
+            synchronized (m_batch) {
+                return new Histogram[] { m_batchSizes.copy(), m_batchDelays.copy() };
+            }
+        }
+
         /*
          * For high precision timeouts, submit a discrete task to a scheduled
          * executor service to time out the transaction. The timeout task
@@ -750,23 +847,32 @@ class Distributer {
                         ClientResponse.CONNECTION_LOST, new VoltTable[0],
                         "Connection to database host (" + m_connection.getHostnameAndIPAndPort() +
                 ") was lost before a response was received");
-            for (Map.Entry<Long, CallbackBookeeping> e : m_callbacks.entrySet()) {
-                //Check for race with other threads
-                if (m_callbacks.remove(e.getKey()) == null) continue;
-                final CallbackBookeeping callBk = e.getValue();
-                try {
-                    callBk.callback.clientCallback(r);
-                }
-                catch (Exception ex) {
-                    uncaughtException(callBk.callback, r, ex);
+            for (int ii = 0; ii < m_callbacks.capacity(); ii++) {
+                final CallbackBookeeping callBk = m_callbacks.slot(ii);
+                if (callBk != null) {
+                    failCallback(callBk, r);
                 }
+            }
+            for (CallbackBookeeping callBk : m_callbacks.overflow()) {
+                failCallback(callBk, r);
+            }
+        }
 
-                //Drain needs to know when all callbacks have been invoked
-                final int remainingToInvoke = m_callbacksToInvoke.decrementAndGet();
-                assert(remainingToInvoke >= 0);
-
-                m_rateLimiter.transactionResponseReceived(System.nanoTime(), -1, callBk.ignoreBackpressure);
+        private void failCallback(CallbackBookeeping callBk, ClientResponse r) {
+            //Check for race with other threads
+            if (m_callbacks.remove(callBk.handle) == null) return;
+            try {
+                callBk.callback.clientCallback(r);
             }
+            catch (Exception ex) {
+                uncaughtException(callBk.callback, r, ex);
+            }
+
+            //Drain needs to know when all callbacks have been invoked
+            final int remainingToInvoke = m_callbacksToInvoke.decrementAndGet();
+            assert(remainingToInvoke >= 0);
+
+            m_rateLimiter.transactionResponseReceived(System.nanoTime(), -1, callBk.ignoreBackpressure);
         }
 
         @Override
@@ -851,7 +957,21 @@ class Distributer {
             long connectionResponseTimeoutMS,
             boolean useClientAffinity,
             Subject subject) {
+        this(useMultipleThreads, procedureCallTimeoutNanos, connectionResponseTimeoutMS,
+                useClientAffinity, subject, 0, 0);
+    }
+
+    Distributer(
+            boolean useMultipleThreads,
+            long procedureCallTimeoutNanos,
+            long connectionResponseTimeoutMS,
+            boolean useClientAffinity,
+            Subject subject,
+            int batchMaxBytes,
+            long batchMaxDelayMicros) {
         m_useMultipleThreads = useMultipleThreads;
+        m_batchMaxBytes = batchMaxBytes;
+        m_batchMaxDelayNanos = TimeUnit.MICROSECONDS.toNanos(batchMaxDelayMicros);
         m_network = new VoltNetworkPool(
                 m_useMultipleThreads ? Math.max(1, CoreUtils.availableProcessors() / 4 ) : 1,
                 1, null, "Client");
@@ -1216,6 +1336,11 @@ class Distributer {
             long write = perConnIOStats.getSecond()[2];
 
             ClientIOStats cios = new ClientIOStats(conn.connectionId(), read, write);
+            final Histogram batchingStats[] = conn.getBatchingStats();
+            if (batchingStats != null) {
+                cios.m_batchSizes = batchingStats[0];
+                cios.m_batchDelays = batchingStats[1];
+            }
             retval.put(conn.connectionId(), cios);
         }
 
@@ -1361,6 +1486,39 @@ class Distributer {
         return m_hashinator.getHashedPartitionForParameter(typeValue, value);
     }
 
+    /**
+     * The partition whose master an invocation of the procedure will be sent to by client affinity.
+     * Invocations routed to the same partition are sent on the same connection and execute in order.
+     *
+     * @return the partition, or -1 if the invocation isn't routed by partition because the procedure
+     * is unknown or multi-partition, the partition master isn't connected, client affinity is off or
+     * the hashinator isn't initialized
+     */
+    public synchronized long getRoutedPartition(String procName, Object... parameters) {
+        if (!m_useClientAffinity || m_hashinator == null) {
+            return -1;
+        }
+        final Procedure procedureInfo = m_procedureInfo.get(procName);
+        if (procedureInfo == null || procedureInfo.multiPart ||
+                procedureInfo.partitionParameter >= parameters.length) {
+            return -1;
+        }
+        final int partition;
+        try {
+            partition = m_hashinator.getHashedPartitionForParameter(
+                    procedureInfo.partitionParameterType,
+                    parameters[procedureInfo.partitionParameter]);
+        } catch (VoltTypeException e) {
+            // let the invocation fail with the proper error
+            return -1;
+        }
+        final NodeConnection cxn = m_partitionMasters.get(partition);
+        if (cxn == null || !cxn.m_isConnected) {
+            return -1;
+        }
+        return partition;
+    }
+
     public HashinatorLiteType getHashinatorType() {
         if (m_hashinator == null) {
             return HashinatorLiteType.LEGACY;
@@ -38,6 +38,7 @@ public class ProcedureInvocation {
     private final long m_originalTxnId;
     private final long m_originalUniqueId;
     private final ProcedureInvocationType m_type;
+    private boolean m_columnarResults = false;
 
     public ProcedureInvocation(long handle, String procName, Object... parameters) {
         this(-1, -1, handle, procName, parameters);
@@ -62,6 +63,13 @@ public class ProcedureInvocation {
         }
     }
 
+    /**
+     * Ask for the results to be sent column-major, carried in the version byte
+     */
+    void setColumnarResults(boolean columnar) {
+        m_columnarResults = columnar;
+    }
+
     /** return the clientHandle value */
     long getHandle() {
         return m_clientHandle;
@@ -90,7 +98,11 @@ public class ProcedureInvocation {
     }
 
     public ByteBuffer flattenToBuffer(ByteBuffer buf) throws IOException {
-        buf.put(m_type.getValue());//Version
+        byte version = m_type.getValue();
+        if (m_columnarResults) {
+            version |= ProcedureInvocationType.COLUMNAR_RESULTS_FLAG;
+        }
+        buf.put(version);//Version
         if (m_type == ProcedureInvocationType.REPLICATED) {
             buf.putLong(m_originalTxnId);
             buf.putLong(m_originalUniqueId);
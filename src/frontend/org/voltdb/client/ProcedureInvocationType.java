@@ -30,6 +30,12 @@ public enum ProcedureInvocationType {
     ORIGINAL((byte) 0),
     REPLICATED ((byte) (1 << 7));
 
+    /**
+     * Also carried in the version byte, the client wants procedure results
+     * serialized column-major. Not part of the type.
+     */
+    public static final byte COLUMNAR_RESULTS_FLAG = 1 << 6;
+
     private final byte value;
 
     private ProcedureInvocationType(byte val) {
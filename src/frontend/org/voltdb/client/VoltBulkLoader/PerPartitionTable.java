@@ -26,6 +26,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -49,6 +50,11 @@ import org.voltdb.client.ProcedureCallback;
 public class PerPartitionTable {
     private static final VoltLogger loaderLog = new VoltLogger("LOADER");
 
+    // Batches a partition may have in flight. A partition that falls behind stops its own
+    // submissions before it fills the client's queue and stalls the other partitions.
+    static final int MAX_OUTSTANDING_BATCHES =
+            Math.max(1, Integer.getInteger("BULKLOADER_MAX_OUTSTANDING_BATCHES", 8));
+
     // Client we are tied to
     final ClientImpl m_clientImpl;
     //The index in loader tables and the PartitionProcessor number
@@ -75,6 +81,8 @@ public class PerPartitionTable {
     final String m_procName;
     //Name of table
     final String m_tableName;
+    //Credits for the batches this partition may have in flight, returned when a batch is acked
+    final Semaphore m_batchCredits = new Semaphore(MAX_OUTSTANDING_BATCHES);
 
     // Callback for batch submissions to the Client. A failed request submits the entire
     // batch of rows to m_failedQueue for row by row processing on m_failureProcessor.
@@ -248,24 +256,37 @@ public class PerPartitionTable {
         return new PartitionProcedureCallback(buf);
     }
 
-    private void loadTable(ProcedureCallback callback, VoltTable toSend) throws Exception {
+    private void loadTable(final ProcedureCallback callback, VoltTable toSend) throws Exception {
         if (toSend.getRowCount() <= 0) {
             return;
         }
 
+        m_batchCredits.acquire();
+        final ProcedureCallback creditCallback = new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse response) throws Exception {
+                m_batchCredits.release();
+                callback.clientCallback(response);
+            }
+        };
         try {
+            final boolean queued;
             if (m_isMP) {
-                m_clientImpl.callProcedure(callback, m_procName, m_tableName, toSend);
+                queued = m_clientImpl.callProcedure(creditCallback, m_procName, m_tableName, toSend);
             } else {
                 Object rpartitionParam = HashinatorLite.valueToBytes(toSend.fetchRow(0).get(
                         m_partitionedColumnIndex, m_partitionColumnType));
-                m_clientImpl.callProcedure(callback, m_procName, rpartitionParam, m_tableName, toSend);
+                queued = m_clientImpl.callProcedure(creditCallback, m_procName, rpartitionParam, m_tableName, toSend);
+            }
+            if (!queued) {
+                // no callback will come for it
+                m_batchCredits.release();
             }
         } catch (IOException e) {
             final ClientResponse r = new ClientResponseImpl(
                     ClientResponse.CONNECTION_LOST, new VoltTable[0],
                     "Connection to database was lost");
-            callback.clientCallback(r);
+            creditCallback.clientCallback(r);
         }
         toSend.clearRowData();
     }
@@ -19,14 +19,22 @@ package org.voltdb.compiler;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.voltcore.logging.VoltLogger;
 import org.voltdb.common.Constants;
 import org.voltdb.planner.BoundPlan;
+import org.voltdb.planner.CorePlan;
 import org.voltdb.utils.Encoder;
 
 import com.google_voltpatches.common.cache.Cache;
@@ -43,10 +51,17 @@ import com.google_voltpatches.common.cache.CacheBuilder;
  * statement mapped to core parameterized plans. These parameterized
  * plans need parameter values and sql literals in order to be
  * actually used.
+ *
+ * Lookups don't lock, so any number of planner threads can share the cache.
+ * Literal keys are normalized so statements that only differ in whitespace
+ * share an entry. When a level is full the entries that would be cheapest to
+ * plan again, weighted by how often they were hit, are evicted first.
  */
 public class AdHocCompilerCache implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    private static final VoltLogger hostLog = new VoltLogger("HOST");
+
     //////////////////////////////////////////////////////////////////////////
     // STATIC CODE TO MANAGE CACHE LIFETIMES / GLOBALNESS
     //////////////////////////////////////////////////////////////////////////
@@ -77,27 +92,82 @@ public class AdHocCompilerCache implements Serializable {
     // PER-INSTANCE AWESOMEC CACHING CODE
     //////////////////////////////////////////////////////////////////////////
 
+    // when a level overflows it is trimmed to this fraction of its size,
+    // so eviction runs once per batch of insertions rather than once per insertion
+    static final double EVICTION_TARGET = 0.9;
+
+    /**
+     * A cached value, the tables it depends on and what it cost to produce.
+     */
+    static final class Entry<T> {
+        final T m_value;
+        // upper case names of the tables the plan reads or writes
+        final Set<String> m_tables;
+        // nanoseconds spent producing the value
+        final long m_cost;
+        final AtomicLong m_hits = new AtomicLong();
+
+        Entry(T value, Set<String> tables, long cost) {
+            m_value = value;
+            m_tables = tables;
+            m_cost = Math.max(cost, 1);
+        }
+
+        // what it would take to rebuild the value as often as it was used
+        double weight() {
+            return (double) m_cost * (1 + m_hits.get());
+        }
+    }
+
+    /**
+     * A cache entry with its weight or hits read once. Hits are counted without the
+     * lock, so sorting must compare these snapshots rather than the live counters.
+     */
+    static final class Ranked<T> {
+        final String m_key;
+        final Entry<T> m_entry;
+        final double m_rank;
+
+        Ranked(String key, Entry<T> entry, double rank) {
+            m_key = key;
+            m_entry = entry;
+            m_rank = rank;
+        }
+    }
+
+    private static final Comparator<Ranked<?>> BY_RANK = new Comparator<Ranked<?>>() {
+        @Override
+        public int compare(Ranked<?> o1, Ranked<?> o2) {
+            return Double.compare(o1.m_rank, o2.m_rank);
+        }
+    };
+
     // cache sizes determined at construction time
     final int MAX_LITERAL_ENTRIES;
     final int MAX_CORE_ENTRIES;
 
-    /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    /** cache of normalized literals to full plans */
+    final ConcurrentHashMap<String, Entry<AdHocPlannedStatement>> m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
      *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
+    final ConcurrentHashMap<String, Entry<List<BoundPlan>>> m_coreCache;
 
     // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
+    final AtomicLong m_literalHits = new AtomicLong();
+    final AtomicLong m_literalQueries = new AtomicLong();
     long m_literalInsertions = 0;
     long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
+    final AtomicLong m_planHits = new AtomicLong();
+    final AtomicLong m_planQueries = new AtomicLong();
     long m_planInsertions = 0;
     long m_planEvictions = 0;
 
+    // totals reported through the planner statistics
+    final AtomicLong m_evictions = new AtomicLong();
+    final AtomicLong m_planningTimeSaved = new AtomicLong();
+    long m_retained = 0;
+
     /** {@see this#startPeriodicStatsPrinting() } */
     Timer m_statsTimer = null;
 
@@ -119,35 +189,8 @@ public class AdHocCompilerCache implements Serializable {
         MAX_LITERAL_ENTRIES = maxLiteralEntries;
         MAX_CORE_ENTRIES = maxCoreEntries;
 
-        // an LRU cache map
-        m_literalCache = new LinkedHashMap<String, AdHocPlannedStatement>(MAX_LITERAL_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, AdHocPlannedStatement> eldest) {
-                if (size() > MAX_LITERAL_ENTRIES) {
-                    ++m_literalEvictions;
-                    return true;
-                }
-                return false;
-            }
-        };
-
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
-                }
-                return false;
-            }
-        };
+        m_literalCache = new ConcurrentHashMap<String, Entry<AdHocPlannedStatement>>(MAX_LITERAL_ENTRIES * 2);
+        m_coreCache = new ConcurrentHashMap<String, Entry<List<BoundPlan>>>(MAX_CORE_ENTRIES * 2);
     }
 
     /**
@@ -155,38 +198,92 @@ public class AdHocCompilerCache implements Serializable {
      * Probably shouldn't live past real stats integration.
      */
     synchronized void printStats() {
+        long literalHits = m_literalHits.getAndSet(0);
+        long literalQueries = m_literalQueries.getAndSet(0);
+        long planHits = m_planHits.getAndSet(0);
+        long planQueries = m_planQueries.getAndSet(0);
         String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
+                literalHits, literalQueries, (literalHits * 100.0) / literalQueries,
                 m_literalInsertions, m_literalEvictions);
         String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
+                planHits, planQueries, (planHits * 100.0) / planQueries,
                 m_planInsertions, m_planEvictions);
 
         System.out.print(line1 + line2);
         System.out.flush();
 
         // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
         m_literalInsertions = 0;
         m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
         m_planInsertions = 0;
         m_planEvictions = 0;
     }
 
+    /**
+     * Collapse runs of whitespace outside of quoted strings and identifiers into
+     * a single space and drop leading and trailing whitespace. Line comments are
+     * kept along with the line break that ends them.
+     */
+    static String normalize(String sql) {
+        final int length = sql.length();
+        StringBuilder sb = null;
+        char quote = 0;
+        boolean inComment = false;
+        boolean pendingSpace = false;
+        for (int ii = 0; ii < length; ii++) {
+            final char c = sql.charAt(ii);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            }
+            else if (inComment) {
+                if (c == '\n') {
+                    inComment = false;
+                }
+            }
+            else if (Character.isWhitespace(c)) {
+                if (sb == null) {
+                    sb = new StringBuilder(length);
+                    sb.append(sql, 0, ii);
+                }
+                pendingSpace = true;
+                continue;
+            }
+            else if (c == '\'' || c == '"') {
+                quote = c;
+            }
+            else if (c == '-' && ii + 1 < length && sql.charAt(ii + 1) == '-') {
+                inComment = true;
+            }
+
+            if (sb != null) {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(c);
+            }
+            pendingSpace = false;
+        }
+        if (sb == null) {
+            return sql;
+        }
+        return sb.toString();
+    }
+
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
-        AdHocPlannedStatement retval = m_literalCache.get(sql);
-        if (retval != null) {
-            ++m_literalHits;
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        m_literalQueries.incrementAndGet();
+        Entry<AdHocPlannedStatement> entry = m_literalCache.get(normalize(sql));
+        if (entry == null) {
+            return null;
         }
-        return retval;
+        m_literalHits.incrementAndGet();
+        recordHit(entry);
+        return entry.m_value;
     }
 
     /**
@@ -194,13 +291,32 @@ public class AdHocCompilerCache implements Serializable {
      * SQL statement
      * @return A CorePlan that needs parameter values to run.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
-        List<BoundPlan> retval = m_coreCache.get(parsedToken);
-        if (retval != null) {
-            ++m_planHits;
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        m_planQueries.incrementAndGet();
+        Entry<List<BoundPlan>> entry = m_coreCache.get(parsedToken);
+        if (entry == null) {
+            return null;
         }
-        return retval;
+        m_planHits.incrementAndGet();
+        recordHit(entry);
+        return entry.m_value;
+    }
+
+    private void recordHit(Entry<?> entry) {
+        entry.m_hits.incrementAndGet();
+        m_planningTimeSaved.addAndGet(entry.m_cost);
+    }
+
+    /**
+     * Variant of {@link #put(String, String, AdHocPlannedStatement, String[], Set, long)}
+     * for callers that don't track the tables or the planning time of the plan.
+     */
+    public void put(String sql,
+                    String parsedToken,
+                    AdHocPlannedStatement planIn,
+                    String[] extractedLiterals)
+    {
+        put(sql, parsedToken, planIn, extractedLiterals, null, 0);
     }
 
     /**
@@ -214,11 +330,16 @@ public class AdHocCompilerCache implements Serializable {
      * @param parsedToken       massaged query text, possibly with literals purged
      * @param planIn
      * @param extractedLiterals the basis values for any "bound parameter" restrictions to plan re-use
+     * @param tables            tables the plan reads or writes, null to take them from
+     *                          the parameterized plan already cached for the token
+     * @param planningNanos     time it took to produce the plan
      */
     public synchronized void put(String sql,
                                  String parsedToken,
                                  AdHocPlannedStatement planIn,
-                                 String[] extractedLiterals)
+                                 String[] extractedLiterals,
+                                 Set<String> tables,
+                                 long planningNanos)
     {
         assert(sql != null);
         assert(parsedToken != null);
@@ -232,10 +353,10 @@ public class AdHocCompilerCache implements Serializable {
         BoundPlan matched = null;
         BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings(extractedLiterals));
         // deal with the parameterized plan cache first
-        List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
-        if (boundVariants == null) {
-            boundVariants = new ArrayList<BoundPlan>();
-            m_coreCache.put(parsedToken, boundVariants);
+        Entry<List<BoundPlan>> coreEntry = m_coreCache.get(parsedToken);
+        List<BoundPlan> boundVariants;
+        if (coreEntry == null) {
+            boundVariants = Collections.emptyList();
             // Note that there is an edge case in which more than one plan is getting counted as one
             // "plan insertion". This only happens when two different plans arose from the same parameterized
             // query (token) because one invocation used the correct constants to trigger an expression index and
@@ -244,6 +365,10 @@ public class AdHocCompilerCache implements Serializable {
             // It seems saner to use consistent units when counting insertions vs. evictions.
             ++m_planInsertions;
         } else {
+            boundVariants = coreEntry.m_value;
+            if (tables == null) {
+                tables = coreEntry.m_tables;
+            }
             for (BoundPlan boundPlan : boundVariants) {
                 if (boundPlan.equals(unmatched)) {
                     matched = boundPlan;
@@ -259,21 +384,233 @@ public class AdHocCompilerCache implements Serializable {
                 }
             }
         }
+        if (tables == null) {
+            // nothing known about the plan, it won't survive a catalog change
+            tables = Collections.emptySet();
+        }
         if (matched == null) {
             // Don't count insertions (of possibly repeated tokens) here
             //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-            boundVariants.add(unmatched);
+            // Planner threads iterate lists returned by getWithParsedToken without locking,
+            // so replace the list rather than adding to the shared one.
+            List<BoundPlan> updated = new ArrayList<BoundPlan>(boundVariants.size() + 1);
+            updated.addAll(boundVariants);
+            updated.add(unmatched);
+            Entry<List<BoundPlan>> updatedEntry = new Entry<List<BoundPlan>>(updated, tables,
+                    coreEntry == null ? planningNanos : Math.max(planningNanos, coreEntry.m_cost));
+            if (coreEntry != null) {
+                updatedEntry.m_hits.set(coreEntry.m_hits.get());
+            }
+            m_coreCache.put(parsedToken, updatedEntry);
+            if (m_coreCache.size() > MAX_CORE_ENTRIES) {
+                m_planEvictions += evict(m_coreCache, MAX_CORE_ENTRIES);
+            }
         }
 
-        // then deal with the
-        AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
+        // then deal with the literal cache
+        String key = normalize(sql);
+        Entry<AdHocPlannedStatement> cachedPlan = m_literalCache.get(key);
         if (cachedPlan == null) {
-            m_literalCache.put(sql, plan);
+            m_literalCache.put(key, new Entry<AdHocPlannedStatement>(plan, tables, planningNanos));
             ++m_literalInsertions;
+            if (m_literalCache.size() > MAX_LITERAL_ENTRIES) {
+                m_literalEvictions += evict(m_literalCache, MAX_LITERAL_ENTRIES);
+            }
+        }
+    }
+
+    /**
+     * Trim a cache level below its limit by dropping the entries with the least
+     * planning time behind them, weighted by their hits. Hits of the survivors are
+     * halved so entries that were only popular in the past age out eventually.
+     * Called with the lock held, so only one thread evicts at a time.
+     *
+     * @return the number of evicted entries
+     */
+    private <T> int evict(Map<String, Entry<T>> level, int maxEntries) {
+        final int target = (int) (maxEntries * EVICTION_TARGET);
+        List<Ranked<T>> candidates = new ArrayList<Ranked<T>>(level.size());
+        for (Map.Entry<String, Entry<T>> entry : level.entrySet()) {
+            candidates.add(new Ranked<T>(entry.getKey(), entry.getValue(), entry.getValue().weight()));
+        }
+        Collections.sort(candidates, BY_RANK);
+
+        int evicted = 0;
+        for (Ranked<T> candidate : candidates) {
+            if (level.size() <= target) {
+                AtomicLong hits = candidate.m_entry.m_hits;
+                hits.set(hits.get() / 2);
+            }
+            else if (level.remove(candidate.m_key, candidate.m_entry)) {
+                evicted++;
+            }
+        }
+        m_evictions.addAndGet(evicted);
+        return evicted;
+    }
+
+    /**
+     * Seed this cache, built for a new catalog, with the plans of the previous
+     * catalog's cache that only touch tables the catalog change left alone.
+     *
+     * @param previous      cache of the catalog being replaced
+     * @param catalogHash   hash of the catalog this cache is for
+     * @param diffCommands  catalog commands that turn the previous catalog into the new one
+     * @return the number of plans carried over
+     */
+    public synchronized int retainFrom(AdHocCompilerCache previous, byte[] catalogHash, String diffCommands) {
+        if (previous == null || previous == this) {
+            return 0;
+        }
+        Set<String> changedTables = changedTables(diffCommands);
+        if (changedTables == null) {
+            return 0;
+        }
+
+        // literal and parameterized entries share their core plans, keep sharing the copies
+        Map<CorePlan, CorePlan> copies = new IdentityHashMap<CorePlan, CorePlan>();
+        int retained = 0;
+        for (Map.Entry<String, Entry<List<BoundPlan>>> e : previous.m_coreCache.entrySet()) {
+            Entry<List<BoundPlan>> entry = e.getValue();
+            if (!canRetain(entry, changedTables) || m_coreCache.size() >= MAX_CORE_ENTRIES) {
+                continue;
+            }
+            List<BoundPlan> variants = new ArrayList<BoundPlan>(entry.m_value.size());
+            for (BoundPlan variant : entry.m_value) {
+                variants.add(new BoundPlan(copyCore(copies, variant.m_core, catalogHash), variant.m_constants));
+            }
+            Entry<List<BoundPlan>> copy = new Entry<List<BoundPlan>>(variants, entry.m_tables, entry.m_cost);
+            copy.m_hits.set(entry.m_hits.get());
+            if (m_coreCache.putIfAbsent(e.getKey(), copy) == null) {
+                retained++;
+            }
+        }
+        for (Map.Entry<String, Entry<AdHocPlannedStatement>> e : previous.m_literalCache.entrySet()) {
+            Entry<AdHocPlannedStatement> entry = e.getValue();
+            if (!canRetain(entry, changedTables) || m_literalCache.size() >= MAX_LITERAL_ENTRIES) {
+                continue;
+            }
+            AdHocPlannedStatement plan = entry.m_value;
+            AdHocPlannedStatement planCopy =
+                    new AdHocPlannedStatement(plan, copyCore(copies, plan.core, catalogHash));
+            planCopy.setBoundConstants(plan.parameterBindings(null));
+            Entry<AdHocPlannedStatement> copy = new Entry<AdHocPlannedStatement>(planCopy, entry.m_tables, entry.m_cost);
+            copy.m_hits.set(entry.m_hits.get());
+            if (m_literalCache.putIfAbsent(e.getKey(), copy) == null) {
+                retained++;
+            }
+        }
+        m_retained += retained;
+        return retained;
+    }
+
+    private static boolean canRetain(Entry<?> entry, Set<String> changedTables) {
+        if (entry.m_tables.isEmpty()) {
+            return false;
+        }
+        for (String table : entry.m_tables) {
+            if (changedTables.contains(table)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CorePlan copyCore(Map<CorePlan, CorePlan> copies, CorePlan core, byte[] catalogHash) {
+        CorePlan copy = copies.get(core);
+        if (copy == null) {
+            copy = core.copyForCatalogHash(catalogHash);
+            copies.put(core, copy);
+        }
+        return copy;
+    }
+
+    private static final String DATABASE_PATH = "/clusters#cluster/databases#database";
+
+    /**
+     * Find the tables a set of catalog diff commands adds, drops or modifies.
+     *
+     * @return upper case table names, or null if the commands change something
+     * other than tables that cached plans may depend on
+     */
+    static Set<String> changedTables(String diffCommands) {
+        Set<String> tables = new HashSet<String>();
+        String prevRef = null;
+        for (String line : diffCommands.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            // <command> <ref> <arg1> <arg2>
+            String[] parts = line.split(" ", 4);
+            if (parts.length < 3) {
+                hostLog.debug("Unrecognized catalog command, dropping cached ad hoc plans: " + line);
+                return null;
+            }
+            String ref = parts[1];
+            if (ref.startsWith("$")) {
+                ref = prevRef;
+            }
+            else {
+                prevRef = ref;
+            }
+            if (ref == null) {
+                return null;
+            }
+            String path = ref;
+            if (line.charAt(0) != 's') {
+                // add and delete name the child of the reference
+                if (parts.length < 4) {
+                    return null;
+                }
+                path = ref + "/" + parts[2] + "#" + parts[3];
+            }
+
+            if (!path.startsWith(DATABASE_PATH)) {
+                // cluster and deployment settings don't change plans
+                continue;
+            }
+            if (path.length() == DATABASE_PATH.length()) {
+                // settings of the database itself, like the schema text
+                continue;
+            }
+            String child = path.substring(DATABASE_PATH.length() + 1);
+            int end = child.indexOf('/');
+            if (end >= 0) {
+                child = child.substring(0, end);
+            }
+            if (child.startsWith("tables#")) {
+                tables.add(child.substring("tables#".length()).toUpperCase());
+            }
+            else if (!child.startsWith("procedures#") &&
+                     !child.startsWith("users#") &&
+                     !child.startsWith("groups#") &&
+                     !child.startsWith("snapshotSchedule#")) {
+                return null;
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * @param limit maximum number of statements to return
+     * @return the SQL text of the most frequently hit literal entries, most hits first
+     */
+    public List<String> getHotStatements(int limit) {
+        List<Ranked<AdHocPlannedStatement>> entries = new ArrayList<Ranked<AdHocPlannedStatement>>();
+        for (Map.Entry<String, Entry<AdHocPlannedStatement>> entry : m_literalCache.entrySet()) {
+            entries.add(new Ranked<AdHocPlannedStatement>(entry.getKey(), entry.getValue(),
+                                                          entry.getValue().m_hits.get()));
         }
-        else {
-            assert(cachedPlan.equals(plan));
+        Collections.sort(entries, Collections.reverseOrder(BY_RANK));
+        List<String> statements = new ArrayList<String>(Math.min(limit, entries.size()));
+        for (Ranked<AdHocPlannedStatement> entry : entries) {
+            if (statements.size() >= limit || entry.m_rank == 0) {
+                break;
+            }
+            statements.add(entry.m_key);
         }
+        return statements;
     }
 
     /**
@@ -307,4 +644,26 @@ public class AdHocCompilerCache implements Serializable {
     public int getCoreCacheSize() {
         return m_coreCache.size();
     }
+
+    /**
+     * @return the number of entries evicted to make room for others
+     */
+    public long getEvictions() {
+        return m_evictions.get();
+    }
+
+    /**
+     * @return nanoseconds of planning avoided by cache hits, estimated
+     * from the time it took to plan the entries that were hit
+     */
+    public long getPlanningTimeSaved() {
+        return m_planningTimeSaved.get();
+    }
+
+    /**
+     * @return the number of entries carried over from the previous catalog's cache
+     */
+    public synchronized long getRetained() {
+        return m_retained;
+    }
 }
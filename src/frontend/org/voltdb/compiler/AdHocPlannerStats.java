@@ -0,0 +1,163 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Load of the ad hoc planner pool: its threads, queued work and the number
+ * and latency of the statements it planned. Planning times are in nanoseconds.
+ */
+public class AdHocPlannerStats extends StatsSource {
+
+    private final AsyncCompilerAgent m_agent;
+
+    private boolean m_interval = false;
+
+    private long m_statements = 0;
+    private long m_failures = 0;
+    private long m_rejected = 0;
+    private long m_totalPlanningTime = 0;
+    private long m_minPlanningTime = Long.MAX_VALUE;
+    private long m_maxPlanningTime = Long.MIN_VALUE;
+
+    private long m_lastStatements = 0;
+    private long m_lastFailures = 0;
+    private long m_lastRejected = 0;
+    private long m_lastTotalPlanningTime = 0;
+    private long m_lastMinPlanningTime = Long.MAX_VALUE;
+    private long m_lastMaxPlanningTime = Long.MIN_VALUE;
+
+    AdHocPlannerStats(AsyncCompilerAgent agent) {
+        super(false);
+        m_agent = agent;
+    }
+
+    /**
+     * Called by a planner thread after planning a single statement
+     */
+    synchronized void recordStatement(long planningTime, boolean failed) {
+        m_statements++;
+        if (failed) {
+            m_failures++;
+        }
+        m_totalPlanningTime += planningTime;
+        m_minPlanningTime = Math.min(planningTime, m_minPlanningTime);
+        m_maxPlanningTime = Math.max(planningTime, m_maxPlanningTime);
+        m_lastMinPlanningTime = Math.min(planningTime, m_lastMinPlanningTime);
+        m_lastMaxPlanningTime = Math.max(planningTime, m_lastMaxPlanningTime);
+    }
+
+    /**
+     * Called when work is turned away because the planner queue is full
+     */
+    synchronized void recordRejected() {
+        m_rejected++;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("THREADS", VoltType.INTEGER));
+        columns.add(new ColumnInfo("ACTIVE_THREADS", VoltType.INTEGER));
+        columns.add(new ColumnInfo("HSQL_SESSIONS", VoltType.INTEGER));
+        columns.add(new ColumnInfo("QUEUE_DEPTH", VoltType.INTEGER));
+        columns.add(new ColumnInfo("STATEMENTS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("FAILURES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("REJECTED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PLAN_TIME_MIN", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PLAN_TIME_MAX", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PLAN_TIME_AVG", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        long statements = m_statements;
+        long failures = m_failures;
+        long rejected = m_rejected;
+        long totalPlanningTime = m_totalPlanningTime;
+        long minPlanningTime = m_minPlanningTime;
+        long maxPlanningTime = m_maxPlanningTime;
+
+        if (m_interval) {
+            statements = m_statements - m_lastStatements;
+            m_lastStatements = m_statements;
+            failures = m_failures - m_lastFailures;
+            m_lastFailures = m_failures;
+            rejected = m_rejected - m_lastRejected;
+            m_lastRejected = m_rejected;
+            totalPlanningTime = m_totalPlanningTime - m_lastTotalPlanningTime;
+            m_lastTotalPlanningTime = m_totalPlanningTime;
+            minPlanningTime = m_lastMinPlanningTime;
+            maxPlanningTime = m_lastMaxPlanningTime;
+            m_lastMinPlanningTime = Long.MAX_VALUE;
+            m_lastMaxPlanningTime = Long.MIN_VALUE;
+        }
+
+        rowValues[columnNameToIndex.get("THREADS")] = m_agent.getPlannerThreadCount();
+        rowValues[columnNameToIndex.get("ACTIVE_THREADS")] = m_agent.getActivePlannerCount();
+        rowValues[columnNameToIndex.get("HSQL_SESSIONS")] = m_agent.getPlannerSessionCount();
+        rowValues[columnNameToIndex.get("QUEUE_DEPTH")] = m_agent.getPlannerQueueDepth();
+        rowValues[columnNameToIndex.get("STATEMENTS")] = statements;
+        rowValues[columnNameToIndex.get("FAILURES")] = failures;
+        rowValues[columnNameToIndex.get("REJECTED")] = rejected;
+        if (statements > 0) {
+            rowValues[columnNameToIndex.get("PLAN_TIME_MIN")] = minPlanningTime;
+            rowValues[columnNameToIndex.get("PLAN_TIME_MAX")] = maxPlanningTime;
+            rowValues[columnNameToIndex.get("PLAN_TIME_AVG")] = totalPlanningTime / statements;
+        } else {
+            rowValues[columnNameToIndex.get("PLAN_TIME_MIN")] = 0L;
+            rowValues[columnNameToIndex.get("PLAN_TIME_MAX")] = 0L;
+            rowValues[columnNameToIndex.get("PLAN_TIME_AVG")] = 0L;
+        }
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        return new Iterator<Object>() {
+            boolean returnRow = true;
+
+            @Override
+            public boolean hasNext() {
+                return returnRow;
+            }
+
+            @Override
+            public Object next() {
+                if (returnRow) {
+                    returnRow = false;
+                    return new Object();
+                } else {
+                    return null;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -19,30 +19,42 @@ package org.voltdb.compiler;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.apache.zookeeper_voltpatches.ZooKeeper;
+import org.json_voltpatches.JSONArray;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.HostMessenger;
 import org.voltcore.messaging.LocalObjectMessage;
 import org.voltcore.messaging.Mailbox;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.zk.ZKUtil;
 import org.voltdb.CatalogContext;
 import org.voltdb.ClientInterface.ExplainMode;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltType;
+import org.voltdb.VoltZK;
+import org.voltdb.common.Constants;
 import org.voltdb.messaging.LocalMailbox;
 import org.voltdb.parser.SQLLexer;
 import org.voltdb.planner.StatementPartitioning;
 import org.voltdb.utils.MiscUtils;
 
 import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
+import com.google_voltpatches.common.util.concurrent.MoreExecutors;
 
 public class AsyncCompilerAgent {
 
@@ -52,6 +64,20 @@ public class AsyncCompilerAgent {
     // if more than this amount of work is queued, reject new work
     static public final int MAX_QUEUE_DEPTH = 250;
 
+    // number of threads planning ad hoc SQL at once, one per core by default
+    static final int PLANNER_THREADS =
+        Integer.getInteger("ADHOC_PLANNER_THREADS", CoreUtils.availableProcessors());
+
+    // Share the SQL text of the most used ad hoc statements through ZooKeeper so that
+    // hosts that start or rejoin plan them before clients ask for them
+    static final boolean PREWARM_CACHE =
+        Boolean.valueOf(System.getProperty("ADHOC_CACHE_PREWARM", "false"));
+    static final int PREWARM_STATEMENTS = Integer.getInteger("ADHOC_CACHE_PREWARM_STATEMENTS", 200);
+    // seconds between updates of the statements this host shares
+    static final int PREWARM_PUBLISH_INTERVAL = Integer.getInteger("ADHOC_CACHE_PREWARM_INTERVAL", 60);
+    // stay well below the ZooKeeper node size limit
+    static final int PREWARM_MAX_BYTES = 256 * 1024;
+
     // accept work via this mailbox
     Mailbox m_mailbox;
 
@@ -59,9 +85,16 @@ public class AsyncCompilerAgent {
     // of Europe, Scandinavia, and the sub-continent.
     AsyncCompilerAgentHelper m_helper = new AsyncCompilerAgentHelper();
 
-    // do work in this executor service
+    // catalog changes, including ad hoc DDL, are prepared one at a time in this executor service
     final ListeningExecutorService m_es =
-        CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner", MAX_QUEUE_DEPTH);
+        CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Catalog Planner", MAX_QUEUE_DEPTH);
+
+    // ad hoc DML and queries are planned concurrently in this pool, each planning
+    // call borrows its own HSQL session from the catalog's PlannerTool
+    final ThreadPoolExecutor m_plannerPool;
+    final ListeningExecutorService m_plannerEs;
+
+    final AdHocPlannerStats m_plannerStats = new AdHocPlannerStats(this);
 
     // Enable debug hooks when the "asynccompilerdebug" sys prop is set to "true" or "yes".
     private final static MiscUtils.BooleanSystemProperty DEBUG_MODE =
@@ -72,12 +105,142 @@ public class AsyncCompilerAgent {
     public final static String DEBUG_EXCEPTION_DDL =
             "create table DEBUG_MODE_ENG_7653_crash_me_now (die varchar(7654) not null)";
 
+    public AsyncCompilerAgent() {
+        this(PLANNER_THREADS);
+    }
+
+    AsyncCompilerAgent(int plannerThreads) {
+        m_plannerPool = new ThreadPoolExecutor(plannerThreads, plannerThreads,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_QUEUE_DEPTH),
+                CoreUtils.getThreadFactory("Ad Hoc Planner"));
+        m_plannerEs = MoreExecutors.listeningDecorator(m_plannerPool);
+    }
+
     // intended for integration test use. finish planning what's in
     // the queue and terminate the TPE.
     public void shutdown() throws InterruptedException {
-        if (m_es != null) {
-            m_es.shutdown();
-            m_es.awaitTermination(120, TimeUnit.SECONDS);
+        // planner threads may still hand ad hoc DDL to the catalog executor
+        m_plannerEs.shutdown();
+        m_plannerEs.awaitTermination(120, TimeUnit.SECONDS);
+        m_es.shutdown();
+        m_es.awaitTermination(120, TimeUnit.SECONDS);
+    }
+
+    public AdHocPlannerStats getPlannerStats() {
+        return m_plannerStats;
+    }
+
+    int getPlannerThreadCount() {
+        return m_plannerPool.getPoolSize();
+    }
+
+    int getActivePlannerCount() {
+        return m_plannerPool.getActiveCount();
+    }
+
+    int getPlannerQueueDepth() {
+        return m_plannerPool.getQueue().size();
+    }
+
+    int getPlannerSessionCount() {
+        final CatalogContext context = VoltDB.instance().getCatalogContext();
+        return context == null ? 0 : context.m_ptool.getSessionCount();
+    }
+
+    /**
+     * Plan the statements other hosts use most, then keep sharing the statements
+     * this host uses most. Does nothing unless ADHOC_CACHE_PREWARM is set.
+     */
+    public void startCachePrewarming(final ZooKeeper zk, final int hostId) {
+        if (!PREWARM_CACHE) {
+            return;
+        }
+        prewarmFromPeers(zk, hostId);
+        VoltDB.instance().scheduleWork(new Runnable() {
+            @Override
+            public void run() {
+                publishHotStatements(zk, hostId);
+            }
+        }, PREWARM_PUBLISH_INTERVAL, PREWARM_PUBLISH_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    private void prewarmFromPeers(ZooKeeper zk, int hostId) {
+        final Set<String> statements = new LinkedHashSet<String>();
+        try {
+            for (String child : zk.getChildren(VoltZK.adhocHotStatements, false)) {
+                if (child.equals(Integer.toString(hostId))) {
+                    continue;
+                }
+                byte[] data;
+                try {
+                    data = zk.getData(ZKUtil.joinZKPath(VoltZK.adhocHotStatements, child), false, null);
+                } catch (KeeperException.NoNodeException e) {
+                    // the host went away
+                    continue;
+                }
+                JSONArray jsArray = new JSONArray(new String(data, Constants.UTF8ENCODING));
+                for (int ii = 0; ii < jsArray.length(); ii++) {
+                    statements.add(jsArray.getString(ii));
+                }
+            }
+        } catch (Exception e) {
+            hostLog.warn("Unable to read the ad hoc statements used by other hosts, " +
+                         "the ad hoc plan cache won't be pre-warmed", e);
+            return;
+        }
+        if (statements.isEmpty()) {
+            return;
+        }
+
+        hostLog.info("Pre-warming the ad hoc plan cache with " + statements.size() +
+                     " statements used by other hosts");
+        // one task plans them all so the queue stays open for client work
+        try {
+            m_plannerEs.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (String sql : statements) {
+                        try {
+                            VoltDB.instance().getCatalogContext().m_ptool.planSql(
+                                    sql, StatementPartitioning.inferPartitioning());
+                        } catch (Exception e) {
+                            // the statement may not fit this host's catalog
+                            adhocLog.debug("Skipped pre-warming statement " + sql + ": " + e.getMessage());
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            hostLog.info("Ad hoc planner is busy, skipped pre-warming the ad hoc plan cache");
+        }
+    }
+
+    void publishHotStatements(ZooKeeper zk, int hostId) {
+        final CatalogContext context = VoltDB.instance().getCatalogContext();
+        if (context == null) {
+            return;
+        }
+        List<String> statements = new ArrayList<String>();
+        int size = 0;
+        for (String sql : context.m_ptool.m_cache.getHotStatements(PREWARM_STATEMENTS)) {
+            size += sql.length();
+            if (size > PREWARM_MAX_BYTES) {
+                break;
+            }
+            statements.add(sql);
+        }
+        byte[] data = new JSONArray(statements).toString().getBytes(Constants.UTF8ENCODING);
+        String path = ZKUtil.joinZKPath(VoltZK.adhocHotStatements, Integer.toString(hostId));
+        try {
+            try {
+                zk.setData(path, data, -1);
+            } catch (KeeperException.NoNodeException e) {
+                // ephemeral so statements of hosts that left aren't planned by new hosts
+                zk.create(path, data, Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+            }
+        } catch (Exception e) {
+            hostLog.warn("Unable to share the ad hoc statements used by this host", e);
         }
     }
 
@@ -92,23 +255,33 @@ public class AsyncCompilerAgent {
 
             @Override
             public void deliver(final VoltMessage message) {
-                try {
-                    m_es.submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            handleMailboxMessage(message);
-                        }
-                    });
-                } catch (RejectedExecutionException rejected) {
-                    final LocalObjectMessage wrapper = (LocalObjectMessage)message;
-                    AsyncCompilerWork work = (AsyncCompilerWork)(wrapper.payload);
-                    generateErrorResult("Ad Hoc Planner task queue is full. Try again.", work);
+                final LocalObjectMessage wrapper = (LocalObjectMessage)message;
+                if (wrapper.payload instanceof AdHocPlannerWork) {
+                    submit(m_plannerEs, message);
+                } else {
+                    submit(m_es, message);
                 }
             }
         };
         hostMessenger.createMailbox(hsId, m_mailbox);
     }
 
+    private void submit(ListeningExecutorService es, final VoltMessage message) {
+        try {
+            es.submit(new Runnable() {
+                @Override
+                public void run() {
+                    handleMailboxMessage(message);
+                }
+            });
+        } catch (RejectedExecutionException rejected) {
+            m_plannerStats.recordRejected();
+            final LocalObjectMessage wrapper = (LocalObjectMessage)message;
+            AsyncCompilerWork work = (AsyncCompilerWork)(wrapper.payload);
+            generateErrorResult("Ad Hoc Planner task queue is full. Try again.", work);
+        }
+    }
+
     void generateErrorResult(String errorMsg, AsyncCompilerWork work) {
         AsyncCompilerResult retval = new AsyncCompilerResult();
         retval.clientHandle = work.clientHandle;
@@ -258,8 +431,10 @@ public class AsyncCompilerAgent {
                 w.completionHandler.onCompletion(errResult);
                 return;
             }
+            // Prepare the catalog change on the catalog executor so that it is
+            // serialized with other catalog changes
             final CatalogChangeWork ccw = new CatalogChangeWork(w);
-            dispatchCatalogChangeWork(ccw);
+            submit(m_es, new LocalObjectMessage(ccw));
         }
     }
 
@@ -289,7 +464,7 @@ public class AsyncCompilerAgent {
     }
 
     public void compileAdHocPlanForProcedure(final AdHocPlannerWork apw) {
-        m_es.submit(new Runnable() {
+        m_plannerEs.submit(new Runnable() {
             @Override
             public void run(){
                 apw.completionHandler.onCompletion(compileAdHocPlan(apw));
@@ -346,6 +521,8 @@ public class AsyncCompilerAgent {
             } else {
                 partitioning = StatementPartitioning.forceSP();
             }
+            final long startTime = System.nanoTime();
+            boolean failed = true;
             try {
                 AdHocPlannedStatement result = ptool.planSql(sqlStatement, partitioning);
                 // The planning tool may have optimized for the single partition case
@@ -356,10 +533,14 @@ public class AsyncCompilerAgent {
                     partitionParamValue = result.getPartitioningParameterValue();
                 }
                 stmts.add(result);
+                failed = false;
             }
             catch (Exception e) {
                 errorMsgs.add("Unexpected Ad Hoc Planning Error: " + e);
             }
+            finally {
+                m_plannerStats.recordStatement(System.nanoTime() - startTime, failed);
+            }
         }
         String errorSummary = null;
         if (!errorMsgs.isEmpty()) {
@@ -17,7 +17,13 @@
 
 package org.voltdb.compiler;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.hsqldb_voltpatches.HSQLInterface;
 import org.hsqldb_voltpatches.HSQLInterface.HSQLParseException;
@@ -37,20 +43,29 @@ import org.voltdb.planner.CorePlan;
 import org.voltdb.planner.QueryPlanner;
 import org.voltdb.planner.StatementPartitioning;
 import org.voltdb.planner.TrivialCostModel;
+import org.voltdb.planner.parseinfo.StmtTargetTableScan;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.utils.Encoder;
 
 /**
  * Planner tool accepts an already compiled VoltDB catalog and then
  * interactively accept SQL and outputs plans on standard out.
+ *
+ * Several threads can plan at once. Each planning call borrows an HSQL
+ * session loaded with the catalog's schema from a pool that grows on demand,
+ * so the number of sessions matches the number of threads that plan concurrently.
  */
 public class PlannerTool {
     private static final VoltLogger hostLog = new VoltLogger("HOST");
 
     final Database m_database;
     final Cluster m_cluster;
-    final HSQLInterface m_hsql;
     final byte[] m_catalogHash;
+    // decoded schema DDL, replayed into every HSQL session added to the pool
+    final List<String> m_ddl = new ArrayList<String>();
+    // HSQL sessions not currently used by a planner, guarded by itself
+    private final ArrayDeque<HSQLInterface> m_idleSessions = new ArrayDeque<HSQLInterface>();
+    private int m_sessionCount = 0;
     final AdHocCompilerCache m_cache;
     static PlannerStatsCollector m_plannerStats;
 
@@ -66,8 +81,6 @@ public class PlannerTool {
         m_catalogHash = catalogHash;
         m_cache = AdHocCompilerCache.getCacheForCatalogHash(catalogHash);
 
-        // LOAD HSQL
-        m_hsql = HSQLInterface.loadHsqldb();
         String binDDL = m_database.getSchema();
         String ddl = Encoder.decodeBase64AndDecompress(binDDL);
         String[] commands = ddl.split("\n");
@@ -76,16 +89,12 @@ public class PlannerTool {
             decoded_cmd = decoded_cmd.trim();
             if (decoded_cmd.length() == 0)
                 continue;
-            try {
-                m_hsql.runDDLCommand(decoded_cmd);
-            }
-            catch (HSQLParseException e) {
-                // need a good error message here
-                throw new RuntimeException("Error creating hsql: " + e.getMessage() + " in DDL statement: " + decoded_cmd);
-            }
+            m_ddl.add(decoded_cmd);
         }
 
-        hostLog.debug("hsql loaded");
+        // LOAD HSQL, the first session is loaded eagerly so schema errors surface here
+        releaseSession(loadSession());
+        m_sessionCount = 1;
 
         // Create and register a singleton planner stats collector, if this is the first time.
         // In mock test environments there may be no stats agent.
@@ -100,6 +109,98 @@ public class PlannerTool {
         }
     }
 
+    private HSQLInterface loadSession() {
+        HSQLInterface hsql = HSQLInterface.loadHsqldb();
+        for (String decoded_cmd : m_ddl) {
+            try {
+                hsql.runDDLCommand(decoded_cmd);
+            }
+            catch (HSQLParseException e) {
+                // need a good error message here
+                throw new RuntimeException("Error creating hsql: " + e.getMessage() + " in DDL statement: " + decoded_cmd);
+            }
+        }
+        hostLog.debug("hsql loaded");
+        return hsql;
+    }
+
+    /**
+     * Take an idle HSQL session, or load a new one if all of them are in use
+     */
+    private HSQLInterface acquireSession() {
+        synchronized (m_idleSessions) {
+            HSQLInterface hsql = m_idleSessions.pollFirst();
+            if (hsql != null) {
+                return hsql;
+            }
+            m_sessionCount++;
+        }
+        // load outside the lock, loading the schema takes a while
+        try {
+            return loadSession();
+        }
+        catch (RuntimeException e) {
+            synchronized (m_idleSessions) {
+                m_sessionCount--;
+            }
+            throw e;
+        }
+    }
+
+    private void releaseSession(HSQLInterface hsql) {
+        synchronized (m_idleSessions) {
+            m_idleSessions.offerFirst(hsql);
+        }
+    }
+
+    /**
+     * @return Number of HSQL sessions loaded for planning, idle or in use
+     */
+    public int getSessionCount() {
+        synchronized (m_idleSessions) {
+            return m_sessionCount;
+        }
+    }
+
+    /**
+     * Keep the plans cached for a previous catalog that only touch tables
+     * the catalog change left alone.
+     *
+     * @param previous      planner of the catalog being replaced
+     * @param diffCommands  catalog commands that turn the previous catalog into this one
+     * @return the number of cache entries carried over
+     */
+    public int retainPlansFrom(PlannerTool previous, String diffCommands) {
+        int retained = m_cache.retainFrom(previous.m_cache, m_catalogHash, diffCommands);
+        if (retained > 0) {
+            hostLog.info("Retained " + retained + " cached ad hoc plans across the catalog update");
+        }
+        return retained;
+    }
+
+    /**
+     * @return upper case names of the tables a plan reads or writes
+     */
+    static Set<String> tablesOf(CompiledPlan plan) {
+        Map<String, StmtTargetTableScan> tablesRead = new TreeMap<String, StmtTargetTableScan>();
+        plan.rootPlanGraph.getTablesAndIndexes(tablesRead, null);
+        if (plan.subPlanGraph != null) {
+            plan.subPlanGraph.getTablesAndIndexes(tablesRead, null);
+        }
+        Set<String> tables = new HashSet<String>();
+        for (String table : tablesRead.keySet()) {
+            tables.add(table.toUpperCase());
+        }
+        String updated = plan.rootPlanGraph.getUpdatedTable();
+        if (updated == null && plan.subPlanGraph != null) {
+            updated = plan.subPlanGraph.getUpdatedTable();
+        }
+        if (updated != null) {
+            tables.add(updated.toUpperCase());
+        }
+        return tables;
+    }
+
     public AdHocPlannedStatement planSqlForTest(String sqlIn) {
         StatementPartitioning infer = StatementPartitioning.inferPartitioning();
         return planSql(sqlIn, infer);
@@ -108,12 +209,13 @@ public class PlannerTool {
     /**
      * Stripped down compile that is ONLY used to plan default procedures.
      */
-    public synchronized CompiledPlan planSqlCore(String sql, StatementPartitioning partitioning) {
+    public CompiledPlan planSqlCore(String sql, StatementPartitioning partitioning) {
         TrivialCostModel costModel = new TrivialCostModel();
         DatabaseEstimates estimates = new DatabaseEstimates();
+        final HSQLInterface hsql = acquireSession();
         QueryPlanner planner = new QueryPlanner(
             sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
-            partitioning, m_hsql, estimates, true,
+            partitioning, hsql, estimates, true,
             AD_HOC_JOINED_TABLE_LIMIT, costModel, null, null, DeterminismMode.FASTER);
 
         CompiledPlan plan = null;
@@ -126,6 +228,9 @@ public class PlannerTool {
         catch (Exception e) {
             throw new RuntimeException("Error compiling query: " + e.toString(), e);
         }
+        finally {
+            releaseSession(hsql);
+        }
 
         if (plan == null) {
             throw new RuntimeException("Null plan received in PlannerTool.planSql");
@@ -134,11 +239,10 @@ public class PlannerTool {
         return plan;
     }
 
-    synchronized AdHocPlannedStatement planSql(String sqlIn, StatementPartitioning partitioning) {
+    AdHocPlannedStatement planSql(String sqlIn, StatementPartitioning partitioning) {
         CacheUse cacheUse = CacheUse.FAIL;
-        if (m_plannerStats != null) {
-            m_plannerStats.startStatsCollection();
-        }
+        final long startTime = System.nanoTime();
+        HSQLInterface hsql = null;
         try {
             if ((sqlIn == null) || (sqlIn.length() == 0)) {
                 throw new RuntimeException("Can't plan empty or null SQL.");
@@ -168,6 +272,8 @@ public class PlannerTool {
             // Reset plan node id counter
             AbstractPlanNode.resetPlanNodeIds();
 
+            hsql = acquireSession();
+
             //////////////////////
             // PLAN THE STMT
             //////////////////////
@@ -176,7 +282,7 @@ public class PlannerTool {
             DatabaseEstimates estimates = new DatabaseEstimates();
             QueryPlanner planner = new QueryPlanner(
                     sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
-                    partitioning, m_hsql, estimates, true,
+                    partitioning, hsql, estimates, true,
                     AD_HOC_JOINED_TABLE_LIMIT, costModel, null, null, DeterminismMode.FASTER);
 
             CompiledPlan plan = null;
@@ -209,7 +315,8 @@ public class PlannerTool {
                                                                                    params,
                                                                                    null);
                             ahps.setBoundConstants(matched.m_constants);
-                            m_cache.put(sql, parsedToken, ahps, extractedLiterals);
+                            m_cache.put(sql, parsedToken, ahps, extractedLiterals,
+                                        null, System.nanoTime() - startTime);
                             cacheUse = CacheUse.HIT2;
                             return ahps;
                         }
@@ -248,14 +355,20 @@ public class PlannerTool {
                 if (planner.compiledAsParameterizedPlan()) {
                     assert(parsedToken != null);
                     // Again, plans with inferred partitioning are the only ones supported in the cache.
-                    m_cache.put(sqlIn, parsedToken, ahps, extractedLiterals);
+                    m_cache.put(sqlIn, parsedToken, ahps, extractedLiterals,
+                                tablesOf(plan), System.nanoTime() - startTime);
                 }
             }
             return ahps;
         }
         finally {
+            if (hsql != null) {
+                releaseSession(hsql);
+            }
             if (m_plannerStats != null) {
-                m_plannerStats.endStatsCollection(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(), cacheUse, -1);
+                m_plannerStats.recordPlanning(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(), cacheUse, -1, startTime);
+                m_plannerStats.updateCacheTotals(m_cache.getEvictions(), m_cache.getPlanningTimeSaved(),
+                                                 m_cache.getRetained());
             }
         }
     }
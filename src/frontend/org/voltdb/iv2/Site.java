@@ -66,6 +66,7 @@ import org.voltdb.VoltProcedure.VoltAbortException;
 import org.voltdb.VoltTable;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.Connector;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Procedure;
@@ -114,6 +115,15 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     // What type of EE is controlled
     final BackendTarget m_backend;
 
+    // Maximum number of tasks the site takes off its queue per wakeup
+    private final static int TASK_BATCH_SIZE = Math.max(1, Integer.getInteger("SITE_TASKER_BATCH_SIZE", 16));
+
+    // Maximum number of queued single statement transactions executed in one call into the EE.
+    // Zero disables grouping.
+    private final static int GROUP_EXECUTE_MAX =
+            Math.max(0, Math.min(Math.min(TASK_BATCH_SIZE, ProcedureRunner.MAX_BATCH_SIZE),
+                                 Integer.getInteger("SITE_GROUP_EXECUTE_MAX", 0)));
+
     // Is the site in a rejoining mode.
     private final static int kStateRunning = 0;
     private final static int kStateRejoining = 1;
@@ -211,6 +221,25 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         return latestUndoToken;
     }
 
+    /*
+     * A run of queued single statement transactions executed ahead of their turn
+     * in one call into the EE, each with the undo token it would have been given.
+     * Each transaction picks up its results from executePlanFragments when it runs.
+     * As soon as a transaction doesn't do what was executed for it, or one rolls back,
+     * the work of the rest of the group is undone and they execute the normal way.
+     */
+    private static class GroupedTxn {
+        long spHandle;
+        long fragmentId;
+        long undoToken;
+        VoltTable results[];
+    }
+    private final GroupedTxn m_group[] = new GroupedTxn[GROUP_EXECUTE_MAX];
+    private int m_groupSize = 0;
+    private int m_groupNext = 0;
+    // Grouping breaks up the per transaction export and DR buffers, only allowed without either
+    private boolean m_groupExecuteAllowed = false;
+
     // Advanced in complete transaction.
     long m_lastCommittedSpHandle = 0;
     long m_spHandleForSnapshotDigest = 0;
@@ -468,6 +497,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             m_hsql = null;
             m_ee = initializeEE();
         }
+        updateGroupExecuteAllowed();
 
         m_snapshotter = new SnapshotSiteProcessor(m_scheduler,
         m_snapshotPriority,
@@ -540,16 +570,31 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         m_startupConfig = null; // release the serializableCatalog.
         //Maintain a minimum ratio of task log (unrestricted) to live (restricted) transactions
         final MinimumRatioMaintainer mrm = new MinimumRatioMaintainer(m_taskLogReplayRatio);
+        final SiteTasker taskBatch[] = new SiteTasker[TASK_BATCH_SIZE];
         try {
             while (m_shouldContinue) {
                 if (m_rejoinState == kStateRunning) {
-                    // Normal operation blocks the site thread on the sitetasker queue.
-                    SiteTasker task = m_scheduler.take();
-                    if (task instanceof TransactionTask) {
-                        m_currentTxnId = ((TransactionTask)task).getTxnId();
-                        m_lastTxnTime = EstTime.currentTimeMillis();
+                    // Normal operation blocks the site thread on the sitetasker queue
+                    // and runs whatever has queued up since the last wakeup as a batch.
+                    final int count = m_scheduler.take(taskBatch);
+                    for (int ii = 0; ii < count; ii++) {
+                        final SiteTasker task = taskBatch[ii];
+                        if (m_groupExecuteAllowed && m_groupNext == m_groupSize && m_shouldContinue) {
+                            executeGroup(taskBatch, ii, count);
+                        }
+                        taskBatch[ii] = null;
+                        if (!m_shouldContinue) continue;
+                        if (task instanceof TransactionTask) {
+                            m_currentTxnId = ((TransactionTask)task).getTxnId();
+                            m_lastTxnTime = EstTime.currentTimeMillis();
+                        }
+                        task.run(getSiteProcedureConnection());
+                        if (m_groupNext < m_groupSize && task instanceof TransactionTask &&
+                                m_group[m_groupNext].spHandle == ((TransactionTask)task).getSpHandle()) {
+                            // the task finished without asking for its results
+                            abandonGroup();
+                        }
                     }
-                    task.run(getSiteProcedureConnection());
                 } else if (m_rejoinState == kStateReplayingRejoin) {
                     // Rejoin operation poll and try to do some catchup work. Tasks
                     // are responsible for logging any rejoin work they might have.
@@ -875,6 +920,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         if (beginUndoToken == Site.kInvalidUndoToken) return;
         if (rollback) {
             m_ee.undoUndoToken(beginUndoToken);
+            // that also undid the work of the transactions grouped after this one
+            clearGroup();
         }
         else {
             assert(latestUndoToken != Site.kInvalidUndoToken);
@@ -1159,6 +1206,22 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                                             boolean readOnly)
             throws EEException
     {
+        if (m_groupNext < m_groupSize) {
+            final GroupedTxn txn = m_group[m_groupNext];
+            if (txn.spHandle == spHandle && numFragmentIds == 1 && planFragmentIds[0] == txn.fragmentId &&
+                    (txn.undoToken == Long.MAX_VALUE) == readOnly) {
+                final VoltTable results[] = txn.results;
+                m_groupNext++;
+                txn.results = null;
+                if (!readOnly) {
+                    // take the token the work was done under
+                    final long undoToken = getNextUndoTokenBroken();
+                    assert(undoToken == txn.undoToken);
+                }
+                return results;
+            }
+            abandonGroup();
+        }
         return m_ee.executePlanFragments(
                 numFragmentIds,
                 planFragmentIds,
@@ -1172,6 +1235,104 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                 readOnly ? Long.MAX_VALUE : getNextUndoTokenBroken());
     }
 
+    /**
+     * Execute the run of single statement transactions starting at start in one call
+     * into the EE. Does nothing unless at least two of them qualify.
+     */
+    private void executeGroup(SiteTasker tasks[], int start, int count) {
+        final int end = Math.min(count, start + GROUP_EXECUTE_MAX);
+        int size = 0;
+        long undoToken = latestUndoToken;
+        final Object params[] = new Object[end - start];
+        final String sqlTexts[] = new String[end - start];
+        final long txnIds[] = new long[end - start];
+        final long uniqueIds[] = new long[end - start];
+        for (int ii = start; ii < end; ii++) {
+            if (!(tasks[ii] instanceof SpProcedureTask)) break;
+            final SpProcedureTask task = (SpProcedureTask)tasks[ii];
+            final ProcedureRunner runner = m_loadedProcedures.getProcByName(task.m_procName);
+            if (runner == null) break;
+            ParameterSet stmtParams = null;
+            try {
+                stmtParams = runner.prepareSingleStatement(
+                        ((SpTransactionState)task.m_txnState).m_initiationMsg.getParameters());
+            } catch (RuntimeException e) {
+                // corrupt parameters, the task reports it
+            }
+            if (stmtParams == null || !runner.checkPartition(task.m_txnState, m_hashinator)) break;
+
+            GroupedTxn txn = m_group[size];
+            if (txn == null) {
+                txn = m_group[size] = new GroupedTxn();
+            }
+            txn.spHandle = task.m_txnState.m_spHandle;
+            txn.fragmentId = runner.getSingleStatementFragmentId();
+            txn.undoToken = runner.isReadOnly() ? Long.MAX_VALUE : ++undoToken;
+            params[size] = stmtParams;
+            sqlTexts[size] = runner.getSingleStatementText();
+            txnIds[size] = task.m_txnState.txnId;
+            uniqueIds[size] = task.m_txnState.uniqueId;
+            size++;
+        }
+        if (size < 2) return;
+
+        final int fragmentCounts[] = new int[size];
+        final long fragmentIds[] = new long[size];
+        final long spHandles[] = new long[size];
+        final long undoTokens[] = new long[size];
+        for (int ii = 0; ii < size; ii++) {
+            fragmentCounts[ii] = 1;
+            fragmentIds[ii] = m_group[ii].fragmentId;
+            spHandles[ii] = m_group[ii].spHandle;
+            undoTokens[ii] = m_group[ii].undoToken;
+        }
+        final VoltTable results[][] = m_ee.executePlanFragmentGroup(size, fragmentCounts, fragmentIds,
+                params, sqlTexts, txnIds, spHandles, m_lastCommittedSpHandle, uniqueIds, undoTokens);
+        if (results == null) {
+            // one of them failed, let each of them run on its own to report it
+            if (undoToken > latestUndoToken) {
+                m_ee.undoUndoToken(latestUndoToken + 1);
+            }
+            return;
+        }
+        for (int ii = 0; ii < size; ii++) {
+            m_group[ii].results = results[ii];
+        }
+        m_groupNext = 0;
+        m_groupSize = size;
+    }
+
+    /**
+     * Undo the work done for the transactions of the group that haven't run yet
+     */
+    private void abandonGroup() {
+        for (int ii = m_groupNext; ii < m_groupSize; ii++) {
+            if (m_group[ii].undoToken != Long.MAX_VALUE) {
+                m_ee.undoUndoToken(m_group[ii].undoToken);
+                break;
+            }
+        }
+        clearGroup();
+    }
+
+    private void clearGroup() {
+        for (int ii = m_groupNext; ii < m_groupSize; ii++) {
+            m_group[ii].results = null;
+        }
+        m_groupNext = m_groupSize = 0;
+    }
+
+    private void updateGroupExecuteAllowed() {
+        boolean allowed = GROUP_EXECUTE_MAX > 1 && m_hsql == null && m_backend != BackendTarget.NONE;
+        for (Connector connector : m_context.database.getConnectors()) {
+            allowed &= connector.getTableinfo().isEmpty();
+        }
+        for (Table table : m_context.database.getTables()) {
+            allowed &= !table.getIsdred();
+        }
+        m_groupExecuteAllowed = allowed;
+    }
+
     @Override
     public ProcedureRunner getProcedureRunner(String procedureName) {
         return m_loadedProcedures.getProcByName(procedureName);
@@ -1213,6 +1374,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         //so export data for the old generation is pushed to Java.
         m_ee.quiesce(m_lastCommittedSpHandle);
         m_ee.updateCatalog(m_context.m_uniqueId, diffCmds);
+        updateGroupExecuteAllowed();
 
         return true;
     }
@@ -14,50 +14,233 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package org.voltdb.iv2;
 
-import java.util.concurrent.LinkedTransferQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.StarvationTracker;
 
-/** SiteTaskerScheduler orders SiteTaskers for execution. */
+/**
+ * SiteTaskerScheduler orders SiteTaskers for execution.
+ *
+ * Multi-producer single-consumer FIFO. Producers claim a position with one atomic
+ * increment and store the task into a fixed size ring segment, so offering a task doesn't
+ * allocate a queue node or take a lock. Producers must never block because they often hold
+ * locks the site thread needs, so when a segment is used up a new one is chained after it
+ * instead of waiting for the site to catch up.
+ *
+ * Only the site thread may take, poll or drain.
+ */
 public class SiteTaskerQueue
 {
-    private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
+    /*
+     * How the site thread waits for work once the queue is empty
+     */
+    public static enum WaitStrategy {
+        // Poll without pausing, lowest latency at the cost of a core
+        SPIN,
+        // Poll and yield the core between polls
+        YIELD,
+        // Poll for QUEUE_SPIN_MICROS and then park until a producer unparks the site
+        PARK
+    }
+
+    private static final WaitStrategy WAIT_STRATEGY =
+            WaitStrategy.valueOf(System.getProperty("SITE_TASKER_WAIT_STRATEGY", WaitStrategy.PARK.name()));
+
+    // Number of tasks in a ring segment, rounded up to a power of two
+    static final int SEGMENT_SIZE =
+            Integer.highestOneBit(Math.max(2, Integer.getInteger("SITE_TASKER_SEGMENT_SIZE", 1024) - 1)) << 1;
+
+    private static final class Segment {
+        // Position of the first slot of this segment
+        private final long m_base;
+        private final AtomicReferenceArray<SiteTasker> m_slots = new AtomicReferenceArray<SiteTasker>(SEGMENT_SIZE);
+        private volatile Segment m_next;
+
+        private Segment(long base) {
+            m_base = base;
+        }
+    }
+
+    private final WaitStrategy m_waitStrategy;
+    private static final long MASK = SEGMENT_SIZE - 1;
+
+    // Next position to claim by producers, and the most recently chained segment
+    private final AtomicLong m_producerPosition = new AtomicLong();
+    private volatile Segment m_producerSegment;
+
+    // Next position to take, only written by the site thread
+    private volatile long m_consumerPosition = 0;
+    private Segment m_consumerSegment;
+
+    // Set while the site thread is parked waiting for a task
+    private volatile Thread m_parkedConsumer;
+
     private StarvationTracker m_starvationTracker;
 
+    public SiteTaskerQueue()
+    {
+        this(WAIT_STRATEGY);
+    }
+
+    public SiteTaskerQueue(WaitStrategy waitStrategy)
+    {
+        m_waitStrategy = waitStrategy;
+        m_consumerSegment = m_producerSegment = new Segment(0);
+    }
+
     public boolean offer(SiteTasker task)
     {
-        return m_tasks.offer(task);
+        assert(task != null);
+        // Read the segment before claiming so the claimed position is never behind it
+        Segment segment = m_producerSegment;
+        final long position = m_producerPosition.getAndIncrement();
+        if (segment.m_base != (position & ~MASK)) {
+            segment = findOrChainSegment(segment, position);
+        }
+        // Volatile store ordered before the parked check, pairs with the site thread in take()
+        segment.m_slots.set((int)(position & MASK), task);
+
+        final Thread parked = m_parkedConsumer;
+        if (parked != null) {
+            LockSupport.unpark(parked);
+        }
+        return true;
+    }
+
+    /*
+     * Walk forward to the segment holding position. The producer that claimed the first
+     * position of a segment chains it, producers that claimed later positions wait for that.
+     */
+    private Segment findOrChainSegment(Segment segment, long position)
+    {
+        final long base = position & ~MASK;
+        while (segment.m_base != base) {
+            Segment next = segment.m_next;
+            if (next == null) {
+                if (position == base && segment.m_base + SEGMENT_SIZE == base) {
+                    next = new Segment(base);
+                    segment.m_next = next;
+                    m_producerSegment = next;
+                } else {
+                    Thread.yield();
+                    continue;
+                }
+            }
+            segment = next;
+        }
+        return segment;
+    }
+
+    // Non-blocking poll on the site tasker queue.
+    public SiteTasker poll()
+    {
+        final long position = m_consumerPosition;
+        Segment segment = m_consumerSegment;
+        if (segment.m_base + SEGMENT_SIZE == position) {
+            final Segment next = segment.m_next;
+            // Not chained yet means the producer of this position hasn't stored it yet
+            if (next == null) return null;
+            m_consumerSegment = segment = next;
+        }
+        final int slot = (int)(position & MASK);
+        final SiteTasker task = segment.m_slots.get(slot);
+        if (task == null) return null;
+        segment.m_slots.lazySet(slot, null);
+        m_consumerPosition = position + 1;
+        return task;
+    }
+
+    /**
+     * Move up to batch.length tasks into batch without blocking.
+     * @return the number of tasks moved
+     */
+    public int drainTo(SiteTasker batch[])
+    {
+        return drainTo(batch, 0);
+    }
+
+    private int drainTo(SiteTasker batch[], int offset)
+    {
+        int count = offset;
+        SiteTasker task;
+        while (count < batch.length && (task = poll()) != null) {
+            batch[count++] = task;
+        }
+        return count - offset;
     }
 
     // Block on the site tasker queue.
     public SiteTasker take() throws InterruptedException
     {
-        SiteTasker task = m_tasks.poll();
-        if (task == null) {
-            m_starvationTracker.beginStarvation();
-        } else {
+        SiteTasker task = poll();
+        if (task != null) {
             return task;
         }
+        m_starvationTracker.beginStarvation();
         try {
-            return CoreUtils.queueSpinTake(m_tasks);
+            return awaitTask();
         } finally {
             m_starvationTracker.endStarvation();
         }
     }
 
-    // Non-blocking poll on the site tasker queue.
-    public SiteTasker poll()
+    /**
+     * Block until there is at least one task and then move up to batch.length tasks
+     * into batch, so the site pays for a wakeup once per batch instead of once per task.
+     * @return the number of tasks moved, at least one
+     */
+    public int take(SiteTasker batch[]) throws InterruptedException
     {
-        return m_tasks.poll();
+        assert(batch.length > 0);
+        int count = drainTo(batch, 0);
+        if (count > 0) {
+            return count;
+        }
+        m_starvationTracker.beginStarvation();
+        try {
+            batch[0] = awaitTask();
+        } finally {
+            m_starvationTracker.endStarvation();
+        }
+        return 1 + drainTo(batch, 1);
+    }
+
+    private SiteTasker awaitTask() throws InterruptedException
+    {
+        final long spinUntil = m_waitStrategy == WaitStrategy.PARK ?
+                System.nanoTime() + CoreUtils.QUEUE_SPIN_MICROSECONDS : Long.MAX_VALUE;
+        SiteTasker task;
+        while ((task = poll()) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (m_waitStrategy == WaitStrategy.YIELD) {
+                Thread.yield();
+            } else if (m_waitStrategy == WaitStrategy.PARK && System.nanoTime() > spinUntil) {
+                // Publish the parked thread before the last poll so an offer either
+                // shows up in that poll or sees the thread and unparks it
+                m_parkedConsumer = Thread.currentThread();
+                try {
+                    if ((task = poll()) != null) {
+                        return task;
+                    }
+                    LockSupport.park(this);
+                } finally {
+                    m_parkedConsumer = null;
+                }
+            }
+        }
+        return task;
     }
 
-    public boolean isEmpty() {
-        return m_tasks.isEmpty();
+    public boolean isEmpty()
+    {
+        return m_producerPosition.get() == m_consumerPosition;
     }
 
     public void setStarvationTracker(StarvationTracker tracker) {
@@ -355,6 +355,52 @@ public class JDBC4ClientConnection implements Closeable {
         }
     }
 
+    /**
+     * Executes a procedure asynchronously with a timeout, then calls the provided user callback
+     * with the server response upon completion. Blocks while the client is under back-pressure.
+     *
+     * @param callback
+     *            the user-specified callback to call with the server response upon execution
+     *            completion.
+     * @param timeout
+     *            the timeout for the procedure in seconds.
+     * @param procedure
+     *            the name of the procedure to call.
+     * @param parameters
+     *            the list of parameters to pass to the procedure.
+     * @return the result of the submission false if the client connection was terminated and unable
+     *         to post the request to the server, true otherwise.
+     */
+    public boolean executeAsync(ProcedureCallback callback, long timeout, String procedure, Object... parameters)
+            throws NoConnectionsException, IOException
+    {
+        ClientImpl currentClient = this.getClient();
+        try {
+            return currentClient.callProcedureWithTimeout(new TrackingCallback(this, procedure, callback),
+                    procedure, timeout, TimeUnit.SECONDS, parameters);
+        }
+        catch (NoConnectionsException e) {
+            this.dropClient(currentClient);
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the partition an invocation of the procedure is routed to by client affinity.
+     * Invocations routed to the same partition execute in the order they were submitted.
+     *
+     * @param procedure
+     *            the name of the procedure to call.
+     * @param parameters
+     *            the list of parameters to pass to the procedure.
+     * @return the partition or -1 if the invocation isn't routed to a partition.
+     */
+    public long getRoutedPartition(String procedure, Object... parameters)
+            throws IOException
+    {
+        return this.getClient().getRoutedPartition(procedure, parameters);
+    }
+
     /**
      * Executes a procedure asynchronously, returning a Future that can be used by the caller to
      * wait upon completion before processing the server response.
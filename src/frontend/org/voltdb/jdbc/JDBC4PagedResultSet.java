@@ -0,0 +1,262 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+
+import org.voltdb.VoltTable;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+
+/**
+ * Forward only result set of a SELECT ordered by its table's primary key that is read in
+ * pages of fetchSize rows, so results larger than a single response can be read with bounded
+ * memory. Each page is a separate read of the query with a LIMIT that continues after the
+ * keys of the last row of the previous page, so no page rescans the rows before it. The
+ * following page is requested while the application reads the current one.
+ *
+ * Pages are separate transactions, rows written by other transactions between pages are
+ * only seen if they sort after the rows already read.
+ */
+public class JDBC4PagedResultSet extends JDBC4ResultSet {
+
+    /**
+     * A page requested from the server
+     */
+    private static class Page implements ProcedureCallback {
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        // number of rows before the page
+        private final long m_offset;
+        private volatile ClientResponse m_response;
+
+        private Page(long offset) {
+            m_offset = offset;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+            m_response = response;
+            m_done.countDown();
+        }
+
+        private VoltTable get() throws SQLException {
+            try {
+                m_done.await();
+            } catch (InterruptedException e) {
+                throw SQLError.get(e, SQLError.GENERAL_ERROR, "Interrupted while fetching rows");
+            }
+            if (m_response.getStatus() != ClientResponse.SUCCESS) {
+                throw JDBC4Statement.VoltSQL.toSQLException(m_response, null, m_response.getStatusString());
+            }
+            return m_response.getResults()[0];
+        }
+    }
+
+    private final JDBC4ClientConnection m_connection;
+    private final long m_timeout;
+    private final JDBC4Statement.VoltSQL m_query;
+    private final JDBC4Statement.VoltSQL.PageableSelect m_select;
+    private final int m_pageSize;
+    private final long m_maxRows;
+    // The page after the current one, null if the current page is the last
+    private Page m_nextPage;
+    // Number of the current row, 0 before the first row
+    private long m_row = 0;
+    private boolean m_afterLast = false;
+
+    JDBC4PagedResultSet(Statement statement, JDBC4ClientConnection connection, long timeout,
+            JDBC4Statement.VoltSQL query, JDBC4Statement.VoltSQL.PageableSelect select,
+            int pageSize, long maxRows) throws SQLException {
+        super(statement, query.getPageQuery(select, maxRows > 0 ? Math.min(pageSize, maxRows) : pageSize, null)
+                .execute(connection, timeout)[0]);
+        m_connection = connection;
+        m_timeout = timeout;
+        m_query = query;
+        m_select = select;
+        m_pageSize = pageSize;
+        m_maxRows = maxRows;
+        m_nextPage = requestPageAfter(0, table);
+    }
+
+    /*
+     * Request the page following the one with offset rows before it, unless that one was the last
+     */
+    private Page requestPageAfter(long offset, VoltTable page) throws SQLException {
+        final long nextOffset = offset + page.getRowCount();
+        if (page.getRowCount() < m_pageSize || (m_maxRows > 0 && nextOffset >= m_maxRows)) {
+            return null;
+        }
+        final long limit = m_maxRows > 0 ? Math.min(m_pageSize, m_maxRows - nextOffset) : m_pageSize;
+        final Page next = new Page(nextOffset);
+        m_query.getPageQuery(m_select, limit, page).executeAsync(m_connection, m_timeout, next);
+        return next;
+    }
+
+    /*
+     * Make the next page current, false if there are no more rows
+     */
+    private boolean advancePage() throws SQLException {
+        while (m_nextPage != null) {
+            final Page page = m_nextPage;
+            table = page.get();
+            m_nextPage = requestPageAfter(page.m_offset, table);
+            if (table.getRowCount() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasMoreInPage() {
+        return table.getActiveRowIndex() < table.getRowCount() - 1;
+    }
+
+    private static SQLException forwardOnly() {
+        return SQLError.get(SQLError.GENERAL_ERROR, "The result set is TYPE_FORWARD_ONLY");
+    }
+
+    // Moves the cursor forward one row from its current position.
+    @Override
+    public boolean next() throws SQLException {
+        checkClosed();
+        if (m_afterLast) {
+            return false;
+        }
+        if (!hasMoreInPage() && !advancePage()) {
+            m_afterLast = true;
+            return false;
+        }
+        m_row++;
+        try {
+            return table.advanceRow();
+        } catch (Exception x) {
+            throw SQLError.get(x);
+        }
+    }
+
+    // Retrieves the current row number.
+    @Override
+    public int getRow() throws SQLException {
+        checkClosed();
+        return m_afterLast ? 0 : (int)m_row;
+    }
+
+    // Retrieves whether the cursor is after the last row in this ResultSet object.
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        checkClosed();
+        return m_afterLast && m_row > 0;
+    }
+
+    // Retrieves whether the cursor is before the first row in this ResultSet object.
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        checkClosed();
+        return m_row == 0 && table.getRowCount() > 0;
+    }
+
+    // Retrieves whether the cursor is on the first row of this ResultSet object.
+    @Override
+    public boolean isFirst() throws SQLException {
+        checkClosed();
+        return m_row == 1 && !m_afterLast;
+    }
+
+    // Retrieves whether the cursor is on the last row of this ResultSet object. Waits for the
+    // next page when the cursor is on the last row of the current page.
+    @Override
+    public boolean isLast() throws SQLException {
+        checkClosed();
+        if (m_row == 0 || m_afterLast || hasMoreInPage()) {
+            return false;
+        }
+        while (m_nextPage != null) {
+            final Page page = m_nextPage;
+            if (page.get().getRowCount() > 0) {
+                return false;
+            }
+            m_nextPage = requestPageAfter(page.m_offset, page.get());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        checkClosed();
+        throw forwardOnly();
+    }
+
+    // Releases this ResultSet object's database and JDBC resources immediately
+    // instead of waiting for this to happen when it is automatically closed.
+    @Override
+    public void close() throws SQLException {
+        super.close();
+        // a page in flight is dropped when it arrives
+        m_nextPage = null;
+    }
+
+    // Retrieves the fetch size for this ResultSet object.
+    @Override
+    public int getFetchSize() throws SQLException {
+        return m_pageSize;
+    }
+
+    // Retrieves the type of this ResultSet object.
+    @Override
+    public int getType() throws SQLException {
+        return TYPE_FORWARD_ONLY;
+    }
+}
@@ -83,11 +83,12 @@ public class JDBC4PreparedStatement extends JDBC4Statement implements java.sql.P
     }
 
     // Adds a set of parameters to this PreparedStatement object's batch of commands.
+    // Procedure calls of a CallableStatement may be batched too.
     @Override
     public void addBatch() throws SQLException
     {
         checkClosed();
-        if (this.Query.isOfType(VoltSQL.TYPE_EXEC,VoltSQL.TYPE_SELECT)) {
+        if (this.Query.isOfType(VoltSQL.TYPE_SELECT)) {
             throw SQLError.get(SQLError.ILLEGAL_STATEMENT, this.Query.toSqlString());
         }
         this.addBatch(this.Query.getExecutableQuery(this.parameters));
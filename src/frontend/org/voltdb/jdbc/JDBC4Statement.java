@@ -26,14 +26,22 @@ import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.voltdb.VoltTable;
+import org.voltdb.VoltTableRow;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcCallException;
+import org.voltdb.client.ProcedureCallback;
 import org.voltdb.parser.JDBCParser;
 import org.voltdb.parser.SQLLexer;
 import org.voltdb.parser.JDBCParser.ParsedCall;
@@ -43,12 +51,34 @@ public class JDBC4Statement implements java.sql.Statement
 
     //Timeout for statement. This is used for execute* methods. batch add dont have timeout.
     private int m_timeout = 0;
+    //Calls of a batch allowed in flight at once
+    static final int BATCH_MAX_OUTSTANDING = Math.max(1, Integer.getInteger("JDBC_BATCH_MAX_OUTSTANDING", 1000));
     static class VoltSQL
     {
         public static final byte TYPE_SELECT = 1;
         public static final byte TYPE_UPDATE = 2;
         public static final byte TYPE_EXEC = 3;
 
+        static final int PIPELINE_NONE = 0;
+        static final int PIPELINE_ROUTED = 1;
+        // INSERT ... VALUES of nothing but parameters
+        private static final Pattern PAT_INSERT_PARAMETERS = Pattern.compile(
+                "\\s*INSERT\\s+INTO\\s+(\\w+)\\s*(?:\\(([\\w\\s,]+)\\)\\s*)?" +
+                "VALUES\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)\\s*;?\\s*",
+                Pattern.CASE_INSENSITIVE);
+        // Outer query of a SELECT from a single table that is ordered by plain columns. Matched
+        // against the text with string literals and nested queries blanked out.
+        private static final Pattern PAT_PAGEABLE_SELECT = Pattern.compile(
+                "SELECT\\s+(\\*|[\\w.]+(?:\\s*,\\s*[\\w.]+)*)\\s+FROM\\s+(\\w+)" +
+                "(?:\\s+(?:AS\\s+)?(?!WHERE\\b|ORDER\\b)\\w+)?" +
+                "(?:\\s+(WHERE)\\s+(.*?))?" +
+                "\\s+(ORDER)\\s+BY\\s+([\\w.]+(?:\\s+(?:ASC|DESC))?(?:\\s*,\\s*[\\w.]+(?:\\s+(?:ASC|DESC))?)*)",
+                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+        private static final Pattern PAT_UNPAGEABLE_CLAUSE = Pattern.compile(
+                "\\b(GROUP|HAVING|UNION|INTERSECT|EXCEPT|LIMIT|OFFSET|JOIN)\\b", Pattern.CASE_INSENSITIVE);
+        private static final Pattern PAT_ORDER_KEY = Pattern.compile(
+                "([\\w.]+)(?:\\s+(ASC|DESC))?", Pattern.CASE_INSENSITIVE);
+
         private final String[] sql;
         private final int parameterCount;
         private final byte type;
@@ -123,28 +153,31 @@ public class JDBC4Statement implements java.sql.Statement
             }
             catch(ProcCallException e)
             {
-                ClientResponse response = e.getClientResponse();
-                if (response != null) {
-                    // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
-                    // for connection problems.
-                    switch (response.getStatus()) {
-                    case ClientResponse.CONNECTION_LOST:
-                        throw SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", e.getMessage());
-                    case ClientResponse.CONNECTION_TIMEOUT:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", e.getMessage());
-                    case ClientResponse.SERVER_UNAVAILABLE:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", e.getMessage());
-                    case ClientResponse.USER_ABORT:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", e.getMessage());
-                    case ClientResponse.UNEXPECTED_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", e.getMessage());
-                    case ClientResponse.GRACEFUL_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", e.getMessage());
-                    default:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), e.getMessage());
-                    }
+                throw toSQLException(e.getClientResponse(), e, e.getMessage());
+            }
+            catch(IOException e)
+            {
+                throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+            }
+        }
+
+        /**
+         * Submits the query without waiting for the response, blocks while the client is under
+         * back-pressure.
+         */
+        protected void executeAsync(JDBC4ClientConnection connection, long timeout, ProcedureCallback callback)
+                throws SQLException
+        {
+            try
+            {
+                final boolean queued;
+                if (this.type == TYPE_EXEC) {
+                    queued = connection.executeAsync(callback, timeout, this.sql[0], this.parameters);
                 } else {
-                    throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
+                    queued = connection.executeAsync(callback, timeout, "@AdHoc", this.sql[0]);
+                }
+                if (!queued) {
+                    throw SQLError.get(SQLError.CONNECTION_CLOSED);
                 }
             }
             catch(IOException e)
@@ -153,6 +186,87 @@ public class JDBC4Statement implements java.sql.Statement
             }
         }
 
+        /**
+         * Map a failed response status to a specific JDBC exception, mostly GENERAL_ERROR except
+         * for connection problems.
+         */
+        static SQLException toSQLException(ClientResponse response, Exception cause, String message)
+        {
+            if (response == null) {
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, message);
+            }
+            switch (response.getStatus()) {
+            case ClientResponse.CONNECTION_LOST:
+                return SQLError.get(cause, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", message);
+            case ClientResponse.CONNECTION_TIMEOUT:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", message);
+            case ClientResponse.SERVER_UNAVAILABLE:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", message);
+            case ClientResponse.USER_ABORT:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "USER_ABORT", message);
+            case ClientResponse.UNEXPECTED_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", message);
+            case ClientResponse.GRACEFUL_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", message);
+            default:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), message);
+            }
+        }
+
+        /**
+         * How the query may be pipelined with its neighbours in a batch. Consecutive PIPELINE_ROUTED
+         * queries are procedure calls routed to their partition by client affinity, so the calls to
+         * one partition execute in submission order. Ad hoc statements aren't routed and may be
+         * reordered by the cluster, so they are PIPELINE_NONE and run one at a time, see
+         * getDefaultInsertCall() for the INSERTs that are sent as routed procedure calls instead.
+         */
+        int getPipelineClass(JDBC4ClientConnection connection) throws SQLException
+        {
+            if (this.type == TYPE_EXEC && !"@AdHoc".equals(this.sql[0])) {
+                try {
+                    return connection.getRoutedPartition(this.sql[0], this.parameters) >= 0 ?
+                            PIPELINE_ROUTED : PIPELINE_NONE;
+                } catch (IOException e) {
+                    throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+                }
+            }
+            return PIPELINE_NONE;
+        }
+
+        /**
+         * The call of the table's default insert procedure that does the same as this ad hoc
+         * INSERT ... VALUES of bound parameters, or null if it isn't one. The procedure takes
+         * every column in table order, so listed columns must be in that order.
+         *
+         * @param tableColumns upper case column names of each table in table order
+         */
+        VoltSQL getDefaultInsertCall(Map<String, List<String>> tableColumns)
+        {
+            if (this.type != TYPE_EXEC || !"@AdHoc".equals(this.sql[0]) ||
+                    !(this.parameters[0] instanceof String)) {
+                return null;
+            }
+            final Matcher m = PAT_INSERT_PARAMETERS.matcher((String)this.parameters[0]);
+            if (!m.matches()) {
+                return null;
+            }
+            final String table = m.group(1).toUpperCase();
+            final List<String> columns = tableColumns.get(table);
+            if (columns == null || columns.size() != this.parameters.length - 1) {
+                return null;
+            }
+            if (m.group(2) != null) {
+                final String listed[] = m.group(2).split(",");
+                for (int i = 0; i < listed.length; i++) {
+                    if (!listed[i].trim().toUpperCase().equals(columns.get(i))) {
+                        return null;
+                    }
+                }
+            }
+            return new VoltSQL(new String[] {table + ".insert"}, this.parameterCount, TYPE_EXEC, TYPE_UPDATE,
+                    Arrays.copyOfRange(this.parameters, 1, this.parameters.length));
+        }
+
         public static boolean isUpdateResult(VoltTable table)
         {
             return ((table.getColumnName(0).length() == 0 || table.getColumnName(0).equals("modified_tuples"))&& table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
@@ -163,6 +277,212 @@ public class JDBC4Statement implements java.sql.Statement
             return this.sql[0];
         }
 
+        /**
+         * An ad hoc SELECT from a single table split at its ORDER BY, so each page can be
+         * read by continuing after the ORDER BY keys of the last row of the previous page
+         */
+        static final class PageableSelect
+        {
+            // upper case name of the table
+            final String table;
+            // the query up to the WHERE clause, the WHERE condition or null, and the ORDER BY clause
+            private final String head;
+            private final String where;
+            private final String orderBy;
+            // ORDER BY keys as written and the upper case names of their columns
+            private final String[] keys;
+            final String[] keyColumns;
+            private final boolean descending;
+
+            private PageableSelect(String table, String head, String where, String orderBy,
+                                   String[] keys, String[] keyColumns, boolean descending)
+            {
+                this.table = table;
+                this.head = head;
+                this.where = where;
+                this.orderBy = orderBy;
+                this.keys = keys;
+                this.keyColumns = keyColumns;
+                this.descending = descending;
+            }
+
+            /*
+             * Rows after the given key values in the ORDER BY, each key value is a parameter
+             */
+            private String continuation()
+            {
+                final StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < keys.length; i++) {
+                    if (i > 0) {
+                        sb.append(" OR ");
+                    }
+                    sb.append('(');
+                    for (int j = 0; j < i; j++) {
+                        sb.append(keys[j]).append(" = ? AND ");
+                    }
+                    sb.append(keys[i]).append(descending ? " < ?" : " > ?").append(')');
+                }
+                return sb.toString();
+            }
+
+            private String getPageSql(boolean continued, long limit)
+            {
+                final StringBuilder sb = new StringBuilder(head);
+                if (where != null && continued) {
+                    sb.append(" WHERE (").append(where).append(") AND (").append(continuation()).append(')');
+                } else if (where != null) {
+                    sb.append(" WHERE ").append(where);
+                } else if (continued) {
+                    sb.append(" WHERE ").append(continuation());
+                }
+                return sb.append(' ').append(orderBy).append(" LIMIT ").append(limit).append(';').toString();
+            }
+        }
+
+        /*
+         * Blank out string literals and the contents of parentheses, keeping the length,
+         * so only the clauses of the outer query are left. Null for quoted identifiers.
+         */
+        private static String outerQuery(String select)
+        {
+            final char masked[] = select.toCharArray();
+            int depth = 0;
+            boolean quoted = false;
+            for (int i = 0; i < masked.length; i++) {
+                final char c = masked[i];
+                if (c == '\'') {
+                    quoted = !quoted;
+                } else if (quoted) {
+                    masked[i] = ' ';
+                } else if (c == '"') {
+                    return null;
+                } else if (c == '(') {
+                    depth++;
+                    if (depth > 1) {
+                        masked[i] = ' ';
+                    }
+                } else if (c == ')') {
+                    if (depth > 1) {
+                        masked[i] = ' ';
+                    }
+                    depth--;
+                } else if (depth > 0) {
+                    masked[i] = ' ';
+                }
+            }
+            return quoted || depth != 0 ? null : new String(masked);
+        }
+
+        /**
+         * An ad hoc SELECT that can be read in pages, or null. Paging needs a query on a single
+         * table that selects plain columns and is ordered by columns it selects, all in the same
+         * direction, without grouping or a LIMIT or OFFSET of its own. The caller must still
+         * check that the keys order the rows completely.
+         */
+        PageableSelect getPageableSelect()
+        {
+            if (this.queryType != TYPE_SELECT) {
+                return null;
+            }
+            final Object text;
+            if (this.type == TYPE_EXEC) {
+                if (!"@AdHoc".equals(this.sql[0])) {
+                    return null;
+                }
+                text = this.parameters[0];
+            } else {
+                text = this.sql[0];
+            }
+            if (!(text instanceof String)) {
+                return null;
+            }
+            String select = ((String)text).trim();
+            while (select.endsWith(";")) {
+                select = select.substring(0, select.length() - 1).trim();
+            }
+
+            final String outer = outerQuery(select);
+            if (outer == null) {
+                return null;
+            }
+            final Matcher m = PAT_PAGEABLE_SELECT.matcher(outer);
+            if (!m.matches()) {
+                return null;
+            }
+            if (m.group(4) != null && PAT_UNPAGEABLE_CLAUSE.matcher(m.group(4)).find()) {
+                return null;
+            }
+
+            final Set<String> selected = new HashSet<String>();
+            if (!"*".equals(m.group(1))) {
+                for (String column : m.group(1).split(",")) {
+                    selected.add(columnName(column));
+                }
+            }
+            final String orderKeys[] = m.group(6).split(",");
+            final String keys[] = new String[orderKeys.length];
+            final String keyColumns[] = new String[orderKeys.length];
+            Boolean descending = null;
+            for (int i = 0; i < orderKeys.length; i++) {
+                final Matcher key = PAT_ORDER_KEY.matcher(orderKeys[i].trim());
+                if (!key.matches()) {
+                    return null;
+                }
+                final boolean desc = "DESC".equalsIgnoreCase(key.group(2));
+                if (descending != null && descending != desc) {
+                    return null;
+                }
+                descending = desc;
+                keys[i] = key.group(1);
+                keyColumns[i] = columnName(key.group(1));
+                // the key values are read from the rows of the previous page
+                if (!selected.isEmpty() && !selected.contains(keyColumns[i])) {
+                    return null;
+                }
+            }
+
+            final String head = select.substring(0, m.group(3) != null ? m.start(3) : m.start(5)).trim();
+            final String where = m.group(4) == null ? null : select.substring(m.start(4), m.end(4));
+            return new PageableSelect(m.group(2).toUpperCase(), head, where,
+                    "ORDER BY " + select.substring(m.start(6), m.end(6)),
+                    keys, keyColumns, descending);
+        }
+
+        private static String columnName(String column)
+        {
+            final String name = column.trim();
+            return name.substring(name.lastIndexOf('.') + 1).toUpperCase();
+        }
+
+        /**
+         * The query reading the next limit rows of a SELECT from getPageableSelect(), starting
+         * after the last row of the previous page, or from the start if there is none
+         */
+        VoltSQL getPageQuery(PageableSelect select, long limit, VoltTable previousPage)
+        {
+            final ArrayList<Object> params = new ArrayList<Object>();
+            params.add(select.getPageSql(previousPage != null, limit));
+            if (this.type == TYPE_EXEC) {
+                for (int i = 1; i < this.parameters.length; i++) {
+                    params.add(this.parameters[i]);
+                }
+            }
+            if (previousPage != null) {
+                final VoltTableRow last = previousPage.fetchRow(previousPage.getRowCount() - 1);
+                final Object values[] = new Object[select.keyColumns.length];
+                for (int i = 0; i < values.length; i++) {
+                    final int column = previousPage.getColumnIndex(select.keyColumns[i]);
+                    values[i] = last.get(column, previousPage.getColumnType(column));
+                }
+                for (int i = 0; i < values.length; i++) {
+                    for (int j = 0; j <= i; j++) {
+                        params.add(values[j]);
+                    }
+                }
+            }
+            return new VoltSQL(new String[] {"@AdHoc"}, this.parameterCount, TYPE_EXEC, TYPE_SELECT, params.toArray());
+        }
+
         public VoltSQL getExecutableQuery(Object... params) throws SQLException
         {
             if (params.length != this.parameterCount) {
@@ -240,6 +560,7 @@ public class JDBC4Statement implements java.sql.Statement
     protected int lastUpdateCount = -1;
     protected Set<JDBC4ResultSet> openResults = new HashSet<JDBC4ResultSet>();
     protected JDBC4ResultSet result = null;
+    private SQLWarning warnings = null;
 
     public JDBC4Statement(JDBC4Connection connection)
     {
@@ -282,6 +603,7 @@ public class JDBC4Statement implements java.sql.Statement
         this.tableResults = tables;
         this.tableResultIndex = -1;
         this.lastUpdateCount = updateCount;
+        this.warnings = null;
         if (this.result != null) {
             this.result.close();
         }
@@ -352,6 +674,7 @@ public class JDBC4Statement implements java.sql.Statement
     public void clearWarnings() throws SQLException
     {
         checkClosed();
+        this.warnings = null;
     }
 
     // Releases this Statement object's database and JDBC resources immediately instead of waiting for this to happen when it is automatically closed.
@@ -367,7 +690,9 @@ public class JDBC4Statement implements java.sql.Statement
         checkClosed();
         if (query.isQueryOfType(VoltSQL.TYPE_SELECT,VoltSQL.TYPE_EXEC))
         {
-            setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout), -1);
+            if (!setPagedResult(query)) {
+                setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout), -1);
+            }
             return true;
         }
         else
@@ -410,7 +735,57 @@ public class JDBC4Statement implements java.sql.Statement
         throw SQLError.noSupport();
     }
 
+    /**
+     * Collects the responses of a batch submitted asynchronously. Permits cap the calls in flight,
+     * acquiring all of them waits for every submitted call to complete.
+     */
+    private static class BatchResponses
+    {
+        private final ClientResponse[] m_responses;
+        private final Semaphore m_permits = new Semaphore(BATCH_MAX_OUTSTANDING);
+        private volatile boolean m_failed = false;
+
+        private BatchResponses(int size)
+        {
+            m_responses = new ClientResponse[size];
+        }
+
+        private ProcedureCallback callbackFor(final int index)
+        {
+            return new ProcedureCallback() {
+                @Override
+                public void clientCallback(ClientResponse response) throws Exception {
+                    m_responses[index] = response;
+                    if (response.getStatus() != ClientResponse.SUCCESS) {
+                        m_failed = true;
+                    }
+                    m_permits.release();
+                }
+            };
+        }
+
+        private void acquire() throws SQLException
+        {
+            try {
+                m_permits.acquire();
+            } catch (InterruptedException e) {
+                throw SQLError.get(e, SQLError.GENERAL_ERROR, "Interrupted while executing batch");
+            }
+        }
+
+        private void awaitAll()
+        {
+            m_permits.acquireUninterruptibly(BATCH_MAX_OUTSTANDING);
+            m_permits.release(BATCH_MAX_OUTSTANDING);
+        }
+    }
+
     // Submits a batch of commands to the database for execution and if all commands execute successfully, returns an array of update counts.
+    // Consecutive procedure calls routed to a partition are submitted without waiting for the previous ones
+    // to complete, see VoltSQL.getPipelineClass(); so are prepared INSERTs of all columns into a partitioned table,
+    // which are sent as calls of the table's default insert procedure. Every other command waits for all earlier ones. Calls to one
+    // partition keep their batch order, calls to different partitions may not. Submission stops at the first
+    // failure that is noticed, the calls already in flight still complete and are reported in the update counts.
     @Override
     public int[] executeBatch() throws SQLException
     {
@@ -420,25 +795,92 @@ public class JDBC4Statement implements java.sql.Statement
             return new int[0];
         }
 
-        int[] updateCounts = new int[batch.size()];
+        final JDBC4ClientConnection connection = sourceConnection.NativeConnection;
+        final BatchResponses responses = new BatchResponses(batch.size());
+        // columns of the tables, loaded for the first INSERT that may be routed
+        Map<String, List<String>> tableColumns = null;
+        int submitted = 0;
+        SQLException submitFailure = null;
+        int previousClass = VoltSQL.PIPELINE_NONE;
+        try
+        {
+            for (; submitted < batch.size(); submitted++)
+            {
+                VoltSQL query = batch.get(submitted);
+                int pipelineClass = query.getPipelineClass(connection);
+                if (pipelineClass == VoltSQL.PIPELINE_NONE && query.isOfType(VoltSQL.TYPE_EXEC) &&
+                        query.isQueryOfType(VoltSQL.TYPE_UPDATE)) {
+                    // an ad hoc INSERT into a partitioned table can be routed as its default procedure
+                    if (tableColumns == null) {
+                        tableColumns = getTableColumns();
+                    }
+                    final VoltSQL insert = query.getDefaultInsertCall(tableColumns);
+                    if (insert != null && insert.getPipelineClass(connection) == VoltSQL.PIPELINE_ROUTED) {
+                        query = insert;
+                        pipelineClass = VoltSQL.PIPELINE_ROUTED;
+                    }
+                }
+                if (pipelineClass == VoltSQL.PIPELINE_NONE || pipelineClass != previousClass) {
+                    responses.awaitAll();
+                }
+                previousClass = pipelineClass;
+                responses.acquire();
+                if (responses.m_failed) {
+                    responses.m_permits.release();
+                    break;
+                }
+                try {
+                    query.executeAsync(connection, this.m_timeout, responses.callbackFor(submitted));
+                } catch (SQLException x) {
+                    responses.m_permits.release();
+                    throw x;
+                }
+            }
+        }
+        catch(SQLException x)
+        {
+            submitFailure = x;
+        }
+        finally
+        {
+            responses.awaitAll();
+        }
+
+        // Gather the results in batch order
+        final int[] updateCounts = new int[submitFailure == null ? submitted : submitted + 1];
         // keep a running total of update counts
         int runningUpdateCount = 0;
-
-        for(int i = 0; i < batch.size(); i++)
+        ArrayList<SQLException> failures = new ArrayList<SQLException>();
+        for (int i = 0; i < updateCounts.length; i++)
         {
-            try
-            {
-                setCurrentResult(null, (int) batch.get(i).execute(sourceConnection.NativeConnection,
-                        this.m_timeout)[0].fetchRow(0).getLong(0));
-                updateCounts[i] = this.lastUpdateCount;
-                runningUpdateCount += this.lastUpdateCount;
+            final ClientResponse response = i < submitted ? responses.m_responses[i] : null;
+            SQLException x = null;
+            if (response == null) {
+                x = submitFailure;
+            } else if (response.getStatus() != ClientResponse.SUCCESS) {
+                x = VoltSQL.toSQLException(response, null, response.getStatusString());
             }
-            catch(SQLException x)
-            {
+            if (x == null) {
+                final VoltTable[] results = response.getResults();
+                if (results.length > 0 && results[0].getColumnCount() == 1 && VoltSQL.isUpdateResult(results[0])) {
+                    updateCounts[i] = (int) results[0].fetchRow(0).getLong(0);
+                    runningUpdateCount += updateCounts[i];
+                } else {
+                    // a procedure call that doesn't return a modified tuple count
+                    updateCounts[i] = SUCCESS_NO_INFO;
+                }
+            } else {
                 updateCounts[i] = EXECUTE_FAILED;
-                throw new BatchUpdateException(Arrays.copyOf(updateCounts, i+1), x);
+                failures.add(x);
             }
         }
+        if (!failures.isEmpty()) {
+            BatchUpdateException failure = new BatchUpdateException(updateCounts, failures.get(0));
+            for (int i = 1; i < failures.size(); i++) {
+                failure.setNextException(failures.get(i));
+            }
+            throw failure;
+        }
 
         // replace the update count from the last statement with the update count
         // from the last batch.
@@ -449,10 +891,82 @@ public class JDBC4Statement implements java.sql.Statement
 
     protected ResultSet executeQuery(VoltSQL query) throws SQLException
     {
-        setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout), -1);
+        if (!setPagedResult(query)) {
+            setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout), -1);
+        }
         return this.result;
     }
 
+    /*
+     * Upper case column names of every table, in table order
+     */
+    private Map<String, List<String>> getTableColumns() throws SQLException
+    {
+        final VoltSQL columnsQuery = new VoltSQL(new String[] {"@SystemCatalog"}, 1, VoltSQL.TYPE_EXEC,
+                new Object[] {"COLUMNS"});
+        final VoltTable columns = columnsQuery.execute(this.sourceConnection.NativeConnection, this.m_timeout)[0];
+        final Map<String, List<String>> tableColumns = new HashMap<String, List<String>>();
+        while (columns.advanceRow()) {
+            final String table = columns.getString("TABLE_NAME").toUpperCase();
+            List<String> names = tableColumns.get(table);
+            if (names == null) {
+                names = new ArrayList<String>();
+                tableColumns.put(table, names);
+            }
+            // ordinal positions start from 1
+            final int position = (int)columns.getLong("ORDINAL_POSITION");
+            while (names.size() < position) {
+                names.add(null);
+            }
+            names.set(position - 1, columns.getString("COLUMN_NAME").toUpperCase());
+        }
+        return tableColumns;
+    }
+
+    /*
+     * With a fetch size set a SELECT ordered by its table's primary key is read in pages
+     * of fetchSize rows. Returns false if the query can't be paged.
+     */
+    private boolean setPagedResult(VoltSQL query) throws SQLException
+    {
+        if (this.fetchSize <= 0) {
+            return false;
+        }
+        final VoltSQL.PageableSelect select = query.getPageableSelect();
+        if (select == null || !isOrderedByPrimaryKey(select)) {
+            return false;
+        }
+        setCurrentResult(null, -1);
+        final JDBC4PagedResultSet paged = new JDBC4PagedResultSet(this, this.sourceConnection.NativeConnection,
+                this.m_timeout, query, select, this.fetchSize, this.maxRows);
+        this.tableResults = new VoltTable[] {paged.table};
+        this.tableResultIndex = 0;
+        this.result = paged;
+        this.warnings = new SQLWarning("The result set is read in pages of " + this.fetchSize +
+                " rows because a fetch size is set, it is TYPE_FORWARD_ONLY and each page is a separate read");
+        return true;
+    }
+
+    /*
+     * Each page continues after the ORDER BY keys of the previous one, which only finds every
+     * row once if the keys are unique and never null. Require them to be the primary key.
+     */
+    private boolean isOrderedByPrimaryKey(VoltSQL.PageableSelect select) throws SQLException
+    {
+        final VoltSQL primaryKeys = new VoltSQL(new String[] {"@SystemCatalog"}, 1, VoltSQL.TYPE_EXEC,
+                new Object[] {"PRIMARYKEYS"});
+        final VoltTable columns = primaryKeys.execute(this.sourceConnection.NativeConnection, this.m_timeout)[0];
+        final Set<String> keyColumns = new HashSet<String>();
+        while (columns.advanceRow()) {
+            if (select.table.equals(columns.getString("TABLE_NAME"))) {
+                keyColumns.add(columns.getString("COLUMN_NAME").toUpperCase());
+            }
+        }
+        final Set<String> orderColumns = new HashSet<String>(Arrays.asList(select.keyColumns));
+        return !keyColumns.isEmpty() && orderColumns.equals(keyColumns) &&
+                orderColumns.size() == select.keyColumns.length;
+    }
+
     // Executes the given SQL statement, which returns a single ResultSet object.
     @Override
     public ResultSet executeQuery(String sql) throws SQLException
@@ -656,7 +1170,7 @@ public class JDBC4Statement implements java.sql.Statement
     public SQLWarning getWarnings() throws SQLException
     {
         checkClosed();
-        throw SQLError.noSupport();
+        return this.warnings;
     }
 
     // Retrieves whether this Statement object has been closed.
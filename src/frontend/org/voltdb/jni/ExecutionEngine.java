@@ -20,6 +20,7 @@ package org.voltdb.jni;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +41,7 @@ import org.voltdb.TheHashinator.HashinatorConfig;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable;
 import org.voltdb.exceptions.EEException;
+import org.voltdb.exceptions.SerializableException;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.planner.ActivePlanRepository;
 import org.voltdb.utils.LogKeys;
@@ -556,6 +558,79 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         }
     }
 
+    /**
+     * Run the plan fragments of several single partition transactions back to back,
+     * each in its own undo quantum. The fragment ids and parameter sets of all the
+     * transactions are concatenated, fragmentCounts says how many belong to each.
+     *
+     * @return The results of each transaction, or null if one of them failed. On failure
+     * the work of the transactions that did run is left for the caller to undo.
+     */
+    public VoltTable[][] executePlanFragmentGroup(int numTxns,
+                                                  int[] fragmentCounts,
+                                                  long[] planFragmentIds,
+                                                  Object[] parameterSets,
+                                                  String[] sqlTexts,
+                                                  long[] txnIds,
+                                                  long[] spHandles,
+                                                  long lastCommittedSpHandle,
+                                                  long[] uniqueIds,
+                                                  long[] undoQuantumTokens)
+    {
+        int numFragmentIds = 0;
+        m_readOnly = true;
+        for (int i = 0; i < numTxns; i++) {
+            numFragmentIds += fragmentCounts[i];
+            m_readOnly &= (undoQuantumTokens[i] == Long.MAX_VALUE);
+        }
+        try {
+            // reset context for progress updates
+            m_startTime = 0;
+            m_logDuration = INITIAL_LOG_DURATION;
+            m_sqlTexts = sqlTexts;
+
+            VoltTable[][] results = coreExecutePlanFragmentGroup(numTxns, fragmentCounts, planFragmentIds,
+                    parameterSets, txnIds, spHandles, lastCommittedSpHandle, uniqueIds, undoQuantumTokens);
+            m_plannerStats.updateEECacheStats(m_eeCacheSize, numFragmentIds - m_cacheMisses,
+                    m_cacheMisses, m_partitionId);
+            return results;
+        }
+        catch (SerializableException e) {
+            // the caller runs the transactions again one at a time to report the error
+            return null;
+        }
+        finally {
+            m_cacheMisses = 0;
+            m_sqlTexts = null;
+        }
+    }
+
+    /**
+     * Engines without a native group call run the transactions one at a time
+     */
+    protected VoltTable[][] coreExecutePlanFragmentGroup(int numTxns,
+                                                         int[] fragmentCounts,
+                                                         long[] planFragmentIds,
+                                                         Object[] parameterSets,
+                                                         long[] txnIds,
+                                                         long[] spHandles,
+                                                         long lastCommittedSpHandle,
+                                                         long[] uniqueIds,
+                                                         long[] undoQuantumTokens) throws EEException
+    {
+        final VoltTable[][] results = new VoltTable[numTxns][];
+        int offset = 0;
+        for (int i = 0; i < numTxns; i++) {
+            final int count = fragmentCounts[i];
+            final long[] fragmentIds = Arrays.copyOfRange(planFragmentIds, offset, offset + count);
+            final Object[] params = Arrays.copyOfRange(parameterSets, offset, offset + count);
+            results[i] = coreExecutePlanFragments(count, fragmentIds, null, params,
+                    txnIds[i], spHandles[i], lastCommittedSpHandle, uniqueIds[i], undoQuantumTokens[i]);
+            offset += count;
+        }
+        return results;
+    }
+
     protected abstract VoltTable[] coreExecutePlanFragments(int numFragmentIds,
                                                             long[] planFragmentIds,
                                                             long[] inputDepIds,
@@ -813,6 +888,27 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
             long uniqueId,
             long undoToken);
 
+    /**
+     * Executes the plan fragments of several single partition transactions, each
+     * in its own undo quantum, and appends the results of each transaction in order.
+     * @param pointer the VoltDBEngine pointer
+     * @param numTxns number of transactions in the group
+     * @param fragmentCounts number of fragments of each transaction
+     * @param planFragmentIds the fragments of all the transactions one after the other
+     * @param undoTokens undo token of each transaction, Long.MAX_VALUE for read only ones
+     * @return error code
+     */
+    protected native int nativeExecutePlanFragmentGroup(
+            long pointer,
+            int numTxns,
+            int[] fragmentCounts,
+            long[] planFragmentIds,
+            long[] txnIds,
+            long[] spHandles,
+            long lastCommittedSpHandle,
+            long[] uniqueIds,
+            long[] undoTokens);
+
     /**
      * Serialize the result temporary table.
      * @param pointer the VoltDBEngine pointer
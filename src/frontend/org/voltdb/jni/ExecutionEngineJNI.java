@@ -268,7 +268,80 @@ public class ExecutionEngineJNI extends ExecutionEngine {
             }
         }
 
-        // serialize the param sets
+        serializeParameterSets(batchSize, planFragmentIds, parameterSets);
+        // checkMaxFsSize();
+
+        // Execute the plan, passing a raw pointer to the byte buffers for input and output
+        //Clear is destructive, do it before the native call
+        deserializer.clear();
+        final int errorCode =
+            nativeExecutePlanFragments(
+                    pointer,
+                    numFragmentIds,
+                    planFragmentIds,
+                    inputDepIds,
+                    txnId,
+                    spHandle,
+                    lastCommittedSpHandle,
+                    uniqueId,
+                    undoToken);
+
+        try {
+            checkErrorCode(errorCode);
+            FastDeserializer fds = fallbackBuffer == null ? deserializer : new FastDeserializer(fallbackBuffer);
+            return readResults(fds, batchSize);
+        } finally {
+            fallbackBuffer = null;
+        }
+    }
+
+    @Override
+    protected VoltTable[][] coreExecutePlanFragmentGroup(
+            final int numTxns,
+            final int[] fragmentCounts,
+            final long[] planFragmentIds,
+            final Object[] parameterSets,
+            final long[] txnIds,
+            final long[] spHandles,
+            final long lastCommittedSpHandle,
+            final long[] uniqueIds,
+            final long[] undoTokens) throws EEException
+    {
+        int numFragmentIds = 0;
+        for (int i = 0; i < numTxns; ++i) {
+            numFragmentIds += fragmentCounts[i];
+        }
+        serializeParameterSets(numFragmentIds, planFragmentIds, parameterSets);
+
+        //Clear is destructive, do it before the native call
+        deserializer.clear();
+        final int errorCode =
+            nativeExecutePlanFragmentGroup(
+                    pointer,
+                    numTxns,
+                    fragmentCounts,
+                    planFragmentIds,
+                    txnIds,
+                    spHandles,
+                    lastCommittedSpHandle,
+                    uniqueIds,
+                    undoTokens);
+
+        try {
+            checkErrorCode(errorCode);
+            FastDeserializer fds = fallbackBuffer == null ? deserializer : new FastDeserializer(fallbackBuffer);
+            // one result block per transaction
+            final VoltTable[][] results = new VoltTable[numTxns][];
+            for (int i = 0; i < numTxns; ++i) {
+                results[i] = readResults(fds, fragmentCounts[i]);
+            }
+            return results;
+        } finally {
+            fallbackBuffer = null;
+        }
+    }
+
+    private void serializeParameterSets(final int batchSize, final long[] planFragmentIds, final Object[] parameterSets) {
         int allPsetSize = 0;
         for (int i = 0; i < batchSize; ++i) {
             if (parameterSets[i] instanceof ByteBuffer) {
@@ -298,60 +371,43 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                 }
             }
         }
-        // checkMaxFsSize();
-
-        // Execute the plan, passing a raw pointer to the byte buffers for input and output
-        //Clear is destructive, do it before the native call
-        deserializer.clear();
-        final int errorCode =
-            nativeExecutePlanFragments(
-                    pointer,
-                    numFragmentIds,
-                    planFragmentIds,
-                    inputDepIds,
-                    txnId,
-                    spHandle,
-                    lastCommittedSpHandle,
-                    uniqueId,
-                    undoToken);
+    }
 
+    /**
+     * Read one result block of batchSize fragments
+     */
+    private VoltTable[] readResults(final FastDeserializer fds, final int batchSize) throws EEException {
+        // get a copy of the result buffers and make the tables
+        // use the copy
         try {
-            checkErrorCode(errorCode);
-            FastDeserializer fds = fallbackBuffer == null ? deserializer : new FastDeserializer(fallbackBuffer);
-            // get a copy of the result buffers and make the tables
-            // use the copy
-            try {
-                // read the complete size of the buffer used
-                final int totalSize = fds.readInt();
-                // check if anything was changed
-                final boolean dirty = fds.readBoolean();
-                if (dirty)
-                    m_dirty = true;
-                // get a copy of the buffer
-                final ByteBuffer fullBacking = fds.readBuffer(totalSize);
-                final VoltTable[] results = new VoltTable[batchSize];
-                for (int i = 0; i < batchSize; ++i) {
-                    final int numdeps = fullBacking.getInt(); // number of dependencies for this frag
-                    assert(numdeps == 1);
-                    @SuppressWarnings("unused")
-                    final
-                    int depid = fullBacking.getInt(); // ignore the dependency id
-                    final int tableSize = fullBacking.getInt();
-                    // reasonableness check
-                    assert(tableSize < 50000000);
-                    final ByteBuffer tableBacking = fullBacking.slice();
-                    fullBacking.position(fullBacking.position() + tableSize);
-                    tableBacking.limit(tableSize);
-
-                    results[i] = PrivateVoltTableFactory.createVoltTableFromBuffer(tableBacking, true);
-                }
-                return results;
-            } catch (final IOException ex) {
-                LOG.error("Failed to deserialze result table" + ex);
-                throw new EEException(ERRORCODE_WRONG_SERIALIZED_BYTES);
+            // read the complete size of the block, which counts the dirty flag
+            final int totalSize = fds.readInt();
+            // check if anything was changed
+            final boolean dirty = fds.readBoolean();
+            if (dirty)
+                m_dirty = true;
+            // get a copy of the buffer
+            final ByteBuffer fullBacking = fds.readBuffer(totalSize - 1);
+            final VoltTable[] results = new VoltTable[batchSize];
+            for (int i = 0; i < batchSize; ++i) {
+                final int numdeps = fullBacking.getInt(); // number of dependencies for this frag
+                assert(numdeps == 1);
+                @SuppressWarnings("unused")
+                final
+                int depid = fullBacking.getInt(); // ignore the dependency id
+                final int tableSize = fullBacking.getInt();
+                // reasonableness check
+                assert(tableSize < 50000000);
+                final ByteBuffer tableBacking = fullBacking.slice();
+                fullBacking.position(fullBacking.position() + tableSize);
+                tableBacking.limit(tableSize);
+
+                results[i] = PrivateVoltTableFactory.createVoltTableFromBuffer(tableBacking, true);
             }
-        } finally {
-            fallbackBuffer = null;
+            return results;
+        } catch (final IOException ex) {
+            LOG.error("Failed to deserialze result table" + ex);
+            throw new EEException(ERRORCODE_WRONG_SERIALIZED_BYTES);
         }
     }
 
@@ -135,6 +135,21 @@ public class CorePlan {
         this.catalogHash = catalogHash;
     }
 
+    /**
+     * Copy of this plan marked as good for another catalog. Used to keep cached
+     * ad hoc plans across catalog changes that don't touch their tables.
+     */
+    public CorePlan copyForCatalogHash(byte[] newCatalogHash) {
+        CorePlan copy = new CorePlan(aggregatorFragment, collectorFragment,
+                                     aggregatorHash, collectorHash,
+                                     isReplicatedTableDML, readOnly,
+                                     parameterTypes, newCatalogHash);
+        copy.partitioningParamIndex = partitioningParamIndex;
+        copy.partitioningParamValue = partitioningParamValue;
+        copy.m_questionMarkParameterCount = m_questionMarkParameterCount;
+        return copy;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -25,8 +25,10 @@ import org.voltdb.planner.CompiledPlan;
 public class MicroOptimizationRunner {
 
     // list all of the micro optimizations here
-    static ArrayList<MicroOptimization> optimizations = new ArrayList<MicroOptimization>();
-    static {
+    // A fresh list per plan because the optimizations hold the parsed statement
+    // they are applied to, and ad hoc statements are planned on several threads.
+    private static ArrayList<MicroOptimization> optimizations() {
+        ArrayList<MicroOptimization> optimizations = new ArrayList<MicroOptimization>();
         // The orders here is important
         optimizations.add(new PushdownLimits());
         optimizations.add(new ReplaceWithIndexCounter());
@@ -34,10 +36,12 @@ public class MicroOptimizationRunner {
 
         // Inline aggregation has to be applied after Index counter and Index Limit with MIN/MAX.
         optimizations.add(new InlineAggregation());
+        return optimizations;
     }
 
     public static void applyAll(CompiledPlan plan, AbstractParsedStmt parsedStmt)
     {
+        ArrayList<MicroOptimization> optimizations = optimizations();
         for (int i = 0; i < optimizations.size(); i++) {
             MicroOptimization opt = optimizations.get(i);
             opt.apply(plan, parsedStmt);
@@ -102,14 +102,14 @@ public class Iv2RejoinCoordinator extends JoinCoordinator {
             // clear overflow dir in case there are files left from previous runs
             clearOverflowDir(voltroot);
 
-            // The buffer pool capacity is min(numOfSites to rejoin times 3, 16)
-            // or any user specified value.
+            // The buffer pool capacity is enough to decompress a block from every stream
+            // while the site applies another, or any user specified value.
             Integer userPoolSize = Integer.getInteger("REJOIN_RECEIVE_BUFFER_POOL_SIZE");
             int poolSize = 0;
             if (userPoolSize != null) {
                 poolSize = userPoolSize;
             } else {
-                poolSize = 3;
+                poolSize = Math.max(3, StreamSnapshotBase.DEFAULT_STREAM_COUNT + 2);
             }
 
             m_snapshotBufPool = new FixedDBBPool();
@@ -163,8 +163,11 @@ public class Iv2RejoinCoordinator extends JoinCoordinator {
     {
         StreamSnapshotRequestConfig.Stream stream =
             new StreamSnapshotRequestConfig.Stream(sourceToDests, null);
+        // Ask the sources for the streams and compression configured on this node
         StreamSnapshotRequestConfig config =
-            new StreamSnapshotRequestConfig(SnapshotUtil.getTablesToSave(m_catalog), Arrays.asList(stream), false);
+            new StreamSnapshotRequestConfig(SnapshotUtil.getTablesToSave(m_catalog), Arrays.asList(stream), false,
+                                            StreamSnapshotBase.DEFAULT_STREAM_COUNT,
+                                            StreamSnapshotBase.DEFAULT_STREAM_COMPRESSION);
         return makeSnapshotRequest(config);
     }
 
@@ -29,17 +29,23 @@ import org.voltdb.messaging.VoltDbMessageFactory;
  */
 public class RejoinDataMessage extends VoltMessage {
     private long m_targetId = -1;
-    // compressed snapshot data
+    // snapshot data, compressed unless the stream was set up without compression
     private byte[] m_data = null;
+    private boolean m_compressed = true;
 
     public RejoinDataMessage() {
         m_subject = Subject.DEFAULT.getId();
     }
 
     public RejoinDataMessage(long targetId, byte[] data) {
+        this(targetId, data, true);
+    }
+
+    public RejoinDataMessage(long targetId, byte[] data, boolean compressed) {
         m_subject = Subject.DEFAULT.getId();
         m_targetId = targetId;
         m_data = data;
+        m_compressed = compressed;
     }
 
     public long getTargetId() {
@@ -50,11 +56,16 @@ public class RejoinDataMessage extends VoltMessage {
         return m_data;
     }
 
+    public boolean isCompressed() {
+        return m_compressed;
+    }
+
     @Override
     public int getSerializedSize() {
         int msgsize = super.getSerializedSize();
         msgsize +=
                 8 + // m_targetId
+                1 + // m_compressed
                 4 + // data length
                 m_data.length;
         return msgsize;
@@ -63,6 +74,7 @@ public class RejoinDataMessage extends VoltMessage {
     @Override
     protected void initFromBuffer(ByteBuffer buf) throws IOException {
         m_targetId = buf.getLong();
+        m_compressed = buf.get() == 1;
         int len = buf.getInt();
         m_data = new byte[len];
         buf.get(m_data);
@@ -72,6 +84,7 @@ public class RejoinDataMessage extends VoltMessage {
     public void flattenToBuffer(ByteBuffer buf) throws IOException {
         buf.put(VoltDbMessageFactory.REJOIN_DATA_ID);
         buf.putLong(m_targetId);
+        buf.put((byte) (m_compressed ? 1 : 0));
         buf.putInt(m_data.length);
         buf.put(m_data);
         buf.limit(buf.position());
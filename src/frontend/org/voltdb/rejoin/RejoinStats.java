@@ -0,0 +1,152 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.rejoin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Progress of the snapshot streams of a rejoin or join on this host. A source
+ * has one row per stream of each destination site, a destination has one row
+ * per source site. Columns that don't apply to a role are null.
+ */
+public class RejoinStats extends StatsSource {
+    private static final String ROLE_SOURCE = "SOURCE";
+    private static final String ROLE_DESTINATION = "DESTINATION";
+
+    private static class Row {
+        String m_role;
+        long m_localHSId;
+        long m_remoteHSId;
+        int m_stream;
+        long m_blocks;
+        long m_bytes;
+        Long m_wireBytes;
+        Integer m_window;
+        Integer m_inFlight;
+        int m_queued;
+        Long m_avgAckLatency;
+    }
+
+    private List<Row> m_rows = new ArrayList<Row>();
+
+    public RejoinStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("ROLE", VoltType.STRING));
+        columns.add(new ColumnInfo("SITE", VoltType.STRING));
+        columns.add(new ColumnInfo("REMOTE_SITE", VoltType.STRING));
+        columns.add(new ColumnInfo("STREAM", VoltType.INTEGER));
+        columns.add(new ColumnInfo("BLOCKS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WIRE_BYTES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WINDOW", VoltType.INTEGER));
+        columns.add(new ColumnInfo("IN_FLIGHT", VoltType.INTEGER));
+        columns.add(new ColumnInfo("QUEUED", VoltType.INTEGER));
+        columns.add(new ColumnInfo("AVG_ACK_LATENCY", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Row row = (Row)rowKey;
+        rowValues[columnNameToIndex.get("ROLE")] = row.m_role;
+        rowValues[columnNameToIndex.get("SITE")] =
+                row.m_localHSId == -1 ? null : CoreUtils.hsIdToString(row.m_localHSId);
+        rowValues[columnNameToIndex.get("REMOTE_SITE")] = CoreUtils.hsIdToString(row.m_remoteHSId);
+        rowValues[columnNameToIndex.get("STREAM")] = row.m_stream;
+        rowValues[columnNameToIndex.get("BLOCKS")] = row.m_blocks;
+        rowValues[columnNameToIndex.get("BYTES")] = row.m_bytes;
+        rowValues[columnNameToIndex.get("WIRE_BYTES")] = row.m_wireBytes;
+        rowValues[columnNameToIndex.get("WINDOW")] = row.m_window;
+        rowValues[columnNameToIndex.get("IN_FLIGHT")] = row.m_inFlight;
+        rowValues[columnNameToIndex.get("QUEUED")] = row.m_queued;
+        rowValues[columnNameToIndex.get("AVG_ACK_LATENCY")] = row.m_avgAckLatency;
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_rows = new ArrayList<Row>();
+        for (StreamSnapshotDataTarget target : StreamSnapshotDataTarget.getActiveTargets()) {
+            // window, blocks in flight, blocks held back, average ack latency
+            final long flowControl[] = target.getFlowControlStats();
+            for (int stream = 0; stream < target.getStreamCount(); stream++) {
+                final long streamStats[] = target.getStreamStats(stream);
+                final Row row = new Row();
+                row.m_role = ROLE_SOURCE;
+                // the source site isn't known to the target
+                row.m_localHSId = -1;
+                row.m_remoteHSId = target.getDestHSId();
+                row.m_stream = stream;
+                row.m_blocks = streamStats[StreamSnapshotDataTarget.SnapshotSender.STAT_BLOCKS];
+                row.m_bytes = streamStats[StreamSnapshotDataTarget.SnapshotSender.STAT_RAW_BYTES];
+                row.m_wireBytes = streamStats[StreamSnapshotDataTarget.SnapshotSender.STAT_BYTES];
+                // the window is shared by the streams of a target
+                row.m_window = (int)flowControl[0];
+                row.m_inFlight = (int)flowControl[1];
+                row.m_queued = (int)flowControl[2];
+                row.m_avgAckLatency = flowControl[3];
+                m_rows.add(row);
+            }
+        }
+        for (StreamSnapshotSink sink : StreamSnapshotSink.getActiveSinks()) {
+            final int queued = sink.getQueuedBlocks();
+            for (Map.Entry<Long, AtomicLongArray> e : sink.getSourceStats().entrySet()) {
+                final Row row = new Row();
+                row.m_role = ROLE_DESTINATION;
+                row.m_localHSId = sink.getHSId();
+                row.m_remoteHSId = e.getKey();
+                row.m_stream = -1;
+                row.m_blocks = e.getValue().get(StreamSnapshotSink.STAT_BLOCKS);
+                row.m_bytes = e.getValue().get(StreamSnapshotSink.STAT_BYTES);
+                row.m_queued = queued;
+                m_rows.add(row);
+            }
+        }
+
+        final Iterator<Row> rows = m_rows.iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return rows.next();
+            }
+
+            @Override
+            public void remove() {
+                rows.remove();
+            }
+        };
+    }
+}
@@ -0,0 +1,109 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.rejoin;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of blocks a stream snapshot target has sent but not had acked.
+ *
+ * The receiver acks a block when the site picks it up to apply it, so the ack latency
+ * tells how far behind the receiver is. While acks come back close to the lowest latency seen
+ * the receiver keeps up and the window grows by one block per window of acks. When the latency
+ * climbs well above the lowest seen blocks are queueing at the receiver and the window is halved.
+ *
+ * Not thread-safe, the target synchronizes access.
+ */
+class StreamSnapshotAckWindow {
+    static final int MIN_WINDOW = Math.max(1, Integer.getInteger("REJOIN_STREAM_MIN_WINDOW", 2));
+    static final int MAX_WINDOW = Math.max(MIN_WINDOW, Integer.getInteger("REJOIN_STREAM_MAX_WINDOW", 32));
+
+    // Latency below this is noise, don't shrink the window for it
+    private static final long LATENCY_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int CONGESTED_LATENCY_FACTOR = 4;
+
+    private final int m_minWindow;
+    private final int m_maxWindow;
+    private int m_window;
+    private int m_inFlight = 0;
+    private int m_acksSinceResize = 0;
+    private long m_minLatency = Long.MAX_VALUE;
+    private long m_acks = 0;
+    private long m_totalLatency = 0;
+
+    StreamSnapshotAckWindow() {
+        this(MIN_WINDOW, MAX_WINDOW);
+    }
+
+    StreamSnapshotAckWindow(int minWindow, int maxWindow) {
+        m_minWindow = minWindow;
+        m_maxWindow = maxWindow;
+        m_window = minWindow;
+    }
+
+    /**
+     * @return true if another block can be sent, it is then counted as in flight
+     */
+    boolean tryAcquire() {
+        if (m_inFlight < m_window) {
+            m_inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Count a block that is sent regardless of the window, e.g. a small control message
+     */
+    void acquire() {
+        m_inFlight++;
+    }
+
+    /**
+     * A block was acked
+     * @param latencyNanos Time between sending the block and receiving the ack
+     */
+    void release(long latencyNanos) {
+        m_inFlight--;
+        m_acks++;
+        m_totalLatency += latencyNanos;
+        m_minLatency = Math.min(m_minLatency, latencyNanos);
+
+        if (++m_acksSinceResize < m_window) {
+            return;
+        }
+        m_acksSinceResize = 0;
+        if (latencyNanos > CONGESTED_LATENCY_FACTOR * Math.max(m_minLatency, LATENCY_FLOOR_NANOS)) {
+            m_window = Math.max(m_minWindow, m_window / 2);
+        } else {
+            m_window = Math.min(m_maxWindow, m_window + 1);
+        }
+    }
+
+    int getWindow() {
+        return m_window;
+    }
+
+    int getInFlight() {
+        return m_inFlight;
+    }
+
+    long getAverageLatencyNanos() {
+        return m_acks == 0 ? 0 : m_totalLatency / m_acks;
+    }
+}
@@ -29,8 +29,17 @@ public abstract class StreamSnapshotBase {
     public static final int tableIdOffset = blockIndexOffset + 4; // 4 bytes
     public static final int contentOffset = tableIdOffset + 4;
 
+    /*
+     * Number of concurrent streams a source sends a snapshot on, and whether blocks are compressed.
+     * The rejoining node asks for these and the source never uses more streams or compression
+     * than its own settings allow.
+     */
+    public static final int DEFAULT_STREAM_COUNT = Math.max(1, Integer.getInteger("REJOIN_STREAM_COUNT", 4));
+    public static final boolean DEFAULT_STREAM_COMPRESSION =
+            Boolean.valueOf(System.getProperty("REJOIN_STREAM_COMPRESSION", "true"));
+
     public static interface MessageFactory {
-        public VoltMessage makeDataMessage(long targetId, byte[] data);
+        public VoltMessage makeDataMessage(long targetId, byte[] data, boolean compressed);
 
         public boolean isAckEOS(VoltMessage msg);
         public long getAckTargetId(VoltMessage msg);
@@ -40,9 +49,9 @@ public abstract class StreamSnapshotBase {
 
     public static class DefaultMessageFactory implements MessageFactory {
         @Override
-        public VoltMessage makeDataMessage(long targetId, byte[] data)
+        public VoltMessage makeDataMessage(long targetId, byte[] data, boolean compressed)
         {
-            return new RejoinDataMessage(targetId, data);
+            return new RejoinDataMessage(targetId, data, compressed);
         }
 
         @Override
@@ -17,33 +17,41 @@
 
 package org.voltdb.rejoin;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 
-import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.Mailbox;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
 import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.VoltDB;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.FixedDBBPool;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.Uninterruptibles;
+
 /**
  * Receives snapshot data from a replica. This is used on a rejoining partition.
+ *
+ * Blocks are decompressed on the compression service so blocks arriving on several
+ * streams are decompressed concurrently. They are still handed to the site in the
+ * order they arrived, the number being decompressed is bounded by the buffer pool.
  */
 public class StreamSnapshotDataReceiver extends StreamSnapshotBase
 implements Runnable {
-    private static final VoltLogger rejoinLog = new VoltLogger("REJOIN");
-
     /*
      * element is a pair of <sourceHSId, blockData>. The hsId should remain the
      * same for the length of the data transfer process for this partition.
+     * The block is ready once the future is done. A block that couldn't be read fails
+     * the future, which crashes the rejoining node when the block is taken.
      */
-    private final LinkedBlockingQueue<Pair<Long, Pair<Long, BBContainer>>> m_queue =
-            new LinkedBlockingQueue<Pair<Long, Pair<Long, BBContainer>>>();
+    private final LinkedBlockingQueue<ListenableFuture<Pair<Long, Pair<Long, BBContainer>>>> m_queue =
+            new LinkedBlockingQueue<ListenableFuture<Pair<Long, Pair<Long, BBContainer>>>>();
 
     private final Mailbox m_mb;
     private final FixedDBBPool m_bufferPool;
@@ -60,12 +68,17 @@ implements Runnable {
     }
 
     /**
-     * Get the next message from queue.
+     * Get the next message from queue. Must only be called from one thread.
      *
-     * @return null if the queue is empty.
+     * @return null if the queue is empty or the next message is still being decompressed.
      */
     public Pair<Long, Pair<Long, BBContainer>> poll() {
-        return m_queue.poll();
+        ListenableFuture<Pair<Long, Pair<Long, BBContainer>>> next = m_queue.peek();
+        if (next == null || !next.isDone()) {
+            return null;
+        }
+        m_queue.poll();
+        return getBlock(next);
     }
 
     /**
@@ -75,7 +88,27 @@ implements Runnable {
      * @throws InterruptedException
      */
     public Pair<Long, Pair<Long, BBContainer>> take() throws InterruptedException {
-        return m_queue.take();
+        return getBlock(m_queue.take());
+    }
+
+    private Pair<Long, Pair<Long, BBContainer>> getBlock(
+            ListenableFuture<Pair<Long, Pair<Long, BBContainer>>> future) {
+        try {
+            // decompression is short, don't leave the block behind if interrupted
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            if (m_closed) {
+                // the stream is being torn down, nothing is waiting for the block
+                return null;
+            }
+            /*
+             * The block can't be skipped, the source would never get its ack and
+             * the data in it would be missing from the rejoined partition.
+             */
+            VoltDB.crashLocalVoltDB("Error reading a message from a recovery stream.",
+                                    true, e.getCause());
+            return null;
+        }
     }
 
     public int size() {
@@ -84,75 +117,76 @@ implements Runnable {
 
     @Override
     public void run() {
-        BlockingQueue<BBContainer> bufferQueue =
+        final BlockingQueue<BBContainer> bufferQueue =
             m_bufferPool.getQueue(SnapshotSiteProcessor.m_snapshotBufferLength);
-        BlockingQueue<BBContainer> compressionBufferQueue =
+        final BlockingQueue<BBContainer> compressionBufferQueue =
             m_bufferPool.getQueue(SnapshotSiteProcessor.m_snapshotBufferCompressedLen);
 
         try {
             while (true) {
-                BBContainer container = null;
-                BBContainer compressionBufferC = null;
-                ByteBuffer compressionBuffer = null;
-                boolean success = false;
-
-                try {
-                    VoltMessage msg = m_mb.recvBlocking();
-                    if (msg == null) {
-                        // If interrupted, break
-                        break;
-                    }
+                VoltMessage msg = m_mb.recvBlocking();
+                if (msg == null) {
+                    // If interrupted, break
+                    break;
+                }
 
-                    assert(msg instanceof RejoinDataMessage);
-                    RejoinDataMessage dataMsg = (RejoinDataMessage) msg;
-                    byte[] data = dataMsg.getData();
-
-                    // Only grab the buffer from the pool after receiving a message from the
-                    // mailbox. If the buffer is grabbed before receiving the message,
-                    // this thread could hold on to a buffer it may not need and other receivers
-                    // will be blocked if the pool has no more buffers left.
-                    container = bufferQueue.take();
-                    ByteBuffer messageBuffer = container.b();
-                    messageBuffer.clear();
-
-                    compressionBufferC = compressionBufferQueue.take();
-                    compressionBuffer = compressionBufferC.b();
-                    compressionBuffer.clear();
-                    compressionBuffer.limit(data.length);
-                    compressionBuffer.put(data);
-                    compressionBuffer.flip();
-                    int uncompressedSize =
-                            CompressionService.decompressBuffer(
-                                    compressionBuffer,
-                                    messageBuffer);
-                    messageBuffer.limit(uncompressedSize);
-                    m_queue.offer(Pair.of(dataMsg.m_sourceHSId, Pair.of(dataMsg.getTargetId(), container)));
-                    success = true;
-                } finally {
-                    if (!success && container != null) {
+                assert(msg instanceof RejoinDataMessage);
+                final RejoinDataMessage dataMsg = (RejoinDataMessage) msg;
+
+                // Only grab the buffer from the pool after receiving a message from the
+                // mailbox. If the buffer is grabbed before receiving the message,
+                // this thread could hold on to a buffer it may not need and other receivers
+                // will be blocked if the pool has no more buffers left.
+                final BBContainer container = bufferQueue.take();
+                final BBContainer compressionBufferC;
+                if (dataMsg.isCompressed()) {
+                    try {
+                        compressionBufferC = compressionBufferQueue.take();
+                    } catch (InterruptedException e) {
                         container.discard();
+                        throw e;
                     }
-                    if (compressionBuffer != null) {
-                        compressionBufferC.discard();
-                    }
+                } else {
+                    compressionBufferC = null;
                 }
+
+                m_queue.offer(CompressionService.submitCompressionTask(
+                        new Callable<Pair<Long, Pair<Long, BBContainer>>>() {
+                    @Override
+                    public Pair<Long, Pair<Long, BBContainer>> call() throws Exception {
+                        boolean success = false;
+                        try {
+                            byte[] data = dataMsg.getData();
+                            ByteBuffer messageBuffer = container.b();
+                            messageBuffer.clear();
+                            if (compressionBufferC == null) {
+                                messageBuffer.put(data);
+                                messageBuffer.flip();
+                            } else {
+                                ByteBuffer compressionBuffer = compressionBufferC.b();
+                                compressionBuffer.clear();
+                                compressionBuffer.limit(data.length);
+                                compressionBuffer.put(data);
+                                compressionBuffer.flip();
+                                int uncompressedSize =
+                                        CompressionService.decompressBuffer(
+                                                compressionBuffer,
+                                                messageBuffer);
+                                messageBuffer.limit(uncompressedSize);
+                            }
+                            success = true;
+                            return Pair.of(dataMsg.m_sourceHSId, Pair.of(dataMsg.getTargetId(), container));
+                        } finally {
+                            if (!success) {
+                                container.discard();
+                            }
+                            if (compressionBufferC != null) {
+                                compressionBufferC.discard();
+                            }
+                        }
+                    }
+                }));
             }
-        } catch (IOException e) {
-            /*
-             * Wait until the last message is delivered and then wait some more
-             * so it can be processed so that closed can be set and the
-             * exception suppressed.
-             */
-            try {
-                while (!m_queue.isEmpty()) {
-                    Thread.sleep(50);
-                }
-                Thread.sleep(300);
-            } catch (InterruptedException e2) {}
-            if (m_closed) {
-                return;
-            }
-            rejoinLog.error("Error reading a message from a recovery stream.", e);
         } catch (InterruptedException e) {
             return;
         }
@@ -19,17 +19,21 @@ package org.voltdb.rejoin;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.voltcore.logging.VoltLogger;
@@ -50,6 +54,13 @@ import com.google_voltpatches.common.util.concurrent.SettableFuture;
 /**
  * A stream snapshot target for sending snapshot data directly to a rejoining
  * partition.
+ *
+ * Data blocks are spread round robin over the streams of the {@link SnapshotSender}, so
+ * blocks of the same table are compressed and sent concurrently and may arrive out of order.
+ * Messages a block depends on, the hashinator config and table schemas, are sent inline by
+ * the writing thread so they are on the wire before any block that needs them is queued.
+ * The number of unacked blocks is limited by a {@link StreamSnapshotAckWindow}, blocks over
+ * the window wait in the target until acks arrive.
  */
 public class StreamSnapshotDataTarget extends StreamSnapshotBase
 implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
@@ -59,6 +70,9 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     static boolean m_rejoinDeathTestMode = System.getProperties().containsKey("rejoindeathtest");
 
     private static AtomicLong m_totalSnapshotTargetCount = new AtomicLong(0);
+    // Targets that haven't been closed, for statistics
+    private static final Set<StreamSnapshotDataTarget> m_activeTargets =
+            Collections.newSetFromMap(new ConcurrentHashMap<StreamSnapshotDataTarget, Boolean>());
     final long m_targetId;
 
     // shortened when in test mode
@@ -83,6 +97,9 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     final AtomicInteger m_outstandingWorkCount = new AtomicInteger(0);
     // map of sent, but un-acked buffers, packaged up a bit
     private final TreeMap<Integer, SendWork> m_outstandingWork = new TreeMap<Integer, SendWork>();
+    // un-sent buffers held back until the window allows them to be sent
+    private final ArrayDeque<SendWork> m_pendingWork = new ArrayDeque<SendWork>();
+    private final StreamSnapshotAckWindow m_window = new StreamSnapshotAckWindow();
 
     int m_blockIndex = 0;
     private final AtomicReference<Runnable> m_onCloseHandler = new AtomicReference<Runnable>(null);
@@ -114,12 +131,18 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         // start a periodic task to look for timed out connections
         VoltDB.instance().scheduleWork(new Watchdog(0, writeTimeout), WATCHDOG_PERIOS_S, -1, TimeUnit.SECONDS);
 
+        m_activeTargets.add(this);
+
         if (hashinatorConfig != null) {
             // Send the hashinator config as  the first block
             send(StreamSnapshotMessageType.HASHINATOR, -1, hashinatorConfig);
         }
     }
 
+    static Set<StreamSnapshotDataTarget> getActiveTargets() {
+        return m_activeTargets;
+    }
+
     /**
      * Packages up a pending write into a piece of work that can be tracked
      * and can be scheduled.
@@ -135,6 +158,14 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         // A listenable future used to notify a listener when this buffer is discarded
         final SettableFuture<Boolean> m_future;
 
+        // Sender stream the work is queued on and whether the block is compressed
+        final int m_stream;
+        final boolean m_compress;
+
+        // Uncompressed length and time the work was handed to the mailbox, set when it is sent
+        int m_rawLength = 0;
+        volatile long m_sentNanos = 0;
+
         /**
          * Creates an empty send work to terminate the sender thread
          */
@@ -144,17 +175,28 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             m_destHSId = -1;
             m_ts = -1;
             m_future = null;
+            m_stream = 0;
+            m_compress = false;
         }
 
         SendWork (long targetId, long destHSId,
                   BBContainer message,
                   SettableFuture<Boolean> future) {
+            this(targetId, destHSId, message, future, 0, true);
+        }
+
+        SendWork (long targetId, long destHSId,
+                  BBContainer message,
+                  SettableFuture<Boolean> future,
+                  int stream, boolean compress) {
             m_isEmpty = false;
             m_targetId = targetId;
             m_destHSId = destHSId;
             m_message = message;
             m_ts = System.currentTimeMillis();
             m_future = future;
+            m_stream = stream;
+            m_compress = compress;
         }
 
         /**
@@ -176,9 +218,16 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
          */
         protected int send(Mailbox mb, MessageFactory msgFactory, BBContainer message) throws IOException {
             final ByteBuffer messageBuffer = message.b();
-            if (messageBuffer.isDirect()) {
+            m_rawLength = messageBuffer.remaining();
+            m_sentNanos = System.nanoTime();
+            if (!m_compress) {
+                byte[] data = new byte[messageBuffer.remaining()];
+                messageBuffer.duplicate().get(data);
+                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, data, false));
+                return data.length;
+            } else if (messageBuffer.isDirect()) {
                 byte[] data = CompressionService.compressBuffer(messageBuffer);
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, data));
+                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, data, true));
 
                 if (rejoinLog.isTraceEnabled()) {
                     rejoinLog.trace("Sending direct buffer");
@@ -191,7 +240,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
                             messageBuffer.array(), messageBuffer.position(),
                             messageBuffer.remaining());
 
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, compressedBytes));
+                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, compressedBytes, true));
 
                 if (rejoinLog.isTraceEnabled()) {
                     rejoinLog.trace("Sending heap buffer");
@@ -298,6 +347,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             e.getValue().discard();
         }
         m_outstandingWork.clear();
+        m_pendingWork.clear();
         m_outstandingWorkCount.set(0);
     }
 
@@ -311,22 +361,36 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
 
         m_outstandingWorkCount.decrementAndGet();
         SendWork work = m_outstandingWork.remove(blockIndex);
+        m_window.release(System.nanoTime() - work.m_sentNanos);
 
         // releases the BBContainers and cleans up
         work.discard();
+
+        // the ack may have opened the window for blocks held back
+        while (!m_pendingWork.isEmpty() && m_window.tryAcquire()) {
+            m_sender.offer(m_pendingWork.poll());
+        }
     }
 
     /**
-     * Thread that runs send work (sending snapshot blocks). One per node
+     * Threads that run send work (sending snapshot blocks). One set per node, each stream
+     * compresses and sends the blocks queued on it so several blocks are in progress at once.
      */
-    public static class SnapshotSender implements Runnable {
+    public static class SnapshotSender {
+        // Counters kept per target and stream in m_streamStats
+        static final int STAT_BLOCKS = 0;
+        static final int STAT_BYTES = 1;
+        static final int STAT_RAW_BYTES = 2;
+        static final int STAT_COUNT = 3;
+
         private final Mailbox m_mb;
         private final MessageFactory m_msgFactory;
-        private final LinkedBlockingQueue<SendWork> m_workQueue;
-        private final AtomicInteger m_expectedEOFs;
+        private final SenderStream m_streams[];
+        private final boolean m_compress;
 
         final Map<Long, AtomicLong> m_bytesSent;
         final Map<Long, AtomicLong> m_worksSent;
+        final Map<Long, AtomicLongArray> m_streamStats;
         volatile Exception m_lastException = null;
 
         public SnapshotSender(Mailbox mb)
@@ -335,64 +399,129 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         }
 
         public SnapshotSender(Mailbox mb, MessageFactory msgFactory)
+        {
+            this(mb, msgFactory, 1, true);
+        }
+
+        public SnapshotSender(Mailbox mb, MessageFactory msgFactory, int streamCount, boolean compress)
         {
             Preconditions.checkArgument(mb != null);
+            Preconditions.checkArgument(streamCount > 0);
             m_mb = mb;
             m_msgFactory = msgFactory;
-            m_workQueue = new LinkedBlockingQueue<SendWork>();
-            m_expectedEOFs = new AtomicInteger();
+            m_compress = compress;
+            m_streams = new SenderStream[streamCount];
+            for (int ii = 0; ii < streamCount; ii++) {
+                m_streams[ii] = new SenderStream();
+            }
             m_bytesSent = Collections.synchronizedMap(new HashMap<Long, AtomicLong>());
             m_worksSent = Collections.synchronizedMap(new HashMap<Long, AtomicLong>());
+            m_streamStats = Collections.synchronizedMap(new HashMap<Long, AtomicLongArray>());
+        }
+
+        public void start()
+        {
+            for (int ii = 0; ii < m_streams.length; ii++) {
+                new Thread(m_streams[ii], "Stream Snapshot Sender " + ii).start();
+            }
+        }
+
+        public int getStreamCount()
+        {
+            return m_streams.length;
+        }
+
+        public boolean isCompressing()
+        {
+            return m_compress;
         }
 
         public void registerDataTarget(long targetId)
         {
-            m_expectedEOFs.incrementAndGet();
+            for (SenderStream stream : m_streams) {
+                stream.m_expectedEOFs.incrementAndGet();
+            }
             m_bytesSent.put(targetId, new AtomicLong());
             m_worksSent.put(targetId, new AtomicLong());
+            m_streamStats.put(targetId, new AtomicLongArray(m_streams.length * STAT_COUNT));
         }
 
         public void offer(SendWork work)
         {
-            m_workQueue.offer(work);
+            if (work.m_isEmpty) {
+                // every stream has to see the end of each target
+                for (SenderStream stream : m_streams) {
+                    stream.m_workQueue.offer(work);
+                }
+            } else {
+                m_streams[work.m_stream].m_workQueue.offer(work);
+            }
         }
 
-        @Override
-        public void run() {
-            rejoinLog.trace("Starting stream sender thread");
-
-            while (true) {
-                SendWork work;
-
-                try {
-                    rejoinLog.trace("Blocking on sending work queue");
-                    work = m_workQueue.poll(10, TimeUnit.MINUTES);
-
-                    if (work == null) {
-                        rejoinLog.warn("No stream snapshot send work was produced in the past 10 minutes");
-                        break;
-                    } else if (work.m_isEmpty) {
-                        // Empty work indicates the end of the queue.
-                        // The sender is shared by multiple data targets, each of them will
-                        // send an end-of-queue work, must wait until all end-of-queue works
-                        // are received before terminating the thread.
-                        if (m_expectedEOFs.decrementAndGet() == 0) {
+        /**
+         * Send the work on the calling thread instead of queueing it on a stream
+         */
+        void sendInline(SendWork work)
+        {
+            try {
+                recordSent(work, work.doWork(m_mb, m_msgFactory));
+            } catch (Exception e) {
+                m_lastException = e;
+                rejoinLog.error("Error sending a recovery stream message", e);
+            }
+        }
+
+        private void recordSent(SendWork work, int bytes)
+        {
+            m_bytesSent.get(work.m_targetId).addAndGet(bytes);
+            m_worksSent.get(work.m_targetId).incrementAndGet();
+            final AtomicLongArray stats = m_streamStats.get(work.m_targetId);
+            final int base = work.m_stream * STAT_COUNT;
+            stats.incrementAndGet(base + STAT_BLOCKS);
+            stats.addAndGet(base + STAT_BYTES, bytes);
+            stats.addAndGet(base + STAT_RAW_BYTES, work.m_rawLength);
+        }
+
+        private class SenderStream implements Runnable {
+            private final LinkedBlockingQueue<SendWork> m_workQueue = new LinkedBlockingQueue<SendWork>();
+            private final AtomicInteger m_expectedEOFs = new AtomicInteger();
+
+            @Override
+            public void run() {
+                rejoinLog.trace("Starting stream sender thread");
+
+                while (true) {
+                    SendWork work;
+
+                    try {
+                        rejoinLog.trace("Blocking on sending work queue");
+                        work = m_workQueue.poll(10, TimeUnit.MINUTES);
+
+                        if (work == null) {
+                            rejoinLog.warn("No stream snapshot send work was produced in the past 10 minutes");
                             break;
-                        } else {
-                            continue;
+                        } else if (work.m_isEmpty) {
+                            // Empty work indicates the end of the queue.
+                            // The sender is shared by multiple data targets, each of them will
+                            // send an end-of-queue work, must wait until all end-of-queue works
+                            // are received before terminating the thread.
+                            if (m_expectedEOFs.decrementAndGet() == 0) {
+                                break;
+                            } else {
+                                continue;
+                            }
                         }
-                    }
 
-                    m_bytesSent.get(work.m_targetId).addAndGet(work.doWork(m_mb, m_msgFactory));
-                    m_worksSent.get(work.m_targetId).incrementAndGet();
-                }
-                catch (Exception e) {
-                    m_lastException = e;
-                    rejoinLog.error("Error sending a recovery stream message", e);
+                        recordSent(work, work.doWork(m_mb, m_msgFactory));
+                    }
+                    catch (Exception e) {
+                        m_lastException = e;
+                        rejoinLog.error("Error sending a recovery stream message", e);
+                    }
                 }
+                CompressionService.releaseThreadLocal();
+                rejoinLog.trace("Stream sender thread exiting");
             }
-            CompressionService.releaseThreadLocal();
-            rejoinLog.trace("Stream sender thread exiting");
         }
     }
 
@@ -463,6 +592,10 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         }
     }
 
+    /**
+     * Send a control message the following blocks depend on. It is sent uncompressed on the
+     * calling thread, outside of the window, so it is on the wire before any later block is queued.
+     */
     private ListenableFuture<Boolean> send(StreamSnapshotMessageType type, int tableId, byte[] content)
     {
         // 1 byte for the type, 4 bytes for the block index, 4 bytes for table Id
@@ -473,7 +606,15 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         buf.put(content);
         buf.flip();
 
-        return send(m_blockIndex++, DBBPool.wrapBB(buf));
+        SettableFuture<Boolean> sendFuture = SettableFuture.create();
+        SendWork sendWork = new SendWork(m_targetId, m_destHSId, DBBPool.wrapBB(buf), sendFuture, 0, false);
+        synchronized (this) {
+            m_outstandingWork.put(m_blockIndex++, sendWork);
+            m_outstandingWorkCount.incrementAndGet();
+            m_window.acquire();
+        }
+        m_sender.sendInline(sendWork);
+        return sendFuture;
     }
 
     /**
@@ -488,10 +629,15 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
      */
     synchronized ListenableFuture<Boolean> send(int blockIndex, BBContainer chunk) {
         SettableFuture<Boolean> sendFuture = SettableFuture.create();
-        SendWork sendWork = new SendWork(m_targetId, m_destHSId, chunk, sendFuture);
+        SendWork sendWork = new SendWork(m_targetId, m_destHSId, chunk, sendFuture,
+                                         blockIndex % m_sender.getStreamCount(), m_sender.isCompressing());
         m_outstandingWork.put(blockIndex, sendWork);
         m_outstandingWorkCount.incrementAndGet();
-        m_sender.offer(sendWork);
+        if (m_window.tryAcquire()) {
+            m_sender.offer(sendWork);
+        } else {
+            m_pendingWork.offer(sendWork);
+        }
         return sendFuture;
     }
 
@@ -529,6 +675,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
 
                 assert(m_outstandingWork.size() == 0);
             }
+            m_activeTargets.remove(this);
 
             rejoinLog.trace("Closed stream snapshot target");
         }
@@ -585,6 +732,38 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         return m_sender.m_worksSent.get(m_targetId).get();
     }
 
+    long getDestHSId()
+    {
+        return m_destHSId;
+    }
+
+    int getStreamCount()
+    {
+        return m_sender.getStreamCount();
+    }
+
+    /**
+     * @return blocks, bytes sent and uncompressed bytes of the stream
+     */
+    long[] getStreamStats(int stream)
+    {
+        final AtomicLongArray stats = m_sender.m_streamStats.get(m_targetId);
+        final long result[] = new long[SnapshotSender.STAT_COUNT];
+        for (int ii = 0; ii < result.length; ii++) {
+            result[ii] = stats.get(stream * SnapshotSender.STAT_COUNT + ii);
+        }
+        return result;
+    }
+
+    /**
+     * @return window, blocks in flight, blocks held back by the window and average ack latency in nanoseconds
+     */
+    synchronized long[] getFlowControlStats()
+    {
+        return new long[] { m_window.getWindow(), m_window.getInFlight(),
+                            m_pendingWork.size(), m_window.getAverageLatencyNanos() };
+    }
+
     @Override
     public void setOnCloseHandler(Runnable onClose) {
         m_onCloseHandler.set(onClose);
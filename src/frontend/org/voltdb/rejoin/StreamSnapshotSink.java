@@ -18,9 +18,13 @@
 package org.voltdb.rejoin;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.Mailbox;
@@ -48,6 +52,15 @@ import com.google_voltpatches.common.base.Preconditions;
 public class StreamSnapshotSink {
     private static final VoltLogger rejoinLog = new VoltLogger("REJOIN");
 
+    // Sinks that are receiving data, for statistics
+    private static final Set<StreamSnapshotSink> m_activeSinks =
+            Collections.newSetFromMap(new ConcurrentHashMap<StreamSnapshotSink, Boolean>());
+
+    // Counters kept per source in m_sourceStats
+    static final int STAT_BLOCKS = 0;
+    static final int STAT_BYTES = 1;
+    static final int STAT_COUNT = 2;
+
     private final Mailbox m_mb;
     private StreamSnapshotDataReceiver m_in = null;
     private Thread m_inThread = null;
@@ -58,6 +71,8 @@ public class StreamSnapshotSink {
     // Schemas of the tables
     private final Map<Integer, byte[]> m_schemas = new HashMap<Integer, byte[]>();
     private long m_bytesReceived = 0;
+    // Blocks and bytes of table data received from each source HSId
+    private final Map<Long, AtomicLongArray> m_sourceStats = new ConcurrentHashMap<Long, AtomicLongArray>();
 
     /**
      * A piece of work that can be restored on the site receiving the data.
@@ -131,15 +146,37 @@ public class StreamSnapshotSink {
         m_ackThread = new Thread(m_ack, "Snapshot ack sender");
         m_inThread.start();
         m_ackThread.start();
+        m_activeSinks.add(this);
+
+        return m_mb.getHSId();
+    }
+
+    static Set<StreamSnapshotSink> getActiveSinks() {
+        return m_activeSinks;
+    }
 
+    long getHSId() {
         return m_mb.getHSId();
     }
 
+    Map<Long, AtomicLongArray> getSourceStats() {
+        return m_sourceStats;
+    }
+
+    /**
+     * @return Number of blocks received that the site hasn't picked up yet
+     */
+    int getQueuedBlocks() {
+        StreamSnapshotDataReceiver in = m_in;
+        return in == null ? 0 : in.size();
+    }
+
     public boolean isEOF() {
         return m_EOF;
     }
 
     public void close() {
+        m_activeSinks.remove(this);
         if (m_in != null) {
             m_in.close();
             // Interrupt the thread in case it's blocked on mailbox recv.
@@ -281,6 +318,7 @@ public class StreamSnapshotSink {
                 block.position(StreamSnapshotDataTarget.contentOffset);
                 ByteBuffer nextChunk = getNextChunk(m_schemas.get(tableId), block, resultBufferAllocator);
                 m_bytesReceived += nextChunk.remaining();
+                recordBlock(hsId, nextChunk.remaining());
 
                 restoreWork = new TableRestoreWork(tableId, nextChunk);
             }
@@ -294,6 +332,16 @@ public class StreamSnapshotSink {
         }
     }
 
+    private void recordBlock(long hsId, int bytes) {
+        AtomicLongArray stats = m_sourceStats.get(hsId);
+        if (stats == null) {
+            stats = new AtomicLongArray(STAT_COUNT);
+            m_sourceStats.put(hsId, stats);
+        }
+        stats.incrementAndGet(STAT_BLOCKS);
+        stats.addAndGet(STAT_BYTES, bytes);
+    }
+
     public long bytesTransferred() {
         return m_bytesReceived;
     }
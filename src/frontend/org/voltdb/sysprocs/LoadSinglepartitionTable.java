@@ -25,17 +25,26 @@ import org.voltdb.ParameterSet;
 import org.voltdb.ProcInfo;
 import org.voltdb.SQLStmt;
 import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.TheHashinator;
 import org.voltdb.VoltSystemProcedure;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.Table;
+import org.voltdb.dtxn.TransactionState;
+import org.voltdb.utils.CatalogUtil;
 
 /**
  * Given as input a VoltTable with a schema corresponding to a persistent table,
  * insert into the appropriate persistent table. Should be faster than using
  * the auto-generated CRUD procs for batch inserts. Also a bit more generic.
+ *
+ * If the column types of the input match the table exactly the whole table is handed
+ * to the EE in one call, the way snapshot restore loads tables, instead of executing
+ * an insert statement per row. Otherwise the rows are inserted with the CRUD insert
+ * statement, which converts the values to the column types.
  */
 @ProcInfo(
     partitionInfo = "DUMMY: 0", // partitioning is done special for this class
@@ -92,6 +101,13 @@ public class LoadSinglepartitionTable extends VoltSystemProcedure
         // fix any case problems
         tableName = catTable.getTypeName();
 
+        // the HSQL backend has no EE to load into, export tables only take inserts
+        if (m_site.getHsqlBackendIfExists() == null
+                && !CatalogUtil.isTableExportOnly(ctx.getDatabase(), catTable)
+                && matchesSchema(catTable, table)) {
+            return loadBlock(ctx, catTable, table);
+        }
+
         // check that the schema of the input matches
         int columnCount = table.getColumnCount();
 
@@ -147,6 +163,59 @@ public class LoadSinglepartitionTable extends VoltSystemProcedure
         return executed;
     }
 
+    /**
+     * @return true if the input has the columns of the table with the same types, in order
+     */
+    private static boolean matchesSchema(Table catTable, VoltTable table) {
+        List<Column> columns = CatalogUtil.getSortedCatalogItems(catTable.getColumns(), "index");
+        if (columns.size() != table.getColumnCount()) {
+            return false;
+        }
+        for (Column column : columns) {
+            if (table.getColumnType(column.getIndex()) != VoltType.get((byte) column.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Load all the rows of the input into the table in one call to the EE. The load is
+     * undoable, so it is all or nothing like the insert statements. Constraint violations
+     * abort the transaction.
+     *
+     * @return Count of rows inserted.
+     * @throws VoltAbortException if a row doesn't belong to this partition.
+     */
+    private long loadBlock(SystemProcedureExecutionContext ctx, Table catTable, VoltTable table)
+            throws VoltAbortException {
+        if (table.getRowCount() == 0) {
+            return 0;
+        }
+
+        // The insert statement rejects mispartitioned rows in the EE, the bulk load doesn't
+        final Column pCol = catTable.getPartitioncolumn();
+        final int pIndex = pCol.getIndex();
+        final VoltType pType = VoltType.get((byte) pCol.getType());
+        final TheHashinator hashinator = ctx.getCurrentHashinator();
+        final int partitionId = ctx.getPartitionId();
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            Object pvalue = table.get(pIndex, pType);
+            if (hashinator.getHashedPartitionForParameter(pType, pvalue) != partitionId) {
+                throw new VoltAbortException(
+                        String.format("Mispartitioned tuple in LoadSinglepartitionTable for table %s.",
+                                catTable.getTypeName()));
+            }
+        }
+        table.resetRowPosition();
+
+        TransactionState txnState = m_runner.getTxnState();
+        m_site.loadTable(txnState.txnId, txnState.m_spHandle, txnState.uniqueId,
+                catTable.getRelativeIndex(), table, false, true, true);
+        return table.getRowCount();
+    }
+
     /**
      * Execute a set of queued inserts. Ensure each insert successfully
      * inserts one row. Throw exception if not.
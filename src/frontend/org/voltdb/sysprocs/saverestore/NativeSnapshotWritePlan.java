@@ -58,6 +58,15 @@ import com.google_voltpatches.common.collect.Maps;
  */
 public class NativeSnapshotWritePlan extends SnapshotWritePlan
 {
+    /*
+     * Set by the request data. Keeping a chunk index makes it possible for the next snapshot
+     * to be incremental to this one. With a base the snapshot is incremental to the snapshot
+     * with that path and nonce.
+     */
+    private boolean m_keepChunkIndex = false;
+    private String m_incrementalBasePath = null;
+    private String m_incrementalBaseNonce = null;
+
     @Override
     public Callable<Boolean> createSetup(String file_path,
                                             String file_nonce,
@@ -100,6 +109,26 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
         }
 
         final SnapshotRequestConfig config = new SnapshotRequestConfig(jsData, context.getDatabase());
+        if (jsData != null) {
+            m_keepChunkIndex = jsData.optBoolean("keepChunkIndex", false);
+            JSONObject base = jsData.optJSONObject("incrementalBase");
+            if (base != null) {
+                m_incrementalBasePath = base.optString("path", null);
+                m_incrementalBaseNonce = base.optString("nonce", null);
+                if (m_incrementalBasePath == null || m_incrementalBaseNonce == null) {
+                    SNAP_LOG.warn("Ignoring incremental snapshot base without a path and nonce: " + base);
+                    m_incrementalBasePath = null;
+                    m_incrementalBaseNonce = null;
+                } else if (!isSameDirectory(m_incrementalBasePath, file_path)) {
+                    // Chunk sources are recorded by file name and resolved against the directory
+                    // of the snapshot reading them, so the base must live in the same directory
+                    SNAP_LOG.warn("Incremental snapshot base " + m_incrementalBasePath +
+                            " is not in the snapshot directory " + file_path + ", writing the snapshot in full");
+                    m_incrementalBasePath = null;
+                    m_incrementalBaseNonce = null;
+                }
+            }
+        }
         final Table[] tableArray;
         if (config.tables.length == 0) {
             tableArray = SnapshotUtil.getTablesToSave(context.getDatabase()).toArray(new Table[0]);
@@ -190,7 +219,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                         drTupleStreamInfo,
                         hashinatorData,
                         timestamp,
-                        newPartitionCount);
+                        newPartitionCount,
+                        m_incrementalBasePath,
+                        m_incrementalBaseNonce);
 
                 for (SnapshotTableTask task : replicatedSnapshotTasks) {
                     SnapshotDataTarget target = getSnapshotDataTarget(numTables, task);
@@ -263,7 +294,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 tracker.getPartitionsForHost(hostId),
                 CatalogUtil.getVoltTable(table),
                 txnId,
-                timestamp);
+                timestamp,
+                m_keepChunkIndex,
+                loadBaseChunkIndex(table, hostId));
 
         m_targets.add(sdt);
         final Runnable onClose = new TargetStatsClosure(sdt, table.getTypeName(), numTables, snapshotRecord);
@@ -272,6 +305,42 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
         return sdt;
     }
 
+    static boolean isSameDirectory(String path1, String path2) {
+        try {
+            return new File(path1).getCanonicalFile().equals(new File(path2).getCanonicalFile());
+        } catch (IOException e) {
+            return new File(path1).getAbsoluteFile().equals(new File(path2).getAbsoluteFile());
+        }
+    }
+
+    /*
+     * Load the chunk index of the table in the base snapshot. A table without a usable index
+     * is written in full, the rest of the snapshot can still be incremental.
+     */
+    private SnapshotChunkIndex loadBaseChunkIndex(Table table, int hostId) {
+        if (m_incrementalBaseNonce == null) {
+            return null;
+        }
+        final File baseFile = SnapshotUtil.constructFileForTable(
+                table,
+                m_incrementalBasePath,
+                m_incrementalBaseNonce,
+                SnapshotFormat.NATIVE,
+                hostId);
+        final File indexFile = SnapshotChunkIndex.indexFileFor(baseFile);
+        if (!baseFile.exists() || !indexFile.exists()) {
+            SNAP_LOG.info("No chunk index for table " + table.getTypeName() + " in snapshot " +
+                    m_incrementalBaseNonce + ", writing the table in full");
+            return null;
+        }
+        try {
+            return SnapshotChunkIndex.read(indexFile);
+        } catch (IOException e) {
+            SNAP_LOG.warn("Unable to read chunk index " + indexFile + ", writing the table in full", e);
+            return null;
+        }
+    }
+
     static void createFileBasedCompletionTasks(
             String file_path, String file_nonce,
             long txnId, Map<Integer, Long> partitionTransactionIds,
@@ -280,7 +349,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
             Map<String, Map<Integer, Pair<Long, Long>>> exportSequenceNumbers,
             Map<Integer, Pair<Long, Long>> drTupleStreamInfo,
             HashinatorSnapshotData hashinatorData,
-            long timestamp, int newPartitionCount) throws IOException
+            long timestamp, int newPartitionCount,
+            String incrementalBasePath, String incrementalBaseNonce) throws IOException
     {
         final List<Table> tables = SnapshotUtil.getTablesToSave(context.getDatabase());
         InstanceId instId = VoltDB.instance().getHostMessenger().getInstanceId();
@@ -297,7 +367,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 remoteDCLastIds,
                 instId,
                 timestamp,
-                newPartitionCount);
+                newPartitionCount,
+                incrementalBasePath,
+                incrementalBaseNonce);
         if (completionTask != null) {
             SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(completionTask);
         }
@@ -0,0 +1,225 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the chunks in a native snapshot table file, written next to the file
+ * when it is closed. Chunks are identified by partition id and their sequence number
+ * within the partition, and the index records a digest of the uncompressed chunk and
+ * where the compressed chunk is stored.
+ *
+ * An incremental snapshot loads the index of the previous snapshot of the same table
+ * and writes a reference to the previous copy instead of any chunk whose digest didn't change.
+ *
+ * Chunks are fixed size buffers the COW scan packs tuples into, so a chunk only keeps its
+ * digest if every tuple scanned before it kept its size. Appending rows or updating them
+ * in place leaves the earlier chunks alone, but deleting, inserting into a hole or resizing
+ * a tuple shifts the content of every later chunk of the partition, and those chunks are
+ * written again in full. Incremental snapshots pay off for append mostly tables.
+ *
+ * The chunk sources of an index are the file names chunks are stored in, the first one
+ * is always the indexed file itself, followed by the sources of the base index.
+ * References always point at the file that actually holds the chunk so restore
+ * never has to follow more than one hop.
+ */
+public class SnapshotChunkIndex {
+
+    public static final String FILE_SUFFIX = ".chunks";
+
+    private static final int MAGIC = 0x56504349;
+    private static final int VERSION = 1;
+
+    public static final class Entry {
+        public final byte m_digest[];
+        public final int m_source;
+        public final long m_offset;
+
+        private Entry(byte digest[], int source, long offset) {
+            m_digest = digest;
+            m_source = source;
+            m_offset = offset;
+        }
+    }
+
+    private final List<String> m_sources;
+    private final Map<Long, Entry> m_entries;
+
+    private SnapshotChunkIndex(List<String> sources, Map<Long, Entry> entries) {
+        m_sources = sources;
+        m_entries = entries;
+    }
+
+    /**
+     * Create an empty index for a table file being written
+     * @param file The table file
+     * @param base Index of the snapshot this one is incremental to, or null for a full snapshot
+     */
+    public static SnapshotChunkIndex create(File file, SnapshotChunkIndex base) {
+        final List<String> sources = new ArrayList<String>();
+        sources.add(file.getName());
+        if (base != null) {
+            sources.addAll(base.m_sources);
+        }
+        return new SnapshotChunkIndex(Collections.unmodifiableList(sources), new HashMap<Long, Entry>());
+    }
+
+    public static File indexFileFor(File file) {
+        return new File(file.getPath() + FILE_SUFFIX);
+    }
+
+    private static long key(int partitionId, int sequence) {
+        return ((long)partitionId << 32) | (sequence & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Digest of the remaining bytes of the buffer, doesn't move the position
+     */
+    public static byte[] digest(ByteBuffer buf) {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        md.update(buf.duplicate());
+        return md.digest();
+    }
+
+    public List<String> getSources() {
+        return m_sources;
+    }
+
+    public synchronized int size() {
+        return m_entries.size();
+    }
+
+    public synchronized Entry get(int partitionId, int sequence) {
+        return m_entries.get(key(partitionId, sequence));
+    }
+
+    /**
+     * @return the entry for the chunk if a chunk with the same digest was stored at the same
+     * position in this index, null if the chunk changed
+     */
+    public Entry getUnchanged(int partitionId, int sequence, byte digest[]) {
+        final Entry entry = get(partitionId, sequence);
+        if (entry != null && Arrays.equals(entry.m_digest, digest)) {
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Record a chunk stored in the indexed file
+     */
+    public void putStored(int partitionId, int sequence, byte digest[], long offset) {
+        put(partitionId, sequence, new Entry(digest, 0, offset));
+    }
+
+    /**
+     * Record a chunk that is a reference to an entry of the base index
+     */
+    public void putReference(int partitionId, int sequence, Entry baseEntry) {
+        put(partitionId, sequence, new Entry(baseEntry.m_digest, baseEntry.m_source + 1, baseEntry.m_offset));
+    }
+
+    private synchronized void put(int partitionId, int sequence, Entry entry) {
+        m_entries.put(key(partitionId, sequence), entry);
+    }
+
+    public synchronized void write(File indexFile) throws IOException {
+        final File tempFile = new File(indexFile.getPath() + ".tmp");
+        final FileOutputStream fos = new FileOutputStream(tempFile);
+        try {
+            final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(m_sources.size());
+            for (String source : m_sources) {
+                dos.writeUTF(source);
+            }
+            dos.writeInt(m_entries.size());
+            for (Map.Entry<Long, Entry> e : m_entries.entrySet()) {
+                dos.writeLong(e.getKey());
+                dos.writeByte(e.getValue().m_digest.length);
+                dos.write(e.getValue().m_digest);
+                dos.writeInt(e.getValue().m_source);
+                dos.writeLong(e.getValue().m_offset);
+            }
+            dos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to rename " + tempFile + " to " + indexFile);
+        }
+    }
+
+    public static SnapshotChunkIndex read(File indexFile) throws IOException {
+        final DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (dis.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot chunk index " + indexFile);
+            }
+            final int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot chunk index version " + version + " in " + indexFile);
+            }
+            final int numSources = dis.readInt();
+            final List<String> sources = new ArrayList<String>(numSources);
+            for (int ii = 0; ii < numSources; ii++) {
+                sources.add(dis.readUTF());
+            }
+            final int numEntries = dis.readInt();
+            final Map<Long, Entry> entries = new HashMap<Long, Entry>(numEntries * 2);
+            for (int ii = 0; ii < numEntries; ii++) {
+                final long key = dis.readLong();
+                final byte digest[] = new byte[dis.readUnsignedByte()];
+                dis.readFully(digest);
+                final int source = dis.readInt();
+                if (source < 0 || source >= numSources) {
+                    throw new IOException("Corrupted snapshot chunk index " + indexFile);
+                }
+                entries.put(key, new Entry(digest, source, dis.readLong()));
+            }
+            return new SnapshotChunkIndex(Collections.unmodifiableList(sources), entries);
+        } finally {
+            dis.close();
+        }
+    }
+}
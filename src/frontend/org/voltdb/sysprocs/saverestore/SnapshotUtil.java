@@ -132,6 +132,8 @@ public class SnapshotUtil {
      * @param tables   List of tables present in this snapshot
      * @param hostId   Host ID where this is happening
      * @param exportSequenceNumbers  ???
+     * @param incrementalBasePath  path of the snapshot this one is incremental to, null for a full snapshot
+     * @param incrementalBaseNonce  nonce of the snapshot this one is incremental to, null for a full snapshot
      * @throws IOException
      */
     public static Runnable writeSnapshotDigest(
@@ -147,7 +149,9 @@ public class SnapshotUtil {
         Map<Integer, Map<Integer, Pair<Long, Long>>> remoteDCLastIds,
         InstanceId instanceId,
         long timestamp,
-        int newPartitionCount)
+        int newPartitionCount,
+        String incrementalBasePath,
+        String incrementalBaseNonce)
     throws IOException
     {
         final File f = new VoltFile(path, constructDigestFilenameForNonce(nonce, hostId));
@@ -227,6 +231,13 @@ public class SnapshotUtil {
                     stringer.endObject();
                 }
                 stringer.endObject();
+                if (incrementalBaseNonce != null) {
+                    //Chunks that didn't change are stored in the base snapshot or its bases
+                    stringer.key("incrementalBase").object();
+                    stringer.key("path").value(incrementalBasePath);
+                    stringer.key("nonce").value(incrementalBaseNonce);
+                    stringer.endObject();
+                }
                 stringer.endObject();
             } catch (JSONException e) {
                 throw new IOException(e);
@@ -860,7 +871,7 @@ public class SnapshotUtil {
                     }
                 } else {
                     HashSet<Integer> partitionIds = new HashSet<Integer>();
-                    TableSaveFile saveFile = new TableSaveFile(fis, 1, null, true);
+                    TableSaveFile saveFile = new TableSaveFile(fis, 1, null, true, f.getAbsoluteFile().getParentFile());
                     try {
                         for (Integer partitionId : saveFile.getPartitionIds()) {
                             partitionIds.add(partitionId);
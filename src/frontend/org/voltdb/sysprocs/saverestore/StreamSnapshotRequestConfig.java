@@ -63,6 +63,10 @@ public class StreamSnapshotRequestConfig extends SnapshotRequestConfig {
     public final List<Stream> streams;
     // true to also do a truncation snapshot
     public final boolean shouldTruncate;
+    // concurrent streams requested from each source, 0 for the source's default
+    public final int streamCount;
+    // false if the destination asks for blocks to be sent uncompressed
+    public final boolean compress;
 
     /**
      * @param tables             See {@link #SnapshotRequestConfig(java.util.List)} for more
@@ -72,11 +76,26 @@ public class StreamSnapshotRequestConfig extends SnapshotRequestConfig {
     public StreamSnapshotRequestConfig(List<Table> tables,
                                        List<Stream> streams,
                                        boolean shouldTruncate)
+    {
+        this(tables, streams, shouldTruncate, 0, true);
+    }
+
+    /**
+     * @param streamCount        Concurrent streams to send on, 0 for the source's default
+     * @param compress           false to ask the sources not to compress the blocks
+     */
+    public StreamSnapshotRequestConfig(List<Table> tables,
+                                       List<Stream> streams,
+                                       boolean shouldTruncate,
+                                       int streamCount,
+                                       boolean compress)
     {
         super(tables);
 
         this.streams = ImmutableList.copyOf(streams);
         this.shouldTruncate = shouldTruncate;
+        this.streamCount = streamCount;
+        this.compress = compress;
     }
 
     public StreamSnapshotRequestConfig(JSONObject jsData,
@@ -86,6 +105,8 @@ public class StreamSnapshotRequestConfig extends SnapshotRequestConfig {
 
         this.streams = parseStreams(jsData);
         this.shouldTruncate = jsData.optBoolean("shouldTruncate", false);
+        this.streamCount = jsData.optInt("streamCount", 0);
+        this.compress = jsData.optBoolean("compress", true);
     }
 
     private ImmutableList<Stream> parseStreams(JSONObject jsData)
@@ -145,6 +166,8 @@ public class StreamSnapshotRequestConfig extends SnapshotRequestConfig {
         super.toJSONString(stringer);
 
         stringer.key("shouldTruncate").value(shouldTruncate);
+        stringer.key("streamCount").value(streamCount);
+        stringer.key("compress").value(compress);
         stringer.key("streams").array();
 
         for (Stream stream : streams) {
@@ -141,7 +141,7 @@ public class StreamSnapshotWritePlan extends SnapshotWritePlan
             schemas.put(table.getRelativeIndex(), PrivateVoltTableFactory.getSchemaBytes(schemaTable));
         }
 
-        List<DataTargetInfo> sdts = createDataTargets(localStreams, hashinatorData, schemas);
+        List<DataTargetInfo> sdts = createDataTargets(localStreams, hashinatorData, schemas, config);
 
         // If there's no work to do on this host, just claim success, return an empty plan,
         // and things will sort themselves out properly
@@ -173,7 +173,8 @@ public class StreamSnapshotWritePlan extends SnapshotWritePlan
 
     private List<DataTargetInfo> createDataTargets(List<StreamSnapshotRequestConfig.Stream> localStreams,
                                                    HashinatorSnapshotData hashinatorData,
-                                                   Map<Integer, byte[]> schemas)
+                                                   Map<Integer, byte[]> schemas,
+                                                   StreamSnapshotRequestConfig config)
     {
         byte[] hashinatorConfig = null;
         if (hashinatorData != null) {
@@ -187,9 +188,18 @@ public class StreamSnapshotWritePlan extends SnapshotWritePlan
 
         if (haveAnyStreamPairs(localStreams) && !schemas.isEmpty()) {
             Mailbox mb = VoltDB.instance().getHostMessenger().createMailbox();
-            StreamSnapshotDataTarget.SnapshotSender sender = new StreamSnapshotDataTarget.SnapshotSender(mb);
+            // Use what the destination asked for, within the limits set on this node
+            final int streamCount = config.streamCount > 0 ?
+                    Math.min(config.streamCount, StreamSnapshotDataTarget.DEFAULT_STREAM_COUNT) :
+                    StreamSnapshotDataTarget.DEFAULT_STREAM_COUNT;
+            final boolean compress = config.compress && StreamSnapshotDataTarget.DEFAULT_STREAM_COMPRESSION;
+            SNAP_LOG.debug("Streaming snapshot on " + streamCount + " streams per node" +
+                           (compress ? "" : " without compression"));
+            StreamSnapshotDataTarget.SnapshotSender sender =
+                    new StreamSnapshotDataTarget.SnapshotSender(mb, new StreamSnapshotDataTarget.DefaultMessageFactory(),
+                                                                streamCount, compress);
             StreamSnapshotAckReceiver ackReceiver = new StreamSnapshotAckReceiver(mb);
-            new Thread(sender, "Stream Snapshot Sender").start();
+            sender.start();
             new Thread(ackReceiver, "Stream Snapshot Ack Receiver").start();
             // The mailbox will be removed after all snapshot data targets are finished
             SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(createCompletionTask(mb));
@@ -18,6 +18,7 @@
 package org.voltdb.sysprocs.saverestore;
 
 import java.io.EOFException;
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -26,10 +27,17 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Checksum;
 
 import org.apache.hadoop_voltpatches.util.PureJavaCrc32;
@@ -40,19 +48,31 @@ import org.json_voltpatches.JSONObject;
 import org.voltcore.TransactionIdManager;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.Bits;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
 import org.voltdb.EELibraryLoader;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.PosixAdvise;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
 /**
  * An abstraction around a table's save file for restore.  Deserializes the
  * meta-data that was stored when the table was saved and makes it available
  * to clients.  The meta data is stored as a JSON blob with length prefixing and a CRC
  * as well as a byte to that is set once the file is completely written and synced.
  * A VoltTable header describing the schema is follows the JSON blob.
+ *
+ * Chunks in the current format are read from disk by a single thread and then checked and
+ * decompressed on the compression service, so reading, CRC validation and decompression of
+ * successive chunks overlap. Chunks are still handed out in the order they appear in the file.
+ *
+ * Files of an incremental snapshot contain references to unchanged chunks stored in the files
+ * of earlier snapshots listed as chunk sources in the header. The referenced chunks are read
+ * from the sibling files in the directory provided at construction.
  */
 public class TableSaveFile
 {
@@ -91,6 +111,19 @@ public class TableSaveFile
     private static final int DEFAULT_CHUNKSIZE =
             org.voltdb.SnapshotSiteProcessor.m_snapshotBufferLength + (1024 * 256);
 
+    /*
+     * Chunks that may be read ahead no matter what the caller asked for, so that several
+     * chunks can be validated and decompressed at the same time
+     */
+    private static final int MIN_READ_AHEAD_CHUNKS = Integer.getInteger("SNAPSHOT_READ_AHEAD_CHUNKS", 4);
+
+    /*
+     * How often in milliseconds progress reading a file is logged
+     */
+    private static final long PROGRESS_INTERVAL = Long.getLong("SNAPSHOT_READ_PROGRESS_INTERVAL", 30000);
+
+    private static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
+
     public TableSaveFile(
             FileInputStream fis,
             int readAheadChunks,
@@ -98,14 +131,28 @@ public class TableSaveFile
         this(fis, readAheadChunks, relevantPartitionIds, false);
     }
 
+    public TableSaveFile(
+            FileInputStream fis,
+            int readAheadChunks,
+            Integer[] relevantPartitionIds,
+            boolean continueOnCorruptedChunk) throws IOException {
+        this(fis, readAheadChunks, relevantPartitionIds, continueOnCorruptedChunk, null);
+    }
+
+    /**
+     * @param chunkSourceDirectory Directory holding the files chunks of an incremental snapshot
+     * refer to, null if references can't be resolved
+     */
     // XXX maybe consider an IOException subclass at some point
     public TableSaveFile(
             FileInputStream fis,
             int readAheadChunks,
             Integer[] relevantPartitionIds,
-            boolean continueOnCorruptedChunk) throws IOException
+            boolean continueOnCorruptedChunk,
+            File chunkSourceDirectory) throws IOException
             {
                 m_fd = fis.getFD();
+                m_chunkSourceDirectory = chunkSourceDirectory;
                 FileChannel dataIn = fis.getChannel();
         try {
             EELibraryLoader.loadExecutionEngineLibrary(true);
@@ -117,7 +164,7 @@ public class TableSaveFile
                     m_relevantPartitionIds.add(i);
                 }
             }
-            m_chunkReads = new Semaphore(readAheadChunks);
+            m_chunkReads = new Semaphore(Math.max(readAheadChunks, MIN_READ_AHEAD_CHUNKS));
             m_saveFile = dataIn;
             m_continueOnCorruptedChunk = continueOnCorruptedChunk;
 
@@ -261,6 +308,7 @@ public class TableSaveFile
                     }
                 }
                 m_hasVersion2FormatChunks = false;
+                m_chunkSources = null;
             } else {
                 assert(m_versionNum[3] == 1 || m_versionNum[3] == 2);
                 if (m_versionNum[3] >= 2) {
@@ -310,6 +358,15 @@ public class TableSaveFile
                         m_corruptedPartitions.add(0);
                     }
                 }
+                JSONArray chunkSources = obj.optJSONArray("chunkSources");
+                if (chunkSources != null) {
+                    m_chunkSources = new String[chunkSources.length()];
+                    for (int ii = 0; ii < m_chunkSources.length; ii++) {
+                        m_chunkSources[ii] = chunkSources.getString(ii);
+                    }
+                } else {
+                    m_chunkSources = null;
+                }
             }
             /*
              * Several runtime exceptions can be thrown in valid failure cases where
@@ -385,6 +442,13 @@ public class TableSaveFile
         return m_timestamp;
     }
 
+    /**
+     * @return true if the file is part of an incremental snapshot and may refer to chunks in other files
+     */
+    public boolean isIncremental() {
+        return m_chunkSources != null;
+    }
+
     public void close() throws IOException {
         Thread chunkReader;
         synchronized (this) {
@@ -401,6 +465,23 @@ public class TableSaveFile
             }
         }
 
+        //Chunks still being decompressed write to buffers that are about to be freed
+        while (true) {
+            final ListenableFuture<Container> pending;
+            synchronized (this) {
+                pending = m_pendingChunks.poll();
+            }
+            if (pending == null) break;
+            try {
+                final Container c = pending.get();
+                if (c != null) {
+                    c.discard();
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } catch (ExecutionException e) {}
+        }
+
         synchronized (this) {
             while (!m_availableChunks.isEmpty()) {
                 m_availableChunks.poll().discard();
@@ -415,6 +496,14 @@ public class TableSaveFile
         while ((cont = m_buffers.poll()) != null) {
             cont.discard();
         }
+        while ((cont = m_inputBuffers.poll()) != null) {
+            cont.discard();
+        }
+
+        for (FileChannel source : m_chunkSourceChannels.values()) {
+            source.close();
+        }
+        m_chunkSourceChannels.clear();
     }
 
     public Set<Integer> getCorruptedPartitionIds() {
@@ -431,7 +520,7 @@ public class TableSaveFile
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        if (!m_hasMoreChunks) {
+        if (!m_hasMoreChunks && m_pendingChunks.isEmpty()) {
             final Container c = m_availableChunks.poll();
             return c;
         }
@@ -443,7 +532,7 @@ public class TableSaveFile
         }
 
         Container c = null;
-        while (c == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
+        while (c == null && (m_hasMoreChunks || !m_pendingChunks.isEmpty() || !m_availableChunks.isEmpty())) {
             c = m_availableChunks.poll();
             if (c == null) {
                 try {
@@ -468,7 +557,57 @@ public class TableSaveFile
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
         }
-        return m_hasMoreChunks || !m_availableChunks.isEmpty();
+        return m_hasMoreChunks || !m_pendingChunks.isEmpty() || !m_availableChunks.isEmpty();
+    }
+
+    /**
+     * @return Bytes read from the file so far
+     */
+    public long getBytesRead() {
+        return m_bytesRead.get();
+    }
+
+    /**
+     * @return Chunks read from the file so far, including the ones that were skipped
+     */
+    public long getChunksRead() {
+        return m_chunksRead.get();
+    }
+
+    /*
+     * Move chunks that finished decompressing to the available chunks, in file order
+     */
+    private synchronized void drainDecodedChunks() {
+        while (!m_pendingChunks.isEmpty() && m_pendingChunks.peek().isDone()) {
+            final ListenableFuture<Container> decoded = m_pendingChunks.poll();
+            try {
+                final Container c = decoded.get();
+                if (c == null) {
+                    //Skipped, doesn't count against the read ahead
+                    m_chunkReads.release();
+                } else {
+                    m_availableChunks.offer(c);
+                }
+            } catch (InterruptedException e) {
+                //Can't happen, the future is done
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                if (m_chunkReaderException == null) {
+                    m_chunkReaderException = e.getCause() instanceof IOException ?
+                            (IOException)e.getCause() : new IOException(e.getCause());
+                }
+                m_hasMoreChunks = false;
+            }
+        }
+        notifyAll();
+    }
+
+    private void logProgress(boolean done) {
+        final long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_readStartNanos));
+        final long bytesRead = m_bytesRead.get();
+        SNAP_LOG.info(String.format("%s table %s from host %d: %d chunks, %d MB in %d ms (%.1f MB/s)",
+                done ? "Finished reading" : "Reading", m_tableName, m_hostId, m_chunksRead.get(),
+                bytesRead / (1024 * 1024), elapsed, (bytesRead / (1024.0 * 1024.0)) / (elapsed / 1000.0)));
     }
 
     private final FileChannel m_saveFile;
@@ -490,9 +629,26 @@ public class TableSaveFile
     private boolean m_hasMoreChunks = true;
     private ConcurrentLinkedQueue<BBContainer> m_buffers = new ConcurrentLinkedQueue<BBContainer>();
     private final ArrayDeque<Container> m_availableChunks = new ArrayDeque<Container>();
+    //Chunks read from disk and being checked and decompressed, in file order. A null result
+    //is a chunk that was skipped
+    private final ArrayDeque<ListenableFuture<Container>> m_pendingChunks = new ArrayDeque<ListenableFuture<Container>>();
+    //Buffers for the compressed chunks read from disk
+    private final ConcurrentLinkedQueue<BBContainer> m_inputBuffers = new ConcurrentLinkedQueue<BBContainer>();
+    private final AtomicLong m_bytesRead = new AtomicLong();
+    private final AtomicLong m_chunksRead = new AtomicLong();
+    private long m_readStartNanos;
     private final HashSet<Integer> m_relevantPartitionIds;
     private final ChecksumType m_checksumType;
 
+    /*
+     * Names of the files chunks of an incremental snapshot are stored in, the first is this file.
+     * Null if the file is not incremental.
+     */
+    private final String m_chunkSources[];
+    private final File m_chunkSourceDirectory;
+    //Only used by the chunk reader thread until close
+    private final Map<Integer, FileChannel> m_chunkSourceChannels = new HashMap<Integer, FileChannel>();
+
     /*
      * In version 2 the layout of chunks was rejiggered to do less work
      * in execution sites. The checksum is done after the compression so the layout
@@ -504,7 +660,7 @@ public class TableSaveFile
      * Maintain a list of corrupted partitions. It is possible for uncorrupted partitions
      * to be recovered from a save file in the future
      */
-    private final HashSet<Integer> m_corruptedPartitions = new HashSet<Integer>();
+    private final Set<Integer> m_corruptedPartitions = Collections.synchronizedSet(new HashSet<Integer>());
 
     /**
      * Ignore corrupted chunks and continue validation of the rest of the chunks.
@@ -530,12 +686,11 @@ public class TableSaveFile
          * that should be easier to understand and validate.
          */
         private void readChunksV2() {
-            //For reading the compressed input.
-            final BBContainer fileInputBufferC =
-                    DBBPool.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
-            final ByteBuffer fileInputBuffer = fileInputBufferC.b();
+            final int inputBufferSize = CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE);
             long sinceLastFAdvise = Long.MAX_VALUE;
             long positionAtLastFAdvise = 0;
+            long lastProgressLog = System.nanoTime();
+            m_readStartNanos = lastProgressLog;
             while (m_hasMoreChunks) {
                 if (sinceLastFAdvise > 1024 * 1024 * 48) {
                     sinceLastFAdvise = 0;
@@ -573,6 +728,11 @@ public class TableSaveFile
                     }
                 }
 
+                if (System.nanoTime() - lastProgressLog > TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL)) {
+                    lastProgressLog = System.nanoTime();
+                    logProgress(false);
+                }
+
                 /*
                  * Limit the number of chunk materialized into memory at one time
                  */
@@ -582,7 +742,7 @@ public class TableSaveFile
                     return;
                 }
                 boolean expectedAnotherChunk = false;
-                Container c = null;
+                BBContainer fileInputBufferC = null;
                 try {
 
                     /*
@@ -625,7 +785,59 @@ public class TableSaveFile
                     /*
                      * CRC for the data portion of the chunk
                      */
-                    final int nextChunkCRC = chunkLengthB.getInt(12);
+                    int nextChunkCRC = chunkLengthB.getInt(12);
+
+                    FileChannel payloadSource = null;
+                    long payloadPosition = 0;
+                    if (nextChunkLength == DefaultSnapshotDataTarget.REFERENCE_CHUNK_LENGTH) {
+                        /*
+                         * Unchanged chunk of an incremental snapshot, the header is followed by
+                         * the source and offset of the stored chunk and the CRC covers those instead
+                         */
+                        final ByteBuffer referenceB = ByteBuffer.allocate(
+                                DefaultSnapshotDataTarget.REFERENCE_CHUNK_SIZE - chunkLengthB.capacity());
+                        while (referenceB.hasRemaining()) {
+                            final int read = m_saveFile.read(referenceB);
+                            if (read == -1) {
+                                throw new EOFException();
+                            }
+                            sinceLastFAdvise += read;
+                        }
+                        m_bytesRead.addAndGet(referenceB.capacity());
+                        final Checksum referenceCRC = new PureJavaCrc32C();
+                        referenceCRC.update(referenceB.array(), 0, referenceB.capacity());
+                        if ((int)referenceCRC.getValue() != nextChunkCRC) {
+                            m_corruptedPartitions.add(nextChunkPartitionId);
+                            if (m_continueOnCorruptedChunk) {
+                                m_chunksRead.incrementAndGet();
+                                m_chunkReads.release();
+                                continue;
+                            }
+                            throw new IOException("CRC mismatch in saved table chunk reference");
+                        }
+                        if (m_relevantPartitionIds != null &&
+                                !m_relevantPartitionIds.contains(nextChunkPartitionId)) {
+                            m_chunksRead.incrementAndGet();
+                            m_chunkReads.release();
+                            continue;
+                        }
+
+                        payloadSource = getChunkSource(referenceB.getInt(0));
+                        payloadPosition = referenceB.getLong(4);
+                        chunkLengthB.clear();
+                        readFully(payloadSource, chunkLengthB, payloadPosition);
+                        payloadPosition += chunkLengthB.capacity();
+                        partitionIdCRC.reset();
+                        partitionIdCRC.update(chunkLengthB.array(), 0, 8);
+                        if (chunkLengthB.getInt(4) != nextChunkPartitionId ||
+                                (int)partitionIdCRC.getValue() != chunkLengthB.getInt(8)) {
+                            m_corruptedPartitions.add(nextChunkPartitionId);
+                            throw new IOException("Chunk referenced in " +
+                                    m_chunkSources[referenceB.getInt(0)] + " doesn't match the reference");
+                        }
+                        nextChunkLength = chunkLengthB.getInt(0);
+                        nextChunkCRC = chunkLengthB.getInt(12);
+                    }
 
                     /*
                      * Sanity check the length value to ensure there isn't
@@ -635,110 +847,60 @@ public class TableSaveFile
                         throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
                     }
 
-                    if (nextChunkLength > fileInputBuffer.capacity()) {
+                    if (nextChunkLength > inputBufferSize) {
                         throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " +
                                 "> DEFAULT_CHUNKSIZE bytes");
                     }
 
                     /*
-                     * Go fetch the compressed data so that the uncompressed size is known
-                     * and use that to set nextChunkLength to be the uncompressed length,
-                     * the code ahead that constructs the volt table is expecting
-                     * the uncompressed size/data since it is producing an uncompressed table
+                     * Go fetch the compressed data, the CRC and decompression are done
+                     * on the compression service while the next chunk is read
                      */
+                    fileInputBufferC = m_inputBuffers.poll();
+                    if (fileInputBufferC == null) {
+                        fileInputBufferC = DBBPool.allocateDirect(inputBufferSize);
+                    }
+                    final ByteBuffer fileInputBuffer = fileInputBufferC.b();
                     fileInputBuffer.clear();
                     fileInputBuffer.limit(nextChunkLength);
-                    while (fileInputBuffer.hasRemaining()) {
-                        final int read = m_saveFile.read(fileInputBuffer);
-                        if (read == -1) {
-                            throw new EOFException();
-                        }
-                        sinceLastFAdvise += read;
-                    }
-                    fileInputBuffer.flip();
-                    nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
-
-                    /*
-                     * Validate the rest of the chunk. This can fail if the data is corrupted
-                     * or the length value was corrupted.
-                     */
-                    final int calculatedCRC =
-                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
-                    if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
-                        if (m_continueOnCorruptedChunk) {
-                            m_chunkReads.release();
-                            continue;
-                        } else {
-                            throw new IOException("CRC mismatch in saved table chunk");
-                        }
-                    }
-
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable serialization representation.
-                     * The chunk will contain an integer row count preceding it so it can
-                     * be sucked straight in. There is a little funny business to overwrite the
-                     * partition id that is not part of the serialization format
-                     */
-                    c = getOutputBuffer(nextChunkPartitionId);
-
-                    /*
-                     * If the length value is wrong or not all data made it to disk this read will
-                     * not complete correctly. There could be overflow, underflow etc.
-                     * so use a try finally block to indicate that all partitions are now corrupt.
-                     * The enclosing exception handlers will do the right thing WRT to
-                     * propagating the error and closing the file.
-                     */
-                    boolean completedRead = false;
-                    try {
-                        final ByteBuffer buf = c.b();
-                        /*
-                         * Assemble a VoltTable out of the chunk of tuples.
-                         * Put in the header that was cached in the constructor,
-                         * then copy the tuple data.
-                         */
-                        buf.clear();
-                        buf.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        buf.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, buf);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
-                            }
-                            if (m_continueOnCorruptedChunk) {
-                                m_chunkReads.release();
-                                continue;
-                            } else {
-                                throw new IOException("Failed decompression of saved table chunk");
+                    if (payloadSource != null) {
+                        readFully(payloadSource, fileInputBuffer, payloadPosition);
+                    } else {
+                        while (fileInputBuffer.hasRemaining()) {
+                            final int read = m_saveFile.read(fileInputBuffer);
+                            if (read == -1) {
+                                throw new EOFException();
                             }
+                            sinceLastFAdvise += read;
                         }
                     }
-
-                    /*
-                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
-                     * in case it is the length value that is corrupted
-                     */
-                    if (m_relevantPartitionIds != null) {
-                        if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
-                            m_chunkReads.release();
-                            continue;
-                        }
-                    }
-
-                    /*
-                     * VoltTable wants the buffer at the home position 0
-                     */
-                    c.b().position(0);
-
+                    fileInputBuffer.flip();
+                    m_bytesRead.addAndGet(nextChunkLength + chunkLengthB.capacity());
+                    m_chunksRead.incrementAndGet();
+
+                    final int payloadCRC = nextChunkCRC;
+                    final BBContainer inputC = fileInputBufferC;
+                    fileInputBufferC = null;
+                    final ListenableFuture<Container> decoded =
+                            CompressionService.submitCompressionTask(new Callable<Container>() {
+                                @Override
+                                public Container call() throws Exception {
+                                    try {
+                                        return decodeChunkV2(inputC.b(), nextChunkPartitionId, payloadCRC);
+                                    } finally {
+                                        m_inputBuffers.offer(inputC);
+                                    }
+                                }
+                            });
                     synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        c = null;
-                        TableSaveFile.this.notifyAll();
+                        m_pendingChunks.offer(decoded);
                     }
+                    decoded.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            drainDecodedChunks();
+                        }
+                    }, CoreUtils.SAMETHREADEXECUTOR);
                 } catch (EOFException eof) {
                     synchronized (TableSaveFile.this) {
                         m_hasMoreChunks = false;
@@ -774,10 +936,133 @@ public class TableSaveFile
                         TableSaveFile.this.notifyAll();
                     }
                 } finally {
-                    if (c != null) c.discard();
+                    if (fileInputBufferC != null) m_inputBuffers.offer(fileInputBufferC);
                 }
             }
-            fileInputBufferC.discard();
+            logProgress(true);
+        }
+
+        /*
+         * Channel of a file holding chunks this file refers to, opened on first use
+         */
+        private FileChannel getChunkSource(int sourceIndex) throws IOException {
+            if (m_chunkSources == null || sourceIndex <= 0 || sourceIndex >= m_chunkSources.length) {
+                throw new IOException("Chunk reference to unknown chunk source " + sourceIndex);
+            }
+            FileChannel source = m_chunkSourceChannels.get(sourceIndex);
+            if (source == null) {
+                if (m_chunkSourceDirectory == null) {
+                    throw new IOException("Can't read chunk stored in " + m_chunkSources[sourceIndex] +
+                            ", the directory of the snapshot is not known");
+                }
+                source = new FileInputStream(
+                        new File(m_chunkSourceDirectory, m_chunkSources[sourceIndex])).getChannel();
+                m_chunkSourceChannels.put(sourceIndex, source);
+            }
+            return source;
+        }
+
+        private void readFully(FileChannel source, ByteBuffer buf, long position) throws IOException {
+            long offset = position;
+            while (buf.hasRemaining()) {
+                final int read = source.read(buf, offset);
+                if (read == -1) {
+                    throw new IOException("Referenced chunk at " + position + " is truncated");
+                }
+                offset += read;
+            }
+        }
+
+        /*
+         * Validate and decompress one chunk read by readChunksV2. Returns null
+         * if the chunk is skipped.
+         */
+        private Container decodeChunkV2(
+                ByteBuffer fileInputBuffer,
+                int nextChunkPartitionId,
+                int nextChunkCRC) throws IOException {
+            final int nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
+
+            /*
+             * Validate the rest of the chunk. This can fail if the data is corrupted
+             * or the length value was corrupted.
+             */
+            final int calculatedCRC =
+                    DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
+            if (calculatedCRC != nextChunkCRC) {
+                m_corruptedPartitions.add(nextChunkPartitionId);
+                if (m_continueOnCorruptedChunk) {
+                    return null;
+                } else {
+                    throw new IOException("CRC mismatch in saved table chunk");
+                }
+            }
+
+            /*
+             * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
+             * in case it is the length value that is corrupted
+             */
+            if (m_relevantPartitionIds != null) {
+                if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
+                    return null;
+                }
+            }
+
+            /*
+             * Now allocate space to store the chunk using the VoltTable serialization representation.
+             * The chunk will contain an integer row count preceding it so it can
+             * be sucked straight in. There is a little funny business to overwrite the
+             * partition id that is not part of the serialization format
+             */
+            Container c = getOutputBuffer(nextChunkPartitionId);
+
+            /*
+             * If the length value is wrong or not all data made it to disk this read will
+             * not complete correctly. There could be overflow, underflow etc.
+             * so use a try finally block to indicate that all partitions are now corrupt.
+             */
+            boolean completedRead = false;
+            try {
+                final ByteBuffer buf = c.b();
+                /*
+                 * Assemble a VoltTable out of the chunk of tuples.
+                 * Put in the header that was cached in the constructor,
+                 * then copy the tuple data.
+                 */
+                buf.clear();
+                buf.limit(nextChunkLength  + m_tableHeader.capacity());
+                //The header is shared by the decompression tasks
+                final ByteBuffer tableHeader = m_tableHeader.duplicate();
+                tableHeader.position(0);
+                buf.put(tableHeader);
+                //Doesn't move buffer position, does change the limit
+                CompressionService.decompressBuffer(fileInputBuffer, buf);
+                completedRead = true;
+            } catch (IOException e) {
+                //The compressed data was mangled
+            } catch (RuntimeException e) {
+                //Overflow or underflow
+            } finally {
+                if (!completedRead) {
+                    c.discard();
+                    for (int partitionId : m_partitionIds) {
+                        m_corruptedPartitions.add(partitionId);
+                    }
+                }
+            }
+            if (!completedRead) {
+                if (m_continueOnCorruptedChunk) {
+                    return null;
+                } else {
+                    throw new IOException("Failed decompression of saved table chunk");
+                }
+            }
+
+            /*
+             * VoltTable wants the buffer at the home position 0
+             */
+            c.b().position(0);
+            return c;
         }
 
         private void readChunks() {
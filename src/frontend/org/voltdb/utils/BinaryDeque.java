@@ -26,6 +26,10 @@ import org.voltcore.utils.DBBPool.BBContainer;
  * and will be returned as a single buffer. Technically not a deque because removal at
  * the end is not supported.
  *
+ * Besides the unnamed poll a deque can be read through any number of named cursors
+ * that each see every object. Storage is released once every cursor in use has
+ * acknowledged an object by discarding the container it was returned in.
+ *
  */
 public interface BinaryDeque {
     /*
@@ -36,6 +40,28 @@ public interface BinaryDeque {
         public BBContainer getContainer(int minimumSize);
     }
 
+    /*
+     * An independent read position in the deque. Discarding a container returned
+     * by poll acknowledges the object for this cursor only.
+     */
+    public interface BinaryDequeReader {
+        /**
+         * Return the next object this cursor hasn't read yet
+         * @param ocf
+         * @return null if the cursor is caught up
+         * @throws IOException
+         */
+        public BBContainer poll(OutputContainerFactory ocf) throws IOException;
+
+        public boolean isEmpty() throws IOException;
+
+        public int getNumObjects();
+
+        public long sizeInBytes();
+
+        public String getCursorId();
+    }
+
     /**
      * Store a buffer chain as a single object in the deque. IOException may be thrown if the object
      * is larger then the implementation defined max. 64 megabytes in the case of PersistentBinaryDeque.
@@ -74,6 +100,24 @@ public interface BinaryDeque {
      */
     public BBContainer poll(OutputContainerFactory ocf) throws IOException;
 
+    /**
+     * Open a named cursor, or get back the one opened earlier under the same id. A new cursor
+     * starts at the oldest object still stored. The position of a cursor is kept across restarts
+     * and it holds on to the objects it hasn't acknowledged until it is closed with closeCursor.
+     * @param cursorId Id of the cursor, may not contain whitespace
+     * @return
+     * @throws IOException
+     */
+    public BinaryDequeReader openForRead(String cursorId) throws IOException;
+
+    /**
+     * Forget a named cursor and its position. Objects it was holding on to are released
+     * if every other cursor has acknowledged them.
+     * @param cursorId
+     * @throws IOException
+     */
+    public void closeCursor(String cursorId) throws IOException;
+
     /**
      * Persist all objects in the queue to the backing store
      * @throws IOException
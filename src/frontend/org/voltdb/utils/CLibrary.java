@@ -69,4 +69,43 @@ public class CLibrary {
 
     public static native final int getpid();
 
+    /*
+     * sched_setaffinity only exists on Linux so it is registered separately to keep a
+     * missing symbol from taking getrlimit and getpid down with it
+     */
+    private static final class Affinity {
+        private static final boolean m_loaded;
+        static {
+            boolean loaded = false;
+            try {
+                Native.register("c");
+                loaded = true;
+            } catch (Throwable t) {
+                hostLog.warn("Failed to load sched_setaffinity via JNA", t);
+            }
+            m_loaded = loaded;
+        }
+
+        private static native final int sched_setaffinity(int pid, int cpusetsize, byte mask[]);
+    }
+
+    /*
+     * Pin the calling thread to the specified core. Returns false if the platform
+     * doesn't support it or the call failed
+     */
+    public static boolean setThreadAffinity(int core) {
+        if (core < 0 || !System.getProperty("os.name").equals("Linux") || !Affinity.m_loaded) {
+            return false;
+        }
+        try {
+            //cpu_set_t is a bit mask sized in whole longs, pid 0 is the calling thread
+            final byte mask[] = new byte[(core / 64 + 1) * 8];
+            mask[core / 8] |= (byte)(1 << (core % 8));
+            return Affinity.sched_setaffinity(0, mask.length, mask) == 0;
+        } catch (Throwable t) {
+            hostLog.warn("Failed to set thread affinity via JNA", t);
+        }
+        return false;
+    }
+
 }
@@ -57,7 +57,6 @@ class CSVFileReader implements Runnable {
     private final CSVDataLoader m_loader;
     private final BulkLoaderErrorHandler m_errHandler;
     private final VoltType[] m_columnTypes;
-    private final int m_columnCount;
 
     static {
         m_blankStrings.put(VoltType.TINYINT, "0");
@@ -81,7 +80,6 @@ class CSVFileReader implements Runnable {
         m_loader = loader;
         m_errHandler = errorHandler;
         m_columnTypes = m_loader.getColumnTypes();
-        m_columnCount = m_columnTypes.length;
     }
 
     @Override
@@ -118,7 +116,7 @@ class CSVFileReader implements Runnable {
 
                 String[] lineValues = lineList.toArray(new String[0]);
                 String lineCheckResult;
-                if ((lineCheckResult = checkparams_trimspace(lineValues)) != null) {
+                if ((lineCheckResult = checkparams_trimspace(lineValues, m_columnTypes)) != null) {
                     final RowWithMetaData metaData
                             = new RowWithMetaData(m_listReader.getUntokenizedRow(),
                                     m_totalLineCount.get() + 1);
@@ -161,9 +159,14 @@ class CSVFileReader implements Runnable {
         }
     }
 
-    private String checkparams_trimspace(String[] lineValues) {
-        if (lineValues.length != m_columnCount) {
-            return String.format(COLUMN_COUNT_ERROR, lineValues.length, m_columnCount);
+    /**
+     * Validate the values of a line and apply the blank, whitespace and null settings to them.
+     * Also used by the parsers of CSVParallelReader.
+     * @return null if the line is valid, otherwise the error
+     */
+    static String checkparams_trimspace(String[] lineValues, VoltType[] columnTypes) {
+        if (lineValues.length != columnTypes.length) {
+            return String.format(COLUMN_COUNT_ERROR, lineValues.length, columnTypes.length);
         }
 
         for (int i = 0; i<lineValues.length; i++) {
@@ -172,7 +175,7 @@ class CSVFileReader implements Runnable {
                 if (m_config.blank.equalsIgnoreCase("error")) {
                     return String.format(BLANK_ERROR, i + 1);
                 } else if (m_config.blank.equalsIgnoreCase("empty")) {
-                    lineValues[i] = m_blankStrings.get(m_columnTypes[i]);
+                    lineValues[i] = m_blankStrings.get(columnTypes[i]);
                 }
                 //else m_config.blank == null which is already the case
             } // trim white space in this correctedLine. SuperCSV preserves all the whitespace by default
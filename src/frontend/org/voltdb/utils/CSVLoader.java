@@ -24,6 +24,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.TimeZone;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -265,6 +266,9 @@ public class CSVLoader implements BulkLoaderErrorHandler {
         @Option(desc = "max size of a quoted column in bytes(default: 16777216 = 16MB)")
         long columnsizelimit = DEFAULT_COLUMN_LIMIT_SIZE;
 
+        @Option(desc = "number of threads parsing the input in parallel, 1 parses it on the reader thread (default: 1)")
+        int parsers = 1;
+
         @Option(shortOpt = "s", desc = "list of servers to connect to (default: localhost)")
         String servers = "localhost";
 
@@ -314,6 +318,9 @@ public class CSVLoader implements BulkLoaderErrorHandler {
             if (skip < 0) {
                 exitWithMessageAndUsage("skipline must be >= 0");
             }
+            if (parsers < 1) {
+                exitWithMessageAndUsage("parsers must be >= 1");
+            }
             if (port < 0) {
                 exitWithMessageAndUsage("port number must be >= 0");
             }
@@ -378,16 +385,17 @@ public class CSVLoader implements BulkLoaderErrorHandler {
         config = cfg;
 
         configuration();
-        final Tokenizer tokenizer;
+        Reader input = null;
         ICsvListReader listReader = null;
         try {
             if (CSVLoader.standin) {
-                tokenizer = new Tokenizer(new BufferedReader(new InputStreamReader(System.in)), csvPreference,
-                        config.strictquotes, config.escape, config.columnsizelimit,
-                        config.skip);
-                listReader = new CsvListReader(tokenizer, csvPreference);
+                input = new BufferedReader(new InputStreamReader(System.in));
             } else {
-                tokenizer = new Tokenizer(new FileReader(config.file), csvPreference,
+                input = new FileReader(config.file);
+            }
+            // the parallel reader tokenizes in its parser threads
+            if (config.parsers == 1) {
+                final Tokenizer tokenizer = new Tokenizer(input, csvPreference,
                         config.strictquotes, config.escape, config.columnsizelimit,
                         config.skip);
                 listReader = new CsvListReader(tokenizer, csvPreference);
@@ -431,14 +439,23 @@ public class CSVLoader implements BulkLoaderErrorHandler {
 
             CSVFileReader.initializeReader(cfg, csvClient, listReader);
 
-            CSVFileReader csvReader = new CSVFileReader(dataLoader, errHandler);
-            Thread readerThread = new Thread(csvReader);
-            readerThread.setName("CSVFileReader");
-            readerThread.setDaemon(true);
-
-            //Wait for reader to finish.
-            readerThread.start();
-            readerThread.join();
+            CSVParallelReader parallelReader = null;
+            if (listReader == null) {
+                parallelReader = new CSVParallelReader(cfg, csvPreference, dataLoader, errHandler, config.parsers);
+                //Returns when the data loader is done.
+                parallelReader.run(input);
+                readerTime = parallelReader.getReaderMillis();
+            } else {
+                CSVFileReader csvReader = new CSVFileReader(dataLoader, errHandler);
+                Thread readerThread = new Thread(csvReader);
+                readerThread.setName("CSVFileReader");
+                readerThread.setDaemon(true);
+
+                //Wait for reader to finish.
+                readerThread.start();
+                readerThread.join();
+                readerTime = (csvReader.m_parsingTime) / 1000000;
+            }
 
             insertTimeEnd = System.currentTimeMillis();
 
@@ -446,14 +463,17 @@ public class CSVLoader implements BulkLoaderErrorHandler {
 
             errHandler.waitForErrorFlushComplete();
 
-            readerTime = (csvReader.m_parsingTime) / 1000000;
             insertCount = dataLoader.getProcessedRows();
             ackCount = insertCount - dataLoader.getFailedRows();
             rowsQueued = CSVFileReader.m_totalRowCount.get();
 
             //Close the reader.
             try {
-               listReader.close();
+                if (listReader != null) {
+                    listReader.close();
+                } else {
+                    input.close();
+                }
             } catch (Exception ex) {
                 m_log.error("Error closing reader: " + ex);
             } finally {
@@ -469,7 +489,12 @@ public class CSVLoader implements BulkLoaderErrorHandler {
             m_log.debug("Inserting Data took " + ((insertTimeEnd - insertTimeStart) - readerTime) + " milliseconds.");
             m_log.info("Read " + insertCount + " rows from file and successfully inserted "
                        + ackCount + " rows (final)");
-            errHandler.produceFiles(ackCount, insertCount);
+            if (parallelReader != null) {
+                m_log.info("Reader rate: " + parallelReader.getReaderRate()
+                        + " row/s, parser rate: " + parallelReader.getParserRate()
+                        + " row/s, writer rate: " + parallelReader.getWriterRate() + " row/s");
+            }
+            errHandler.produceFiles(ackCount, insertCount, parallelReader);
             close_cleanup();
             //In test junit mode we let it continue for reuse
             if (!CSVLoader.testMode) {
@@ -543,7 +568,7 @@ public class CSVLoader implements BulkLoaderErrorHandler {
         return client;
     }
 
-    private void produceFiles(long ackCount, long insertCount) {
+    private void produceFiles(long ackCount, long insertCount, CSVParallelReader parallelReader) {
         long latency = System.currentTimeMillis() - start;
         m_log.info("Elapsed time: " + latency / 1000F
                 + " seconds");
@@ -587,6 +612,11 @@ public class CSVLoader implements BulkLoaderErrorHandler {
                     + m_errorCount + "\n");
             out_reportfile.write("CSVLoader rate: " + insertCount
                     / elapsedTimeSec + " row/s\n");
+            if (parallelReader != null) {
+                out_reportfile.write("Reader rate: " + parallelReader.getReaderRate() + " row/s\n");
+                out_reportfile.write("Parser rate: " + parallelReader.getParserRate() + " row/s\n");
+                out_reportfile.write("Writer rate: " + parallelReader.getWriterRate() + " row/s\n");
+            }
 
             m_log.info("Invalid row file: " + pathInvalidrowfile);
             m_log.info("Log file: " + pathLogfile);
@@ -0,0 +1,348 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.supercsv.exception.SuperCsvException;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+import org.supercsv_voltpatches.tokenizer.Tokenizer;
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.ParameterConverter;
+import org.voltdb.VoltType;
+import org.voltdb.VoltTypeException;
+
+/**
+ * Reads CSV input with a pool of parser threads, for input where tokenizing and converting
+ * the values on a single thread can't keep up with the cluster.
+ *
+ * The reader thread cuts the input into chunks of whole records. It only has to track quoting
+ * to find the record boundaries, which is much cheaper than tokenizing. The parsers tokenize
+ * the chunks, validate the rows the same way CSVFileReader does, convert the values to the
+ * column types and insert them into the CSVDataLoader. Chunks are handed over through a bounded
+ * queue and the data loader blocks on back pressure, so a slow cluster throttles the parsers
+ * and the reader in turn.
+ *
+ * The time each stage spends working, excluding waiting for the other stages, is tracked so the
+ * rate of each stage can be reported separately.
+ */
+class CSVParallelReader {
+    private static final VoltLogger m_log = new VoltLogger("CSVLOADER");
+
+    // Characters of input handed to a parser at a time, tests use small chunks
+    static int chunkChars = Integer.getInteger("CSV_CHUNK_CHARS", 1024 * 1024);
+    private static final int READ_BUFFER_CHARS = 64 * 1024;
+
+    /**
+     * Whole records of the input and the number of input lines before them
+     */
+    private static class Chunk {
+        private final String m_text;
+        private final long m_firstLine;
+
+        private Chunk(String text, long firstLine) {
+            m_text = text;
+            m_firstLine = firstLine;
+        }
+    }
+    private static final Chunk END_OF_INPUT = new Chunk(null, 0);
+
+    private final CSVLoader.CSVConfig m_config;
+    private final CsvPreference m_preference;
+    private final CSVDataLoader m_loader;
+    private final BulkLoaderErrorHandler m_errHandler;
+    private final VoltType[] m_columnTypes;
+    private final Parser m_parsers[];
+    private final BlockingQueue<Chunk> m_chunks;
+    private volatile boolean m_stopped = false;
+
+    private long m_readerNanos = 0;
+    private final AtomicLong m_parsedRows = new AtomicLong(0);
+    private final AtomicLong m_parserNanos = new AtomicLong(0);
+    private long m_elapsedNanos = 0;
+
+    CSVParallelReader(CSVLoader.CSVConfig config, CsvPreference preference, CSVDataLoader loader,
+            BulkLoaderErrorHandler errHandler, int parsers) {
+        m_config = config;
+        m_preference = preference;
+        m_loader = loader;
+        m_errHandler = errHandler;
+        m_columnTypes = loader.getColumnTypes();
+        m_parsers = new Parser[parsers];
+        m_chunks = new ArrayBlockingQueue<Chunk>(parsers * 2);
+    }
+
+    /**
+     * Read the whole input, then close the data loader to wait for the inserts to complete
+     */
+    void run(Reader input) throws InterruptedException {
+        final long start = System.nanoTime();
+        for (int i = 0; i < m_parsers.length; i++) {
+            m_parsers[i] = new Parser();
+            m_parsers[i].setName("CSVParser-" + i);
+            m_parsers[i].setDaemon(true);
+            m_parsers[i].start();
+        }
+
+        try {
+            readChunks(input);
+        } catch (IOException ex) {
+            m_log.error("Failed to read CSV line from file: " + ex);
+        } finally {
+            m_stopped |= m_errHandler.hasReachedErrorLimit();
+            for (int i = 0; i < m_parsers.length; i++) {
+                m_chunks.put(END_OF_INPUT);
+            }
+            for (Parser parser : m_parsers) {
+                parser.join();
+            }
+        }
+
+        try {
+            m_log.debug("Waiting for CSVDataLoader to finish.");
+            m_loader.close();
+            m_log.debug("CSVDataLoader Done.");
+        } catch (Exception ex) {
+            m_log.warn("Stopped processing because of connection error. "
+                    + "A report will be generated with what we processed so far. Error: " + ex);
+        }
+        m_elapsedNanos = System.nanoTime() - start;
+    }
+
+    /*
+     * Cut the input into chunks at record boundaries, skipping the configured number of lines
+     * and stopping after the configured number of records.
+     */
+    private void readChunks(Reader input) throws IOException, InterruptedException {
+        final char buf[] = new char[READ_BUFFER_CHARS];
+        final char quote = m_config.quotechar;
+        final char escape = m_config.escape;
+        final int chunkSize = chunkChars;
+        StringBuilder chunk = new StringBuilder(chunkSize + READ_BUFFER_CHARS);
+        long line = 0;
+        long chunkFirstLine = 0;
+        long records = 0;
+        boolean inQuotes = false;
+        boolean escaped = false;
+        boolean inRecord = false;
+
+        long busyStart = System.nanoTime();
+        int read;
+        reading:
+        while ((read = input.read(buf)) != -1) {
+            int from = 0;
+            for (int i = 0; i < read; i++) {
+                final char c = buf[i];
+                if (line < m_config.skip) {
+                    if (c == '\n') {
+                        line++;
+                        from = i + 1;
+                        chunkFirstLine = line;
+                    }
+                    continue;
+                }
+                inRecord = true;
+                if (c == '\n') {
+                    line++;
+                    escaped = false;
+                    if (inQuotes) {
+                        continue;
+                    }
+                    inRecord = false;
+                    records++;
+                    final boolean limitReached = records >= m_config.limitrows;
+                    if (chunk.length() + (i + 1 - from) >= chunkSize || limitReached) {
+                        chunk.append(buf, from, i + 1 - from);
+                        from = i + 1;
+                        m_readerNanos += System.nanoTime() - busyStart;
+                        if (!putChunk(new Chunk(chunk.toString(), chunkFirstLine))) {
+                            break reading;
+                        }
+                        busyStart = System.nanoTime();
+                        chunk = new StringBuilder(chunkSize + READ_BUFFER_CHARS);
+                        chunkFirstLine = line;
+                    }
+                    if (limitReached) {
+                        m_config.limitrows = -1;
+                        break reading;
+                    }
+                } else if (escaped) {
+                    escaped = false;
+                } else if (!inQuotes && c == escape) {
+                    // the tokenizer only escapes outside of quotes
+                    escaped = true;
+                } else if (c == quote) {
+                    inQuotes = !inQuotes;
+                }
+            }
+            if (from < read) {
+                chunk.append(buf, from, read - from);
+            }
+        }
+        if (inRecord) {
+            // the last record has no line terminator
+            records++;
+        }
+        if (chunk.length() > 0) {
+            m_readerNanos += System.nanoTime() - busyStart;
+            putChunk(new Chunk(chunk.toString(), chunkFirstLine));
+        } else {
+            m_readerNanos += System.nanoTime() - busyStart;
+        }
+        CSVFileReader.m_totalRowCount.set(records);
+        CSVFileReader.m_totalLineCount.set(inRecord ? line + 1 : line);
+    }
+
+    /*
+     * Wait for room in the queue, false if the parsers stopped
+     */
+    private boolean putChunk(Chunk chunk) throws InterruptedException {
+        while (!m_stopped) {
+            if (m_chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class Parser extends Thread {
+        @Override
+        public void run() {
+            try {
+                Chunk chunk;
+                while ((chunk = m_chunks.take()) != END_OF_INPUT) {
+                    if (!m_stopped) {
+                        parse(chunk);
+                    }
+                }
+            } catch (InterruptedException e) {
+                m_log.error("CSVLoader interrupted: " + e);
+                m_stopped = true;
+            }
+        }
+
+        private void parse(Chunk chunk) throws InterruptedException {
+            final Tokenizer tokenizer = new Tokenizer(new StringReader(chunk.m_text), m_preference,
+                    m_config.strictquotes, m_config.escape, m_config.columnsizelimit, 0);
+            final ICsvListReader listReader = new CsvListReader(tokenizer, m_preference);
+            long busyStart = System.nanoTime();
+            long rows = 0;
+            while (true) {
+                if (m_errHandler.hasReachedErrorLimit()) {
+                    m_stopped = true;
+                    break;
+                }
+                final long lineBefore = chunk.m_firstLine + listReader.getLineNumber();
+                final Object values[];
+                try {
+                    final List<String> lineList = listReader.read();
+                    if (lineList == null) {
+                        break;
+                    }
+                    if (lineList.isEmpty()) {
+                        continue;
+                    }
+                    final String[] lineValues = lineList.toArray(new String[0]);
+                    final String lineCheckResult = CSVFileReader.checkparams_trimspace(lineValues, m_columnTypes);
+                    if (lineCheckResult != null) {
+                        if (handleError(listReader.getUntokenizedRow(), lineBefore + 1, lineCheckResult)) {
+                            break;
+                        }
+                        continue;
+                    }
+                    values = new Object[lineValues.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = ParameterConverter.tryToMakeCompatible(
+                                m_columnTypes[i].classFromType(), lineValues[i]);
+                    }
+                } catch (SuperCsvException e) {
+                    //Catch rows that can not be read by superCSV listReader.
+                    // e.g. items without quotes when strictquotes is enabled.
+                    if (handleError(listReader.getUntokenizedRow(), lineBefore + 1, e.getMessage())) {
+                        break;
+                    }
+                    continue;
+                } catch (VoltTypeException e) {
+                    if (handleError(listReader.getUntokenizedRow(), lineBefore + 1, e.getMessage())) {
+                        break;
+                    }
+                    continue;
+                } catch (IOException e) {
+                    // reading from a string, can't happen
+                    m_log.error("Failed to parse CSV chunk: " + e);
+                    break;
+                }
+
+                rows++;
+                final RowWithMetaData lineData = new RowWithMetaData(listReader.getUntokenizedRow(),
+                        chunk.m_firstLine + listReader.getLineNumber());
+                m_parserNanos.addAndGet(System.nanoTime() - busyStart);
+                m_loader.insertRow(lineData, values);
+                busyStart = System.nanoTime();
+            }
+            m_parserNanos.addAndGet(System.nanoTime() - busyStart);
+            m_parsedRows.addAndGet(rows);
+        }
+
+        private boolean handleError(String rawLine, long lineNumber, String error) {
+            if (m_errHandler.handleError(new RowWithMetaData(rawLine, lineNumber), null, error)) {
+                m_stopped = true;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static long rate(long rows, long nanos) {
+        return nanos <= 0 ? 0 : (long)(rows * (double)TimeUnit.SECONDS.toNanos(1) / nanos);
+    }
+
+    /**
+     * Records cut by the reader per second of reading
+     */
+    long getReaderRate() {
+        return rate(CSVFileReader.m_totalRowCount.get(), m_readerNanos);
+    }
+
+    /**
+     * Rows parsed and converted per second of parsing by all parsers together
+     */
+    long getParserRate() {
+        return rate(m_parsedRows.get(), m_parserNanos.get() / m_parsers.length);
+    }
+
+    /**
+     * Rows processed by the data loader per second of the whole load
+     */
+    long getWriterRate() {
+        return rate(m_loader.getProcessedRows(), m_elapsedNanos);
+    }
+
+    long getReaderMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(m_readerNanos);
+    }
+}
@@ -0,0 +1,359 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Append only file written with O_DIRECT so the data doesn't go through the page cache.
+ *
+ * An append copies the bytes into aligned blocks from a pool shared by all files. Full blocks
+ * are handed to a dedicated IO thread and the append continues in another block, so copying
+ * the next data overlaps with writing the previous block. When the append returns the aligned
+ * part of the last block is handed off as well and the unaligned rest is kept in a small tail
+ * buffer of the file, so an open file holds no block between appends. At most
+ * DIRECT_IO_POOL_BLOCKS blocks exist at once, whatever the number of open files, and an append
+ * waits for a write to complete when they are all in use. An append never waits while it holds
+ * a block that isn't in flight, so waiting only depends on the IO thread and files can't starve
+ * each other. The final partial block is padded to the alignment and the file is truncated
+ * to its real length on close.
+ *
+ * Appends must come from a single thread.
+ */
+public class DirectIOFile {
+    private static final VoltLogger LOG = new VoltLogger("HOST");
+
+    public static final int ALIGNMENT = 4096;
+    private static final int BLOCK_SIZE = alignUp(Integer.getInteger("DIRECT_IO_BLOCK_SIZE", 1024 * 512));
+    private static final int POOL_BLOCKS = Integer.getInteger("DIRECT_IO_POOL_BLOCKS", 32);
+
+    /*
+     * Linux open(2) flags, O_DIRECT differs by architecture
+     */
+    private static final int O_WRONLY = 01;
+    private static final int O_CREAT = 0100;
+    private static final int O_TRUNC = 01000;
+    private static final int O_DIRECT_X86 = 040000;
+    private static final int O_DIRECT_ARM = 0200000;
+
+    private static final class LibC {
+        private static final boolean m_loaded;
+        static {
+            boolean loaded = false;
+            try {
+                Native.register("c");
+                loaded = true;
+            } catch (Throwable t) {
+                LOG.warn("Failed to load libc for direct IO via JNA", t);
+            }
+            m_loaded = loaded;
+        }
+
+        private static native int open(String path, int flags, int mode) throws LastErrorException;
+        private static native long pwrite(int fd, Pointer buf, long count, long offset) throws LastErrorException;
+        private static native int ftruncate(int fd, long length) throws LastErrorException;
+        private static native int fsync(int fd) throws LastErrorException;
+        private static native int close(int fd) throws LastErrorException;
+    }
+
+    private static final class Block {
+        private final BBContainer m_origin;
+        private final ByteBuffer m_buf;
+        private final long m_address;
+
+        private Block() {
+            m_origin = DBBPool.allocateDirect(BLOCK_SIZE + ALIGNMENT);
+            final int skew = (int)(m_origin.address() % ALIGNMENT);
+            final int offset = skew == 0 ? 0 : ALIGNMENT - skew;
+            final ByteBuffer b = m_origin.b();
+            b.position(offset);
+            b.limit(offset + BLOCK_SIZE);
+            m_buf = b.slice();
+            m_address = m_origin.address() + offset;
+        }
+    }
+
+    //Free blocks, at most POOL_BLOCKS are kept
+    private static final ConcurrentLinkedQueue<Block> m_pool = new ConcurrentLinkedQueue<Block>();
+    //Blocks allowed to be filled or in flight to the IO thread
+    private static final Semaphore m_blockPermits = new Semaphore(POOL_BLOCKS);
+    private static final ListeningExecutorService m_ioService =
+            CoreUtils.getListeningSingleThreadExecutor("Direct IO service");
+
+    private static int alignUp(long value) {
+        return (int)(((value + ALIGNMENT - 1) / ALIGNMENT) * ALIGNMENT);
+    }
+
+    private static int directFlag() {
+        final String arch = System.getProperty("os.arch");
+        if (arch.equals("amd64") || arch.equals("x86_64")) {
+            return O_DIRECT_X86;
+        } else if (arch.equals("aarch64")) {
+            return O_DIRECT_ARM;
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if the platform supports direct IO through this class
+     */
+    public static boolean isSupported() {
+        return System.getProperty("os.name").equalsIgnoreCase("linux") && directFlag() != 0 && LibC.m_loaded;
+    }
+
+    private final File m_file;
+    private final int m_fd;
+    //Appended bytes past the last aligned offset handed to the IO thread
+    private final ByteBuffer m_tail = ByteBuffer.allocate(ALIGNMENT);
+    //File offset of the next block
+    private long m_blockOffset = 0;
+    private long m_position = 0;
+    private ListenableFuture<?> m_lastWrite = Futures.immediateFuture(null);
+    private volatile IOException m_writeException = null;
+    private boolean m_closed = false;
+
+    /**
+     * Create or truncate the file and open it for direct IO. Fails if the file system
+     * doesn't support O_DIRECT.
+     */
+    public DirectIOFile(File file) throws IOException {
+        if (!isSupported()) {
+            throw new IOException("Direct IO is not supported on this platform");
+        }
+        m_file = file;
+        try {
+            m_fd = LibC.open(file.getPath(), O_WRONLY | O_CREAT | O_TRUNC | directFlag(), 0644);
+        } catch (LastErrorException e) {
+            throw new IOException("Unable to open " + file + " for direct IO, errno " + e.getErrorCode(), e);
+        }
+    }
+
+    public File getFile() {
+        return m_file;
+    }
+
+    /**
+     * @return Number of bytes appended to the file
+     */
+    public long position() {
+        return m_position;
+    }
+
+    /**
+     * Append the remaining bytes of the buffer. Returns the number of bytes appended.
+     * May block waiting for a previous write to complete when all blocks are in use.
+     */
+    public int write(ByteBuffer src) throws IOException {
+        checkWriteException();
+        if (m_closed) {
+            throw new IOException("Direct IO file " + m_file + " is closed");
+        }
+        final int length = src.remaining();
+        if (length < m_tail.remaining()) {
+            //Still short of the next aligned offset
+            m_tail.put(src);
+            m_position += length;
+            return length;
+        }
+
+        Block block = takeBlock();
+        m_tail.flip();
+        block.m_buf.put(m_tail);
+        m_tail.clear();
+        while (true) {
+            final ByteBuffer dst = block.m_buf;
+            if (src.remaining() <= dst.remaining()) {
+                dst.put(src);
+            } else {
+                final ByteBuffer part = src.duplicate();
+                part.limit(part.position() + dst.remaining());
+                dst.put(part);
+                src.position(part.position());
+            }
+            if (dst.hasRemaining()) {
+                break;
+            }
+            submit(block, BLOCK_SIZE);
+            if (!src.hasRemaining()) {
+                block = null;
+                break;
+            }
+            block = takeBlock();
+        }
+
+        if (block != null) {
+            //Write the aligned part of the last block and keep the rest for the next append
+            final ByteBuffer buf = block.m_buf;
+            final int aligned = buf.position() - buf.position() % ALIGNMENT;
+            buf.flip();
+            buf.position(aligned);
+            m_tail.put(buf);
+            if (aligned > 0) {
+                submit(block, aligned);
+            } else {
+                releaseBlock(block);
+            }
+        }
+        m_position += length;
+        return length;
+    }
+
+    /*
+     * Take a block to fill, waits if all blocks are in use. Callers must not hold
+     * a block that isn't in flight, the wait depends on blocks being written.
+     */
+    private static Block takeBlock() throws IOException {
+        try {
+            m_blockPermits.acquire();
+        } catch (InterruptedException e) {
+            throw new java.io.InterruptedIOException();
+        }
+        final Block block = m_pool.poll();
+        return block == null ? new Block() : block;
+    }
+
+    private static void releaseBlock(Block block) {
+        block.m_buf.clear();
+        if (m_pool.size() < POOL_BLOCKS) {
+            m_pool.offer(block);
+        } else {
+            block.m_origin.discard();
+        }
+        m_blockPermits.release();
+    }
+
+    /**
+     * @return Number of blocks being filled or in flight to the IO thread
+     */
+    static int blocksInUse() {
+        return POOL_BLOCKS - m_blockPermits.availablePermits();
+    }
+
+    /*
+     * Hand the first length bytes of the block to the IO thread, length must be aligned
+     */
+    private void submit(final Block block, final int length) {
+        final long offset = m_blockOffset;
+        m_blockOffset += length;
+        m_lastWrite = m_ioService.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    if (m_writeException == null) {
+                        pwriteFully(block, length, offset);
+                    }
+                } catch (IOException e) {
+                    m_writeException = e;
+                    throw e;
+                } finally {
+                    releaseBlock(block);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void pwriteFully(Block block, int length, long offset) throws IOException {
+        int written = 0;
+        while (written < length) {
+            final long retval;
+            try {
+                retval = LibC.pwrite(m_fd, new Pointer(block.m_address + written), length - written, offset + written);
+            } catch (LastErrorException e) {
+                throw new IOException("Direct IO write to " + m_file + " failed, errno " + e.getErrorCode(), e);
+            }
+            if (retval <= 0) {
+                throw new IOException("Direct IO write to " + m_file + " made no progress");
+            }
+            written += retval;
+        }
+    }
+
+    private void checkWriteException() throws IOException {
+        if (m_writeException != null) {
+            throw m_writeException;
+        }
+    }
+
+    private void waitForWrites() throws IOException {
+        try {
+            m_lastWrite.get();
+        } catch (InterruptedException e) {
+            throw new java.io.InterruptedIOException();
+        } catch (ExecutionException e) {
+            checkWriteException();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Write out the remaining data, truncate the file to the number of bytes appended,
+     * sync it and close it. The file is closed even if writing the data fails.
+     */
+    public void close() throws IOException {
+        if (m_closed) {
+            return;
+        }
+        m_closed = true;
+        try {
+            if (m_tail.position() > 0) {
+                //Direct IO can only write whole aligned blocks, zero the padding
+                final Block block = takeBlock();
+                final ByteBuffer buf = block.m_buf;
+                m_tail.flip();
+                buf.put(m_tail);
+                while (buf.position() < ALIGNMENT) {
+                    buf.put((byte)0);
+                }
+                submit(block, ALIGNMENT);
+            }
+            waitForWrites();
+            checkWriteException();
+            try {
+                LibC.ftruncate(m_fd, m_position);
+                LibC.fsync(m_fd);
+            } catch (LastErrorException e) {
+                throw new IOException("Unable to sync " + m_file + ", errno " + e.getErrorCode(), e);
+            }
+        } finally {
+            try {
+                LibC.close(m_fd);
+            } catch (LastErrorException e) {
+                LOG.warn("Error closing direct IO file " + m_file + ", errno " + e.getErrorCode());
+            }
+        }
+    }
+}
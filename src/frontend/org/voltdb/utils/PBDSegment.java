@@ -22,6 +22,9 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.Bits;
@@ -34,8 +37,10 @@ import org.xerial.snappy.Snappy;
 /**
  * Objects placed in the queue are stored in file segments that are up to 64 megabytes.
  * Segments only support appending objects. A segment will throw an IOException if an attempt
- * to insert an object that exceeds the remaining space is made. A segment can be used
- * for reading and writing, but not both at the same time.
+ * to insert an object that exceeds the remaining space is made. The segment being written
+ * can be polled by one reader thread while a writer thread appends to it, the entry count
+ * is published after the object is written. Every read cursor of the deque has its own
+ * {@link Reader} with its own read position, created the first time the cursor gets to the segment.
  *
  */
 class PBDSegment {
@@ -43,22 +48,20 @@ class PBDSegment {
 
     public static final int FLAG_COMPRESSED = 1;
 
+    //Allocate the disk blocks of a whole segment when it is created so writes through the
+    //mapping don't allocate blocks one page fault at a time or fault when the disk fills up
+    static final boolean PREALLOCATE = Boolean.valueOf(System.getProperty("PBD_PREALLOCATE_SEGMENTS", "false"));
+
     //Avoid unecessary sync with this flag
-    private boolean m_syncedSinceLastEdit = true;
+    private volatile boolean m_syncedSinceLastEdit = true;
     final File m_file;
     private RandomAccessFile m_ras;
     private FileChannel m_fc;
     private MBBContainer m_buf;
-    private ByteBuffer m_readBuf;
-
-    //If this is the first time polling a segment, madvise the entire thing
-    //into memory
-    private boolean m_haveMAdvised = false;
 
-    //Index of the next object to read, not an offset into the file
-    //The offset is maintained by the ByteBuffer. Used to determine if there is another object
-    int m_objectReadIndex = 0;
-    private int m_bytesRead = 0;
+    //Number of objects in the segment, written after the object itself so a reader
+    //never sees an object before its contents
+    private volatile int m_numEntries = 0;
 
     //ID of this segment
     final Long m_index;
@@ -69,11 +72,149 @@ class PBDSegment {
     static final int COUNT_OFFSET = 0;
     static final int SIZE_OFFSET = 4;
 
-    private boolean m_closed = false;
+    private volatile boolean m_closed = false;
+
+    //Read position of every cursor that got to this segment, keyed by cursor id with
+    //the unnamed cursor under null. Guarded by the deque's monitor
+    private final Map<String, Reader> m_readers = new HashMap<String, Reader>();
+
+    /*
+     * Where one cursor is in this segment
+     */
+    final class Reader {
+        private final ByteBuffer m_readBuf;
+
+        //If this is the first time polling a segment, madvise the entire thing
+        //into memory
+        private boolean m_haveMAdvised = false;
+
+        //Index of the next object to read, not an offset into the file
+        //The offset is maintained by the ByteBuffer. Used to determine if there is another object
+        int m_objectReadIndex = 0;
+        private int m_bytesRead = 0;
+
+        //Objects polled from this segment whose containers have been discarded
+        private final BitSet m_acked = new BitSet();
+        int m_ackedCount = 0;
+
+        private Reader() {
+            m_readBuf = m_buf.b().duplicate();
+            m_readBuf.clear();
+            m_readBuf.position(SIZE_OFFSET + 4);
+        }
+
+        boolean hasMoreEntries() throws IOException {
+            if (m_closed) throw new IOException("closed");
+            return m_objectReadIndex < m_numEntries;
+        }
+
+        void ack(int objectIndex) {
+            if (!m_acked.get(objectIndex)) {
+                m_acked.set(objectIndex);
+                m_ackedCount++;
+            }
+        }
+
+        /**
+         * @return How many objects from the start of the segment have been acknowledged
+         * without a gap, the position a cursor can resume from
+         */
+        int ackedPrefix() {
+            return m_acked.nextClearBit(0);
+        }
+
+        /**
+         * Move past and acknowledge objects that were consumed before a restart
+         */
+        void skip(int count) throws IOException {
+            final long mBufAddr = m_buf.address();
+            while (count-- > 0 && hasMoreEntries()) {
+                final int nextCompressedLength = m_readBuf.getInt();
+                final int nextFlags = m_readBuf.getInt();
+                m_bytesRead += nextFlags == FLAG_COMPRESSED ?
+                        (int)Snappy.uncompressedLength(mBufAddr + m_readBuf.position(), nextCompressedLength) :
+                        nextCompressedLength;
+                m_readBuf.position(m_readBuf.position() + nextCompressedLength);
+                ack(m_objectReadIndex++);
+            }
+        }
+
+        BBContainer poll(OutputContainerFactory factory) throws IOException {
+            if (m_closed) throw new IOException("closed");
+            final long mBufAddr = m_buf.address();
+            if (!m_haveMAdvised) {
+                m_haveMAdvised = true;
+                final long retval = PosixAdvise.madvise(
+                        m_buf.address(),
+                        m_buf.b().position(),
+                        PosixAdvise.POSIX_MADV_WILLNEED);
+                if (retval != 0) {
+                    LOG.warn("madvise will need failed: " + retval);
+                }
+            }
+
+            //No more entries to read
+            if (!hasMoreEntries()) {
+                return null;
+            }
+
+            m_objectReadIndex++;
+
+            //Get the length prefix and then read the object
+            final int nextCompressedLength = m_readBuf.getInt();
+            final int nextFlags = m_readBuf.getInt();
+
+            //Check for compression
+            final boolean compressed = nextFlags == FLAG_COMPRESSED;
+            //Determine the length of the object if uncompressed
+            final int nextUncompressedLength = compressed ? (int)Snappy.uncompressedLength(mBufAddr + m_readBuf.position(), nextCompressedLength) : nextCompressedLength;
+            m_bytesRead += nextUncompressedLength;
+
+            if (compressed) {
+                //Get storage for output
+                final BBContainer retcont = factory.getContainer(nextUncompressedLength);
+                final ByteBuffer retbuf = retcont.b();
+
+                //Limit to appropriate uncompressed size
+                retbuf.limit(nextUncompressedLength);
+
+                //Uncompress to output buffer
+                final long sourceAddr = mBufAddr + m_readBuf.position();
+                final long destAddr = retcont.address();
+                Snappy.rawUncompress(sourceAddr, nextCompressedLength, destAddr);
+                m_readBuf.position(m_readBuf.position() + nextCompressedLength);
+                return retcont;
+            } else {
+                //Return a slice
+                final int oldLimit = m_readBuf.limit();
+                m_readBuf.limit(m_readBuf.position() + nextUncompressedLength);
+                ByteBuffer retbuf = m_readBuf.slice();
+                m_readBuf.position(m_readBuf.limit());
+                m_readBuf.limit(oldLimit);
+
+                /*
+                 * For uncompressed data, touch all the pages to make 100% sure
+                 * they are available since they will be accessed directly.
+                 *
+                 * This code mimics MappedByteBuffer.load, but without the expensive
+                 * madvise call for data we are 99% sure was already madvised.
+                 *
+                 * This would only ever be an issue in the unlikely event that the page cache
+                 * is trashed at the wrong moment or we are very low on memory
+                 */
+                final BBContainer dummyCont = DBBPool.dummyWrapBB(retbuf);
+                Bits.readEveryPage(dummyCont);
+                return dummyCont;
+            }
+        }
 
-    //How many entries that have been polled have from this file have been discarded.
-    //Convenient to let PBQ maintain the counter here
-    int m_discardCount = 0;
+        /*
+         * Bytes in the segment this cursor hasn't read yet
+         */
+        int sizeInBytes() {
+            return Math.max(0, PBDSegment.this.sizeInBytes() - m_bytesRead);
+        }
+    }
 
     public PBDSegment(Long index, File file ) {
         m_index = index;
@@ -87,11 +228,17 @@ class PBDSegment {
         if (m_fc == null) {
             open(false);
         }
+        return m_numEntries;
+    }
+
+    /*
+     * Pick up an entry count that was changed in the file behind the segment's back
+     */
+    void reloadNumEntries() throws IOException {
         if (m_fc.size() > m_segmentHeaderBytes) {
-            final int numEntries = m_buf.b().getInt(0);
-            return numEntries;
+            m_numEntries = m_buf.b().getInt(COUNT_OFFSET);
         } else {
-            return 0;
+            m_numEntries = 0;
         }
     }
 
@@ -99,15 +246,18 @@ class PBDSegment {
         final ByteBuffer buf = m_buf.b();
         buf.putInt(0, 0);
         buf.putInt(4, 0);
+        m_numEntries = 0;
         m_syncedSinceLastEdit = false;
     }
 
     private void incrementNumEntries(int size) throws IOException {
         final ByteBuffer buf = m_buf.b();
         //First read the existing amount
-        buf.putInt(COUNT_OFFSET, buf.getInt(COUNT_OFFSET) + 1);
+        final int numEntries = buf.getInt(COUNT_OFFSET) + 1;
+        buf.putInt(COUNT_OFFSET, numEntries);
         buf.putInt(SIZE_OFFSET, buf.getInt(SIZE_OFFSET) + size);
         m_syncedSinceLastEdit = false;
+        m_numEntries = numEntries;
     }
 
     void open(boolean forWrite) throws IOException {
@@ -121,19 +271,23 @@ class PBDSegment {
         m_fc = m_ras.getChannel();
 
         if (forWrite) {
+            if (PREALLOCATE && PosixAdvise.FALLOCATE_SUPPORTED) {
+                final long retval = PosixAdvise.fallocate(m_ras.getFD(), 0, m_chunkSize);
+                if (retval != 0) {
+                    LOG.warn("Failed to preallocate PBD segment " + m_file + ": " + retval);
+                }
+            }
             //If this is for writing, map the chunk size RW and put the buf positions at the start
             m_buf = DBBPool.wrapMBB(m_fc.map(MapMode.READ_WRITE, 0, m_chunkSize));
             m_buf.b().position(SIZE_OFFSET + 4);
-            m_readBuf = m_buf.b().duplicate();
             initNumEntries();
         } else {
             //If it isn't for write, map read only to the actual size and put the write buf position at the end
             //so size is reported correctly
             final long size = m_fc.size();
             m_buf = DBBPool.wrapMBB(m_fc.map(MapMode.READ_ONLY, 0, size));
-            m_readBuf = m_buf.b().duplicate();
             m_buf.b().position((int) size);
-            m_readBuf.position(SIZE_OFFSET + 4);
+            reloadNumEntries();
         }
     }
 
@@ -145,7 +299,7 @@ class PBDSegment {
         m_file.delete();
     }
 
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         try {
             if (m_fc != null) {
                 m_fc.close();
@@ -153,29 +307,54 @@ class PBDSegment {
                 m_fc = null;
                 m_buf.discard();
                 m_buf = null;
-                m_readBuf = null;
             }
         } finally {
             m_closed = true;
         }
     }
 
-    void sync() throws IOException {
-        if (m_closed) throw new IOException("closed");
-        if (!m_syncedSinceLastEdit) {
-            m_buf.b().force();
+    /**
+     * Force the segment to disk. May run concurrently with an offer, objects offered
+     * during the force are picked up by the next sync. A segment that was closed
+     * in the meantime has nothing left to sync.
+     *
+     * @return true if the segment had to be forced
+     */
+    synchronized boolean sync() throws IOException {
+        if (m_closed || m_syncedSinceLastEdit) {
+            return false;
         }
         m_syncedSinceLastEdit = true;
+        m_buf.b().force();
+        return true;
     }
 
-    boolean hasMoreEntries() throws IOException {
-        if (m_closed) throw new IOException("closed");
-        return m_objectReadIndex < m_buf.b().getInt(COUNT_OFFSET);
+    /**
+     * @return The read position of a cursor in this segment, null if it hasn't got here yet
+     */
+    Reader getReader(String cursorId) {
+        return m_readers.get(cursorId);
     }
 
-    boolean isEmpty() throws IOException {
-        if (m_closed) throw new IOException("closed");
-        return m_discardCount == getNumEntries();
+    /**
+     * @return The read position of a cursor in this segment, starting at the first object
+     * if it hasn't got here yet
+     */
+    Reader openReader(String cursorId) throws IOException {
+        Reader reader = m_readers.get(cursorId);
+        if (reader == null) {
+            if (m_closed) throw new IOException("closed");
+            if (m_buf == null) {
+                open(false);
+            }
+            reader = new Reader();
+            m_readers.put(cursorId, reader);
+        }
+        return reader;
+    }
+
+    void removeReader(String cursorId) {
+        m_readers.remove(cursorId);
     }
 
     boolean offer(BBContainer cont, boolean compress) throws IOException {
@@ -217,76 +396,6 @@ class PBDSegment {
         return true;
     }
 
-    BBContainer poll(OutputContainerFactory factory) throws IOException {
-        if (m_closed) throw new IOException("closed");
-        final long mBufAddr = m_buf.address();
-        if (!m_haveMAdvised) {
-            final ByteBuffer mbuf = m_buf.b();
-            m_haveMAdvised = true;
-            final long retval = PosixAdvise.madvise(
-                    m_buf.address(),
-                    mbuf.position(),
-                    PosixAdvise.POSIX_MADV_WILLNEED);
-            if (retval != 0) {
-                LOG.warn("madvise will need failed: " + retval);
-            }
-        }
-
-        //No more entries to read
-        if (!hasMoreEntries()) {
-            return null;
-        }
-
-        m_objectReadIndex++;
-
-        //Get the length prefix and then read the object
-        final int nextCompressedLength = m_readBuf.getInt();
-        final int nextFlags = m_readBuf.getInt();
-
-        //Check for compression
-        final boolean compressed = nextFlags == FLAG_COMPRESSED;
-        //Determine the length of the object if uncompressed
-        final int nextUncompressedLength = compressed ? (int)Snappy.uncompressedLength(mBufAddr + m_readBuf.position(), nextCompressedLength) : nextCompressedLength;
-        m_bytesRead += nextUncompressedLength;
-
-        if (compressed) {
-            //Get storage for output
-            final BBContainer retcont = factory.getContainer(nextUncompressedLength);
-            final ByteBuffer retbuf = retcont.b();
-
-            //Limit to appropriate uncompressed size
-            retbuf.limit(nextUncompressedLength);
-
-            //Uncompress to output buffer
-            final long sourceAddr = mBufAddr + m_readBuf.position();
-            final long destAddr = retcont.address();
-            Snappy.rawUncompress(sourceAddr, nextCompressedLength, destAddr);
-            m_readBuf.position(m_readBuf.position() + nextCompressedLength);
-            return retcont;
-        } else {
-            //Return a slice
-            final int oldLimit = m_readBuf.limit();
-            m_readBuf.limit(m_readBuf.position() + nextUncompressedLength);
-            ByteBuffer retbuf = m_readBuf.slice();
-            m_readBuf.position(m_readBuf.limit());
-            m_readBuf.limit(oldLimit);
-
-            /*
-             * For uncompressed data, touch all the pages to make 100% sure
-             * they are available since they will be accessed directly.
-             *
-             * This code mimics MappedByteBuffer.load, but without the expensive
-             * madvise call for data we are 99% sure was already madvised.
-             *
-             * This would only ever be an issue in the unlikely event that the page cache
-             * is trashed at the wrong moment or we are very low on memory
-             */
-            final BBContainer dummyCont = DBBPool.dummyWrapBB(retbuf);
-            Bits.readEveryPage(dummyCont);
-            return dummyCont;
-        }
-    }
-
     /*
      * Don't use size in bytes to determine empty, could potentially
      * diverge from object count on crash or power failure
@@ -294,6 +403,6 @@ class PBDSegment {
      */
     int sizeInBytes() {
         if (m_closed) throw new RuntimeException("closed");
-        return Math.max(0, m_buf.b().getInt(SIZE_OFFSET) - m_bytesRead);
+        return m_buf.b().getInt(SIZE_OFFSET);
     }
 }
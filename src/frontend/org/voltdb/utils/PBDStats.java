@@ -0,0 +1,97 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Disk activity of the persistent binary deques open on this host, one row per deque
+ */
+public class PBDStats extends StatsSource {
+    private Map<PersistentBinaryDeque, long[]> m_dequeStats =
+        new HashMap<PersistentBinaryDeque, long[]>();
+
+    public PBDStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("NONCE", VoltType.STRING));
+        columns.add(new ColumnInfo("SEGMENTS", VoltType.INTEGER));
+        columns.add(new ColumnInfo("OBJECTS", VoltType.INTEGER));
+        columns.add(new ColumnInfo("BYTES_WRITTEN", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_READ", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SYNCS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("GROUPED_SYNCS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_SYNC_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_SYNC_TIME", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final PersistentBinaryDeque deque = (PersistentBinaryDeque)rowKey;
+        final long[] counters = m_dequeStats.get(deque);
+        final long syncs = counters[PersistentBinaryDeque.STAT_SYNCS];
+
+        rowValues[columnNameToIndex.get("NONCE")] = deque.getNonce();
+        rowValues[columnNameToIndex.get("SEGMENTS")] = (int)counters[PersistentBinaryDeque.STAT_SEGMENTS];
+        rowValues[columnNameToIndex.get("OBJECTS")] = (int)counters[PersistentBinaryDeque.STAT_OBJECTS];
+        rowValues[columnNameToIndex.get("BYTES_WRITTEN")] = counters[PersistentBinaryDeque.STAT_BYTES_WRITTEN];
+        rowValues[columnNameToIndex.get("BYTES_READ")] = counters[PersistentBinaryDeque.STAT_BYTES_READ];
+        rowValues[columnNameToIndex.get("SYNCS")] = syncs;
+        rowValues[columnNameToIndex.get("GROUPED_SYNCS")] = counters[PersistentBinaryDeque.STAT_GROUPED_SYNCS];
+        rowValues[columnNameToIndex.get("AVG_SYNC_TIME")] =
+                syncs == 0 ? 0L : counters[PersistentBinaryDeque.STAT_SYNC_NANOS] / syncs;
+        rowValues[columnNameToIndex.get("MAX_SYNC_TIME")] = counters[PersistentBinaryDeque.STAT_MAX_SYNC_NANOS];
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_dequeStats = new HashMap<PersistentBinaryDeque, long[]>();
+        for (PersistentBinaryDeque deque : PersistentBinaryDeque.getOpenDeques()) {
+            m_dequeStats.put(deque, deque.getStats(interval));
+        }
+        final Iterator<PersistentBinaryDeque> keys = m_dequeStats.keySet().iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return keys.next();
+            }
+
+            @Override
+            public void remove() {
+                keys.remove();
+            }
+        };
+    }
+}
@@ -18,18 +18,29 @@ package org.voltdb.utils;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool;
@@ -38,6 +49,7 @@ import org.voltcore.utils.DBBPool.MBBContainer;
 import org.voltdb.EELibraryLoader;
 import org.xerial.snappy.Snappy;
 
+import com.google_voltpatches.common.base.Charsets;
 import com.google_voltpatches.common.base.Joiner;
 import com.google_voltpatches.common.base.Throwables;
 
@@ -50,10 +62,43 @@ import com.google_voltpatches.common.base.Throwables;
  * once all objects from the segment have been polled and all the containers returned by poll have been discarded.
  * Push is implemented by creating new segments at the head of the deque containing the objects to be pushed.
  *
+ * Offering and polling are serialized separately so a reader doesn't wait for a writer, and sync
+ * flushes the segments without holding either. Concurrent syncs are folded into a single fsync,
+ * optionally waiting up to PBD_GROUP_COMMIT_MS for more syncs to join.
+ *
+ * Named cursors read the deque independently of each other and of poll. A segment is only
+ * deleted once every cursor that is in use has acknowledged all of its objects. The unnamed
+ * cursor behind poll is only counted once poll has been called, so a deque read only through
+ * named cursors isn't held back by it. The acknowledged position of the named cursors is saved
+ * to nonce.cursors on sync and close and picked up again when the deque is reopened.
+ *
  */
 public class PersistentBinaryDeque implements BinaryDeque {
     private static final VoltLogger LOG = new VoltLogger("HOST");
 
+    /*
+     * A sync waits until this long after the previous fsync started so that the syncs
+     * requested in the meantime are covered by a single fsync. 0 syncs right away.
+     */
+    private static final long GROUP_COMMIT_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("PBD_GROUP_COMMIT_MS", 0));
+
+    /*
+     * Layout of the counters returned by getStats
+     */
+    public static final int STAT_SEGMENTS = 0;
+    public static final int STAT_OBJECTS = 1;
+    public static final int STAT_BYTES_WRITTEN = 2;
+    public static final int STAT_BYTES_READ = 3;
+    public static final int STAT_SYNCS = 4;
+    public static final int STAT_GROUPED_SYNCS = 5;
+    public static final int STAT_SYNC_NANOS = 6;
+    public static final int STAT_MAX_SYNC_NANOS = 7;
+    public static final int STAT_COUNT = 8;
+
+    private static final Set<PersistentBinaryDeque> s_openDeques =
+            Collections.newSetFromMap(new ConcurrentHashMap<PersistentBinaryDeque, Boolean>());
+
     public static class UnsafeOutputContainerFactory implements OutputContainerFactory {
         @Override
         public BBContainer getContainer(int minimumSize) {
@@ -78,6 +123,85 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     public static final OutputContainerFactory UNSAFE_CONTAINER_FACTORY = new UnsafeOutputContainerFactory();
 
+    private class ReadCursor implements BinaryDequeReader {
+        private final String m_cursorId;
+        //Segments before this one were consumed when the cursor was saved,
+        //pushing objects at the head moves it back
+        private long m_firstSegment = Long.MIN_VALUE;
+        //Objects in the deque this cursor hasn't read yet
+        private final AtomicInteger m_numObjects = new AtomicInteger(0);
+        //Whether the cursor holds on to the segments it hasn't acknowledged
+        private volatile boolean m_active;
+        private volatile boolean m_open = true;
+
+        private ReadCursor(String cursorId) {
+            m_cursorId = cursorId;
+            m_active = cursorId != null;
+        }
+
+        @Override
+        public BBContainer poll(OutputContainerFactory ocf) throws IOException {
+            synchronized (PersistentBinaryDeque.this) {
+                return pollLocked(this, ocf);
+            }
+        }
+
+        @Override
+        public boolean isEmpty() throws IOException {
+            synchronized (PersistentBinaryDeque.this) {
+                return isEmptyLocked(this);
+            }
+        }
+
+        @Override
+        public int getNumObjects() {
+            return m_numObjects.get();
+        }
+
+        @Override
+        public long sizeInBytes() {
+            synchronized (PersistentBinaryDeque.this) {
+                return sizeInBytesLocked(this);
+            }
+        }
+
+        @Override
+        public String getCursorId() {
+            return m_cursorId;
+        }
+
+        /*
+         * Objects in the segments this cursor hasn't read yet
+         */
+        private int countUnread() throws IOException {
+            int count = 0;
+            for (PBDSegment segment : m_segments) {
+                if (segment.m_index < m_firstSegment) continue;
+                final PBDSegment.Reader reader = segment.getReader(m_cursorId);
+                count += Math.max(0, segment.getNumEntries() - (reader == null ? 0 : reader.m_objectReadIndex));
+            }
+            return count;
+        }
+
+        /*
+         * Oldest segment this cursor hasn't acknowledged completely and how many objects
+         * at its start have been acknowledged
+         */
+        private long[] position() throws IOException {
+            long position[] = new long[] { m_firstSegment, 0 };
+            for (PBDSegment segment : m_segments) {
+                if (segment.m_index < m_firstSegment) continue;
+                final PBDSegment.Reader reader = segment.getReader(m_cursorId);
+                final int acked = reader == null ? 0 : reader.ackedPrefix();
+                position = new long[] { segment.m_index, acked };
+                if (acked < segment.getNumEntries()) {
+                    break;
+                }
+            }
+            return position;
+        }
+    }
+
     /**
      * Processors also log using this facility.
      */
@@ -87,12 +211,40 @@ public class PersistentBinaryDeque implements BinaryDeque {
     private final String m_nonce;
     private boolean m_initializedFromExistingFiles = false;
 
-    //Segments that are no longer being written to and can be polled
-    //These segments are "immutable". They will not be modified until deletion
-    private final Deque<PBDSegment> m_segments = new ArrayDeque<PBDSegment>();
-    private int m_numObjects = 0;
+    //Segments that can be polled, the last one is also being written to
+    //The others are "immutable". They will not be modified until deletion
+    private final Deque<PBDSegment> m_segments = new ConcurrentLinkedDeque<PBDSegment>();
     private volatile boolean m_closed = false;
 
+    private final ReadCursor m_defaultCursor = new ReadCursor(null);
+    //Cursors opened by name, changed while holding both locks
+    private final Map<String, ReadCursor> m_namedCursors = new ConcurrentHashMap<String, ReadCursor>();
+    private final File m_cursorFile;
+    //Whether a named cursor acknowledged something since the positions were last saved, guarded by the monitor
+    private boolean m_cursorsChanged = false;
+
+    /*
+     * Offers hold the write lock and polls hold the deque's monitor. Appending a segment
+     * and removing a consumed one also take the monitor, anything else that changes the
+     * segments holds both, always taking the write lock first. Only the sync lock is
+     * held while forcing segments to disk.
+     */
+    private final Object m_writeLock = new Object();
+    private final Object m_syncLock = new Object();
+    //Objects offered or pushed so far, guarded by the write lock
+    private long m_offerCount = 0;
+    //Objects known to be on disk and when the last fsync started, guarded by the sync lock
+    private long m_syncedOfferCount = 0;
+    private long m_lastSyncStart = 0;
+
+    private final AtomicLong m_bytesWritten = new AtomicLong();
+    private final AtomicLong m_bytesRead = new AtomicLong();
+    private final AtomicLong m_syncs = new AtomicLong();
+    private final AtomicLong m_groupedSyncs = new AtomicLong();
+    private final AtomicLong m_syncNanos = new AtomicLong();
+    private volatile long m_maxSyncNanos = 0;
+    private final long m_lastStats[] = new long[STAT_COUNT];
+
     /**
      * Create a persistent binary deque with the specified nonce and storage
      * back at the specified path. Existing files will
@@ -172,7 +324,6 @@ public class PersistentBinaryDeque implements BinaryDeque {
                                     return false;
                                 }
                             }
-                            m_numObjects += qs.getNumEntries();
                             segments.put( index, qs);
                         } catch (IOException e) {
                             throw new RuntimeException(e);
@@ -210,8 +361,22 @@ public class PersistentBinaryDeque implements BinaryDeque {
             m_segments.offer(e.getValue());
         }
 
+        //Saved cursor positions as id, segment index and number of acknowledged objects
+        m_cursorFile = new VoltFile(m_path, m_nonce + ".cursors");
+        final List<String[]> savedCursors = new ArrayList<String[]>();
+        long lastCursorSegment = 0;
+        if (m_cursorFile.exists()) {
+            for (String line : Files.readAllLines(m_cursorFile.toPath(), Charsets.UTF_8)) {
+                final String fields[] = line.trim().split("\\s+");
+                if (fields.length != 3) continue;
+                savedCursors.add(fields);
+                lastCursorSegment = Math.max(lastCursorSegment, Long.valueOf(fields[1]));
+            }
+        }
+
         //Find the first and last segment for polling and writing (after)
-        Long writeSegmentIndex = 0L;
+        //With no segments left start at the segment the cursors expect next
+        Long writeSegmentIndex = lastCursorSegment;
         try {
             writeSegmentIndex = segments.lastKey() + 1;
         } catch (NoSuchElementException e) {}
@@ -222,46 +387,83 @@ public class PersistentBinaryDeque implements BinaryDeque {
                     new VoltFile(m_path, m_nonce + "." + writeSegmentIndex + ".pbd"));
         m_segments.offer(writeSegment);
         writeSegment.open(true);
+
+        m_defaultCursor.m_numObjects.set(m_defaultCursor.countUnread());
+        for (String fields[] : savedCursors) {
+            final ReadCursor cursor = new ReadCursor(fields[0]);
+            cursor.m_firstSegment = Math.min(Long.valueOf(fields[1]), writeSegmentIndex);
+            for (PBDSegment segment : m_segments) {
+                if (segment.m_index == cursor.m_firstSegment) {
+                    segment.openReader(cursor.m_cursorId).skip(Integer.valueOf(fields[2]));
+                }
+            }
+            cursor.m_numObjects.set(cursor.countUnread());
+            m_namedCursors.put(cursor.m_cursorId, cursor);
+        }
+        deleteConsumedSegments();
         assertions();
+        s_openDeques.add(this);
     }
 
     @Override
-    public synchronized void offer(BBContainer object) throws IOException {
+    public void offer(BBContainer object) throws IOException {
         offer(object, true);
     }
 
     @Override
-    public synchronized void offer(BBContainer object, boolean allowCompression) throws IOException {
-        assertions();
-        if (m_closed) {
-            throw new IOException("Closed");
-        }
-
-        PBDSegment tail = m_segments.peekLast();
-        //If we are mostly empty, don't do compression, otherwise compress to reduce space and IO
-        final boolean compress = object.b().isDirect() && allowCompression &&
-                (m_segments.size() > 1 || tail.sizeInBytes() > 1024 * 512);
-        if (!tail.offer(object, compress)) {
-            //Check to see if the tail is completely consumed so we can close and delete it
-            if (!tail.hasMoreEntries() && tail.m_discardCount == tail.getNumEntries()) {
-                m_segments.pollLast();
-                tail.closeAndDelete();
+    public void offer(BBContainer object, boolean allowCompression) throws IOException {
+        synchronized (m_writeLock) {
+            if (m_closed) {
+                throw new IOException("Closed");
             }
-            Long nextIndex = tail.m_index + 1;
-            tail = new PBDSegment(nextIndex, new VoltFile(m_path, m_nonce + "." + nextIndex + ".pbd"));
-            tail.open(true);
-            m_segments.offer(tail);
-            final boolean success = tail.offer(object, compress);
-            if (!success) {
-                throw new IOException("Failed to offer object in PBD");
+
+            PBDSegment tail = m_segments.peekLast();
+            final int size = object.b().remaining();
+            //If we are mostly empty, don't do compression, otherwise compress to reduce space and IO
+            final boolean compress = object.b().isDirect() && allowCompression &&
+                    (m_segments.size() > 1 || tail.sizeInBytes() > 1024 * 512);
+            //Count the object before a cursor can see it so the counts never go negative
+            addToNumObjects(1);
+            boolean success = false;
+            try {
+                if (!tail.offer(object, compress)) {
+                    Long nextIndex = tail.m_index + 1;
+                    final PBDSegment newTail =
+                            new PBDSegment(nextIndex, new VoltFile(m_path, m_nonce + "." + nextIndex + ".pbd"));
+                    newTail.open(true);
+                    synchronized (this) {
+                        //Check to see if the tail is completely consumed so we can close and delete it
+                        if (isConsumed(tail)) {
+                            deleteSegment(tail);
+                        }
+                        m_segments.offer(newTail);
+                    }
+                    tail = newTail;
+                    if (!tail.offer(object, compress)) {
+                        throw new IOException("Failed to offer object in PBD");
+                    }
+                }
+                success = true;
+            } finally {
+                if (!success) {
+                    addToNumObjects(-1);
+                }
             }
+            m_offerCount++;
+            m_bytesWritten.addAndGet(size);
         }
-        incrementNumObjects();
-        assertions();
     }
 
     @Override
-    public synchronized void push(BBContainer objects[]) throws IOException {
+    public void push(BBContainer objects[]) throws IOException {
+        synchronized (m_writeLock) {
+            synchronized (this) {
+                pushLocked(objects);
+            }
+        }
+    }
+
+    private void pushLocked(BBContainer objects[]) throws IOException {
         assertions();
         if (m_closed) {
             throw new IOException("Closed");
@@ -309,46 +511,54 @@ public class PersistentBinaryDeque implements BinaryDeque {
             nextIndex--;
 
             while (currentSegmentContents.peek() != null) {
-                writeSegment.offer(currentSegmentContents.pollFirst(), false);
-                incrementNumObjects();
+                final BBContainer object = currentSegmentContents.pollFirst();
+                m_bytesWritten.addAndGet(object.b().remaining());
+                writeSegment.offer(object, false);
+                addToNumObjects(1);
+                m_offerCount++;
             }
 
             m_segments.push(writeSegment);
         }
+        //Every cursor reads the pushed objects next
+        for (ReadCursor cursor : cursors()) {
+            cursor.m_firstSegment = Math.min(cursor.m_firstSegment, m_segments.peek().m_index);
+        }
         assertions();
     }
 
     @Override
     public synchronized BBContainer poll(OutputContainerFactory ocf) throws IOException {
-        assertions();
+        m_defaultCursor.m_active = true;
+        return pollLocked(m_defaultCursor, ocf);
+    }
+
+    private BBContainer pollLocked(ReadCursor cursor, OutputContainerFactory ocf) throws IOException {
         if (m_closed) {
             throw new IOException("Closed");
         }
-
-        BBContainer retcont = null;
-        PBDSegment segment = m_segments.peek();
-        if (segment.hasMoreEntries()) {
-            retcont = segment.poll(ocf);
-        } else {
-            for (PBDSegment s : m_segments) {
-                if (s.hasMoreEntries()) {
-                    segment = s;
-                    retcont = segment.poll(ocf);
-                    break;
-                }
-            }
-        }
-        if (retcont == null) {
-            return null;
+        if (!cursor.m_open) {
+            throw new IOException("Cursor " + cursor.m_cursorId + " is closed");
         }
 
-        decrementNumObjects();
-        assertions();
-        assert (retcont.b() != null);
-        return wrapRetCont(segment, retcont);
+        for (PBDSegment segment : m_segments) {
+            if (segment.m_index < cursor.m_firstSegment) continue;
+            final PBDSegment.Reader reader = segment.openReader(cursor.m_cursorId);
+            if (!reader.hasMoreEntries()) continue;
+
+            final int objectIndex = reader.m_objectReadIndex;
+            final BBContainer retcont = reader.poll(ocf);
+            final int numObjects = cursor.m_numObjects.decrementAndGet();
+            assert(numObjects >= 0);
+            assert (retcont.b() != null);
+            m_bytesRead.addAndGet(retcont.b().remaining());
+            return wrapRetCont(segment, cursor, reader, objectIndex, retcont);
+        }
+        return null;
     }
 
-    private BBContainer wrapRetCont(final PBDSegment segment, final BBContainer retcont) {
+    private BBContainer wrapRetCont(final PBDSegment segment, final ReadCursor cursor,
+            final PBDSegment.Reader reader, final int objectIndex, final BBContainer retcont) {
         return new BBContainer(retcont.b()) {
             private boolean m_discarded = false;
             @Override
@@ -360,68 +570,254 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 }
                 m_discarded = true;
                 retcont.discard();
-                segment.m_discardCount++;
-                assert(m_closed || m_segments.contains(segment));
+                synchronized (PersistentBinaryDeque.this) {
+                    reader.ack(objectIndex);
+                    m_cursorsChanged |= cursor.m_cursorId != null;
+                    assert(m_closed || !cursor.m_open || m_segments.contains(segment));
 
-                //Don't do anything else if we are closed
-                if (m_closed) {
-                    return;
-                }
+                    //Don't do anything else if we are closed
+                    if (m_closed || !cursor.m_open) {
+                        return;
+                    }
 
-                //Segment is potentially ready for deletion
-                try {
-                    if (segment.m_discardCount == segment.getNumEntries()) {
-                        if (segment != m_segments.peekLast()) {
-                            m_segments.remove(segment);
-                            segment.closeAndDelete();
+                    //Segment is potentially ready for deletion
+                    try {
+                        if (segment != m_segments.peekLast() && isConsumed(segment)) {
+                            deleteSegment(segment);
                         }
+                    } catch (IOException e) {
+                        LOG.error("Exception closing and deleting PBD segment", e);
                     }
-                } catch (IOException e) {
-                    LOG.error("Exception closing and deleting PBD segment", e);
                 }
             }
         };
     }
 
     @Override
-    public synchronized void sync() throws IOException {
-        if (m_closed) {
-            throw new IOException("Closed");
+    public BinaryDequeReader openForRead(String cursorId) throws IOException {
+        if (cursorId == null || !cursorId.matches("\\S+")) {
+            throw new IllegalArgumentException("Invalid cursor id \"" + cursorId + "\"");
         }
-        for (PBDSegment segment : m_segments) {
-            segment.sync();
+        synchronized (m_writeLock) {
+            synchronized (this) {
+                if (m_closed) {
+                    throw new IOException("Closed");
+                }
+                ReadCursor cursor = m_namedCursors.get(cursorId);
+                if (cursor == null) {
+                    cursor = new ReadCursor(cursorId);
+                    cursor.m_numObjects.set(cursor.countUnread());
+                    m_namedCursors.put(cursorId, cursor);
+                    m_cursorsChanged = true;
+                }
+                return cursor;
+            }
         }
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        if (m_closed) {
-            return;
+    public void closeCursor(String cursorId) throws IOException {
+        synchronized (m_writeLock) {
+            synchronized (this) {
+                if (m_closed) {
+                    throw new IOException("Closed");
+                }
+                final ReadCursor cursor = m_namedCursors.remove(cursorId);
+                if (cursor == null) {
+                    return;
+                }
+                cursor.m_open = false;
+                for (PBDSegment segment : m_segments) {
+                    segment.removeReader(cursorId);
+                }
+                deleteConsumedSegments();
+                m_cursorsChanged = true;
+                saveCursors();
+            }
+        }
+    }
+
+    private Iterable<ReadCursor> cursors() {
+        final List<ReadCursor> cursors = new ArrayList<ReadCursor>(m_namedCursors.size() + 1);
+        cursors.add(m_defaultCursor);
+        cursors.addAll(m_namedCursors.values());
+        return cursors;
+    }
+
+    /*
+     * A segment is consumed once every active cursor acknowledged all of its objects.
+     * Nothing is consumed while no cursor is active.
+     */
+    private boolean isConsumed(PBDSegment segment) throws IOException {
+        final int numEntries = segment.getNumEntries();
+        if (numEntries == 0) {
+            return true;
         }
-        m_closed = true;
-        if (m_segments.peekLast().isEmpty()) {
-            m_segments.pollLast().closeAndDelete();
+        boolean held = false;
+        for (ReadCursor cursor : cursors()) {
+            if (!cursor.m_active) continue;
+            held = true;
+            if (segment.m_index < cursor.m_firstSegment) continue;
+            final PBDSegment.Reader reader = segment.getReader(cursor.m_cursorId);
+            if (reader == null || reader.m_ackedCount < numEntries) {
+                return false;
+            }
         }
+        return held;
+    }
+
+    /*
+     * Drop a segment, objects in it that a cursor hasn't read are gone for that cursor
+     */
+    private void deleteSegment(PBDSegment segment) throws IOException {
+        for (ReadCursor cursor : cursors()) {
+            if (segment.m_index < cursor.m_firstSegment) continue;
+            final PBDSegment.Reader reader = segment.getReader(cursor.m_cursorId);
+            cursor.m_numObjects.addAndGet(-(segment.getNumEntries() - (reader == null ? 0 : reader.m_objectReadIndex)));
+        }
+        m_segments.remove(segment);
+        segment.closeAndDelete();
+    }
+
+    private void deleteConsumedSegments() throws IOException {
         for (PBDSegment segment : m_segments) {
-            segment.close();
+            if (segment != m_segments.peekLast() && isConsumed(segment)) {
+                deleteSegment(segment);
+            }
+        }
+    }
+
+    /*
+     * Write the position of the named cursors to a new file and move it over the old one
+     */
+    private void saveCursors() throws IOException {
+        if (!m_cursorsChanged) {
+            return;
+        }
+        if (m_namedCursors.isEmpty()) {
+            if (m_cursorFile.exists() && !m_cursorFile.delete()) {
+                throw new IOException("Unable to delete " + m_cursorFile);
+            }
+            m_cursorsChanged = false;
+            return;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (ReadCursor cursor : m_namedCursors.values()) {
+            final long position[] = cursor.position();
+            sb.append(cursor.m_cursorId).append(' ').append(position[0]).append(' ').append(position[1]).append('\n');
+        }
+        final File tmpFile = new VoltFile(m_path, m_nonce + ".cursors.tmp");
+        final FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            fos.write(sb.toString().getBytes(Charsets.UTF_8));
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tmpFile.renameTo(m_cursorFile)) {
+            throw new IOException("Unable to rename " + tmpFile + " to " + m_cursorFile);
+        }
+        m_cursorsChanged = false;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        final long offerCount;
+        synchronized (m_writeLock) {
+            if (m_closed) {
+                throw new IOException("Closed");
+            }
+            offerCount = m_offerCount;
+        }
+
+        synchronized (m_syncLock) {
+            //An fsync that started after everything this caller offered already covered it
+            if (m_syncedOfferCount >= offerCount) {
+                m_groupedSyncs.incrementAndGet();
+                return;
+            }
+            if (GROUP_COMMIT_NANOS > 0) {
+                final long wait = m_lastSyncStart + GROUP_COMMIT_NANOS - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            final long syncedOfferCount;
+            final PBDSegment segments[];
+            synchronized (m_writeLock) {
+                if (m_closed) {
+                    throw new IOException("Closed");
+                }
+                syncedOfferCount = m_offerCount;
+                segments = m_segments.toArray(new PBDSegment[0]);
+            }
+            m_lastSyncStart = System.nanoTime();
+            boolean forced = false;
+            for (PBDSegment segment : segments) {
+                forced |= segment.sync();
+            }
+            if (forced) {
+                final long elapsed = System.nanoTime() - m_lastSyncStart;
+                m_syncs.incrementAndGet();
+                m_syncNanos.addAndGet(elapsed);
+                m_maxSyncNanos = Math.max(m_maxSyncNanos, elapsed);
+            }
+            m_syncedOfferCount = syncedOfferCount;
+        }
+
+        if (!m_namedCursors.isEmpty()) {
+            synchronized (this) {
+                if (!m_closed) {
+                    saveCursors();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (m_writeLock) {
+            synchronized (this) {
+                if (m_closed) {
+                    return;
+                }
+                saveCursors();
+                m_closed = true;
+                s_openDeques.remove(this);
+                //Keep a consumed tail around for named cursors so the segment indexes stay
+                //contiguous with their saved positions
+                final PBDSegment tail = m_segments.peekLast();
+                if (tail.getNumEntries() == 0 || (m_namedCursors.isEmpty() && isConsumed(tail))) {
+                    m_segments.pollLast().closeAndDelete();
+                }
+                for (PBDSegment segment : m_segments) {
+                    segment.close();
+                }
+            }
         }
-        m_closed = true;
     }
 
     @Override
     public synchronized boolean isEmpty() throws IOException {
-        assertions();
+        return isEmptyLocked(m_defaultCursor);
+    }
+
+    private boolean isEmptyLocked(ReadCursor cursor) throws IOException {
         if (m_closed) {
             throw new IOException("Closed");
         }
 
-        PBDSegment segment = m_segments.peek();
-        if (segment == null) {
-            return true;
-        }
-        if (segment.hasMoreEntries()) return false;
-        for (PBDSegment s : m_segments) {
-            if (segment.hasMoreEntries()) return false;
+        for (PBDSegment segment : m_segments) {
+            if (segment.m_index < cursor.m_firstSegment) continue;
+            final PBDSegment.Reader reader = segment.getReader(cursor.m_cursorId);
+            if (reader == null ? segment.getNumEntries() > 0 : reader.hasMoreEntries()) {
+                return false;
+            }
         }
         return true;
     }
@@ -432,26 +828,45 @@ public class PersistentBinaryDeque implements BinaryDeque {
      * although incredibly unlikely
      */
     @Override
-    public long sizeInBytes() {
-        assertions();
+    public synchronized long sizeInBytes() {
+        return sizeInBytesLocked(m_defaultCursor);
+    }
+
+    private long sizeInBytesLocked(ReadCursor cursor) {
         long size = 0;
         for (PBDSegment segment : m_segments) {
-            size += segment.sizeInBytes();
+            if (segment.m_index < cursor.m_firstSegment) continue;
+            final PBDSegment.Reader reader = segment.getReader(cursor.m_cursorId);
+            size += reader == null ? segment.sizeInBytes() : reader.sizeInBytes();
         }
         return size;
     }
 
     @Override
-    public synchronized void closeAndDelete() throws IOException {
-        if (m_closed) return;
-        m_closed = true;
-        for (PBDSegment qs : m_segments) {
-            qs.closeAndDelete();
+    public void closeAndDelete() throws IOException {
+        synchronized (m_writeLock) {
+            synchronized (this) {
+                if (m_closed) return;
+                m_closed = true;
+                s_openDeques.remove(this);
+                for (PBDSegment qs : m_segments) {
+                    qs.closeAndDelete();
+                }
+                m_cursorFile.delete();
+            }
         }
     }
 
     @Override
-    public synchronized void parseAndTruncate(BinaryDequeTruncator truncator) throws IOException {
+    public void parseAndTruncate(BinaryDequeTruncator truncator) throws IOException {
+        synchronized (m_writeLock) {
+            synchronized (this) {
+                parseAndTruncateLocked(truncator);
+            }
+        }
+    }
+
+    private void parseAndTruncateLocked(BinaryDequeTruncator truncator) throws IOException {
         assertions();
         if (m_segments.isEmpty()) {
             m_usageSpecificLog.debug("PBD " + m_nonce + " has no finished segments");
@@ -525,7 +940,6 @@ public class PersistentBinaryDeque implements BinaryDeque {
                                          */
                                         lastSegmentIndex = segmentIndex - 1;
                                     } else {
-                                        addToNumObjects(-(numObjects - (objectsProcessed - 1)));
                                         //Don't forget to update the number of entries in the file
                                         ByteBuffer numObjectsBuffer = ByteBuffer.allocate(4);
                                         numObjectsBuffer.putInt(0, ii);
@@ -537,7 +951,6 @@ public class PersistentBinaryDeque implements BinaryDeque {
                                     }
 
                                 } else {
-                                    addToNumObjects(-(numObjects - objectsProcessed));
                                     //Partial object truncation
                                     ByteBuffer copy = ByteBuffer.allocate(retval.remaining());
                                     copy.put(retval);
@@ -567,6 +980,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
                     //If this is set the just processed segment was the last one
                     if (lastSegmentIndex != null) {
+                        segment.reloadNumEntries();
                         break;
                     }
                 } finally {
@@ -594,7 +1008,6 @@ public class PersistentBinaryDeque implements BinaryDeque {
             if (segment.m_index <= lastSegmentIndex) {
                 break;
             }
-            addToNumObjects(-segment.getNumEntries());
             iterator.remove();
             segment.closeAndDelete();
         }
@@ -612,26 +1025,61 @@ public class PersistentBinaryDeque implements BinaryDeque {
                     new VoltFile(m_path, m_nonce + "." + newSegmentIndex + ".pbd"));
         newSegment.open(true);
         m_segments.offer(newSegment);
+
+        for (ReadCursor cursor : cursors()) {
+            cursor.m_firstSegment = Math.min(cursor.m_firstSegment, newSegmentIndex);
+            cursor.m_numObjects.set(cursor.countUnread());
+        }
         assertions();
     }
 
     private void addToNumObjects(int num) {
-        assert(m_numObjects >= 0);
-        m_numObjects += num;
+        for (ReadCursor cursor : cursors()) {
+            cursor.m_numObjects.addAndGet(num);
+        }
     }
-    private void incrementNumObjects() {
-        assert(m_numObjects >= 0);
-         m_numObjects++;
+
+    @Override
+    public int getNumObjects() {
+        return m_defaultCursor.m_numObjects.get();
     }
 
-    private void decrementNumObjects() {
-        m_numObjects--;
-        assert(m_numObjects >= 0);
+    String getNonce() {
+        return m_nonce;
     }
 
-    @Override
-    public int getNumObjects() {
-        return m_numObjects;
+    /**
+     * @return Counters indexed by the STAT_ constants. With interval set the byte and sync
+     * counts only cover the period since the previous interval request.
+     */
+    long[] getStats(boolean interval) {
+        final long stats[] = new long[STAT_COUNT];
+        stats[STAT_SEGMENTS] = m_segments.size();
+        stats[STAT_OBJECTS] = m_defaultCursor.m_numObjects.get();
+        stats[STAT_BYTES_WRITTEN] = m_bytesWritten.get();
+        stats[STAT_BYTES_READ] = m_bytesRead.get();
+        stats[STAT_SYNCS] = m_syncs.get();
+        stats[STAT_GROUPED_SYNCS] = m_groupedSyncs.get();
+        stats[STAT_SYNC_NANOS] = m_syncNanos.get();
+        stats[STAT_MAX_SYNC_NANOS] = m_maxSyncNanos;
+        if (interval) {
+            synchronized (m_lastStats) {
+                for (int ii = STAT_BYTES_WRITTEN; ii <= STAT_SYNC_NANOS; ii++) {
+                    final long total = stats[ii];
+                    stats[ii] -= m_lastStats[ii];
+                    m_lastStats[ii] = total;
+                }
+                m_maxSyncNanos = 0;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return The deques that are currently open in this process
+     */
+    static List<PersistentBinaryDeque> getOpenDeques() {
+        return new ArrayList<PersistentBinaryDeque>(s_openDeques);
     }
 
     @Override
@@ -646,16 +1094,17 @@ public class PersistentBinaryDeque implements BinaryDeque {
         assertionsOn = assertOn;
     }
 
+    /*
+     * Only meaningful while holding both the write lock and the monitor
+     */
     private void assertions() {
         if (!assertionsOn) return;
-        int numObjects = 0;
-        for (PBDSegment segment : m_segments) {
+        for (ReadCursor cursor : cursors()) {
             try {
-                numObjects += segment.getNumEntries() - segment.m_objectReadIndex;
-            } catch (Exception e) {
+                assert(cursor.countUnread() == cursor.m_numObjects.get());
+            } catch (IOException e) {
                 Throwables.propagate(e);
             }
         }
-        assert(numObjects == m_numObjects);
     }
 }
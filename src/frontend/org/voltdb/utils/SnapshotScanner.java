@@ -0,0 +1,819 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.sysprocs.saverestore.TableSaveFile;
+import org.voltdb.types.TimestampType;
+import org.voltdb.types.VoltDecimalHelper;
+
+import au.com.bytecode.opencsv_voltpatches.CSVWriter;
+
+import com.google_voltpatches.common.base.Charsets;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Extract a subset of the columns and rows of a table from native snapshot (.vpt) files
+ * without materializing the table.
+ *
+ * Chunks are read and decompressed by {@link TableSaveFile}, each chunk is then decoded by a
+ * separate task. Decoding walks the serialized tuples in place, columns that aren't projected or
+ * referenced by a predicate are skipped and a tuple stops being decoded after the last column
+ * that is needed. Predicates are evaluated against the serialized values so rows that are filtered
+ * out are never converted. Output of the chunks is written in the order the chunks were read.
+ *
+ * The columnar format is big endian and starts with a header
+ * <pre>
+ *   int magic (0x56434F4C), int version (1), short column count,
+ *   per column: byte VoltType, int name length, UTF-8 name
+ * </pre>
+ * followed by one block per chunk that matched at least one row
+ * <pre>
+ *   int length of the rest of the block, int row count,
+ *   per column: int length of the column, the values of the column
+ * </pre>
+ * Values are stored as they are serialized in a VoltTable, fixed size types use the VoltType
+ * null value and strings and varbinary are prefixed by their length, -1 for null.
+ */
+public class SnapshotScanner {
+
+    public static final int COLUMNAR_MAGIC = 0x56434F4C;
+    public static final int COLUMNAR_VERSION = 1;
+
+    public static enum Format {
+        CSV, TSV, COLUMNAR
+    }
+
+    public static enum Operator {
+        EQ("="), NE("!="), LE("<="), GE(">="), LT("<"), GT(">"), IS_NULL(" IS NULL"), IS_NOT_NULL(" IS NOT NULL");
+
+        private final String m_symbol;
+
+        Operator(String symbol) {
+            m_symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return m_symbol;
+        }
+    }
+
+    /**
+     * Comparison of a column with a literal. Comparisons with null are false like they are in SQL.
+     */
+    public static class Predicate {
+        private final String m_column;
+        private final Operator m_operator;
+        private final String m_literal;
+
+        public Predicate(String column, Operator operator, String literal) {
+            m_column = column.toUpperCase();
+            m_operator = operator;
+            m_literal = literal;
+            if (literal == null && operator != Operator.IS_NULL && operator != Operator.IS_NOT_NULL) {
+                throw new IllegalArgumentException("Operator " + operator.getSymbol() + " requires a value");
+            }
+        }
+
+        /**
+         * Parse a predicate such as <code>COL&gt;=5</code>, <code>NAME='abc'</code> or
+         * <code>COL IS NOT NULL</code>. Quotes around a literal are optional.
+         */
+        public static Predicate parse(String expression) {
+            final String upper = expression.trim().toUpperCase();
+            if (upper.endsWith(Operator.IS_NOT_NULL.getSymbol())) {
+                return new Predicate(upper.substring(0, upper.length() - Operator.IS_NOT_NULL.getSymbol().length()).trim(),
+                        Operator.IS_NOT_NULL, null);
+            }
+            if (upper.endsWith(Operator.IS_NULL.getSymbol())) {
+                return new Predicate(upper.substring(0, upper.length() - Operator.IS_NULL.getSymbol().length()).trim(),
+                        Operator.IS_NULL, null);
+            }
+            //The first operator wins, <= at the same index as < is the longer match
+            Operator operator = null;
+            int operatorIndex = -1;
+            for (Operator op : Operator.values()) {
+                if (op == Operator.IS_NULL || op == Operator.IS_NOT_NULL) continue;
+                final int index = expression.indexOf(op.getSymbol());
+                if (index > 0 && (operator == null || index < operatorIndex ||
+                        (index == operatorIndex && op.getSymbol().length() > operator.getSymbol().length()))) {
+                    operator = op;
+                    operatorIndex = index;
+                }
+            }
+            if (operator != null) {
+                String literal = expression.substring(operatorIndex + operator.getSymbol().length()).trim();
+                if (literal.length() >= 2 && literal.startsWith("'") && literal.endsWith("'")) {
+                    literal = literal.substring(1, literal.length() - 1);
+                }
+                return new Predicate(expression.substring(0, operatorIndex).trim(), operator, literal);
+            }
+            throw new IllegalArgumentException("Unable to parse predicate " + expression);
+        }
+
+        @Override
+        public String toString() {
+            return m_column + m_operator.getSymbol() + (m_literal == null ? "" : m_literal);
+        }
+    }
+
+    /*
+     * Predicate resolved against the schema of a table with the literal converted to the column type
+     */
+    private static final class BoundPredicate {
+        private final int m_index;
+        private final VoltType m_type;
+        private final Operator m_operator;
+        private final long m_long;
+        private final double m_double;
+        private final Object m_object;
+
+        private BoundPredicate(Predicate p, int index, VoltType type) {
+            m_index = index;
+            m_type = type;
+            m_operator = p.m_operator;
+            long longValue = 0;
+            double doubleValue = 0;
+            Object objectValue = null;
+            if (p.m_literal != null) {
+                try {
+                    switch (type) {
+                    case TINYINT:
+                    case SMALLINT:
+                    case INTEGER:
+                    case BIGINT:
+                        longValue = Long.parseLong(p.m_literal);
+                        break;
+                    case TIMESTAMP:
+                        try {
+                            longValue = Long.parseLong(p.m_literal);
+                        } catch (NumberFormatException e) {
+                            longValue = new TimestampType(p.m_literal).getTime();
+                        }
+                        break;
+                    case FLOAT:
+                        doubleValue = Double.parseDouble(p.m_literal);
+                        break;
+                    case DECIMAL:
+                        objectValue = VoltDecimalHelper.deserializeBigDecimalFromString(p.m_literal);
+                        break;
+                    case STRING:
+                        objectValue = p.m_literal;
+                        break;
+                    case VARBINARY:
+                        objectValue = Encoder.hexDecode(p.m_literal);
+                        break;
+                    default:
+                        throw new IOException("unsupported column type " + type);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("Invalid predicate " + p + ": " + e.getMessage());
+                }
+            }
+            m_long = longValue;
+            m_double = doubleValue;
+            m_object = objectValue;
+        }
+
+        private boolean evaluate(ByteBuffer buf, int offset) {
+            final boolean isNull = isNull(buf, offset, m_type);
+            if (m_operator == Operator.IS_NULL) {
+                return isNull;
+            } else if (m_operator == Operator.IS_NOT_NULL) {
+                return !isNull;
+            } else if (isNull) {
+                return false;
+            }
+            final int cmp;
+            switch (m_type) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case TIMESTAMP:
+                final long longValue = readLong(buf, offset, m_type);
+                cmp = longValue < m_long ? -1 : (longValue == m_long ? 0 : 1);
+                break;
+            case FLOAT:
+                cmp = Double.compare(buf.getDouble(offset), m_double);
+                break;
+            case DECIMAL:
+                cmp = readDecimal(buf, offset).compareTo((BigDecimal)m_object);
+                break;
+            case STRING:
+                cmp = readString(buf, offset).compareTo((String)m_object);
+                break;
+            case VARBINARY:
+                cmp = compareBytes(buf, offset + 4, buf.getInt(offset), (byte[])m_object);
+                break;
+            default:
+                throw new AssertionError();
+            }
+            switch (m_operator) {
+            case EQ: return cmp == 0;
+            case NE: return cmp != 0;
+            case LT: return cmp < 0;
+            case LE: return cmp <= 0;
+            case GT: return cmp > 0;
+            case GE: return cmp >= 0;
+            default: throw new AssertionError();
+            }
+        }
+    }
+
+    private final List<String> m_columnNames;
+    private final List<Predicate> m_predicates;
+    private final Format m_format;
+    private final int m_threads;
+
+    private final AtomicLong m_rowsScanned = new AtomicLong();
+    private final AtomicLong m_rowsMatched = new AtomicLong();
+
+    /*
+     * Resolved against the schema of the first file scanned, all files
+     * must be of the same table
+     */
+    private VoltType m_types[];
+    private String m_names[];
+    private int m_projection[];
+    private BoundPredicate m_boundPredicates[];
+    //Columns that have to be located in a tuple, the rest are skipped
+    private boolean m_needed[];
+    private int m_lastNeeded;
+
+    /**
+     * @param columns Names of the columns to output in order, null or empty for all columns
+     * @param predicates Predicates a row must satisfy to be output, null or empty for all rows
+     * @param format Output format
+     * @param threads Number of threads decoding chunks
+     */
+    public SnapshotScanner(List<String> columns, List<Predicate> predicates, Format format, int threads) {
+        m_columnNames = new ArrayList<String>();
+        if (columns != null) {
+            for (String column : columns) {
+                m_columnNames.add(column.trim().toUpperCase());
+            }
+        }
+        m_predicates = predicates == null ? new ArrayList<Predicate>() : new ArrayList<Predicate>(predicates);
+        m_format = format;
+        m_threads = Math.max(1, threads);
+    }
+
+    public long getRowsScanned() {
+        return m_rowsScanned.get();
+    }
+
+    public long getRowsMatched() {
+        return m_rowsMatched.get();
+    }
+
+    /**
+     * Resolve the projection and predicates against the header of a table,
+     * which is the serialized header of a VoltTable
+     */
+    void bind(ByteBuffer tableHeader) {
+        final ByteBuffer header = tableHeader.duplicate();
+        header.position(0);
+        final int columnCount = header.getShort(5);
+        final VoltType types[] = new VoltType[columnCount];
+        final String names[] = new String[columnCount];
+        header.position(7);
+        for (int ii = 0; ii < columnCount; ii++) {
+            types[ii] = VoltType.get(header.get());
+        }
+        for (int ii = 0; ii < columnCount; ii++) {
+            final byte nameBytes[] = new byte[header.getInt()];
+            header.get(nameBytes);
+            names[ii] = new String(nameBytes, Charsets.UTF_8);
+        }
+
+        if (m_types != null) {
+            if (!Arrays.equals(types, m_types) || !Arrays.equals(names, m_names)) {
+                throw new IllegalArgumentException("Files to scan don't have the same schema");
+            }
+            return;
+        }
+
+        final List<String> nameList = Arrays.asList(names);
+        final int projection[];
+        if (m_columnNames.isEmpty()) {
+            projection = new int[columnCount];
+            for (int ii = 0; ii < columnCount; ii++) {
+                projection[ii] = ii;
+            }
+        } else {
+            projection = new int[m_columnNames.size()];
+            for (int ii = 0; ii < projection.length; ii++) {
+                projection[ii] = nameList.indexOf(m_columnNames.get(ii));
+                if (projection[ii] < 0) {
+                    throw new IllegalArgumentException("Table has no column " + m_columnNames.get(ii));
+                }
+            }
+        }
+
+        final BoundPredicate bound[] = new BoundPredicate[m_predicates.size()];
+        for (int ii = 0; ii < bound.length; ii++) {
+            final Predicate p = m_predicates.get(ii);
+            final int index = nameList.indexOf(p.m_column);
+            if (index < 0) {
+                throw new IllegalArgumentException("Table has no column " + p.m_column + " in predicate " + p);
+            }
+            bound[ii] = new BoundPredicate(p, index, types[index]);
+        }
+
+        final boolean needed[] = new boolean[columnCount];
+        int lastNeeded = -1;
+        for (int index : projection) {
+            needed[index] = true;
+            lastNeeded = Math.max(lastNeeded, index);
+        }
+        for (BoundPredicate p : bound) {
+            needed[p.m_index] = true;
+            lastNeeded = Math.max(lastNeeded, p.m_index);
+        }
+
+        m_types = types;
+        m_names = names;
+        m_projection = projection;
+        m_boundPredicates = bound;
+        m_needed = needed;
+        m_lastNeeded = lastNeeded;
+    }
+
+    /**
+     * Header written once at the start of the output, empty for CSV and TSV
+     */
+    byte[] outputHeader() throws IOException {
+        if (m_format != Format.COLUMNAR) {
+            return new byte[0];
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(COLUMNAR_MAGIC);
+        dos.writeInt(COLUMNAR_VERSION);
+        dos.writeShort(m_projection.length);
+        for (int index : m_projection) {
+            dos.writeByte(m_types[index].getValue());
+            final byte nameBytes[] = m_names[index].getBytes(Charsets.UTF_8);
+            dos.writeInt(nameBytes.length);
+            dos.write(nameBytes);
+        }
+        dos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decode a chunk, a serialized VoltTable, and return the output for the rows that match
+     */
+    byte[] scanChunk(ByteBuffer chunk) throws IOException {
+        final ByteBuffer buf = chunk.duplicate();
+        final int rowStart = buf.getInt(0) + 4;
+        final int rowCount = buf.getInt(rowStart);
+        final int projected = m_projection.length;
+        final int columnOffsets[] = new int[m_types.length];
+
+        //Offsets of the projected columns of matching rows, row major
+        int matchedOffsets[] = new int[Math.max(16, Math.min(rowCount, 1024) * projected)];
+        int matched = 0;
+
+        int position = rowStart + 4;
+        for (int row = 0; row < rowCount; row++) {
+            final int rowLength = buf.getInt(position);
+            final int nextRow = position + 4 + rowLength;
+            int offset = position + 4;
+            for (int column = 0; column <= m_lastNeeded; column++) {
+                if (m_needed[column]) {
+                    columnOffsets[column] = offset;
+                }
+                offset += valueLength(buf, offset, m_types[column]);
+            }
+            position = nextRow;
+
+            boolean match = true;
+            for (BoundPredicate p : m_boundPredicates) {
+                if (!p.evaluate(buf, columnOffsets[p.m_index])) {
+                    match = false;
+                    break;
+                }
+            }
+            if (!match) {
+                continue;
+            }
+            if ((matched + 1) * projected > matchedOffsets.length) {
+                matchedOffsets = Arrays.copyOf(matchedOffsets, matchedOffsets.length * 2);
+            }
+            for (int ii = 0; ii < projected; ii++) {
+                matchedOffsets[matched * projected + ii] = columnOffsets[m_projection[ii]];
+            }
+            matched++;
+        }
+
+        m_rowsScanned.addAndGet(rowCount);
+        m_rowsMatched.addAndGet(matched);
+        if (matched == 0) {
+            return new byte[0];
+        }
+        if (m_format == Format.COLUMNAR) {
+            return toColumnar(buf, matchedOffsets, matched);
+        } else {
+            return toCSV(buf, matchedOffsets, matched);
+        }
+    }
+
+    private byte[] toColumnar(ByteBuffer buf, int matchedOffsets[], int matched) {
+        final int projected = m_projection.length;
+        final int columnLengths[] = new int[projected];
+        int blockLength = 4 + 4 * projected;
+        for (int row = 0; row < matched; row++) {
+            for (int ii = 0; ii < projected; ii++) {
+                final int length = valueLength(buf, matchedOffsets[row * projected + ii], m_types[m_projection[ii]]);
+                columnLengths[ii] += length;
+                blockLength += length;
+            }
+        }
+
+        final ByteBuffer out = ByteBuffer.allocate(4 + blockLength);
+        out.putInt(blockLength);
+        out.putInt(matched);
+        final ByteBuffer src = buf.duplicate();
+        for (int ii = 0; ii < projected; ii++) {
+            final VoltType type = m_types[m_projection[ii]];
+            out.putInt(columnLengths[ii]);
+            for (int row = 0; row < matched; row++) {
+                final int offset = matchedOffsets[row * projected + ii];
+                src.limit(offset + valueLength(buf, offset, type));
+                src.position(offset);
+                out.put(src);
+                src.limit(src.capacity());
+            }
+        }
+        return out.array();
+    }
+
+    private byte[] toCSV(ByteBuffer buf, int matchedOffsets[], int matched) throws IOException {
+        final int projected = m_projection.length;
+        final StringWriter sw = new StringWriter(matched * projected * 8);
+        final CSVWriter writer;
+        if (m_format == Format.CSV) {
+            writer = new CSVWriter(sw, ',');
+        } else {
+            writer = CSVWriter.getStrictTSVWriter(sw);
+        }
+        final SimpleDateFormat sdf = VoltTableUtil.getCSVDateFormat();
+        final String fields[] = new String[projected];
+        for (int row = 0; row < matched; row++) {
+            for (int ii = 0; ii < projected; ii++) {
+                fields[ii] = toField(buf, matchedOffsets[row * projected + ii], m_types[m_projection[ii]], sdf);
+            }
+            writer.writeNext(fields);
+        }
+        writer.flush();
+        return sw.toString().getBytes(Charsets.UTF_8);
+    }
+
+    private static String toField(ByteBuffer buf, int offset, VoltType type, SimpleDateFormat sdf) {
+        if (isNull(buf, offset, type)) {
+            return Constants.CSV_NULL;
+        }
+        switch (type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+            return Long.toString(readLong(buf, offset, type));
+        case FLOAT:
+            return Double.toString(buf.getDouble(offset));
+        case DECIMAL:
+            return readDecimal(buf, offset).toString();
+        case STRING:
+            return readString(buf, offset);
+        case TIMESTAMP:
+            return VoltTableUtil.formatTimestamp(sdf, new TimestampType(buf.getLong(offset)));
+        case VARBINARY:
+            final byte bytes[] = new byte[buf.getInt(offset)];
+            final ByteBuffer dup = buf.duplicate();
+            dup.position(offset + 4);
+            dup.get(bytes);
+            return Encoder.hexEncode(bytes);
+        default:
+            throw new IllegalArgumentException("Unsupported column type " + type);
+        }
+    }
+
+    /*
+     * Serialized length of the value at the offset, including the length prefix of variable length types
+     */
+    private static int valueLength(ByteBuffer buf, int offset, VoltType type) {
+        if (type == VoltType.STRING || type == VoltType.VARBINARY) {
+            final int length = buf.getInt(offset);
+            return length == VoltType.NULL_STRING_LENGTH ? 4 : 4 + length;
+        }
+        return type.getLengthInBytesForFixedTypes();
+    }
+
+    private static boolean isNull(ByteBuffer buf, int offset, VoltType type) {
+        switch (type) {
+        case TINYINT:
+            return buf.get(offset) == VoltType.NULL_TINYINT;
+        case SMALLINT:
+            return buf.getShort(offset) == VoltType.NULL_SMALLINT;
+        case INTEGER:
+            return buf.getInt(offset) == VoltType.NULL_INTEGER;
+        case BIGINT:
+        case TIMESTAMP:
+            return buf.getLong(offset) == VoltType.NULL_BIGINT;
+        case FLOAT:
+            return buf.getDouble(offset) <= VoltType.NULL_FLOAT;
+        case DECIMAL:
+            //The smallest 16 byte two's complement value
+            return buf.getLong(offset) == Long.MIN_VALUE && buf.getLong(offset + 8) == 0;
+        case STRING:
+        case VARBINARY:
+            return buf.getInt(offset) == VoltType.NULL_STRING_LENGTH;
+        default:
+            throw new IllegalArgumentException("Unsupported column type " + type);
+        }
+    }
+
+    private static long readLong(ByteBuffer buf, int offset, VoltType type) {
+        switch (type) {
+        case TINYINT:
+            return buf.get(offset);
+        case SMALLINT:
+            return buf.getShort(offset);
+        case INTEGER:
+            return buf.getInt(offset);
+        default:
+            return buf.getLong(offset);
+        }
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer buf, int offset) {
+        final ByteBuffer dup = buf.duplicate();
+        dup.position(offset);
+        return VoltDecimalHelper.deserializeBigDecimal(dup);
+    }
+
+    private static String readString(ByteBuffer buf, int offset) {
+        final int length = buf.getInt(offset);
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + offset + 4, length, Charsets.UTF_8);
+        }
+        final byte bytes[] = new byte[length];
+        final ByteBuffer dup = buf.duplicate();
+        dup.position(offset + 4);
+        dup.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static int compareBytes(ByteBuffer buf, int offset, int length, byte other[]) {
+        final int common = Math.min(length, other.length);
+        for (int ii = 0; ii < common; ii++) {
+            final int cmp = (buf.get(offset + ii) & 0xFF) - (other[ii] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - other.length;
+    }
+
+    /**
+     * Scan the files of a table and write the output for the matching rows. Partitions that were
+     * already scanned in a previous file are skipped so every partition of a partitioned table is
+     * only output once, and only the first file of a replicated table is scanned.
+     *
+     * @param infiles Files of the same table
+     * @param partitions Partitions to scan, null for all partitions
+     * @param out Stream the output is written to, not closed
+     */
+    public void scan(List<File> infiles, Integer partitions[], OutputStream out) throws IOException {
+        final Set<Integer> requested = partitions == null ? null : new HashSet<Integer>(Arrays.asList(partitions));
+        final Set<Integer> scanned = new HashSet<Integer>();
+        final ListeningExecutorService es = CoreUtils.getListeningExecutorService("Snapshot scanner", m_threads);
+        try {
+            boolean wroteHeader = false;
+            for (File infile : infiles) {
+                final Integer toScan[];
+                final TableSaveFile header = openSaveFile(infile, null);
+                try {
+                    bind(header.getTableHeader());
+                    if (header.isReplicated()) {
+                        if (!scanned.isEmpty()) continue;
+                        scanned.add(-1);
+                        toScan = null;
+                    } else {
+                        final TreeSet<Integer> ids = new TreeSet<Integer>();
+                        for (int partitionId : header.getPartitionIds()) {
+                            if ((requested == null || requested.contains(partitionId)) && scanned.add(partitionId)) {
+                                ids.add(partitionId);
+                            }
+                        }
+                        if (ids.isEmpty()) continue;
+                        toScan = ids.toArray(new Integer[ids.size()]);
+                    }
+                } finally {
+                    header.close();
+                }
+
+                if (!wroteHeader) {
+                    out.write(outputHeader());
+                    wroteHeader = true;
+                }
+                scanFile(infile, toScan, out, es);
+            }
+        } finally {
+            es.shutdown();
+        }
+        out.flush();
+    }
+
+    private static TableSaveFile openSaveFile(File infile, Integer partitions[]) throws IOException {
+        final FileInputStream fis = new FileInputStream(infile);
+        try {
+            return new TableSaveFile(fis, 1, partitions, false, infile.getAbsoluteFile().getParentFile());
+        } catch (IOException e) {
+            fis.close();
+            throw e;
+        }
+    }
+
+    private void scanFile(File infile, Integer partitions[], OutputStream out, ListeningExecutorService es)
+            throws IOException {
+        final TableSaveFile saveFile = openSaveFile(infile, partitions);
+        //Chunks being decoded in the order they were read, bounds the memory held by output
+        final ArrayDeque<ListenableFuture<byte[]>> pending = new ArrayDeque<ListenableFuture<byte[]>>();
+        try {
+            while (saveFile.hasMoreChunks()) {
+                final BBContainer c = saveFile.getNextChunk();
+                if (c == null) {
+                    break;
+                }
+                pending.offer(es.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        try {
+                            return scanChunk(c.b());
+                        } finally {
+                            c.discard();
+                        }
+                    }
+                }));
+                if (pending.size() >= m_threads * 2) {
+                    out.write(getOutput(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                out.write(getOutput(pending.poll()));
+            }
+        } finally {
+            //Decoding tasks own their chunks, let them finish before the file frees its buffers
+            for (ListenableFuture<byte[]> f : pending) {
+                try {
+                    f.get();
+                } catch (Exception ignore) {}
+            }
+            saveFile.close();
+        }
+    }
+
+    private static byte[] getOutput(ListenableFuture<byte[]> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            throw new java.io.InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public static void main(String args[]) throws Exception {
+        List<String> columns = null;
+        final List<Predicate> predicates = new ArrayList<Predicate>();
+        Integer partitions[] = null;
+        Format format = Format.CSV;
+        int threads = CoreUtils.availableProcessors();
+        File outfile = null;
+        final List<File> infiles = new ArrayList<File>();
+
+        try {
+            for (int ii = 0; ii < args.length; ii++) {
+                final String arg = args[ii];
+                if (arg.equals("--help")) {
+                    printHelpAndQuit(0);
+                } else if (arg.equals("--columns")) {
+                    columns = Arrays.asList(args[++ii].split(","));
+                } else if (arg.equals("--where")) {
+                    predicates.add(Predicate.parse(args[++ii]));
+                } else if (arg.equals("--partitions")) {
+                    final String partitionStrings[] = args[++ii].split(",");
+                    partitions = new Integer[partitionStrings.length];
+                    for (int jj = 0; jj < partitionStrings.length; jj++) {
+                        partitions[jj] = Integer.valueOf(partitionStrings[jj].trim());
+                    }
+                } else if (arg.equals("--format")) {
+                    format = Format.valueOf(args[++ii].toUpperCase());
+                } else if (arg.equals("--threads")) {
+                    threads = Integer.parseInt(args[++ii]);
+                } else if (arg.equals("--timezone")) {
+                    VoltTableUtil.tz = TimeZone.getTimeZone(args[++ii]);
+                } else if (arg.equals("--outfile")) {
+                    outfile = new File(args[++ii]);
+                } else if (arg.startsWith("--")) {
+                    System.err.println("Error: Unknown option " + arg);
+                    printHelpAndQuit(-1);
+                } else {
+                    final File infile = new File(arg);
+                    if (!infile.canRead()) {
+                        System.err.println("Error: Can't read input file " + arg);
+                        System.exit(-1);
+                    }
+                    infiles.add(infile);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Error: Not enough args following " + args[args.length - 1]);
+            printHelpAndQuit(-1);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printHelpAndQuit(-1);
+        }
+
+        if (infiles.isEmpty()) {
+            System.err.println("Error: No input files specified");
+            printHelpAndQuit(-1);
+        }
+
+        final SnapshotScanner scanner = new SnapshotScanner(columns, predicates, format, threads);
+        final OutputStream out;
+        if (outfile == null) {
+            out = new BufferedOutputStream(System.out, 1024 * 256);
+        } else {
+            out = new BufferedOutputStream(new FileOutputStream(outfile), 1024 * 256);
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            scanner.scan(infiles, partitions, out);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(-1);
+        } finally {
+            out.close();
+        }
+        System.err.println("Scanned " + scanner.getRowsScanned() + " rows, " + scanner.getRowsMatched()
+                + " matched in " + (System.currentTimeMillis() - start) + " milliseconds");
+    }
+
+    private static void printHelpAndQuit(int code) {
+        System.out.println("java -cp <classpath> -Djava.library.path=<library path> org.voltdb.utils.SnapshotScanner --help");
+        System.out.println("java -cp <classpath> -Djava.library.path=<library path> org.voltdb.utils.SnapshotScanner " +
+                "[--columns col1,col2] [--where \"col1>=5\"] [--where \"col2 IS NOT NULL\"] [--partitions 1,3,4] " +
+                "[--format CSV|TSV|COLUMNAR] [--threads n] [--timezone GMT+0] [--outfile file] infile.vpt [infile.vpt ...]");
+        System.exit(code);
+    }
+}
@@ -105,8 +105,7 @@ public class VoltTableUtil {
                     if (vt.wasNull()) {
                         fields[ii] = Constants.CSV_NULL;
                     } else {
-                        fields[ii] = sdf.format(timestamp.asApproximateJavaDate());
-                        fields[ii] += String.format("%03d", timestamp.getUSec());
+                        fields[ii] = formatTimestamp(sdf, timestamp);
                     }
                 } else if (type == VoltType.VARBINARY) {
                    byte bytes[] = vt.getVarbinary(ii);
@@ -122,6 +121,18 @@ public class VoltTableUtil {
         csv.flush();
     }
 
+    /*
+     * Format a timestamp the way it appears in CSV output, microseconds are appended
+     * to the millisecond precision of the date format
+     */
+    static String formatTimestamp(SimpleDateFormat sdf, TimestampType timestamp) {
+        return sdf.format(timestamp.asApproximateJavaDate()) + String.format("%03d", timestamp.getUSec());
+    }
+
+    static SimpleDateFormat getCSVDateFormat() {
+        return m_sdf.get();
+    }
+
     public static Pair<Integer,byte[]>  toCSV(
             VoltTable vt,
             char delimiter,
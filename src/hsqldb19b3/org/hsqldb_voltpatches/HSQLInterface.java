@@ -117,9 +117,10 @@ public class HSQLInterface {
      * Load up an HSQLDB in-memory instance.
      *
      * @return A newly initialized in-memory HSQLDB instance accessible
-     * through the returned instance of HSQLInterface
+     * through the returned instance of HSQLInterface. Synchronized so that
+     * instances loaded by concurrent planners get distinct database names.
      */
-    public static HSQLInterface loadHsqldb() {
+    public static synchronized HSQLInterface loadHsqldb() {
         Session sessionProxy = null;
         String name = "hsqldbinstance-" + String.valueOf(instanceId) + "-" + String.valueOf(System.currentTimeMillis());
         instanceId++;
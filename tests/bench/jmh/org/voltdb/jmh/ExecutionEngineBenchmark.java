@@ -0,0 +1,132 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.voltdb.LegacyHashinator;
+import org.voltdb.ParameterSet;
+import org.voltdb.TheHashinator.HashinatorConfig;
+import org.voltdb.TheHashinator.HashinatorType;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.PlanFragment;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.jni.ExecutionEngine;
+import org.voltdb.jni.ExecutionEngineJNI;
+import org.voltdb.planner.ActivePlanRepository;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.Encoder;
+
+/**
+ * Round trip of a single read only plan fragment through ExecutionEngineJNI, covering
+ * parameter serialization, the JNI call and result table deserialization.
+ * Needs the native library on java.library.path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExecutionEngineBenchmark {
+
+    @Param({"quick_query", "warehouse_select"})
+    public String statement;
+
+    @Param({"1000"})
+    public int rows;
+
+    private ExecutionEngine m_ee;
+    private final long m_fragmentIds[] = new long[1];
+    private final Object m_params[] = new Object[] { ParameterSet.emptyParameterSet() };
+    private final String m_sqlTexts[] = new String[1];
+    private long m_txnId = 1;
+
+    @Setup
+    public void setup() throws Exception {
+        VoltDB.instance().readBuildInfo("Benchmark");
+        Catalog catalog = new TPCCProjectBuilder().createTPCCSchemaCatalog();
+        m_ee = new ExecutionEngineJNI(2, 1, 0, 0, "", 100,
+                new HashinatorConfig(HashinatorType.LEGACY, LegacyHashinator.getConfigureBytes(1), 0, 0),
+                false);
+        m_ee.loadCatalog(0, catalog.serialize());
+
+        final int warehouseTableId = catalog.getClusters().get("cluster").getDatabases().
+                get("database").getTables().get("WAREHOUSE").getRelativeIndex();
+        VoltTable warehouses = new VoltTable(
+                new VoltTable.ColumnInfo("W_ID", VoltType.SMALLINT),
+                new VoltTable.ColumnInfo("W_NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("W_STREET_1", VoltType.STRING),
+                new VoltTable.ColumnInfo("W_STREET_2", VoltType.STRING),
+                new VoltTable.ColumnInfo("W_CITY", VoltType.STRING),
+                new VoltTable.ColumnInfo("W_STATE", VoltType.STRING),
+                new VoltTable.ColumnInfo("W_ZIP", VoltType.STRING),
+                new VoltTable.ColumnInfo("W_TAX", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("W_YTD", VoltType.FLOAT));
+        for (int ii = 0; ii < rows; ii++) {
+            warehouses.addRow(ii, "name" + ii, "st1", "st2", "city", "ST", "zip", 0, 0);
+        }
+        m_ee.loadTable(warehouseTableId, warehouses, 0, 0, 0, 0, false, false, 0);
+
+        Procedure proc = catalog.getClusters().get("cluster").getDatabases().get("database").
+                getProcedures().getIgnoreCase("FragmentUpdateTestProcedure");
+        Statement stmt = proc.getStatements().getIgnoreCase(statement);
+        // the last fragment is the one that runs at the partition
+        PlanFragment fragment = null;
+        for (PlanFragment f : stmt.getFragments()) {
+            fragment = f;
+        }
+        ActivePlanRepository.clear();
+        ActivePlanRepository.addFragmentForTest(
+                CatalogUtil.getUniqueIdForFragment(fragment),
+                Encoder.decodeBase64AndDecompressToBytes(fragment.getPlannodetree()),
+                stmt.getSqltext());
+        m_fragmentIds[0] = CatalogUtil.getUniqueIdForFragment(fragment);
+        m_sqlTexts[0] = stmt.getSqltext();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        m_ee.release();
+        ActivePlanRepository.clear();
+    }
+
+    @Benchmark
+    public VoltTable[] executePlanFragments() {
+        final long txnId = m_txnId++;
+        return m_ee.executePlanFragments(1, m_fragmentIds, null, m_params, m_sqlTexts,
+                txnId, txnId, txnId - 1, txnId, Long.MAX_VALUE);
+    }
+}
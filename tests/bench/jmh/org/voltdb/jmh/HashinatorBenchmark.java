@@ -0,0 +1,81 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.voltdb.ElasticHashinator;
+import org.voltdb.VoltType;
+
+/**
+ * Partition routing of a single partitioning parameter through the elastic hashinator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HashinatorBenchmark {
+
+    @Param({"8", "64"})
+    public int partitions;
+
+    private ElasticHashinator m_hashinator;
+    private long m_key = 0;
+    private final String m_stringKeys[] = new String[1024];
+    private final byte m_binaryKeys[][] = new byte[1024][];
+
+    @Setup
+    public void setup() {
+        m_hashinator = new ElasticHashinator(
+                ElasticHashinator.getConfigureBytes(partitions, ElasticHashinator.DEFAULT_TOTAL_TOKENS), false);
+        for (int ii = 0; ii < m_stringKeys.length; ii++) {
+            m_stringKeys[ii] = "customer-" + ii;
+            m_binaryKeys[ii] = m_stringKeys[ii].getBytes();
+        }
+    }
+
+    @Benchmark
+    public int longParameter() {
+        return m_hashinator.getHashedPartitionForParameter(VoltType.BIGINT.getValue(), m_key++);
+    }
+
+    @Benchmark
+    public int stringParameter() {
+        return m_hashinator.getHashedPartitionForParameter(
+                VoltType.STRING.getValue(), m_stringKeys[(int)(m_key++ & 1023)]);
+    }
+
+    @Benchmark
+    public int varbinaryParameter() {
+        return m_hashinator.getHashedPartitionForParameter(
+                VoltType.VARBINARY.getValue(), m_binaryKeys[(int)(m_key++ & 1023)]);
+    }
+}
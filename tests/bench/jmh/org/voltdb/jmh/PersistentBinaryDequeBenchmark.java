@@ -0,0 +1,93 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.PersistentBinaryDeque;
+import org.voltdb.utils.VoltFile;
+
+/**
+ * Offer and poll of export sized buffers through a persistent binary deque
+ * in a scratch directory, set with -Djmh.pbd.dir (defaults to java.io.tmpdir).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistentBinaryDequeBenchmark {
+
+    @Param({"1024", "65536", "2097152"})
+    public int bufferSize;
+
+    private File m_dir;
+    private PersistentBinaryDeque m_pbd;
+    private ByteBuffer m_payload;
+
+    @Setup
+    public void setup() throws IOException {
+        m_dir = new File(System.getProperty("jmh.pbd.dir", System.getProperty("java.io.tmpdir")),
+                "pbd-benchmark-" + System.nanoTime());
+        VoltFile.recursivelyDelete(m_dir);
+        m_dir.mkdirs();
+        m_pbd = new PersistentBinaryDeque("bench", m_dir, new VoltLogger("HOST"));
+        m_payload = ByteBuffer.allocateDirect(bufferSize);
+        for (int ii = 0; m_payload.remaining() >= 8; ii++) {
+            m_payload.putLong(ii);
+        }
+        m_payload.clear();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        m_pbd.closeAndDelete();
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    @Benchmark
+    public int offerPoll() throws IOException {
+        // the deque discards what it is offered, hand it a view of the payload
+        m_pbd.offer(DBBPool.wrapBB(m_payload.duplicate()));
+        BBContainer cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        try {
+            return cont.b().remaining();
+        } finally {
+            cont.discard();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.voltdb.ParameterSet;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
+import org.voltdb.types.TimestampType;
+
+/**
+ * FastSerializer/FastDeserializer primitives and ParameterSet flatten/read
+ * for a parameter list shaped like a typical key/value CRUD call, and for
+ * numeric, mixed, non-ASCII string and array parameter lists.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+
+    private static final String VALUE = "the quick brown fox jumps over the lazy dog";
+
+    private FastSerializer m_serializer;
+    private ByteBuffer m_serialized;
+    private ParameterSet m_params;
+    private ByteBuffer m_paramBuffer;
+    private ByteBuffer m_flattenedParams;
+
+    private static final Object NUMBERS[] = new Object[] { 1L, 2, (short) 3, (byte) 4, 5.0, 6L, 7L, 8 };
+    private static final Object MIXED[] = new Object[] { 42L, "customer-00042",
+            "a somewhat longer street address line", new TimestampType(1420070400000000L), 19.99, new byte[16] };
+    private static final Object NON_ASCII[] = new Object[] { 42L, "gr\u00fc\u00dfe aus k\u00f6ln", "\u6771\u4eac\u90fd" };
+    private static final Object ARRAYS[] = new Object[] { new long[] { 1, 2, 3, 4, 5, 6, 7, 8 },
+            new String[] { "alpha", "beta", "gamma", "delta" } };
+
+    private ByteBuffer m_flattenedNumbers;
+    private ByteBuffer m_flattenedMixed;
+    private ByteBuffer m_flattenedNonAscii;
+    private ByteBuffer m_flattenedArrays;
+
+    @Setup
+    public void setup() throws IOException {
+        m_serializer = new FastSerializer();
+        writeRecord(m_serializer);
+        m_serialized = m_serializer.getBuffer();
+
+        m_params = ParameterSet.fromArrayNoCopy(42L, VALUE, 3.14, new TimestampType(0), new byte[64]);
+        m_paramBuffer = ByteBuffer.allocate(1024);
+        m_flattenedParams = ByteBuffer.allocate(m_params.getSerializedSize());
+        m_params.flattenToBuffer(m_flattenedParams);
+        m_flattenedParams.flip();
+
+        m_flattenedNumbers = flatten(NUMBERS);
+        m_flattenedMixed = flatten(MIXED);
+        m_flattenedNonAscii = flatten(NON_ASCII);
+        m_flattenedArrays = flatten(ARRAYS);
+    }
+
+    private static ByteBuffer flatten(Object params[]) throws IOException {
+        final ParameterSet pset = ParameterSet.fromArrayNoCopy(params);
+        final ByteBuffer buf = ByteBuffer.allocate(pset.getSerializedSize());
+        pset.flattenToBuffer(buf);
+        buf.flip();
+        return buf;
+    }
+
+    /*
+     * What a client does for each call: build the parameter set and serialize it
+     */
+    private ByteBuffer createAndFlatten(Object params[]) throws IOException {
+        final ParameterSet pset = ParameterSet.fromArrayNoCopy(params);
+        m_paramBuffer.clear();
+        pset.flattenToBuffer(m_paramBuffer);
+        return m_paramBuffer;
+    }
+
+    private static void writeRecord(FastSerializer fs) throws IOException {
+        fs.writeInt(1);
+        fs.writeLong(2L);
+        fs.writeDouble(3.0);
+        fs.writeString(VALUE);
+    }
+
+    @Benchmark
+    public int fastSerializerWrite() throws IOException {
+        m_serializer.clear();
+        writeRecord(m_serializer);
+        return m_serializer.size();
+    }
+
+    @Benchmark
+    public void fastDeserializerRead(Blackhole bh) throws IOException {
+        FastDeserializer fds = new FastDeserializer(m_serialized.duplicate());
+        bh.consume(fds.readInt());
+        bh.consume(fds.readLong());
+        bh.consume(fds.readDouble());
+        bh.consume(fds.readString());
+    }
+
+    @Benchmark
+    public ParameterSet parameterSetCreate() {
+        return ParameterSet.fromArrayNoCopy(42L, VALUE, 3.14, new TimestampType(0), new byte[64]);
+    }
+
+    @Benchmark
+    public ByteBuffer parameterSetFlatten() throws IOException {
+        m_paramBuffer.clear();
+        m_params.flattenToBuffer(m_paramBuffer);
+        return m_paramBuffer;
+    }
+
+    @Benchmark
+    public ParameterSet parameterSetRead() throws IOException {
+        return ParameterSet.fromByteBuffer(m_flattenedParams.duplicate());
+    }
+
+    @Benchmark
+    public ByteBuffer numbersFlatten() throws IOException {
+        return createAndFlatten(NUMBERS);
+    }
+
+    @Benchmark
+    public ParameterSet numbersRead() throws IOException {
+        return ParameterSet.fromByteBuffer(m_flattenedNumbers.duplicate());
+    }
+
+    @Benchmark
+    public ByteBuffer mixedFlatten() throws IOException {
+        return createAndFlatten(MIXED);
+    }
+
+    @Benchmark
+    public ParameterSet mixedRead() throws IOException {
+        return ParameterSet.fromByteBuffer(m_flattenedMixed.duplicate());
+    }
+
+    @Benchmark
+    public ByteBuffer nonAsciiFlatten() throws IOException {
+        return createAndFlatten(NON_ASCII);
+    }
+
+    @Benchmark
+    public ParameterSet nonAsciiRead() throws IOException {
+        return ParameterSet.fromByteBuffer(m_flattenedNonAscii.duplicate());
+    }
+
+    @Benchmark
+    public ByteBuffer arraysFlatten() throws IOException {
+        return createAndFlatten(ARRAYS);
+    }
+
+    @Benchmark
+    public ParameterSet arraysRead() throws IOException {
+        return ParameterSet.fromByteBuffer(m_flattenedArrays.duplicate());
+    }
+}
@@ -0,0 +1,96 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+/**
+ * Building a VoltTable row by row, and iterating one that was received from the wire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VoltTableBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int rows;
+
+    private static final VoltTable.ColumnInfo COLUMNS[] = new VoltTable.ColumnInfo[] {
+        new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+        new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+        new VoltTable.ColumnInfo("BALANCE", VoltType.FLOAT),
+        new VoltTable.ColumnInfo("FLAGS", VoltType.INTEGER)
+    };
+
+    private ByteBuffer m_serialized;
+
+    @Setup
+    public void setup() {
+        VoltTable table = construct();
+        m_serialized = ByteBuffer.allocate(table.getSerializedSize());
+        table.flattenToBuffer(m_serialized);
+        m_serialized.flip();
+        // skip the length prefix, tables from the EE and the wire start at the header
+        m_serialized.getInt();
+        m_serialized = m_serialized.slice();
+    }
+
+    private VoltTable construct() {
+        VoltTable table = new VoltTable(COLUMNS);
+        for (int ii = 0; ii < rows; ii++) {
+            table.addRow(ii, "name" + (ii % 10), ii * 1.5, ii);
+        }
+        return table;
+    }
+
+    @Benchmark
+    public VoltTable constructAndAddRows() {
+        return construct();
+    }
+
+    @Benchmark
+    public void iterateRows(Blackhole bh) {
+        VoltTable table = PrivateVoltTableFactory.createVoltTableFromBuffer(m_serialized.duplicate(), true);
+        while (table.advanceRow()) {
+            bh.consume(table.getLong(0));
+            bh.consume(table.getString(1));
+            bh.consume(table.getDouble(2));
+            bh.consume(table.getLong(3));
+        }
+    }
+}
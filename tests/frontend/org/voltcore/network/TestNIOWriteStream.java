@@ -203,9 +203,38 @@ public class TestNIOWriteStream extends TestCase {
         @Override
         public long write(ByteBuffer[] srcs, int offset, int length)
                 throws IOException {
-            // TODO Auto-generated method stub
-            return 0;
+            if (!m_open) throw new IOException();
+            if (closeAfter > 0 && ++writeCount >= closeAfter) {
+                m_open = false;
+            }
+            gatheringWrites++;
+
+            long remaining = 0;
+            for (int ii = offset; ii < offset + length; ii++) {
+                remaining += srcs[ii].remaining();
+            }
+            long toWrite = remaining;
+            if (m_behavior == FULL) {
+                return 0;
+            }
+            else if (m_behavior == PARTIAL) {
+                if (wrotePartial) {
+                    return 0;
+                } else {
+                    wrotePartial = true;
+                }
+                toWrite = remaining / 2;
+            }
+            long written = 0;
+            for (int ii = offset; ii < offset + length && written < toWrite; ii++) {
+                int chunk = (int)Math.min(srcs[ii].remaining(), toWrite - written);
+                srcs[ii].position(srcs[ii].position() + chunk);
+                written += chunk;
+            }
+            return written;
         }
+
+        public int gatheringWrites = 0;
     }
 
 
@@ -428,6 +457,94 @@ public class TestNIOWriteStream extends TestCase {
         }
     }
 
+    public void testGatheringSink() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.SINK, 0);
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port, null, null, null, true);
+
+        //Each message spans pool buffers, all of them should go out in one write
+        for (int ii = 0; ii < 10; ii++) {
+            wstream.enqueue(ByteBuffer.allocate(3));
+        }
+        wstream.swapAndSerializeQueuedWrites(pool);
+        assertEquals(30, wstream.drainTo(channel));
+        assertEquals(1, channel.gatheringWrites);
+        assertTrue(wstream.isEmpty());
+        long writeInfo[] = wstream.getBytesAndMessagesWritten(false);
+        assertEquals(30, writeInfo[0]);
+        assertEquals(1, writeInfo[2]);
+        wstream.shutdown();
+    }
+
+    public void testGatheringPartial() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.PARTIAL, 0);
+        MockPort port = new MockPort();
+        AtomicLong queued = new AtomicLong();
+        NIOWriteStream wstream = new NIOWriteStream(port, null, null, queueMonitor(queued), true);
+
+        wstream.enqueue(ByteBuffer.allocate(10));
+        wstream.swapAndSerializeQueuedWrites(pool);
+        assertEquals(5, wstream.drainTo(channel));
+        assertFalse(wstream.isEmpty());
+        assertTrue(wstream.hadBackPressure());
+        assertEquals(5, queued.get());
+
+        //New data goes into fresh buffers behind the partially written ones
+        wstream.enqueue(ByteBuffer.allocate(6));
+        wstream.swapAndSerializeQueuedWrites(pool);
+        channel.m_behavior = MockChannel.SINK;
+        assertEquals(11, wstream.drainTo(channel));
+        assertTrue(wstream.isEmpty());
+        assertFalse(wstream.hadBackPressure());
+        assertEquals(0, queued.get());
+        wstream.shutdown();
+    }
+
+    public void testGatheringLargeMessage() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.SINK, 0);
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port, null, null, null, true);
+
+        //Larger than a pool buffer, serialized into a single direct buffer
+        ByteBuffer tmp = ByteBuffer.allocate(100);
+        for (int ii = 0; ii < 100; ii++) {
+            tmp.put((byte)ii);
+        }
+        tmp.flip();
+        wstream.enqueue(tmp);
+        wstream.swapAndSerializeQueuedWrites(pool);
+        assertEquals(1, wstream.getOutstandingMessageCount());
+        assertEquals(100, wstream.drainTo(channel));
+        assertEquals(1, channel.gatheringWrites);
+        assertTrue(wstream.isEmpty());
+        wstream.shutdown();
+    }
+
+    public void testGatheringShutdownReleasesQueued() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.PARTIAL, 0);
+        MockPort port = new MockPort();
+        AtomicLong queued = new AtomicLong();
+        NIOWriteStream wstream = new NIOWriteStream(port, null, null, queueMonitor(queued), true);
+
+        wstream.enqueue(ByteBuffer.allocate(100));
+        wstream.enqueue(ByteBuffer.allocate(8));
+        wstream.swapAndSerializeQueuedWrites(pool);
+        wstream.drainTo(channel);
+        assertFalse(wstream.isEmpty());
+        wstream.shutdown();
+        assertEquals(0, queued.get());
+    }
+
+    private static QueueMonitor queueMonitor(final AtomicLong queued) {
+        return new QueueMonitor() {
+            @Override
+            public boolean queue(int bytes) {
+                queued.addAndGet(bytes);
+                return false;
+            }
+        };
+    }
+
     public void testQueueMonitor() throws Exception {
         final MockChannel channel = new MockChannel(MockChannel.FULL, 0);
         MockPort port = new MockPort();
@@ -0,0 +1,173 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltcore.network;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.DBBPool.BBContainer;
+
+public class TestNetworkDBBPool extends TestCase {
+
+    private static final int SMALL = 0;
+    private static final int DEFAULT = 1;
+    private static final int LARGE = 2;
+
+    private static long stat(NetworkDBBPool pool, int sizeClass, int stat) {
+        return pool.getStats(false)[sizeClass][stat];
+    }
+
+    public void testSizeClasses() {
+        NetworkDBBPool pool = new NetworkDBBPool(128);
+        long stats[][] = pool.getStats(false);
+        assertEquals(3, stats.length);
+        assertEquals(1024 * 4, stats[SMALL][NetworkDBBPool.STAT_BUFFER_SIZE]);
+        assertEquals(1024 * 32, stats[DEFAULT][NetworkDBBPool.STAT_BUFFER_SIZE]);
+        assertEquals(1024 * 256, stats[LARGE][NetworkDBBPool.STAT_BUFFER_SIZE]);
+
+        BBContainer small = pool.acquire(100);
+        BBContainer dflt = pool.acquire();
+        BBContainer large = pool.acquire(1024 * 100);
+        BBContainer huge = pool.acquire(1024 * 1024);
+        assertEquals(1024 * 4, small.b().capacity());
+        assertEquals(1024 * 32, dflt.b().capacity());
+        assertEquals(1024 * 256, large.b().capacity());
+        assertEquals(1024 * 256, huge.b().capacity());
+        assertTrue(small.b().isDirect());
+
+        assertEquals(1, stat(pool, LARGE, NetworkDBBPool.STAT_SLABS));
+        assertEquals(2, stat(pool, LARGE, NetworkDBBPool.STAT_BUFFERS_IN_USE));
+
+        small.discard();
+        dflt.discard();
+        large.discard();
+        huge.discard();
+        assertEquals(0, stat(pool, LARGE, NetworkDBBPool.STAT_BUFFERS_IN_USE));
+        pool.clear();
+    }
+
+    public void testBuffersDontOverlap() {
+        NetworkDBBPool pool = new NetworkDBBPool(64);
+        ArrayList<BBContainer> buffers = new ArrayList<BBContainer>();
+        for (int ii = 0; ii < 40; ii++) {
+            BBContainer c = pool.acquire(16);
+            c.b().clear();
+            while (c.b().hasRemaining()) {
+                c.b().put((byte)ii);
+            }
+            buffers.add(c);
+        }
+        for (int ii = 0; ii < buffers.size(); ii++) {
+            BBContainer c = buffers.get(ii);
+            c.b().flip();
+            while (c.b().hasRemaining()) {
+                assertEquals(ii, c.b().get());
+            }
+            c.discard();
+        }
+        pool.clear();
+    }
+
+    public void testHitsMissesAndFallbacks() {
+        // Budget of two default buffers, a single buffer per slab
+        NetworkDBBPool pool = new NetworkDBBPool(2, 1024 * 1024);
+        BBContainer first = pool.acquire();
+        BBContainer second = pool.acquire();
+        BBContainer third = pool.acquire();
+
+        long stats[] = pool.getStats(false)[0];
+        assertEquals(2, stats[NetworkDBBPool.STAT_SLABS]);
+        assertEquals(3, stats[NetworkDBBPool.STAT_BUFFERS_IN_USE]);
+        assertEquals(0, stats[NetworkDBBPool.STAT_HITS]);
+        assertEquals(2, stats[NetworkDBBPool.STAT_MISSES]);
+        assertEquals(1, stats[NetworkDBBPool.STAT_FALLBACKS]);
+
+        third.discard();
+        second.discard();
+        pool.acquire().discard();
+        pool.acquire().discard();
+
+        stats = pool.getStats(true)[0];
+        assertEquals(2, stats[NetworkDBBPool.STAT_HITS]);
+        assertEquals(2, stats[NetworkDBBPool.STAT_MISSES]);
+        assertEquals(1, stats[NetworkDBBPool.STAT_FALLBACKS]);
+        assertEquals(1, stats[NetworkDBBPool.STAT_BUFFERS_IN_USE]);
+
+        // Interval counters reset
+        pool.acquire().discard();
+        stats = pool.getStats(true)[0];
+        assertEquals(1, stats[NetworkDBBPool.STAT_HITS]);
+        assertEquals(0, stats[NetworkDBBPool.STAT_MISSES]);
+        assertEquals(0, stats[NetworkDBBPool.STAT_FALLBACKS]);
+
+        first.discard();
+        pool.clear();
+    }
+
+    public void testTrimReleasesIdleSlabs() {
+        NetworkDBBPool pool = new NetworkDBBPool(4, 1024 * 1024);
+        ArrayList<BBContainer> buffers = new ArrayList<BBContainer>();
+        for (int ii = 0; ii < 4; ii++) {
+            buffers.add(pool.acquire());
+        }
+        assertEquals(4, stat(pool, 0, NetworkDBBPool.STAT_SLABS));
+        for (int ii = 1; ii < 4; ii++) {
+            buffers.get(ii).discard();
+        }
+
+        // Peak demand was covered during the first interval
+        pool.trim();
+        assertEquals(4, stat(pool, 0, NetworkDBBPool.STAT_SLABS));
+
+        // Demand dropped to one buffer, the idle slabs go away
+        pool.trim();
+        assertEquals(1, stat(pool, 0, NetworkDBBPool.STAT_SLABS));
+
+        // And come back on demand
+        BBContainer c = pool.acquire();
+        assertEquals(2, stat(pool, 0, NetworkDBBPool.STAT_SLABS));
+        c.discard();
+        buffers.get(0).discard();
+        pool.clear();
+        assertEquals(0, stat(pool, 0, NetworkDBBPool.STAT_SLABS));
+    }
+
+    public void testClearWithOutstandingBuffers() {
+        NetworkDBBPool pool = new NetworkDBBPool(4, 1024 * 1024);
+        BBContainer outstanding = pool.acquire();
+        pool.acquire().discard();
+        pool.clear();
+        assertEquals(1, stat(pool, 0, NetworkDBBPool.STAT_SLABS));
+
+        // No new slabs once cleared
+        BBContainer fallback = pool.acquire();
+        assertEquals(1, stat(pool, 0, NetworkDBBPool.STAT_FALLBACKS));
+        fallback.discard();
+
+        outstanding.discard();
+        assertEquals(0, stat(pool, 0, NetworkDBBPool.STAT_SLABS));
+    }
+}
@@ -0,0 +1,270 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.network;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.Pair;
+
+/*
+ * Verify that a connection keeps reading and writing after it
+ * is migrated from one network thread to another, and that the
+ * pool only moves ports when the load is sufficiently uneven
+ */
+public class TestVoltNetworkPool extends TestCase {
+
+    private static class EchoHandler extends VoltProtocolHandler {
+        final LinkedBlockingQueue<ByteBuffer> m_messages = new LinkedBlockingQueue<ByteBuffer>();
+
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) {
+            ByteBuffer reply = ByteBuffer.allocate(4 + message.remaining());
+            reply.putInt(message.remaining());
+            reply.put(message.duplicate());
+            reply.flip();
+            c.writeStream().enqueue(reply);
+            m_messages.offer(message);
+        }
+
+        @Override
+        public Runnable offBackPressure() {
+            return null;
+        }
+
+        @Override
+        public Runnable onBackPressure() {
+            return null;
+        }
+
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+    }
+
+    private ServerSocketChannel m_server;
+    private VoltNetwork m_source;
+    private VoltNetwork m_target;
+
+    @Override
+    public void setUp() throws Exception {
+        m_server = ServerSocketChannel.open();
+        m_server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        m_source = new VoltNetwork(0, null, "Test");
+        m_target = new VoltNetwork(1, null, "Test");
+        m_source.start();
+        m_target.start();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        m_source.shutdown();
+        m_target.shutdown();
+        m_server.close();
+    }
+
+    private static void roundTrip(SocketChannel client, EchoHandler handler, int value) throws Exception {
+        ByteBuffer message = ByteBuffer.allocate(8);
+        message.putInt(4);
+        message.putInt(value);
+        message.flip();
+        while (message.hasRemaining()) {
+            client.write(message);
+        }
+
+        ByteBuffer received = handler.m_messages.poll(10, TimeUnit.SECONDS);
+        assertNotNull(received);
+        assertEquals(value, received.getInt());
+
+        ByteBuffer reply = ByteBuffer.allocate(8);
+        while (reply.hasRemaining()) {
+            assertTrue(client.read(reply) >= 0);
+        }
+        reply.flip();
+        assertEquals(4, reply.getInt());
+        assertEquals(value, reply.getInt());
+    }
+
+    public void testMigratedPortKeepsWorking() throws Exception {
+        SocketChannel client = SocketChannel.open(m_server.socket().getLocalSocketAddress());
+        SocketChannel accepted = m_server.accept();
+        EchoHandler handler = new EchoHandler();
+        m_source.registerChannel(accepted, handler, SelectionKey.OP_READ, ReverseDNSPolicy.NONE);
+
+        roundTrip(client, handler, 1);
+        assertEquals(1, m_source.numPorts());
+        assertTrue(m_source.sampleLoad().get() > 0);
+        assertTrue(m_source.recentLoad() > 0);
+
+        // Nothing carried load on the target, nothing to move
+        assertEquals(0, m_target.migratePorts(m_source, Long.MAX_VALUE, 8).get().intValue());
+        // Budget too small to fit the port
+        assertEquals(0, m_source.migratePorts(m_target, 1, 8).get().intValue());
+
+        assertEquals(1, m_source.migratePorts(m_target, Long.MAX_VALUE, 8).get().intValue());
+        assertEquals(0, m_source.numPorts());
+
+        for (int ii = 2; ii < 100; ii++) {
+            roundTrip(client, handler, ii);
+        }
+        assertEquals(1, m_target.numPorts());
+
+        // Load is now measured on the target
+        assertEquals(0L, m_source.sampleLoad().get().longValue());
+        assertTrue(m_target.sampleLoad().get() > 0);
+        client.close();
+    }
+
+    private SocketChannel connect(VoltNetworkPool pool, EchoHandler handler) throws Exception {
+        SocketChannel client = SocketChannel.open(m_server.socket().getLocalSocketAddress());
+        pool.registerChannel(m_server.accept(), handler, SelectionKey.OP_READ, ReverseDNSPolicy.NONE);
+        return client;
+    }
+
+    private static long messagesRead(Map<Long, Pair<String, long[]>> stats, long id) {
+        return stats.get(id).getSecond()[1];
+    }
+
+    /*
+     * Messages read by the ports on each network, in network order
+     */
+    private static long[] messagesReadPerNetwork(VoltNetworkPool pool, int networks) throws Exception {
+        Map<Long, Pair<String, long[]>> stats =
+                pool.getIOStats(false, Collections.<VoltNetworkPool.IOStatsIntf>emptyList());
+        long counts[] = new long[networks];
+        for (int ii = 0; ii < networks; ii++) {
+            counts[ii] = messagesRead(stats, VoltNetworkPool.NETWORK_STATS_ID_BASE - ii);
+        }
+        return counts;
+    }
+
+    private static void roundTrips(SocketChannel client, EchoHandler handler, int count) throws Exception {
+        for (int ii = 0; ii < count; ii++) {
+            roundTrip(client, handler, ii);
+        }
+    }
+
+    public void testRebalanceThresholdAndBudget() throws Exception {
+        VoltNetworkPool pool = new VoltNetworkPool(2, 2, null, "Test");
+        pool.start();
+        try {
+            // Ports are spread by port count while there is no load: a and c on
+            // the first network, b on the second
+            EchoHandler a = new EchoHandler();
+            EchoHandler b = new EchoHandler();
+            EchoHandler c = new EchoHandler();
+            SocketChannel clientA = connect(pool, a);
+            SocketChannel clientB = connect(pool, b);
+            SocketChannel clientC = connect(pool, c);
+
+            // 10 vs 8 is within 125% of the average, so a isn't moved even
+            // though it would fit in the budget
+            roundTrips(clientA, a, 1);
+            roundTrips(clientB, b, 8);
+            roundTrips(clientC, c, 9);
+            assertEquals(0, pool.rebalance());
+            assertEquals(10, messagesReadPerNetwork(pool, 2)[0]);
+            assertEquals(8, messagesReadPerNetwork(pool, 2)[1]);
+
+            // A lone busy port is never moved, it would only swap the imbalance
+            roundTrips(clientC, c, 10);
+            assertEquals(0, pool.rebalance());
+            assertEquals(20, messagesReadPerNetwork(pool, 2)[0]);
+
+            // 12 vs 0, the budget is half the difference so only a fits
+            roundTrips(clientA, a, 1);
+            roundTrips(clientC, c, 11);
+            assertEquals(1, pool.rebalance());
+            long counts[] = messagesReadPerNetwork(pool, 2);
+            assertEquals(30, counts[0]);
+            assertEquals(10, counts[1]);
+
+            // a keeps working on its new network
+            roundTrips(clientA, a, 5);
+            assertEquals(15, messagesReadPerNetwork(pool, 2)[1]);
+
+            clientA.close();
+            clientB.close();
+            clientC.close();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testPerNetworkStats() throws Exception {
+        VoltNetworkPool pool = new VoltNetworkPool(3, 2, null, "Test");
+        pool.start();
+        try {
+            EchoHandler handlers[] = new EchoHandler[3];
+            SocketChannel clients[] = new SocketChannel[3];
+            for (int ii = 0; ii < 3; ii++) {
+                handlers[ii] = new EchoHandler();
+                clients[ii] = connect(pool, handlers[ii]);
+            }
+            for (int ii = 0; ii < 3; ii++) {
+                roundTrips(clients[ii], handlers[ii], ii + 1);
+            }
+
+            Map<Long, Pair<String, long[]>> stats =
+                    pool.getIOStats(false, Collections.<VoltNetworkPool.IOStatsIntf>emptyList());
+            // One row per network counting down from the base, after the GLOBAL row
+            assertEquals(-2L, VoltNetworkPool.NETWORK_STATS_ID_BASE);
+            long total = 0;
+            for (int ii = 0; ii < 3; ii++) {
+                Pair<String, long[]> row = stats.get(VoltNetworkPool.NETWORK_STATS_ID_BASE - ii);
+                assertNotNull(row);
+                assertFalse("GLOBAL".equals(row.getFirst()));
+                // each port landed on its own network
+                assertEquals(ii + 1, row.getSecond()[1]);
+                total += row.getSecond()[1];
+            }
+            assertNull(stats.get(VoltNetworkPool.NETWORK_STATS_ID_BASE - 3));
+            assertEquals("GLOBAL", stats.get(-1L).getFirst());
+            assertEquals(total, messagesRead(stats, -1L));
+            // 3 networks, 3 connections and the GLOBAL row
+            assertEquals(7, stats.size());
+
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureInvocationType;
+import org.voltdb.common.Constants;
+import org.voltdb.types.TimestampType;
+import org.voltdb.types.VoltDecimalHelper;
+
+public class TestColumnarVoltTable extends TestCase {
+
+    private static final String NAMES[] = { "alpha", "beta", "gamma", "δέλτα" };
+
+    private static VoltTable createTable(int rows, boolean repeatStrings) {
+        VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("TINY", VoltType.TINYINT),
+                new VoltTable.ColumnInfo("SMALL", VoltType.SMALLINT),
+                new VoltTable.ColumnInfo("INT", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("BIG", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("FLOAT", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("DEC", VoltType.DECIMAL),
+                new VoltTable.ColumnInfo("TS", VoltType.TIMESTAMP),
+                new VoltTable.ColumnInfo("STR", VoltType.STRING),
+                new VoltTable.ColumnInfo("BIN", VoltType.VARBINARY));
+        table.setStatusCode((byte)7);
+        Random r = new Random(0);
+        for (int i = 0; i < rows; i++) {
+            if (i % 5 == 3) {
+                table.addRow(null, null, null, null, null, null, null, null, null);
+                continue;
+            }
+            String str = repeatStrings ? NAMES[i % NAMES.length] : "value " + r.nextLong();
+            table.addRow((byte)i, (short)(i * 3), i * 1000, (long)i << 33, i * 0.5,
+                    new BigDecimal(i).setScale(VoltDecimalHelper.kDefaultScale),
+                    new TimestampType(i * 1000L), str, str.getBytes(Constants.UTF8ENCODING));
+        }
+        return table;
+    }
+
+    private static ColumnarVoltTable roundTrip(ColumnarVoltTable table) {
+        ByteBuffer buf = ByteBuffer.allocate(table.getSerializedSize());
+        table.flattenToBuffer(buf);
+        assertFalse(buf.hasRemaining());
+        buf.flip();
+        assertEquals(buf.remaining() - 4, buf.getInt());
+        return new ColumnarVoltTable(buf.slice());
+    }
+
+    private static void assertSameValues(VoltTable expected, ColumnarVoltTable actual) {
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        assertEquals(expected.getColumnCount(), actual.getColumnCount());
+        assertEquals(expected.getStatusCode(), actual.getStatusCode());
+        for (int col = 0; col < expected.getColumnCount(); col++) {
+            assertEquals(expected.getColumnName(col), actual.getColumnName(col));
+            assertEquals(expected.getColumnType(col), actual.getColumnType(col));
+            assertEquals(col, actual.getColumnIndex(expected.getColumnName(col).toLowerCase()));
+        }
+        expected.resetRowPosition();
+        int row = 0;
+        while (expected.advanceRow()) {
+            for (int col = 0; col < expected.getColumnCount(); col++) {
+                VoltType type = expected.getColumnType(col);
+                Object value = expected.get(col, type);
+                boolean wasNull = expected.wasNull();
+                assertEquals(wasNull, actual.isNull(col, row));
+                if (wasNull) {
+                    if (type == VoltType.STRING || type == VoltType.VARBINARY ||
+                            type == VoltType.DECIMAL || type == VoltType.TIMESTAMP) {
+                        assertNull(actual.get(col, row));
+                    }
+                    continue;
+                }
+                if (type == VoltType.VARBINARY) {
+                    assertTrue(java.util.Arrays.equals((byte[])value, actual.getVarbinary(col, row)));
+                } else {
+                    assertEquals(value, actual.get(col, row));
+                }
+            }
+            row++;
+        }
+        assertEquals(expected.getRowCount(), row);
+    }
+
+    public void testVarlenRoundTrip() {
+        VoltTable table = createTable(100, false);
+        ColumnarVoltTable columnar = roundTrip(ColumnarVoltTable.fromVoltTable(table));
+        assertFalse(columnar.isDictionaryEncoded(7));
+        assertFalse(columnar.isDictionaryEncoded(8));
+        assertSameValues(table, columnar);
+        assertEquals(1000, columnar.getLong(2, 1));
+        assertEquals(2L << 33, columnar.getLong(3, 2));
+        assertEquals(0.5, columnar.getDouble(4, 1));
+        assertEquals(2000L, columnar.getTimestampAsLong(6, 2));
+        assertTrue(table.hasSameContents(columnar.toVoltTable()));
+    }
+
+    public void testDictionaryRoundTrip() {
+        VoltTable table = createTable(200, true);
+        ColumnarVoltTable columnar = roundTrip(ColumnarVoltTable.fromVoltTable(table));
+        assertTrue(columnar.isDictionaryEncoded(7));
+        assertTrue(columnar.isDictionaryEncoded(8));
+        assertEquals(NAMES.length, columnar.getDictionarySize(7));
+        assertEquals(ColumnarVoltTable.NULL_CODE, columnar.getDictionaryCode(7, 3));
+        assertEquals(columnar.getDictionaryCode(7, 0), columnar.getDictionaryCode(7, NAMES.length));
+        // dictionary strings are decoded once
+        assertSame(columnar.getString(7, 0), columnar.getString(7, NAMES.length));
+        assertSameValues(table, columnar);
+        assertTrue(table.hasSameContents(columnar.toVoltTable()));
+
+        try {
+            columnar.getDictionarySize(0);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+        try {
+            columnar.getString(0, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+        try {
+            columnar.getLong(0, 200);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {}
+    }
+
+    public void testEmptyTable() {
+        VoltTable table = createTable(0, false);
+        ColumnarVoltTable columnar = roundTrip(ColumnarVoltTable.fromVoltTable(table));
+        assertEquals(0, columnar.getRowCount());
+        assertEquals(9, columnar.getColumnCount());
+        assertTrue(table.hasSameContents(columnar.toVoltTable()));
+    }
+
+    public void testClientResponse() throws Exception {
+        VoltTable tables[] = new VoltTable[] { createTable(50, true), createTable(3, false) };
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS, tables, "ok");
+        response.setColumnarResults(true);
+        ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize());
+        response.flattenToBuffer(buf);
+        assertFalse(buf.hasRemaining());
+        buf.flip();
+
+        ClientResponseImpl received = new ClientResponseImpl();
+        received.initFromBuffer(buf);
+        assertEquals("ok", received.getStatusString());
+        ColumnarVoltTable columnar[] = received.getColumnarResults();
+        assertEquals(2, columnar.length);
+        assertSameValues(tables[0], columnar[0]);
+        assertSameValues(tables[1], columnar[1]);
+        assertTrue(tables[0].hasSameContents(received.getResults()[0]));
+        assertTrue(tables[1].hasSameContents(received.getResults()[1]));
+
+        // forwarding a received response keeps it columnar
+        ByteBuffer forwarded = ByteBuffer.allocate(received.getSerializedSize());
+        received.flattenToBuffer(forwarded);
+        forwarded.flip();
+        buf.flip();
+        assertEquals(buf, forwarded);
+    }
+
+    public void testInvocationFlag() throws Exception {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName("Foo");
+        invocation.setParams(1, "two");
+        invocation.setColumnarResults(true);
+        ByteBuffer buf = ByteBuffer.allocate(invocation.getSerializedSize());
+        invocation.flattenToBuffer(buf);
+        buf.flip();
+
+        StoredProcedureInvocation received = new StoredProcedureInvocation();
+        received.initFromBuffer(buf);
+        assertTrue(received.wantsColumnarResults());
+        assertEquals(ProcedureInvocationType.ORIGINAL, received.getType());
+        assertEquals("Foo", received.getProcName());
+        assertTrue(received.getShallowCopy().wantsColumnarResults());
+    }
+}
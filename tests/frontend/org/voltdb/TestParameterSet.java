@@ -96,6 +96,28 @@ public class TestParameterSet extends TestCase {
         assertEquals("foo", out.toArray()[0]);
     }
 
+    public void testNonAsciiStrings() throws IOException {
+        String mixed = "caf\u00e9 \u6771\u4eac \ud83d\ude00";
+        params = ParameterSet.fromArrayNoCopy(new Object[]{"ascii", mixed,
+                new String[]{"ascii", mixed, null, ""}});
+        ByteBuffer buf = ByteBuffer.allocate(params.getSerializedSize());
+        params.flattenToBuffer(buf);
+        assertEquals(buf.capacity(), buf.position());
+        buf.rewind();
+
+        ParameterSet out = ParameterSet.fromByteBuffer(buf);
+        assertEquals(3, out.toArray().length);
+        assertEquals("ascii", out.toArray()[0]);
+        assertEquals(mixed, out.toArray()[1]);
+        assertTrue(Arrays.equals(new String[]{"ascii", mixed, null, ""}, (String[]) out.toArray()[2]));
+        assertEquals(params.getSerializedSize(), out.getSerializedSize());
+
+        // re-serializing the deserialized set reuses its encoded strings
+        ByteBuffer buf2 = ByteBuffer.allocate(out.getSerializedSize());
+        out.flattenToBuffer(buf2);
+        assertTrue(Arrays.equals(buf.array(), buf2.array()));
+    }
+
     public void testStringsAsByteArray() throws IOException {
         params = ParameterSet.fromArrayNoCopy(new Object[]{new byte[]{'f', 'o', 'o'}});
         ByteBuffer buf = ByteBuffer.allocate(params.getSerializedSize());
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
@@ -269,6 +270,93 @@ public class TestVoltTable extends TestCase {
         }
     }
 
+    public void testRandomRowAccess() {
+        t = new VoltTable(new ColumnInfo("id", VoltType.BIGINT),
+                          new ColumnInfo("str", VoltType.STRING));
+        for (int i = 0; i < 1000; i++) {
+            t.addRow(i, i % 7 == 0 ? null : String.valueOf(i * 31));
+        }
+        assertEquals(0, t.getRowIndexSize());
+        for (int i = 999; i >= 0; i -= 13) {
+            VoltTableRow r = t.fetchRow(i);
+            assertEquals(i, r.getLong(0));
+            assertEquals(i % 7 == 0 ? null : String.valueOf(i * 31), r.getString(1));
+            assertEquals(i, r.getActiveRowIndex());
+        }
+        assertEquals(1000 * 4, t.getRowIndexSize());
+
+        // the index is extended as rows are added
+        for (int i = 1000; i < 1500; i++) {
+            t.addRow(i, String.valueOf(i * 31));
+        }
+        assertEquals(1499, t.fetchRow(1499).getLong(0));
+        assertEquals(1000, t.fetchRow(1000).getLong(0));
+
+        // jumps from a reset position and from other rows
+        t.resetRowPosition();
+        assertTrue(t.advanceToRow(500));
+        assertEquals(500, t.getLong(0));
+        assertTrue(t.advanceToRow(501));
+        assertEquals(501, t.getLong(0));
+        VoltTableRow r = t.cloneRow();
+        assertTrue(t.advanceToRow(1400));
+        assertEquals(1400, t.getLong(0));
+        assertTrue(r.advanceToRow(1200));
+        assertEquals("37200", r.getString(1));
+        assertFalse(t.advanceToRow(1500));
+
+        t2 = roundTrip(t);
+        assertEquals(0, t2.getRowIndexSize());
+        assertEquals(777, t2.fetchRow(777).getLong(0));
+        assertEquals(1500 * 4, t2.getRowIndexSize());
+
+        t.clearRowData();
+        t.addRow(5, "five");
+        t.addRow(6, "six");
+        assertEquals("six", t.fetchRow(1).getString(1));
+    }
+
+    public void testConcurrentRandomRowAccess() throws Exception {
+        t = new VoltTable(new ColumnInfo("id", VoltType.BIGINT),
+                          new ColumnInfo("str", VoltType.STRING));
+        for (int i = 0; i < 5000; i++) {
+            t.addRow(i, String.valueOf(i * 31));
+        }
+        // readers race to build the index of a table nobody modifies
+        for (int round = 0; round < 10; round++) {
+            final VoltTable shared = roundTrip(t);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread readers[] = new Thread[4];
+            for (int ii = 0; ii < readers.length; ii++) {
+                final int start = ii;
+                readers[ii] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 4999 - start; i >= 0; i -= 7) {
+                                VoltTableRow r = shared.fetchRow(i);
+                                assertEquals(i, r.getLong(0));
+                                assertEquals(String.valueOf(i * 31), r.getString(1));
+                            }
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                };
+            }
+            for (Thread reader : readers) {
+                reader.start();
+            }
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+            assertEquals(5000 * 4, shared.getRowIndexSize());
+        }
+    }
+
     /*
      * Use a heap buffer with an array offset to simulate a result set
      * from the EE
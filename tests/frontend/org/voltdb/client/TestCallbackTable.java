@@ -0,0 +1,147 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.client;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.voltdb.client.Distributer.CallbackBookeeping;
+
+public class TestCallbackTable extends TestCase {
+
+    private static CallbackBookeeping bookkeeping(long handle) {
+        return new CallbackBookeeping(handle, System.nanoTime(), new NullCallback(), "foo", 0, false);
+    }
+
+    private static int count(CallbackTable table) {
+        int count = 0;
+        for (int ii = 0; ii < table.capacity(); ii++) {
+            if (table.slot(ii) != null) count++;
+        }
+        for (CallbackBookeeping cb : table.overflow()) {
+            count++;
+        }
+        return count;
+    }
+
+    public void testPutRemove() {
+        CallbackTable table = new CallbackTable(100);
+        assertEquals(128, table.capacity());
+
+        for (long handle = -10; handle < 100; handle++) {
+            table.put(bookkeeping(handle));
+        }
+        assertEquals(110, count(table));
+        assertTrue(table.containsKey(-10));
+        assertTrue(table.containsKey(99));
+        assertFalse(table.containsKey(100));
+
+        for (long handle = -10; handle < 100; handle++) {
+            CallbackBookeeping cb = table.remove(handle);
+            assertNotNull(cb);
+            assertEquals(handle, cb.handle);
+            assertNull(table.remove(handle));
+        }
+        assertEquals(0, count(table));
+        assertNull(table.remove(Distributer.PING_HANDLE));
+    }
+
+    public void testOverflow() {
+        CallbackTable table = new CallbackTable(16);
+        // An old handle keeps its slot while newer handles wrap around the table
+        table.put(bookkeeping(0));
+        for (long handle = 1; handle < 64; handle++) {
+            table.put(bookkeeping(handle));
+        }
+        assertEquals(64, count(table));
+        assertTrue(table.overflow().iterator().hasNext());
+
+        for (long handle = 63; handle >= 0; handle--) {
+            assertEquals(handle, table.remove(handle).handle);
+        }
+        assertEquals(0, count(table));
+        assertFalse(table.overflow().iterator().hasNext());
+    }
+
+    /*
+     * Several threads race to remove every handle, as responses, timeouts and
+     * connection loss do, and each handle must be handed to exactly one of them
+     */
+    public void testConcurrentRemoveIsExactlyOnce() throws Exception {
+        final int handles = 100000;
+        final CallbackTable table = new CallbackTable(1024);
+        final AtomicInteger removed = new AtomicInteger();
+        final AtomicLong published = new AtomicLong();
+        final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+        final CountDownLatch done = new CountDownLatch(4);
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (long handle = 0; handle < handles; handle++) {
+                    table.put(bookkeeping(handle));
+                    published.set(handle + 1);
+                }
+            }
+        };
+        producer.start();
+
+        for (int t = 0; t < 4; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        long handle = 0;
+                        while (handle < handles) {
+                            if (handle >= published.get()) {
+                                continue;
+                            }
+                            if (table.remove(handle) != null) {
+                                removed.incrementAndGet();
+                            }
+                            if (!table.containsKey(handle)) {
+                                handle++;
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.offer(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        producer.join();
+        done.await();
+
+        assertTrue(errors.isEmpty());
+        assertEquals(handles, removed.get());
+        assertEquals(0, count(table));
+    }
+}
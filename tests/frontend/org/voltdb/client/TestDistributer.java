@@ -406,6 +406,53 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    @Test
+    public void testBatchedQueue() throws Exception {
+        MockVolt volt0 = null;
+        try {
+            volt0 = new MockVolt(20000);
+            volt0.start();
+
+            // Batches are only cut short by the byte budget, not by the delay
+            Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false, null /* subject */, 1024, TimeUnit.SECONDS.toMicros(1));
+            dist.createConnection("localhost", "", "", 20000, ClientAuthHashScheme.HASH_SHA1);
+            ClientStatsContext context = dist.createStatsContext();
+
+            final int invocations = 100;
+            for (int handle = 1; handle <= invocations; handle++) {
+                ProcedureInvocation pi = new ProcedureInvocation(handle, "i1", new Integer(1));
+                dist.queue(pi, new ProcCallback(), true, System.nanoTime(), 0);
+            }
+            dist.drain();
+            assertEquals(invocations, volt0.handler.roundTrips.get());
+
+            ClientStats stats = context.fetchAndResetBaseline().getStats();
+            assertEquals(invocations, stats.getInvocationsCompleted());
+            assertTrue(stats.getBatchesWritten() > 1);
+            assertTrue(stats.getBatchesWritten() < invocations);
+            assertTrue(stats.getAverageBatchSize() > 1.0);
+            assertTrue(stats.kPercentileBatchSize(1.0) > 1);
+
+            // A lone invocation is written when the delay expires
+            dist.queue(new ProcedureInvocation(invocations + 1, "i1", new Integer(1)),
+                    new ProcCallback(), true, System.nanoTime(), 0);
+            dist.drain();
+            stats = context.fetchAndResetBaseline().getStats();
+            assertEquals(1, stats.getBatchesWritten());
+            assertEquals(1, stats.kPercentileBatchSize(1.0));
+            assertTrue(stats.kPercentileBatchingDelayMicros(1.0) >= TimeUnit.MILLISECONDS.toMicros(900));
+            dist.shutdown();
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testQueue() throws Exception {
 
@@ -0,0 +1,211 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.compiler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.voltdb.ParameterSet;
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.planner.BoundPlan;
+import org.voltdb.planner.CorePlan;
+
+public class TestAdHocCompilerCache extends TestCase {
+
+    private static final byte[] HASH1 = new byte[20];
+    private static final byte[] HASH2 = new byte[20];
+    static {
+        Arrays.fill(HASH2, (byte) 1);
+    }
+
+    private static final String DB = "/clusters#cluster/databases#database";
+
+    private static AdHocPlannedStatement plan(String sql, byte[] catalogHash) {
+        byte[] sqlBytes = sql.getBytes(Constants.UTF8ENCODING);
+        CorePlan core = new CorePlan(sqlBytes, null, new byte[20], null,
+                                     false, true, new VoltType[0], catalogHash);
+        return new AdHocPlannedStatement(sqlBytes, core, ParameterSet.emptyParameterSet(), null);
+    }
+
+    private static Set<String> tables(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    private static void put(AdHocCompilerCache cache, String sql, long cost, String... tables) {
+        cache.put(sql, sql, plan(sql, HASH1), null, tables(tables), cost);
+    }
+
+    public void testNormalize() {
+        assertEquals("select * from t", AdHocCompilerCache.normalize("select * from t"));
+        assertEquals("select * from t", AdHocCompilerCache.normalize("  select \t*\n from   t "));
+        // quoted text is left alone
+        assertEquals("select 'a  b' from t", AdHocCompilerCache.normalize("select  'a  b'  from t"));
+        assertEquals("select \"A  B\" from t", AdHocCompilerCache.normalize("select \"A  B\"\nfrom t"));
+        // a line comment keeps the line break that ends it
+        assertEquals("select 1 -- one\n from t", AdHocCompilerCache.normalize("select 1 -- one\n   from t"));
+    }
+
+    public void testWhitespaceVariantsShareEntry() {
+        AdHocCompilerCache cache = new AdHocCompilerCache(10, 10);
+        put(cache, "select * from t", 1000, "T");
+        assertNotNull(cache.getWithSQL("select  *\n  from t  "));
+        assertNull(cache.getWithSQL("select * from u"));
+        assertEquals(1, cache.getLiteralCacheSize());
+        assertEquals(1000, cache.getPlanningTimeSaved());
+    }
+
+    public void testCostAwareEviction() {
+        AdHocCompilerCache cache = new AdHocCompilerCache(10, 10);
+        // expensive and cheap but popular statements
+        put(cache, "select 0", 1000000, "T");
+        put(cache, "select 1", 10, "T");
+        for (int ii = 0; ii < 100000; ii++) {
+            cache.getWithSQL("select 1");
+        }
+        for (int ii = 2; ii < 10; ii++) {
+            put(cache, "select " + ii, 100 + ii, "T");
+        }
+        assertEquals(10, cache.getLiteralCacheSize());
+        assertEquals(0, cache.getEvictions());
+
+        // overflow trims both levels to 90% of their limit
+        put(cache, "select 10", 500, "T");
+        assertEquals(9, cache.getLiteralCacheSize());
+        assertEquals(9, cache.getCoreCacheSize());
+        assertEquals(4, cache.getEvictions());
+        assertNotNull(cache.getWithSQL("select 0"));
+        assertNotNull(cache.getWithSQL("select 1"));
+        assertNotNull(cache.getWithSQL("select 10"));
+        // the cheapest entries went first
+        assertNull(cache.getWithSQL("select 2"));
+        assertNotNull(cache.getWithSQL("select 9"));
+    }
+
+    public void testChangedTables() {
+        assertEquals(Collections.emptySet(), AdHocCompilerCache.changedTables(""));
+        assertEquals(tables("A", "B"), AdHocCompilerCache.changedTables(
+                "set " + DB + "/tables#A/columns#X type 5\n" +
+                "set $PREV nullable false\n" +
+                "add " + DB + " tables B\n" +
+                "set " + DB + " schema \"abc\"\n" +
+                "delete " + DB + " procedures P\n" +
+                "set /clusters#cluster heartbeatTimeout 10\n"));
+        // anything else might change plans
+        assertNull(AdHocCompilerCache.changedTables("add " + DB + " functions F\n"));
+    }
+
+    public void testRetainAcrossCatalogChange() {
+        AdHocCompilerCache previous = new AdHocCompilerCache(10, 10);
+        put(previous, "select * from a", 1000, "A");
+        put(previous, "select * from b", 1000, "B");
+        put(previous, "select * from a, b", 1000, "A", "B");
+        previous.put("select 1", "select 1", plan("select 1", HASH1), null);
+
+        AdHocCompilerCache cache = new AdHocCompilerCache(10, 10);
+        int retained = cache.retainFrom(previous, HASH2,
+                "set " + DB + "/tables#A/columns#X type 5\n");
+        // one literal and one parameterized entry, plans without tables are never kept
+        assertEquals(2, retained);
+        assertEquals(2, cache.getRetained());
+        assertNull(cache.getWithSQL("select * from a"));
+        assertNull(cache.getWithSQL("select * from a, b"));
+        assertNull(cache.getWithSQL("select 1"));
+
+        AdHocPlannedStatement kept = cache.getWithSQL("select * from b");
+        assertNotNull(kept);
+        assertTrue(kept.core.wasPlannedAgainstHash(HASH2));
+        List<BoundPlan> variants = cache.getWithParsedToken("select * from b");
+        assertEquals(1, variants.size());
+        assertSame(kept.core, variants.get(0).m_core);
+
+        // changes that aren't understood drop everything
+        AdHocCompilerCache other = new AdHocCompilerCache(10, 10);
+        assertEquals(0, other.retainFrom(previous, HASH2, "add " + DB + " functions F\n"));
+        assertEquals(0, other.getLiteralCacheSize());
+    }
+
+    public void testHotStatements() {
+        AdHocCompilerCache cache = new AdHocCompilerCache(10, 10);
+        put(cache, "select 1", 10, "T");
+        put(cache, "select 2", 10, "T");
+        put(cache, "select 3", 10, "T");
+        for (int ii = 0; ii < 3; ii++) {
+            cache.getWithSQL("select 2");
+        }
+        cache.getWithSQL("select 3");
+        assertEquals(Arrays.asList("select 2", "select 3"), cache.getHotStatements(10));
+        assertEquals(Arrays.asList("select 2"), cache.getHotStatements(1));
+    }
+
+    public void testEvictionWithConcurrentHits() throws Exception {
+        // hits are counted without the lock while put() sorts entries to evict
+        final AdHocCompilerCache cache = new AdHocCompilerCache(200, 200);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread hitters[] = new Thread[3];
+        for (int ii = 0; ii < hitters.length; ii++) {
+            hitters[ii] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random r = new Random();
+                        while (!done.get()) {
+                            cache.getWithSQL("select " + r.nextInt(2000));
+                            if (r.nextInt(1000) == 0) {
+                                cache.getHotStatements(10);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            hitters[ii].start();
+        }
+        try {
+            for (int ii = 0; ii < 20000 && failure.get() == null; ii++) {
+                put(cache, "select " + (ii % 2000), 10, "T");
+            }
+        } finally {
+            done.set(true);
+            for (Thread hitter : hitters) {
+                hitter.join();
+            }
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(cache.getLiteralCacheSize() <= 200);
+    }
+}
@@ -25,12 +25,14 @@ package org.voltdb.compiler;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -44,12 +46,14 @@ import org.voltcore.messaging.LocalObjectMessage;
 import org.voltdb.compiler.AsyncCompilerWork.AsyncCompilerWorkCompletionHandler;
 
 public class TestAsyncCompilerAgent {
+    private static final int PLANNER_THREADS = 4;
+
     // this object is spied on using mockito
     private AsyncCompilerAgent m_agent = null;
 
     @Before
     public void setUp() {
-        m_agent = spy(new AsyncCompilerAgent());
+        m_agent = spy(new AsyncCompilerAgent(PLANNER_THREADS));
     }
 
     @After
@@ -61,9 +65,11 @@ public class TestAsyncCompilerAgent {
 
     class BlockingAnswer implements Answer<AsyncCompilerResult> {
         public final Semaphore flag = new Semaphore(0);
+        public final Semaphore entered = new Semaphore(0);
 
         @Override
         public AsyncCompilerResult answer(InvocationOnMock invocation) throws Throwable {
+            entered.release();
             flag.acquire();
             return null;
         }
@@ -87,15 +93,15 @@ public class TestAsyncCompilerAgent {
         m_agent.m_mailbox = spy(m_agent.m_mailbox);
 
         /*
-         * send max + 2 messages to the agent. The first one will be executed
-         * immediately so it doesn't consume queue capacity, the next max number
-         * of messages will use up all the capacity, the last one will be
-         * rejected.
+         * send max + threads + 1 messages to the agent. The first one for each
+         * planner thread will be executed immediately so it doesn't consume queue
+         * capacity, the next max number of messages will use up all the capacity,
+         * the last one will be rejected.
          */
         final AtomicInteger completedRequests = new AtomicInteger();
         final AtomicReference<AsyncCompilerResult> result = new AtomicReference<AsyncCompilerResult>();
         final long threadId = Thread.currentThread().getId();
-        for (int i = 0; i < AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2; ++i) {
+        for (int i = 0; i < AsyncCompilerAgent.MAX_QUEUE_DEPTH + PLANNER_THREADS + 1; ++i) {
             AsyncCompilerWorkCompletionHandler handler = new AsyncCompilerWorkCompletionHandler() {
                 @Override
                 public void onCompletion(AsyncCompilerResult compilerResult) {
@@ -122,11 +128,15 @@ public class TestAsyncCompilerAgent {
         // check for one rejected request
         assertNotNull(result.get().errorMsg);
 
+        // every planner thread is planning at the same time
+        assertTrue(blockingAnswer.entered.tryAcquire(PLANNER_THREADS, 60, TimeUnit.SECONDS));
+        assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH, m_agent.getPlannerQueueDepth());
+
         // let all requests return
-        blockingAnswer.flag.release(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 5);
+        blockingAnswer.flag.release(AsyncCompilerAgent.MAX_QUEUE_DEPTH + PLANNER_THREADS + 5);
 
         // check if all previous requests finish
         m_agent.shutdown();
-        assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2, completedRequests.get());
+        assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH + PLANNER_THREADS + 1, completedRequests.get());
     }
 }
@@ -0,0 +1,169 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.ServerThread;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltDB.Configuration;
+import org.voltdb.VoltTable;
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientFactory;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.compiler.VoltProjectBuilder;
+import org.voltdb.utils.MiscUtils;
+
+/**
+ * Queued single statement transactions executed as a group by the site. When a member
+ * of a group fails, the work of the whole group is undone and the members run one at
+ * a time, so only the failed transaction's work is lost.
+ */
+public class TestSiteGroupExecute {
+
+    static {
+        // Read when Site is loaded
+        System.setProperty("SITE_GROUP_EXECUTE_MAX", "16");
+    }
+
+    private static final int ROWS = 1000;
+    private static final int DUPLICATE_ID = 500;
+
+    private ServerThread m_server;
+    private Client m_client;
+
+    @Before
+    public void setUp() throws Exception {
+        String pathToCatalog = Configuration.getPathToCatalogForTest("site_group_execute.jar");
+        String pathToDeployment = Configuration.getPathToCatalogForTest("site_group_execute.xml");
+
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema(
+                "CREATE TABLE T (ID INTEGER NOT NULL, VAL INTEGER NOT NULL, PRIMARY KEY (ID));");
+        builder.addPartitionInfo("T", "ID");
+        builder.addStmtProcedure("InsertT", "INSERT INTO T VALUES (?, ?);", "T.ID: 0");
+        builder.addStmtProcedure("AddToT", "UPDATE T SET VAL = VAL + ? WHERE ID = ?;", "T.ID: 1");
+        builder.addStmtProcedure("GetT", "SELECT VAL FROM T WHERE ID = ?;", "T.ID: 0");
+        // One site so every transaction queues up on it
+        assertTrue(builder.compile(pathToCatalog, 1, 1, 0));
+        MiscUtils.copyFile(builder.getPathToDeployment(), pathToDeployment);
+
+        VoltDB.Configuration config = new VoltDB.Configuration();
+        config.m_pathToCatalog = pathToCatalog;
+        config.m_pathToDeployment = pathToDeployment;
+        m_server = new ServerThread(config);
+        m_server.start();
+        m_server.waitForInitialization();
+
+        m_client = ClientFactory.createClient();
+        m_client.createConnection("localhost");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_client != null) {
+            m_client.close();
+        }
+        if (m_server != null) {
+            m_server.shutdown();
+            m_server.join();
+        }
+    }
+
+    private static class Call implements ProcedureCallback {
+        final String m_procName;
+        final Object m_params[];
+        volatile ClientResponse m_response;
+
+        Call(String procName, Object... params) {
+            m_procName = procName;
+            m_params = params;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) {
+            m_response = response;
+        }
+
+        long scalar() {
+            final VoltTable t = m_response.getResults()[0];
+            assertEquals(1, t.getRowCount());
+            return t.fetchRow(0).getLong(0);
+        }
+    }
+
+    @Test
+    public void testFailedMemberOfGroup() throws Exception {
+        // Each row is inserted, read back, and the previous row is updated. The duplicate
+        // insert fails in the middle of a group of transactions queued behind each other.
+        final List<Call> calls = new ArrayList<Call>();
+        Call duplicate = null;
+        for (int id = 0; id < ROWS; id++) {
+            calls.add(new Call("InsertT", id, id));
+            if (id == DUPLICATE_ID) {
+                duplicate = new Call("InsertT", id, -ROWS);
+                calls.add(duplicate);
+            }
+            calls.add(new Call("GetT", id));
+            if (id > 0) {
+                calls.add(new Call("AddToT", 1, id - 1));
+            }
+        }
+        for (Call call : calls) {
+            assertTrue(m_client.callProcedure(call, call.m_procName, call.m_params));
+        }
+        m_client.drain();
+
+        for (Call call : calls) {
+            if (call == duplicate) {
+                assertEquals(ClientResponse.GRACEFUL_FAILURE, call.m_response.getStatus());
+                continue;
+            }
+            assertEquals(call.m_response.getStatusString(), ClientResponse.SUCCESS, call.m_response.getStatus());
+            final int id = (Integer)call.m_params[call.m_procName.equals("AddToT") ? 1 : 0];
+            if (call.m_procName.equals("GetT")) {
+                // Sees the insert before it, not the failed duplicate or the update after it
+                assertEquals(id, call.scalar());
+            } else {
+                assertEquals(1, call.scalar());
+            }
+        }
+
+        // The writes of the transactions grouped with the failed one are kept
+        final VoltTable rows = m_client.callProcedure("@AdHoc", "SELECT ID, VAL FROM T ORDER BY ID;").getResults()[0];
+        assertEquals(ROWS, rows.getRowCount());
+        while (rows.advanceRow()) {
+            final long id = rows.getLong(0);
+            assertEquals(id < ROWS - 1 ? id + 1 : id, rows.getLong(1));
+        }
+    }
+}
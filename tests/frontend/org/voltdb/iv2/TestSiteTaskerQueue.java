@@ -0,0 +1,177 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.voltdb.StarvationTracker;
+import org.voltdb.iv2.SiteTasker.SiteTaskerRunnable;
+
+public class TestSiteTaskerQueue extends TestCase {
+
+    private static class NumberedTask extends SiteTaskerRunnable {
+        final int m_producer;
+        final int m_number;
+
+        NumberedTask(int producer, int number) {
+            m_producer = producer;
+            m_number = number;
+        }
+
+        @Override
+        void run() {}
+    }
+
+    private static SiteTaskerQueue createQueue(SiteTaskerQueue.WaitStrategy waitStrategy) {
+        SiteTaskerQueue queue = new SiteTaskerQueue(waitStrategy);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        return queue;
+    }
+
+    public void testFifoAcrossSegments() throws Exception {
+        SiteTaskerQueue queue = createQueue(SiteTaskerQueue.WaitStrategy.PARK);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        final int count = SiteTaskerQueue.SEGMENT_SIZE * 3 + 7;
+        int taken = 0;
+        for (int ii = 0; ii < count; ii++) {
+            queue.offer(new NumberedTask(0, ii));
+            // Interleave takes so the consumer crosses segments both behind and at the tail
+            if (ii % 3 == 0) {
+                assertEquals(taken++, ((NumberedTask)queue.take()).m_number);
+            }
+        }
+        assertFalse(queue.isEmpty());
+        while (taken < count) {
+            assertEquals(taken++, ((NumberedTask)queue.poll()).m_number);
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testBatchedTake() throws Exception {
+        SiteTaskerQueue queue = createQueue(SiteTaskerQueue.WaitStrategy.PARK);
+        for (int ii = 0; ii < 10; ii++) {
+            queue.offer(new NumberedTask(0, ii));
+        }
+
+        SiteTasker batch[] = new SiteTasker[4];
+        assertEquals(4, queue.take(batch));
+        for (int ii = 0; ii < 4; ii++) {
+            assertEquals(ii, ((NumberedTask)batch[ii]).m_number);
+        }
+        assertEquals(4, queue.drainTo(batch));
+        assertEquals(2, queue.take(batch));
+        assertEquals(8, ((NumberedTask)batch[0]).m_number);
+        assertEquals(9, ((NumberedTask)batch[1]).m_number);
+        assertEquals(0, queue.drainTo(batch));
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testParkedConsumerIsWoken() throws Exception {
+        for (SiteTaskerQueue.WaitStrategy waitStrategy : SiteTaskerQueue.WaitStrategy.values()) {
+            final SiteTaskerQueue queue = createQueue(waitStrategy);
+            final AtomicReference<SiteTasker> taken = new AtomicReference<SiteTasker>();
+            Thread consumer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        taken.set(queue.take());
+                    } catch (InterruptedException e) {}
+                }
+            };
+            consumer.start();
+            Thread.sleep(50);
+            NumberedTask task = new NumberedTask(0, 0);
+            queue.offer(task);
+            consumer.join(10000);
+            assertFalse(consumer.isAlive());
+            assertSame(task, taken.get());
+        }
+    }
+
+    public void testInterruptedTake() throws Exception {
+        final SiteTaskerQueue queue = createQueue(SiteTaskerQueue.WaitStrategy.PARK);
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.take(new SiteTasker[8]);
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        };
+        consumer.start();
+        Thread.sleep(50);
+        consumer.interrupt();
+        consumer.join(10000);
+        assertFalse(consumer.isAlive());
+        assertTrue(thrown.get() instanceof InterruptedException);
+    }
+
+    public void testMultipleProducers() throws Exception {
+        final SiteTaskerQueue queue = createQueue(SiteTaskerQueue.WaitStrategy.PARK);
+        final int producers = 4;
+        final int perProducer = SiteTaskerQueue.SEGMENT_SIZE * 20;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int pp = 0; pp < producers; pp++) {
+            final int producer = pp;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int ii = 0; ii < perProducer; ii++) {
+                        queue.offer(new NumberedTask(producer, ii));
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+
+        // Every producer's tasks come out in the order that producer offered them
+        int next[] = new int[producers];
+        SiteTasker batch[] = new SiteTasker[16];
+        int remaining = producers * perProducer;
+        while (remaining > 0) {
+            int count = queue.take(batch);
+            for (int ii = 0; ii < count; ii++) {
+                NumberedTask task = (NumberedTask)batch[ii];
+                assertEquals(next[task.m_producer]++, task.m_number);
+            }
+            remaining -= count;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+}
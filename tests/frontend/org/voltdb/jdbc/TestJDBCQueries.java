@@ -24,10 +24,15 @@
 package org.voltdb.jdbc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.sql.BatchUpdateException;
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.DriverManager;
@@ -414,6 +419,145 @@ public class TestJDBCQueries {
         }
     }
 
+    @Test
+    public void testPipelinedQueryBatch() throws Exception
+    {
+        // Calls routed to a partition are submitted without waiting for each other
+        CallableStatement insert = conn.prepareCall("{call VOTES.insert(?, ?, ?)}");
+        for (int i = 0; i < 5000; i++) {
+            insert.setLong(1, 5085550000L + i);
+            insert.setString(2, "MA");
+            insert.setInt(3, i % 6);
+            insert.addBatch();
+        }
+        int[] resultCodes = insert.executeBatch();
+        assertEquals(5000, resultCodes.length);
+        for (int resultCode : resultCodes) {
+            assertEquals(1, resultCode);
+        }
+        assertEquals(5000, insert.getUpdateCount());
+
+        // So are prepared inserts of every column, they are sent as VOTES.insert
+        for (String sql : new String[] {"insert into votes values (?, ?, ?)",
+                "insert into votes (phone_number, state, contestant_number) values (?, ?, ?)"}) {
+            PreparedStatement prepared = conn.prepareStatement(sql);
+            for (int i = 0; i < 5000; i++) {
+                prepared.setLong(1, 7815550000L + i);
+                prepared.setString(2, "NH");
+                prepared.setInt(3, i % 6);
+                prepared.addBatch();
+            }
+            resultCodes = prepared.executeBatch();
+            assertEquals(5000, resultCodes.length);
+            for (int resultCode : resultCodes) {
+                assertEquals(1, resultCode);
+            }
+            ResultSet rs = conn.createStatement().executeQuery("select count(*) from votes where state = 'NH'");
+            assertTrue(rs.next());
+            assertEquals(5000, rs.getLong(1));
+            conn.createStatement().execute("delete from votes where state = 'NH'");
+        }
+
+        // Ad hoc statements aren't routed, each one waits for the statements before it
+        Statement mixed = conn.createStatement();
+        mixed.addBatch("insert into votes values (6175550000, 'MA', 1)");
+        mixed.addBatch("update votes set state = 'NH' where state = 'MA'");
+        mixed.addBatch("insert into votes values (6175550001, 'MA', 1)");
+        resultCodes = mixed.executeBatch();
+        assertEquals(1, resultCodes[0]);
+        assertEquals(5001, resultCodes[1]);
+        assertEquals(1, resultCodes[2]);
+
+        // A failed insert is reported with the statements that ran before it
+        PreparedStatement duplicate = conn.prepareStatement("insert into contestants values (?, ?)");
+        for (int i : new int[] {1000, 1001, 1000}) {
+            duplicate.setInt(1, i);
+            duplicate.setString(2, "Contestant " + i);
+            duplicate.addBatch();
+        }
+        try {
+            duplicate.executeBatch();
+            fail("Duplicate key in batch should have failed");
+        }
+        catch (BatchUpdateException e) {
+            int[] counts = e.getUpdateCounts();
+            assertEquals(3, counts.length);
+            assertEquals(1, counts[0]);
+            assertEquals(1, counts[1]);
+            assertEquals(Statement.EXECUTE_FAILED, counts[2]);
+        }
+        finally {
+            conn.createStatement().execute("delete from votes");
+            conn.createStatement().execute("delete from contestants where contestant_number >= 1000");
+        }
+    }
+
+    @Test
+    public void testPagedQueries() throws Exception
+    {
+        // CONTESTANTS is ordered by its primary key, read 11 rows in pages of 3
+        PreparedStatement insert = conn.prepareStatement("insert into contestants values (?, ?)");
+        for (int i = 2000; i < 2011; i++) {
+            insert.setInt(1, i);
+            insert.setString(2, "name " + i);
+            insert.execute();
+        }
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.setFetchSize(3);
+            ResultSet rs = stmt.executeQuery(
+                    "select * from contestants where contestant_number >= 2000 order by contestant_number;");
+            assertEquals(ResultSet.TYPE_FORWARD_ONLY, rs.getType());
+            assertNotNull(stmt.getWarnings());
+            assertTrue(rs.isBeforeFirst());
+            for (int i = 0; i < 11; i++) {
+                assertTrue(rs.next());
+                assertEquals(2000 + i, rs.getInt(1));
+                assertEquals("name " + (2000 + i), rs.getString(2));
+                assertEquals(i + 1, rs.getRow());
+                assertEquals(i == 10, rs.isLast());
+            }
+            assertFalse(rs.next());
+            assertTrue(rs.isAfterLast());
+            try {
+                rs.previous();
+                fail("Paged result set should be forward only");
+            }
+            catch (SQLException e) {}
+            rs.close();
+
+            // Descending with a parameter, a full last page is followed by an empty one
+            PreparedStatement prep = conn.prepareStatement(
+                    "select contestant_name, contestant_number from contestants " +
+                    "where contestant_number > ? order by contestant_number desc");
+            prep.setFetchSize(3);
+            prep.setInt(1, 2004);
+            rs = prep.executeQuery();
+            for (int i = 2010; i > 2004; i--) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(2));
+            }
+            assertTrue(rs.isLast());
+            assertFalse(rs.next());
+
+            // Without an ORDER BY on the primary key the query is read at once
+            stmt.clearWarnings();
+            rs = stmt.executeQuery("select * from contestants where contestant_number >= 2000 " +
+                                   "order by contestant_name;");
+            assertEquals(ResultSet.TYPE_SCROLL_INSENSITIVE, rs.getType());
+            assertNull(stmt.getWarnings());
+            assertTrue(rs.last());
+            assertEquals(11, rs.getRow());
+            rs = stmt.executeQuery("select * from T_INTEGER order by ID;");
+            assertEquals(ResultSet.TYPE_SCROLL_INSENSITIVE, rs.getType());
+            assertTrue(rs.last());
+            assertEquals(3, rs.getRow());
+        }
+        finally {
+            conn.createStatement().execute("delete from contestants where contestant_number >= 2000");
+        }
+    }
+
     @Test
     public void testParameterizedQueries() throws Exception
     {
@@ -145,6 +145,63 @@ public class TestFragmentProgressUpdate extends TestCase {
         assertTrue(m_ee.m_peakMemoryInBytes >= m_ee.m_currMemoryInBytes);
     }
 
+    public void testFragmentGroup() throws Exception {
+        m_ee.loadCatalog( 0, m_catalog.serialize());
+
+        m_warehousedata.clearRowData();
+        for (int i = 0; i < 10; ++i) {
+            m_warehousedata.addRow(i, "name" + i, "st1", "st2", "city", "ST", "zip", 0, 0);
+        }
+        m_ee.loadTable(WAREHOUSE_TABLEID, m_warehousedata, 0, 0, 0, 0, false, false, WRITE_TOKEN);
+
+        Statement selectStmt = m_testProc.getStatements().getIgnoreCase("warehouse_select");
+        PlanFragment selectBottomFrag = null;
+        int i = 0;
+        for (PlanFragment f : selectStmt.getFragments()) {
+            if (i != 0) selectBottomFrag = f;
+            i++;
+        }
+        final long fragId = CatalogUtil.getUniqueIdForFragment(selectBottomFrag);
+        ActivePlanRepository.clear();
+        ActivePlanRepository.addFragmentForTest(
+                fragId,
+                Encoder.decodeBase64AndDecompressToBytes(selectBottomFrag.getPlannodetree()),
+                selectStmt.getSqltext());
+        ParameterSet params = ParameterSet.emptyParameterSet();
+
+        VoltTable[] single = m_ee.executePlanFragments(
+                1,
+                new long[] { fragId },
+                null,
+                new ParameterSet[] { params },
+                new String[] { selectStmt.getSqltext() },
+                3, 3, 2, 42, READ_ONLY_TOKEN);
+
+        // three transactions, the second one runs the fragment twice
+        VoltTable[][] grouped = m_ee.executePlanFragmentGroup(
+                3,
+                new int[] { 1, 2, 1 },
+                new long[] { fragId, fragId, fragId, fragId },
+                new ParameterSet[] { params, params, params, params },
+                new String[] { selectStmt.getSqltext(), selectStmt.getSqltext(),
+                               selectStmt.getSqltext(), selectStmt.getSqltext() },
+                new long[] { 4, 5, 6 },
+                new long[] { 4, 5, 6 },
+                3,
+                new long[] { 43, 44, 45 },
+                new long[] { READ_ONLY_TOKEN, READ_ONLY_TOKEN, READ_ONLY_TOKEN });
+        assertNotNull(grouped);
+        assertEquals(3, grouped.length);
+        assertEquals(1, grouped[0].length);
+        assertEquals(2, grouped[1].length);
+        assertEquals(1, grouped[2].length);
+        for (VoltTable[] txnResults : grouped) {
+            for (VoltTable result : txnResults) {
+                assertTrue(single[0].hasSameContents(result));
+            }
+        }
+    }
+
     @SuppressWarnings("deprecation")
     public void testTwoUpdates() throws Exception {
         m_ee.loadCatalog( 0, m_catalog.serialize());
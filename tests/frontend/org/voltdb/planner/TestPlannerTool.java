@@ -25,12 +25,20 @@ package org.voltdb.planner;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junit.framework.TestCase;
 
 import org.voltdb.CatalogContext;
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
 import org.voltdb.catalog.Catalog;
+import org.voltdb.compiler.AdHocCompilerCache;
 import org.voltdb.compiler.AdHocPlannedStatement;
 import org.voltdb.compiler.PlannerTool;
 import org.voltdb.compiler.VoltProjectBuilder;
@@ -163,4 +171,135 @@ public class TestPlannerTool extends TestCase {
         // would return a Stream Closed error
         m_pt.planSqlForTest("select * from A;");
     }
+
+    public void testConcurrentPlanning() throws Exception
+    {
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema("create table A (id bigint not null, val varchar(20), num integer, primary key(id));" +
+                                 "create table B (id bigint not null, a_id bigint, num integer, primary key(id));" +
+                                 "create index B_A on B (a_id);");
+        builder.addPartitionInfo("A", "id");
+
+        final File jar = new File("testconcurrent-oop.jar");
+        jar.deleteOnExit();
+        builder.compile("testconcurrent-oop.jar");
+        byte[] bytes = MiscUtils.fileToBytes(new File("testconcurrent-oop.jar"));
+        String serializedCatalog = CatalogUtil.getSerializedCatalogStringFromJar(CatalogUtil.loadAndUpgradeCatalogFromJar(bytes).getFirst());
+        Catalog c = new Catalog();
+        c.execute(serializedCatalog);
+        CatalogContext context = new CatalogContext(0, 0, c, bytes, new byte[] {}, 0);
+
+        final String queries[] = new String[] {
+            "select * from A where id = 5;",
+            "select val, count(*) from A group by val order by val;",
+            "select A.val, B.num from A, B where A.id = B.a_id and B.num > 3;",
+            "select max(num) from B where a_id = 7;",
+            "select * from B order by num limit 10;",
+            "update A set num = num + 1 where id = 4;",
+            "delete from B where a_id = 12;",
+            "select S.val from (select val, num from A where num > 2) S where S.num < 9;"
+        };
+
+        // plan every query on its own to know what the concurrent plans should be
+        m_pt = new PlannerTool(context.cluster, context.database, context.getCatalogHash());
+        final AdHocPlannedStatement expected[] = new AdHocPlannedStatement[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            expected[i] = m_pt.planSqlForTest(queries[i]);
+        }
+
+        // start from an empty plan cache so the threads really plan
+        AdHocCompilerCache.clearHashCache();
+        final PlannerTool pt = new PlannerTool(context.cluster, context.database, context.getCatalogHash());
+        final int threadCount = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        ExecutorService es = Executors.newFixedThreadPool(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            results.add(es.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    barrier.await();
+                    for (int i = 0; i < queries.length; i++) {
+                        final int q = (i + offset) % queries.length;
+                        if (!expected[q].equals(pt.planSqlForTest(queries[q]))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        es.shutdown();
+        assertTrue(pt.getSessionCount() >= 1);
+        assertTrue(pt.getSessionCount() <= threadCount);
+    }
+
+    public void testConcurrentIndexLimitPlanning() throws Exception
+    {
+        // MIN/MAX over an indexed column is rewritten by a micro optimization that looks
+        // the scanned table up in the parsed statement, give every table its own index
+        final int tableCount = 4;
+        StringBuilder schema = new StringBuilder();
+        for (int t = 0; t < tableCount; t++) {
+            schema.append("create table T" + t + " (id bigint not null, c" + t + " integer, primary key(id));");
+            schema.append("create index T" + t + "_IDX on T" + t + " (c" + t + ");");
+        }
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema(schema.toString());
+
+        final File jar = new File("testconcurrentlimit-oop.jar");
+        jar.deleteOnExit();
+        builder.compile("testconcurrentlimit-oop.jar");
+        byte[] bytes = MiscUtils.fileToBytes(new File("testconcurrentlimit-oop.jar"));
+        String serializedCatalog = CatalogUtil.getSerializedCatalogStringFromJar(CatalogUtil.loadAndUpgradeCatalogFromJar(bytes).getFirst());
+        Catalog c = new Catalog();
+        c.execute(serializedCatalog);
+        CatalogContext context = new CatalogContext(0, 0, c, bytes, new byte[] {}, 0);
+
+        final PlannerTool pt = new PlannerTool(context.cluster, context.database, context.getCatalogHash());
+        final String queries[] = new String[tableCount * 2];
+        final String expected[] = new String[queries.length];
+        for (int t = 0; t < tableCount; t++) {
+            queries[t * 2] = "select min(c" + t + ") from T" + t + ";";
+            queries[t * 2 + 1] = "select max(c" + t + ") from T" + t + ";";
+        }
+        for (int i = 0; i < queries.length; i++) {
+            // planSqlCore skips the plan cache, so every call runs the optimizations
+            expected[i] = pt.planSqlCore(queries[i], StatementPartitioning.inferPartitioning())
+                    .rootPlanGraph.toExplainPlanString();
+            assertTrue(expected[i], expected[i].contains("T" + (i / 2) + "_IDX"));
+            assertTrue(expected[i], expected[i].contains("LIMIT 1"));
+        }
+
+        final int threadCount = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        final List<Future<String>> results = new ArrayList<Future<String>>();
+        ExecutorService es = Executors.newFixedThreadPool(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            results.add(es.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    barrier.await();
+                    for (int i = 0; i < 2000; i++) {
+                        final int q = (i + offset) % queries.length;
+                        String plan = pt.planSqlCore(queries[q], StatementPartitioning.inferPartitioning())
+                                .rootPlanGraph.toExplainPlanString();
+                        if (!expected[q].equals(plan)) {
+                            return queries[q] + " planned as " + plan;
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<String> result : results) {
+            assertNull(result.get());
+        }
+        es.shutdown();
+    }
 }
@@ -105,6 +105,61 @@ public class TestLoadingSuite extends RegressionSuite {
             assertEquals(2, countPartitionedRows(client));
     }
 
+    public void testSinglePartitionBlockLoad() throws Exception {
+
+        Client client = getClient();
+        VoltTable table; ClientResponse r;
+
+        // the column types match the table, so the rows are loaded as one block
+        VoltTable template = new VoltTable(new ColumnInfo[] {
+                new ColumnInfo("ival", VoltType.INTEGER),
+                new ColumnInfo("pval", VoltType.INTEGER),
+                new ColumnInfo("bval", VoltType.TINYINT),
+                new ColumnInfo("sval", VoltType.STRING),
+                new ColumnInfo("dval", VoltType.FLOAT)
+        });
+
+        // test simple success
+        table = template.clone(100);
+        for (int i = 0; i < 50; i++) {
+            table.addRow(i, 1, 1, Integer.toString(i), 1.0);
+        }
+        r = client.callProcedure("@LoadSinglepartitionTable", TheHashinator.valueToBytes(1),
+                "PARTITIONED", table);
+        assertEquals(ClientResponse.SUCCESS, r.getStatus());
+        assertEquals(50, r.getResults()[0].asScalarLong());
+        assertEquals(50, countPartitionedRows(client));
+
+        // test rollback of the whole block for a constraint
+        table = template.clone(100);
+        table.addRow(100, 1, 3, "3", 3.0);
+        table.addRow(100, 1, 3, "3", 3.0);
+        try {
+            r = client.callProcedure("@LoadSinglepartitionTable", TheHashinator.valueToBytes(1),
+                    "PARTITIONED", table);
+            fail(); // prev stmt should throw exception
+        } catch (ProcCallException e) {}
+        if (!isHSQL()) {
+            assertEquals(50, countPartitionedRows(client));
+        }
+
+        // test rejection of rows that belong to another partition
+        VoltTable counts = client.callProcedure("@Statistics", "PARTITIONCOUNT", 0).getResults()[0];
+        counts.advanceRow();
+        if (!isHSQL() && counts.getLong("PARTITION_COUNT") > 1) {
+            table = template.clone(100);
+            for (int i = 0; i < 100; i++) {
+                table.addRow(200 + i, i, 1, "1", 1.0);
+            }
+            try {
+                r = client.callProcedure("@LoadSinglepartitionTable", TheHashinator.valueToBytes(1),
+                        "PARTITIONED", table);
+                fail(); // prev stmt should throw exception
+            } catch (ProcCallException e) {}
+            assertEquals(50, countPartitionedRows(client));
+        }
+    }
+
     public void testMultiPartitionLoad() throws Exception {
 
         Client client = getClient();
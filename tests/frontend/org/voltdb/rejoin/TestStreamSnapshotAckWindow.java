@@ -0,0 +1,87 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.rejoin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestStreamSnapshotAckWindow {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static void sendAndAck(StreamSnapshotAckWindow window, int blocks, long latency) {
+        for (int ii = 0; ii < blocks; ii++) {
+            assertTrue(window.tryAcquire());
+            window.release(latency);
+        }
+    }
+
+    @Test
+    public void testWindowLimitsBlocksInFlight() {
+        final StreamSnapshotAckWindow window = new StreamSnapshotAckWindow(2, 2);
+        assertTrue(window.tryAcquire());
+        assertTrue(window.tryAcquire());
+        assertFalse(window.tryAcquire());
+
+        // control messages bypass the window but still count
+        window.acquire();
+        assertEquals(3, window.getInFlight());
+        window.release(FAST);
+        assertFalse(window.tryAcquire());
+        window.release(FAST);
+        assertTrue(window.tryAcquire());
+        assertFalse(window.tryAcquire());
+    }
+
+    @Test
+    public void testGrowsWhileReceiverKeepsUp() {
+        final StreamSnapshotAckWindow window = new StreamSnapshotAckWindow(2, 8);
+        sendAndAck(window, 1000, FAST);
+        assertEquals(8, window.getWindow());
+        assertEquals(FAST, window.getAverageLatencyNanos());
+    }
+
+    @Test
+    public void testShrinksWhenAcksSlowDown() {
+        final StreamSnapshotAckWindow window = new StreamSnapshotAckWindow(2, 8);
+        sendAndAck(window, 1000, FAST);
+        assertEquals(8, window.getWindow());
+
+        // halved at the end of the current window of acks
+        sendAndAck(window, 8, SLOW);
+        assertTrue(window.getWindow() < 8);
+        sendAndAck(window, 100, SLOW);
+        assertEquals(2, window.getWindow());
+
+        // recovers once the receiver catches up
+        sendAndAck(window, 100, FAST);
+        assertEquals(8, window.getWindow());
+    }
+}
@@ -0,0 +1,107 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.rejoin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.messaging.MockMailbox;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.Pair;
+import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.VoltDB;
+import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.FixedDBBPool;
+
+public class TestStreamSnapshotDataReceiver {
+
+    private MockMailbox m_mb;
+    private FixedDBBPool m_pool;
+    private StreamSnapshotDataReceiver m_receiver;
+    private Thread m_thread;
+
+    @Before
+    public void setUp() {
+        VoltDB.ignoreCrash = true;
+        VoltDB.wasCrashCalled = false;
+        m_mb = new MockMailbox();
+        m_pool = new FixedDBBPool();
+        m_pool.allocate(SnapshotSiteProcessor.m_snapshotBufferLength, 2);
+        m_pool.allocate(SnapshotSiteProcessor.m_snapshotBufferCompressedLen, 2);
+        m_receiver = new StreamSnapshotDataReceiver(m_mb, m_pool);
+        m_thread = new Thread(m_receiver);
+        m_thread.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        m_receiver.close();
+        m_thread.interrupt();
+        m_thread.join();
+        m_pool.clear();
+        VoltDB.ignoreCrash = false;
+        VoltDB.wasCrashCalled = false;
+    }
+
+    @Test
+    public void testDecompressesBlocks() throws Exception {
+        byte[] data = new byte[4096];
+        Arrays.fill(data, (byte) 7);
+        m_mb.deliver(new RejoinDataMessage(3, CompressionService.compressBytes(data), true));
+        m_mb.deliver(new RejoinDataMessage(4, data, false));
+
+        for (long targetId = 3; targetId <= 4; targetId++) {
+            Pair<Long, Pair<Long, BBContainer>> block = m_receiver.take();
+            assertEquals(targetId, block.getSecond().getFirst().longValue());
+            BBContainer container = block.getSecond().getSecond();
+            ByteBuffer buf = container.b();
+            byte[] received = new byte[buf.remaining()];
+            buf.get(received);
+            container.discard();
+            assertArrayEquals(data, received);
+        }
+    }
+
+    @Test
+    public void testCorruptBlockCrashes() throws Exception {
+        byte[] garbage = new byte[64];
+        Arrays.fill(garbage, (byte) 0xff);
+        m_mb.deliver(new RejoinDataMessage(3, garbage, true));
+
+        // the block can't be dropped, the source would wait for its ack forever
+        try {
+            m_receiver.take();
+            fail("A block that failed to decompress was not reported");
+        } catch (AssertionError expected) {}
+        assertTrue(VoltDB.wasCrashCalled);
+    }
+}
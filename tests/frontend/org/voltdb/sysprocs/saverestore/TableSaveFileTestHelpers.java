@@ -0,0 +1,170 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop_voltpatches.util.PureJavaCrc32;
+import org.apache.hadoop_voltpatches.util.PureJavaCrc32C;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONStringer;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.utils.CompressionService;
+
+/**
+ * Writes table save files without a running database. Version 1 files checksum the
+ * uncompressed chunk with CRC32 and store the row count after the rows, version 2 files
+ * checksum the compressed chunk with CRC32C and store the row count before the rows.
+ */
+public class TableSaveFileTestHelpers {
+
+    public static final int VERSION_1[] = new int[] { 0, 0, 0, 1 };
+    public static final int VERSION_2[] = new int[] { 0, 0, 0, 2 };
+
+    /**
+     * Rows of a chunk and the partition they belong to
+     */
+    public static class Chunk {
+        public final int partitionId;
+        public final VoltTable rows;
+
+        public Chunk(int partitionId, VoltTable rows) {
+            this.partitionId = partitionId;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Write a completed save file of the given chunks.
+     *
+     * @param partitionIds Partitions in the file, ignored for a replicated table
+     * @return Offset in the file and length of the compressed payload of each chunk
+     */
+    public static List<long[]> writeSaveFile(
+            File file,
+            int version[],
+            String tableName,
+            boolean isReplicated,
+            int partitionIds[],
+            int totalPartitions,
+            List<Chunk> chunks) throws IOException {
+        final byte schemaBytes[] = PrivateVoltTableFactory.getSchemaBytes(chunks.get(0).rows.clone(0));
+        final boolean isVersion2 = version[3] >= 2;
+        final byte jsonBytes[];
+        try {
+            JSONStringer stringer = new JSONStringer();
+            stringer.object();
+            stringer.key("txnId").value(1L);
+            stringer.key("hostId").value(0);
+            stringer.key("hostname").value("localhost");
+            stringer.key("clusterName").value("cluster");
+            stringer.key("databaseName").value("database");
+            stringer.key("tableName").value(tableName.toUpperCase());
+            stringer.key("isReplicated").value(isReplicated);
+            stringer.key("isCompressed").value(true);
+            stringer.key("checksumType").value(isVersion2 ? "CRC32C" : "CRC32");
+            stringer.key("timestamp").value(System.currentTimeMillis());
+            if (!isReplicated) {
+                stringer.key("partitionIds").array();
+                for (int partitionId : partitionIds) {
+                    stringer.value(partitionId);
+                }
+                stringer.endArray();
+                stringer.key("numPartitions").value(totalPartitions);
+            }
+            stringer.endObject();
+            jsonBytes = stringer.toString().getBytes("UTF-8");
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(8 + 1 + 16 + 4 + jsonBytes.length + schemaBytes.length);
+        header.putInt(0);//CRC
+        header.putInt(1 + 16 + 4 + jsonBytes.length);
+        header.put((byte)1);//Completed
+        for (int ii = 0; ii < 4; ii++) {
+            header.putInt(version[ii]);
+        }
+        header.putInt(jsonBytes.length);
+        header.put(jsonBytes);
+        header.put(schemaBytes);
+        final PureJavaCrc32 headerCRC = new PureJavaCrc32();
+        headerCRC.update(header.array(), 4, header.capacity() - 4);
+        header.putInt(0, (int)headerCRC.getValue());
+
+        final List<long[]> payloads = new ArrayList<long[]>();
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(header.array());
+            long offset = header.capacity();
+            for (Chunk chunk : chunks) {
+                //Row count followed by the rows
+                final ByteBuffer table = chunk.rows.getBuffer();
+                table.position(schemaBytes.length);
+                final byte tuples[] = new byte[table.remaining()];
+                table.get(tuples);
+
+                final ByteBuffer chunkHeader = ByteBuffer.allocate(16);
+                chunkHeader.putInt(4, chunk.partitionId);
+                final byte payload[];
+                if (isVersion2) {
+                    payload = CompressionService.compressBytes(tuples);
+                    chunkHeader.putInt(0, payload.length);
+                    final PureJavaCrc32C crc = new PureJavaCrc32C();
+                    crc.update(chunkHeader.array(), 0, 8);
+                    chunkHeader.putInt(8, (int)crc.getValue());
+                    crc.reset();
+                    crc.update(payload, 0, payload.length);
+                    chunkHeader.putInt(12, (int)crc.getValue());
+                } else {
+                    //The row count goes after the rows
+                    final byte rowsThenCount[] = new byte[tuples.length];
+                    System.arraycopy(tuples, 4, rowsThenCount, 0, tuples.length - 4);
+                    System.arraycopy(tuples, 0, rowsThenCount, tuples.length - 4, 4);
+                    payload = CompressionService.compressBytes(rowsThenCount);
+                    chunkHeader.putInt(0, payload.length);
+                    final PureJavaCrc32 crc = new PureJavaCrc32();
+                    crc.update(chunkHeader.array(), 4, 4);
+                    chunkHeader.putInt(8, (int)crc.getValue());
+                    crc.reset();
+                    crc.update(rowsThenCount, 0, rowsThenCount.length);
+                    chunkHeader.putInt(12, (int)crc.getValue());
+                }
+                fos.write(chunkHeader.array());
+                fos.write(payload);
+                payloads.add(new long[] { offset + 16, payload.length });
+                offset += 16 + payload.length;
+            }
+        } finally {
+            fos.close();
+        }
+        return payloads;
+    }
+}
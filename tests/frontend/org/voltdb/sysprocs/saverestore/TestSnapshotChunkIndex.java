@@ -0,0 +1,190 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSnapshotChunkIndex {
+
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name"), "chunk_index");
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        TEST_DIR.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (TEST_DIR.exists()) {
+            for (File f : TEST_DIR.listFiles()) {
+                f.delete();
+            }
+            TEST_DIR.delete();
+        }
+    }
+
+    private static byte[] digestOf(int value) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(1024);
+        while (buf.hasRemaining()) {
+            buf.putInt(value);
+        }
+        buf.flip();
+        return SnapshotChunkIndex.digest(buf);
+    }
+
+    @Test
+    public void testReferencesChainToStoredChunk() throws Exception {
+        File fullFile = new File(TEST_DIR, "full-TABLE-host_0.vpt");
+        SnapshotChunkIndex full = SnapshotChunkIndex.create(fullFile, null);
+        full.putStored(0, 0, digestOf(1), 100);
+        full.putStored(0, 1, digestOf(2), 200);
+        full.putStored(1, 0, digestOf(3), 300);
+        full.write(SnapshotChunkIndex.indexFileFor(fullFile));
+
+        SnapshotChunkIndex base = SnapshotChunkIndex.read(SnapshotChunkIndex.indexFileFor(fullFile));
+        assertEquals(Arrays.asList(fullFile.getName()), base.getSources());
+        assertEquals(3, base.size());
+
+        File incrFile = new File(TEST_DIR, "incr-TABLE-host_0.vpt");
+        SnapshotChunkIndex incr = SnapshotChunkIndex.create(incrFile, base);
+        assertEquals(Arrays.asList(incrFile.getName(), fullFile.getName()), incr.getSources());
+
+        // Same position and content is unchanged, anything else changed
+        assertNotNull(base.getUnchanged(0, 0, digestOf(1)));
+        assertNull(base.getUnchanged(0, 0, digestOf(2)));
+        assertNull(base.getUnchanged(0, 2, digestOf(1)));
+        assertNull(base.getUnchanged(2, 0, digestOf(1)));
+
+        incr.putReference(0, 0, base.getUnchanged(0, 0, digestOf(1)));
+        incr.putStored(0, 1, digestOf(4), 50);
+        incr.write(SnapshotChunkIndex.indexFileFor(incrFile));
+
+        // The next incremental refers directly to the file that stores each chunk
+        SnapshotChunkIndex second = SnapshotChunkIndex.create(
+                new File(TEST_DIR, "incr2-TABLE-host_0.vpt"),
+                SnapshotChunkIndex.read(SnapshotChunkIndex.indexFileFor(incrFile)));
+        assertNull(second.get(0, 0));
+        SnapshotChunkIndex incrBase = SnapshotChunkIndex.read(SnapshotChunkIndex.indexFileFor(incrFile));
+        second.putReference(0, 0, incrBase.get(0, 0));
+        second.putReference(0, 1, incrBase.get(0, 1));
+        assertEquals(fullFile.getName(), second.getSources().get(second.get(0, 0).m_source));
+        assertEquals(100, second.get(0, 0).m_offset);
+        assertEquals(incrFile.getName(), second.getSources().get(second.get(0, 1).m_source));
+        assertEquals(50, second.get(0, 1).m_offset);
+    }
+
+    @Test
+    public void testBaseMustShareSnapshotDirectory() throws Exception {
+        // Chunk sources are resolved against the directory of the snapshot being read
+        assertTrue(NativeSnapshotWritePlan.isSameDirectory(TEST_DIR.getPath(), TEST_DIR.getPath() + "/"));
+        assertTrue(NativeSnapshotWritePlan.isSameDirectory(
+                TEST_DIR.getPath(), new File(TEST_DIR, "../" + TEST_DIR.getName()).getPath()));
+        assertFalse(NativeSnapshotWritePlan.isSameDirectory(
+                TEST_DIR.getPath(), TEST_DIR.getParentFile().getPath()));
+    }
+
+    /*
+     * Pack length prefixed tuples into fixed size chunks the way the COW scan fills
+     * snapshot buffers, a tuple that doesn't fit starts the next chunk
+     */
+    private static List<byte[]> chunkDigests(List<byte[]> tuples, int chunkSize) {
+        List<byte[]> digests = new ArrayList<byte[]>();
+        ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+        for (byte tuple[] : tuples) {
+            if (chunk.remaining() < tuple.length + 4) {
+                chunk.flip();
+                digests.add(SnapshotChunkIndex.digest(chunk));
+                chunk.clear();
+            }
+            chunk.putInt(tuple.length);
+            chunk.put(tuple);
+        }
+        chunk.flip();
+        digests.add(SnapshotChunkIndex.digest(chunk));
+        return digests;
+    }
+
+    private static byte[] tuple(int id) {
+        byte tuple[] = new byte[36];
+        Arrays.fill(tuple, (byte) id);
+        return tuple;
+    }
+
+    private static int unchangedChunks(SnapshotChunkIndex base, List<byte[]> digests) {
+        int unchanged = 0;
+        for (int ii = 0; ii < digests.size(); ii++) {
+            if (base.getUnchanged(0, ii, digests.get(ii)) != null) {
+                unchanged++;
+            }
+        }
+        return unchanged;
+    }
+
+    @Test
+    public void testChunksMatchByPosition() throws Exception {
+        // 12 tuples per chunk, 9 chunks with the last one partly filled
+        List<byte[]> tuples = new ArrayList<byte[]>();
+        for (int ii = 0; ii < 100; ii++) {
+            tuples.add(tuple(ii));
+        }
+        List<byte[]> digests = chunkDigests(tuples, 480);
+        assertEquals(9, digests.size());
+        SnapshotChunkIndex base = SnapshotChunkIndex.create(new File(TEST_DIR, "full-TABLE-host_0.vpt"), null);
+        for (int ii = 0; ii < digests.size(); ii++) {
+            base.putStored(0, ii, digests.get(ii), ii * 1000);
+        }
+
+        // Appending rows only rewrites the last chunk
+        List<byte[]> appended = new ArrayList<byte[]>(tuples);
+        for (int ii = 100; ii < 120; ii++) {
+            appended.add(tuple(ii));
+        }
+        assertEquals(8, unchangedChunks(base, chunkDigests(appended, 480)));
+
+        // Updating a row in place only rewrites its chunk
+        List<byte[]> updated = new ArrayList<byte[]>(tuples);
+        updated.set(50, tuple(-1));
+        assertEquals(8, unchangedChunks(base, chunkDigests(updated, 480)));
+
+        // Deleting a row shifts every later chunk, which are all written again
+        List<byte[]> deleted = new ArrayList<byte[]>(tuples);
+        deleted.remove(15);
+        assertEquals(1, unchangedChunks(base, chunkDigests(deleted, 480)));
+    }
+}
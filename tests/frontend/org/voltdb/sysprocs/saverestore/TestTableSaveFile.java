@@ -0,0 +1,267 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.sysprocs.saverestore.TableSaveFileTestHelpers.Chunk;
+
+public class TestTableSaveFile {
+
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name"), "table_save_file");
+    private final static int ROWS_PER_CHUNK = 100;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        TEST_DIR.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (TEST_DIR.exists()) {
+            for (File f : TEST_DIR.listFiles()) {
+                f.delete();
+            }
+            TEST_DIR.delete();
+        }
+    }
+
+    /*
+     * Chunks rotating through the partitions, the IDs of the rows identify the chunk
+     */
+    private static List<Chunk> makeChunks(int count, int partitionIds[]) {
+        final List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int ii = 0; ii < count; ii++) {
+            final VoltTable rows = new VoltTable(
+                    new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                    new VoltTable.ColumnInfo("NAME", VoltType.STRING));
+            for (int jj = 0; jj < ROWS_PER_CHUNK; jj++) {
+                final long id = (long)ii * ROWS_PER_CHUNK + jj;
+                rows.addRow(id, jj % 10 == 0 ? null : "name " + id);
+            }
+            chunks.add(new Chunk(partitionIds[ii % partitionIds.length], rows));
+        }
+        return chunks;
+    }
+
+    private static TableSaveFile open(File file, int readAhead, Integer partitions[],
+            boolean continueOnCorruptedChunk) throws IOException {
+        return new TableSaveFile(new FileInputStream(file), readAhead, partitions, continueOnCorruptedChunk);
+    }
+
+    /*
+     * Read the rest of the file, every chunk must match the chunk it was written from.
+     * Returns the indexes of the chunks in the order they were read.
+     */
+    private static List<Integer> readChunks(TableSaveFile saveFile, List<Chunk> written) throws IOException {
+        final List<Integer> indexes = new ArrayList<Integer>();
+        while (saveFile.hasMoreChunks()) {
+            final BBContainer c = saveFile.getNextChunk();
+            if (c == null) {
+                break;
+            }
+            try {
+                final VoltTable t = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b(), true);
+                assertEquals(ROWS_PER_CHUNK, t.getRowCount());
+                final int index = (int)(t.fetchRow(0).getLong(0) / ROWS_PER_CHUNK);
+                final VoltTable expected = written.get(index).rows;
+                assertEquals(written.get(index).partitionId, ((TableSaveFile.Container)c).partitionId);
+                for (int row = 0; row < ROWS_PER_CHUNK; row++) {
+                    assertEquals(expected.fetchRow(row).getLong(0), t.fetchRow(row).getLong(0));
+                    assertEquals(expected.fetchRow(row).getString(1), t.fetchRow(row).getString(1));
+                }
+                indexes.add(index);
+            } finally {
+                c.discard();
+            }
+        }
+        return indexes;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        final List<Integer> range = new ArrayList<Integer>();
+        for (int ii = from; ii < to; ii++) {
+            range.add(ii);
+        }
+        return range;
+    }
+
+    private static void corruptLastPayloadByte(File file, long payload[]) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            //The start of the payload holds the uncompressed length, corrupt the data instead
+            final long position = payload[0] + payload[1] - 1;
+            raf.seek(position);
+            final int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testVersion2ChunksInFileOrder() throws Exception {
+        final File file = new File(TEST_DIR, "T-host_0.vpt");
+        final int partitionIds[] = new int[] { 0, 1, 2 };
+        final List<Chunk> chunks = makeChunks(300, partitionIds);
+        TableSaveFileTestHelpers.writeSaveFile(file, TableSaveFileTestHelpers.VERSION_2, "T", false,
+                partitionIds, 3, chunks);
+
+        // Many chunks are decompressed at once, they still come out in file order
+        TableSaveFile saveFile = open(file, 32, null, false);
+        try {
+            assertTrue(saveFile.getCompleted());
+            assertFalse(saveFile.isReplicated());
+            assertEquals("T", saveFile.getTableName());
+            assertTrue(Arrays.equals(partitionIds, saveFile.getPartitionIds()));
+            assertEquals(range(0, chunks.size()), readChunks(saveFile, chunks));
+            assertEquals(chunks.size(), saveFile.getChunksRead());
+            assertTrue(saveFile.getCorruptedPartitionIds().isEmpty());
+        } finally {
+            saveFile.close();
+        }
+
+        // Chunks of other partitions are skipped
+        saveFile = open(file, 32, new Integer[] { 1 }, false);
+        try {
+            final List<Integer> expected = new ArrayList<Integer>();
+            for (int ii = 1; ii < chunks.size(); ii += partitionIds.length) {
+                expected.add(ii);
+            }
+            assertEquals(expected, readChunks(saveFile, chunks));
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    @Test
+    public void testVersion1Chunks() throws Exception {
+        final File file = new File(TEST_DIR, "T-host_0.vpt");
+        final List<Chunk> chunks = makeChunks(50, new int[] { 0 });
+        TableSaveFileTestHelpers.writeSaveFile(file, TableSaveFileTestHelpers.VERSION_1, "T", true,
+                null, 1, chunks);
+
+        final TableSaveFile saveFile = open(file, 4, null, false);
+        try {
+            assertTrue(saveFile.getCompleted());
+            assertTrue(saveFile.isReplicated());
+            assertEquals(range(0, chunks.size()), readChunks(saveFile, chunks));
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    @Test
+    public void testCorruptedChunk() throws Exception {
+        final File file = new File(TEST_DIR, "T-host_0.vpt");
+        final int partitionIds[] = new int[] { 0, 1 };
+        final List<Chunk> chunks = makeChunks(40, partitionIds);
+        final List<long[]> payloads = TableSaveFileTestHelpers.writeSaveFile(
+                file, TableSaveFileTestHelpers.VERSION_2, "T", false, partitionIds, 2, chunks);
+        corruptLastPayloadByte(file, payloads.get(17));
+
+        // Some of the chunks before the corrupted one are returned in order, then reading fails
+        TableSaveFile saveFile = open(file, 16, null, false);
+        final List<Integer> read = new ArrayList<Integer>();
+        try {
+            while (saveFile.hasMoreChunks()) {
+                final BBContainer c = saveFile.getNextChunk();
+                if (c == null) {
+                    break;
+                }
+                read.add((int)(PrivateVoltTableFactory.createVoltTableFromBuffer(c.b(), true)
+                        .fetchRow(0).getLong(0) / ROWS_PER_CHUNK));
+                c.discard();
+            }
+            fail("Reading a corrupted chunk should fail");
+        } catch (IOException expected) {
+            assertTrue(read.size() <= 17);
+            assertEquals(range(0, read.size()), read);
+            assertTrue(saveFile.getCorruptedPartitionIds().contains(chunks.get(17).partitionId));
+        } finally {
+            saveFile.close();
+        }
+
+        // Or it is skipped and the following chunks are still returned in order
+        saveFile = open(file, 16, null, true);
+        try {
+            final List<Integer> expected = range(0, chunks.size());
+            expected.remove(Integer.valueOf(17));
+            assertEquals(expected, readChunks(saveFile, chunks));
+            assertEquals(Arrays.asList(chunks.get(17).partitionId),
+                    new ArrayList<Integer>(saveFile.getCorruptedPartitionIds()));
+        } finally {
+            saveFile.close();
+        }
+    }
+
+    @Test
+    public void testCloseWithChunksInFlight() throws Exception {
+        final File file = new File(TEST_DIR, "T-host_0.vpt");
+        final List<Chunk> chunks = makeChunks(500, new int[] { 0, 1, 2, 3 });
+        TableSaveFileTestHelpers.writeSaveFile(file, TableSaveFileTestHelpers.VERSION_2, "T", false,
+                new int[] { 0, 1, 2, 3 }, 4, chunks);
+
+        // Closing while chunks are read ahead and being decompressed frees their buffers
+        // once the decompression finished, at any point of the read
+        for (int chunksToRead = 0; chunksToRead < 20; chunksToRead++) {
+            final TableSaveFile saveFile = open(file, 64, null, false);
+            for (int ii = 0; ii < chunksToRead; ii++) {
+                final BBContainer c = saveFile.getNextChunk();
+                assertEquals(ii, PrivateVoltTableFactory.createVoltTableFromBuffer(c.b(), true)
+                        .fetchRow(0).getLong(0) / ROWS_PER_CHUNK);
+                c.discard();
+            }
+            saveFile.close();
+        }
+
+        // The file can still be read in full afterwards
+        final TableSaveFile saveFile = open(file, 64, null, false);
+        try {
+            assertEquals(range(0, chunks.size()), readChunks(saveFile, chunks));
+        } finally {
+            saveFile.close();
+        }
+    }
+}
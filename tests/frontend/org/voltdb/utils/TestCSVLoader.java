@@ -33,7 +33,11 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -185,6 +189,118 @@ public class TestCSVLoader {
         test_Interface(myOptions, myData, invalidLineCnt, validLineCnt );
     }
 
+    @Test
+    public void testParallelParsers() throws Exception
+    {
+        String []myOptions = {
+                "-f" + path_csv,
+                "--reportdir=" + reportDir,
+                "--maxerrors=50",
+                "--skip=1",
+                "--limitrows=100",
+                "--parsers=4",
+                "BlAh"
+        };
+        String currentTime = new TimestampType().toString();
+        String []myData = {
+                "1 ,1,1,11111111,first,1.10,1.11,"+currentTime,
+                "2,2,2,222222,second,3.30,NULL,"+currentTime,
+                "3,3,3,333333, third ,NULL, 3.33,"+currentTime,
+                "4,4,4,444444, \"multi\nline\" ,4.40 ,4.44,"+currentTime,
+                "5,5,5,5555555,  \"abcde\"g, 5.50, 5.55,"+currentTime,
+                "6,6,NULL,666666, sixth, 6.60, 6.66,"+currentTime,
+                "7,NULL,7,7777777, seventh, 7.70, 7.77,"+currentTime,
+                "11, 1,1,\"1,000\",first,1.10,1.11,"+currentTime,
+                //empty line
+                "",
+                //invalid lines below
+                "8, 8",
+                "9, NLL,9,\"1,000\",nine,1.10,1.11,"+currentTime,
+                "10,10,10,10 101 010,second,2.20,2.22"+currentTime,
+                "12,n ull,12,12121212,twelveth,12.12,12.12"
+        };
+        int invalidLineCnt = 4;
+        int validLineCnt = 7;
+        test_Interface(myOptions, myData, invalidLineCnt, validLineCnt );
+    }
+
+    @Test
+    public void testParallelParsersAcrossChunks() throws Exception
+    {
+        // Chunks of a few records so every parser gets many of them
+        final int chunkChars = CSVParallelReader.chunkChars;
+        CSVParallelReader.chunkChars = 256;
+        try {
+            String currentTime = new TimestampType().toString();
+            final int records = 2000;
+            final int limit = 1500;
+            final String multiLine = "a\nb\nc\nd\ne\nf\ng\nh";
+            List<String> myData = new ArrayList<String>();
+            // skipped lines
+            myData.add("clm_integer,clm_tinyint,clm_smallint,clm_bigint,clm_string,clm_decimal,clm_float,clm_timestamp");
+            myData.add("not a record");
+            int line = 3;
+            int validLineCnt = 0;
+            Set<Long> errorLines = new TreeSet<Long>();
+            for (int id = 1; id <= records; id++) {
+                if (id % 97 == 0) {
+                    myData.add(id + ", NLL,1," + id + ",invalid,1.10,1.11," + currentTime);
+                    if (id <= limit) {
+                        errorLines.add((long)line);
+                    }
+                    line++;
+                } else if (id % 7 == 0) {
+                    // the quoted newlines don't end the record, some of these cross the end of a chunk
+                    myData.add(id + ",1,1," + id + ",\"" + multiLine + "\",1.10,1.11," + currentTime);
+                    line += 8;
+                    validLineCnt += id <= limit ? 1 : 0;
+                } else {
+                    myData.add(id + ",1,1," + id + ",row " + id + ",1.10,1.11," + currentTime);
+                    line++;
+                    validLineCnt += id <= limit ? 1 : 0;
+                }
+            }
+            String []myOptions = {
+                    "-f" + path_csv,
+                    "--reportdir=" + reportDir,
+                    "--maxerrors=50",
+                    "--skip=2",
+                    "--limitrows=" + limit,
+                    "--parsers=4",
+                    "BlAh"
+            };
+            test_Interface(myOptions, myData.toArray(new String[0]), errorLines.size(), validLineCnt);
+
+            // Only the records up to the limit are loaded, each one intact
+            VoltTable rows = client.callProcedure("@AdHoc",
+                    "SELECT clm_integer, clm_string FROM BLAH ORDER BY clm_integer;").getResults()[0];
+            while (rows.advanceRow()) {
+                final long id = rows.getLong(0);
+                assertTrue(id <= limit);
+                assertEquals(id % 7 == 0 ? multiLine : "row " + id, rows.getString(1));
+            }
+
+            // Errors report the line of the file the record starts on
+            Set<Long> reportedLines = new TreeSet<Long>();
+            BufferedReader log = new BufferedReader(new FileReader(CSVLoader.pathLogfile));
+            try {
+                final String prefix = "Invalid input on line ";
+                String logLine;
+                while ((logLine = log.readLine()) != null) {
+                    if (logLine.startsWith(prefix)) {
+                        reportedLines.add(Long.valueOf(
+                                logLine.substring(prefix.length(), logLine.indexOf('.', prefix.length()))));
+                    }
+                }
+            } finally {
+                log.close();
+            }
+            assertEquals(errorLines, reportedLines);
+        } finally {
+            CSVParallelReader.chunkChars = chunkChars;
+        }
+    }
+
     //Test -p option where we use just one processor and one line at a time processing of callProcedure.
     @Test
     public void testProcedureOption() throws Exception {
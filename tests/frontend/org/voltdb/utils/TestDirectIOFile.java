@@ -0,0 +1,151 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDirectIOFile {
+
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name"), "direct_io");
+
+    private File m_file;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(DirectIOFile.isSupported());
+        TEST_DIR.mkdirs();
+        m_file = new File(TEST_DIR, "direct_io_test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_file != null) {
+            m_file.delete();
+            TEST_DIR.delete();
+        }
+    }
+
+    private DirectIOFile open() throws IOException {
+        try {
+            return new DirectIOFile(m_file);
+        } catch (IOException e) {
+            // The file system may not support O_DIRECT
+            assumeTrue(false);
+            return null;
+        }
+    }
+
+    @Test
+    public void testUnalignedAppends() throws Exception {
+        DirectIOFile file = open();
+        Random r = new Random(42);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int ii = 0; ii < 200; ii++) {
+            byte bytes[] = new byte[r.nextInt(1024 * 64)];
+            r.nextBytes(bytes);
+            expected.write(bytes);
+            ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+            buf.put(bytes).flip();
+            assertEquals(bytes.length, file.write(buf));
+            assertEquals(expected.size(), file.position());
+        }
+        file.close();
+
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(m_file.toPath()));
+    }
+
+    @Test
+    public void testEmptyAndAlignedFiles() throws Exception {
+        DirectIOFile file = open();
+        file.close();
+        assertEquals(0, m_file.length());
+
+        file = open();
+        ByteBuffer buf = ByteBuffer.allocate(DirectIOFile.ALIGNMENT * 3);
+        while (buf.hasRemaining()) {
+            buf.put((byte)7);
+        }
+        buf.flip();
+        file.write(buf);
+        file.close();
+        assertEquals(DirectIOFile.ALIGNMENT * 3, m_file.length());
+    }
+
+    @Test
+    public void testOpenFilesHoldNoBlocks() throws Exception {
+        // more open files than pooled blocks, appended to in turn from one thread
+        final int fileCount = 64;
+        DirectIOFile files[] = new DirectIOFile[fileCount];
+        ByteArrayOutputStream expected[] = new ByteArrayOutputStream[fileCount];
+        try {
+            for (int ii = 0; ii < fileCount; ii++) {
+                try {
+                    files[ii] = new DirectIOFile(new File(TEST_DIR, "direct_io_test_" + ii));
+                } catch (IOException e) {
+                    assumeTrue(false);
+                }
+                expected[ii] = new ByteArrayOutputStream();
+            }
+            Random r = new Random(42);
+            for (int round = 0; round < 20; round++) {
+                for (int ii = 0; ii < fileCount; ii++) {
+                    byte bytes[] = new byte[r.nextInt(1024 * 16)];
+                    r.nextBytes(bytes);
+                    expected[ii].write(bytes);
+                    files[ii].write(ByteBuffer.wrap(bytes));
+                }
+            }
+            // the unaligned tails stay with the files, the blocks go back once written
+            long deadline = System.currentTimeMillis() + 10000;
+            while (DirectIOFile.blocksInUse() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, DirectIOFile.blocksInUse());
+            for (int ii = 0; ii < fileCount; ii++) {
+                files[ii].close();
+                assertArrayEquals(expected[ii].toByteArray(), Files.readAllBytes(files[ii].getFile().toPath()));
+            }
+        } finally {
+            for (DirectIOFile file : files) {
+                if (file != null) {
+                    file.close();
+                    file.getFile().delete();
+                }
+            }
+        }
+    }
+}
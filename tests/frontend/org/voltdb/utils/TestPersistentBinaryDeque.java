@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Random;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.After;
 import org.junit.Before;
@@ -41,6 +42,7 @@ import org.junit.Test;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
 import org.voltdb.utils.BinaryDeque.BinaryDequeTruncator;
 
 public class TestPersistentBinaryDeque {
@@ -523,6 +525,191 @@ public class TestPersistentBinaryDeque {
         fail();
     }
 
+    @Test
+    public void testSyncIsShared() throws Exception {
+        System.out.println("Running testSyncIsShared");
+        m_pbd.offer(defaultContainer());
+        m_pbd.sync();
+        //Nothing was offered since, the previous fsync covers this one
+        m_pbd.sync();
+
+        long stats[] = m_pbd.getStats(false);
+        assertEquals(1, stats[PersistentBinaryDeque.STAT_SYNCS]);
+        assertEquals(1, stats[PersistentBinaryDeque.STAT_GROUPED_SYNCS]);
+        assertEquals(defaultBuffer().remaining(), stats[PersistentBinaryDeque.STAT_BYTES_WRITTEN]);
+        assertTrue(stats[PersistentBinaryDeque.STAT_MAX_SYNC_NANOS] > 0);
+
+        m_pbd.offer(defaultContainer());
+        m_pbd.sync();
+        BBContainer cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        cont.discard();
+
+        stats = m_pbd.getStats(true);
+        assertEquals(2, stats[PersistentBinaryDeque.STAT_SYNCS]);
+        assertEquals(1, stats[PersistentBinaryDeque.STAT_OBJECTS]);
+        assertEquals(defaultBuffer().remaining(), stats[PersistentBinaryDeque.STAT_BYTES_READ]);
+        //Interval counters start over
+        stats = m_pbd.getStats(true);
+        assertEquals(0, stats[PersistentBinaryDeque.STAT_SYNCS]);
+        assertEquals(0, stats[PersistentBinaryDeque.STAT_BYTES_WRITTEN]);
+        assertEquals(1, stats[PersistentBinaryDeque.STAT_OBJECTS]);
+    }
+
+    @Test
+    public void testConcurrentOfferAndPoll() throws Exception {
+        System.out.println("Running testConcurrentOfferAndPoll");
+        final int count = 5000;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int ii = 0; ii < count; ii++) {
+                        m_pbd.offer(DBBPool.wrapBB(getFilledSmallBuffer(ii)));
+                        if (ii % 100 == 0) {
+                            m_pbd.sync();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        writer.start();
+
+        int polled = 0;
+        final long deadline = System.currentTimeMillis() + 60000;
+        while (polled < count && System.currentTimeMillis() < deadline) {
+            BBContainer cont = m_pbd.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            if (cont == null) {
+                Thread.yield();
+                continue;
+            }
+            try {
+                assertEquals(polled, cont.b().getLong(0));
+                assertEquals(polled, cont.b().getLong(cont.b().limit() - 16));
+            } finally {
+                cont.discard();
+            }
+            polled++;
+        }
+        writer.join();
+        assertNull(failure.get());
+        assertEquals(count, polled);
+        assertEquals(0, m_pbd.getNumObjects());
+        assertTrue(m_pbd.isEmpty());
+    }
+
+    private static void pollAndCheck(BinaryDequeReader reader, int from, int to) throws Exception {
+        for (int ii = from; ii < to; ii++) {
+            BBContainer cont = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            try {
+                assertEquals(ii, cont.b().getLong(0));
+            } finally {
+                cont.discard();
+            }
+        }
+    }
+
+    @Test
+    public void testNamedCursors() throws Exception {
+        System.out.println("Running testNamedCursors");
+        for (int ii = 0; ii < 96; ii++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)));
+        }
+        TreeSet<String> names = getSortedDirectoryListing();
+        assertEquals(3, names.size());
+
+        BinaryDequeReader first = m_pbd.openForRead("first");
+        BinaryDequeReader second = m_pbd.openForRead("second");
+        assertTrue(first == m_pbd.openForRead("first"));
+        assertEquals(96, first.getNumObjects());
+        assertEquals(96, second.getNumObjects());
+
+        //The second cursor holds on to everything the first one consumed
+        pollAndCheck(first, 0, 96);
+        assertTrue(first.isEmpty());
+        assertNull(first.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+        assertEquals(0, first.getNumObjects());
+        assertEquals(names, getSortedDirectoryListing());
+
+        assertFalse(second.isEmpty());
+        pollAndCheck(second, 0, 96);
+        assertTrue(second.isEmpty());
+
+        //Only the write segment is left, the unnamed cursor was never used so it doesn't hold on to anything
+        names = getSortedDirectoryListing();
+        assertEquals(1, names.size());
+        assertEquals(names.first(), "pbd_nonce.2.pbd");
+
+        //New objects are seen by every cursor
+        m_pbd.offer(DBBPool.wrapBB(getFilledSmallBuffer(96)));
+        assertEquals(1, first.getNumObjects());
+        assertEquals(1, second.getNumObjects());
+        pollAndCheck(first, 96, 97);
+        pollAndCheck(second, 96, 97);
+    }
+
+    @Test
+    public void testCloseCursorReleasesSegments() throws Exception {
+        System.out.println("Running testCloseCursorReleasesSegments");
+        for (int ii = 0; ii < 96; ii++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)));
+        }
+        BinaryDequeReader reader = m_pbd.openForRead("reader");
+        m_pbd.openForRead("idle");
+        pollAndCheck(reader, 0, 96);
+        assertEquals(3, getSortedDirectoryListing().size());
+
+        m_pbd.closeCursor("idle");
+        TreeSet<String> names = getSortedDirectoryListing();
+        assertEquals(2, names.size());
+        assertEquals(names.first(), "pbd_nonce.2.pbd");
+        assertTrue(names.contains("pbd_nonce.cursors"));
+
+        try {
+            m_pbd.openForRead("has space");
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void testCursorPositionSurvivesRestart() throws Exception {
+        System.out.println("Running testCursorPositionSurvivesRestart");
+        for (int ii = 0; ii < 96; ii++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)));
+        }
+        BinaryDequeReader reader = m_pbd.openForRead("reader");
+        m_pbd.openForRead("idle");
+        pollAndCheck(reader, 0, 50);
+        //Polled but not acknowledged, read again after the restart
+        BBContainer unacked = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        assertEquals(50, unacked.b().getLong(0));
+        m_pbd.sync();
+        m_pbd.close();
+        unacked.discard();
+
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, logger );
+        reader = m_pbd.openForRead("reader");
+        assertEquals(46, reader.getNumObjects());
+        pollAndCheck(reader, 50, 96);
+        assertTrue(reader.isEmpty());
+
+        //The idle cursor wasn't forgotten and still starts at the beginning
+        BinaryDequeReader idle = m_pbd.openForRead("idle");
+        assertEquals(96, idle.getNumObjects());
+        pollAndCheck(idle, 0, 96);
+
+        //With both cursors done only the segment being written is left
+        m_pbd.offer(DBBPool.wrapBB(getFilledSmallBuffer(96)));
+        m_pbd.close();
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, logger );
+        reader = m_pbd.openForRead("reader");
+        assertEquals(1, reader.getNumObjects());
+        pollAndCheck(reader, 96, 97);
+        pollAndCheck(m_pbd.openForRead("idle"), 96, 97);
+    }
+
     @Test
     public void testIsEmptyWhileClosed() throws Exception {
         System.out.println("Running testIsEmptyWhileClosed");
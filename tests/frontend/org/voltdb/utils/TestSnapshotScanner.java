@@ -0,0 +1,278 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2015 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.sysprocs.saverestore.TableSaveFileTestHelpers;
+import org.voltdb.sysprocs.saverestore.TableSaveFileTestHelpers.Chunk;
+import org.voltdb.utils.SnapshotScanner.Format;
+import org.voltdb.utils.SnapshotScanner.Operator;
+import org.voltdb.utils.SnapshotScanner.Predicate;
+
+import com.google_voltpatches.common.base.Charsets;
+
+public class TestSnapshotScanner {
+
+    private final static File TEST_DIR = new File("/tmp/" + System.getProperty("user.name"), "snapshot_scanner");
+    private final static int ROWS_PER_CHUNK = 10;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        TEST_DIR.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (TEST_DIR.exists()) {
+            for (File f : TEST_DIR.listFiles()) {
+                f.delete();
+            }
+            TEST_DIR.delete();
+        }
+    }
+
+    private static VoltTable makeTable() {
+        final VoltTable t = new VoltTable(
+                new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("SCORE", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("CODE", VoltType.INTEGER));
+        t.addRow(1L, "one", 1.5, 10);
+        t.addRow(2L, null, 2.5, 20);
+        t.addRow(3L, "three", null, 30);
+        t.addRow(4L, "four", 4.5, null);
+        return t;
+    }
+
+    private static SnapshotScanner bind(SnapshotScanner scanner, ByteBuffer chunk) {
+        scanner.bind(chunk);
+        return scanner;
+    }
+
+    @Test
+    public void testParsePredicate() {
+        assertEquals("ID>=5", Predicate.parse("id >= 5").toString());
+        assertEquals("ID!=5", Predicate.parse("ID!=5").toString());
+        assertEquals("ID<5", Predicate.parse("ID<5").toString());
+        assertEquals("NAME=a<b", Predicate.parse("NAME='a<b'").toString());
+        assertEquals("NAME IS NOT NULL", Predicate.parse("name is not null").toString());
+        assertEquals("NAME IS NULL", Predicate.parse("NAME IS NULL").toString());
+    }
+
+    @Test
+    public void testProjectAndFilterToCSV() throws Exception {
+        final ByteBuffer chunk = makeTable().getBuffer();
+        final SnapshotScanner scanner = bind(new SnapshotScanner(
+                Arrays.asList("name", "id"),
+                Arrays.asList(Predicate.parse("ID>1"), new Predicate("SCORE", Operator.IS_NOT_NULL, null)),
+                Format.CSV, 1), chunk);
+        final String csv = new String(scanner.scanChunk(chunk), Charsets.UTF_8);
+        assertEquals("\"" + Constants.CSV_NULL + "\",\"2\"\n\"four\",\"4\"\n", csv);
+        assertEquals(4, scanner.getRowsScanned());
+        assertEquals(2, scanner.getRowsMatched());
+    }
+
+    @Test
+    public void testStringPredicate() throws Exception {
+        final ByteBuffer chunk = makeTable().getBuffer();
+        final SnapshotScanner scanner = bind(new SnapshotScanner(
+                Arrays.asList("CODE"), Arrays.asList(Predicate.parse("NAME>='one'")), Format.TSV, 1), chunk);
+        assertEquals("10\n30\n", new String(scanner.scanChunk(chunk), Charsets.UTF_8));
+    }
+
+    @Test
+    public void testColumnar() throws Exception {
+        final ByteBuffer chunk = makeTable().getBuffer();
+        final SnapshotScanner scanner = bind(new SnapshotScanner(
+                Arrays.asList("CODE", "NAME"), Arrays.asList(Predicate.parse("ID<=2")), Format.COLUMNAR, 1), chunk);
+
+        final DataInputStream header = new DataInputStream(new ByteArrayInputStream(scanner.outputHeader()));
+        assertEquals(SnapshotScanner.COLUMNAR_MAGIC, header.readInt());
+        assertEquals(SnapshotScanner.COLUMNAR_VERSION, header.readInt());
+        assertEquals(2, header.readShort());
+        assertEquals(VoltType.INTEGER.getValue(), header.readByte());
+        assertEquals(4, header.readInt());
+        header.skipBytes(4);
+        assertEquals(VoltType.STRING.getValue(), header.readByte());
+
+        final ByteBuffer block = ByteBuffer.wrap(scanner.scanChunk(chunk));
+        assertEquals(block.capacity() - 4, block.getInt());
+        assertEquals(2, block.getInt());
+        assertEquals(8, block.getInt());
+        assertEquals(10, block.getInt());
+        assertEquals(20, block.getInt());
+        assertEquals(4 + 3 + 4, block.getInt());
+        assertEquals(3, block.getInt());
+        final byte name[] = new byte[3];
+        block.get(name);
+        assertEquals("one", new String(name, Charsets.UTF_8));
+        assertEquals(VoltType.NULL_STRING_LENGTH, block.getInt());
+        assertEquals(0, block.remaining());
+    }
+
+    @Test
+    public void testNoMatches() throws Exception {
+        final ByteBuffer chunk = makeTable().getBuffer();
+        final SnapshotScanner scanner = bind(new SnapshotScanner(
+                null, Arrays.asList(Predicate.parse("CODE>100")), Format.COLUMNAR, 1), chunk);
+        assertEquals(0, scanner.scanChunk(chunk).length);
+    }
+
+    /*
+     * Chunks rotating through the partitions, the IDs of the rows are the partition
+     * followed by the position of the row in the partition
+     */
+    private static List<Chunk> makeChunks(int count, int partitionIds[]) {
+        final List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int ii = 0; ii < count; ii++) {
+            final int partitionId = partitionIds[ii % partitionIds.length];
+            final VoltTable rows = new VoltTable(
+                    new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                    new VoltTable.ColumnInfo("NAME", VoltType.STRING));
+            for (int jj = 0; jj < ROWS_PER_CHUNK; jj++) {
+                final long id = partitionId * 1000000L + (ii / partitionIds.length) * ROWS_PER_CHUNK + jj;
+                rows.addRow(id, "row " + id);
+            }
+            chunks.add(new Chunk(partitionId, rows));
+        }
+        return chunks;
+    }
+
+    private static File writeFile(String name, boolean isReplicated, int partitionIds[], List<Chunk> chunks)
+            throws Exception {
+        final File file = new File(TEST_DIR, name);
+        TableSaveFileTestHelpers.writeSaveFile(file, TableSaveFileTestHelpers.VERSION_2, "T", isReplicated,
+                partitionIds, 3, chunks);
+        return file;
+    }
+
+    /*
+     * TSV of the IDs of the chunks of the partitions, in file order
+     */
+    private static void appendIds(StringBuilder sb, List<Chunk> chunks, List<Integer> partitions) {
+        for (Chunk chunk : chunks) {
+            if (partitions != null && !partitions.contains(chunk.partitionId)) continue;
+            for (int row = 0; row < chunk.rows.getRowCount(); row++) {
+                sb.append(chunk.rows.fetchRow(row).getLong(0)).append('\n');
+            }
+        }
+    }
+
+    private static String scan(SnapshotScanner scanner, List<File> files, Integer partitions[]) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scanner.scan(files, partitions, out);
+        return new String(out.toByteArray(), Charsets.UTF_8);
+    }
+
+    @Test
+    public void testScanPartitionedFiles() throws Exception {
+        // Partition 1 is in the files of both hosts
+        final List<Chunk> host0 = makeChunks(60, new int[] { 0, 1 });
+        final List<Chunk> host1 = makeChunks(60, new int[] { 1, 2 });
+        final List<File> files = Arrays.asList(
+                writeFile("T-host_0.vpt", false, new int[] { 0, 1 }, host0),
+                writeFile("T-host_1.vpt", false, new int[] { 1, 2 }, host1));
+
+        // Chunks decoded by several threads are output in file order, each partition once
+        SnapshotScanner scanner = new SnapshotScanner(Arrays.asList("ID"), null, Format.TSV, 4);
+        StringBuilder expected = new StringBuilder();
+        appendIds(expected, host0, null);
+        appendIds(expected, host1, Arrays.asList(2));
+        assertEquals(expected.toString(), scan(scanner, files, null));
+        assertEquals(120 * ROWS_PER_CHUNK - 30 * ROWS_PER_CHUNK, scanner.getRowsScanned());
+
+        // Only the requested partitions, from the first file that has them
+        scanner = new SnapshotScanner(Arrays.asList("ID"), null, Format.TSV, 4);
+        expected = new StringBuilder();
+        appendIds(expected, host0, Arrays.asList(1));
+        appendIds(expected, host1, Arrays.asList(2));
+        assertEquals(expected.toString(), scan(scanner, files, new Integer[] { 1, 2 }));
+    }
+
+    @Test
+    public void testScanReplicatedFiles() throws Exception {
+        // Every host has a copy of a replicated table, only the first one is scanned
+        final List<Chunk> chunks = makeChunks(30, new int[] { 0 });
+        final List<File> files = Arrays.asList(
+                writeFile("R-host_0.vpt", true, null, chunks),
+                writeFile("R-host_1.vpt", true, null, chunks));
+        final SnapshotScanner scanner = new SnapshotScanner(Arrays.asList("ID"), null, Format.TSV, 4);
+        final StringBuilder expected = new StringBuilder();
+        appendIds(expected, chunks, null);
+        assertEquals(expected.toString(), scan(scanner, files, null));
+        assertEquals(30 * ROWS_PER_CHUNK, scanner.getRowsScanned());
+    }
+
+    @Test
+    public void testScanColumnarFiles() throws Exception {
+        final List<Chunk> host0 = makeChunks(20, new int[] { 0 });
+        final List<Chunk> host1 = makeChunks(20, new int[] { 1 });
+        final List<File> files = Arrays.asList(
+                writeFile("T-host_0.vpt", false, new int[] { 0 }, host0),
+                writeFile("T-host_1.vpt", false, new int[] { 1 }, host1));
+        final SnapshotScanner scanner = new SnapshotScanner(
+                Arrays.asList("ID"), Arrays.asList(Predicate.parse("ID>=1000000")), Format.COLUMNAR, 4);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scanner.scan(files, null, out);
+
+        // One header for all the files, then a block per chunk with matching rows, in file order
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(SnapshotScanner.COLUMNAR_MAGIC, in.readInt());
+        assertEquals(SnapshotScanner.COLUMNAR_VERSION, in.readInt());
+        assertEquals(1, in.readShort());
+        assertEquals(VoltType.BIGINT.getValue(), in.readByte());
+        assertEquals(2, in.readInt());
+        assertEquals('I', in.readByte());
+        assertEquals('D', in.readByte());
+        for (Chunk chunk : host1) {
+            final int length = in.readInt();
+            assertEquals(ROWS_PER_CHUNK, in.readInt());
+            assertEquals(ROWS_PER_CHUNK * 8, in.readInt());
+            assertEquals(4 + 4 + ROWS_PER_CHUNK * 8, length);
+            for (int row = 0; row < ROWS_PER_CHUNK; row++) {
+                assertEquals(chunk.rows.fetchRow(row).getLong(0), in.readLong());
+            }
+        }
+        assertEquals(0, in.available());
+        assertEquals(40 * ROWS_PER_CHUNK, scanner.getRowsScanned());
+        assertEquals(20 * ROWS_PER_CHUNK, scanner.getRowsMatched());
+    }
+}